@@ -1,6 +1,9 @@
 package com.lnedimovic.table_editor;
 
 // Utilities
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,6 +16,7 @@ import com.lnedimovic.table_editor.expression.operation.Operation;
 import com.lnedimovic.table_editor.expression.operation.OperationSet;
 
 import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.FunctionRegistry;
 import com.lnedimovic.table_editor.expression.function.functions.*;
 
 // Parser and Tokenizer
@@ -22,6 +26,12 @@ import com.lnedimovic.table_editor.expression.Tokenizer;
 // Table
 import javax.swing.*;
 import com.formdev.flatlaf.themes.FlatMacDarkLaf;
+import com.lnedimovic.table_editor.table.model.CellReference;
+import com.lnedimovic.table_editor.table.model.store.CellStore;
+import com.lnedimovic.table_editor.table.model.store.ColumnarCellStore;
+import com.lnedimovic.table_editor.table.model.store.MappedCellStore;
+import com.lnedimovic.table_editor.table.model.store.OffHeapCellStore;
+import com.lnedimovic.table_editor.table.model.store.TiledCellStore;
 import com.lnedimovic.table_editor.table.view.TableView;
 
 /**
@@ -40,9 +50,9 @@ public class Main {
     public static void main(String[] args) throws Exception {
         // Setup exemplary operations and functions
         OperationSet operations = setupOperations();
-        Function[]  functions   = setupFunctions();
+        FunctionRegistry functions = setupFunctions();
 
-        // Create tokenizers and parsers for given set of operations
+        // Create tokenizers and parsers for given set of operations, sharing the registry of functions
         Tokenizer tokenizer = new Tokenizer(operations, functions);
         Parser parser       = new Parser(operations, functions);
 
@@ -51,7 +61,7 @@ public class Main {
 
         SwingUtilities.invokeLater(() -> {
             List<List<DType<?>>> data = new ArrayList<>();
-            // Exemplary values: 1 <= ROW_COUNT <= 99, 1 <= COL_COUNT <= 26
+            // Exemplary values: formulas may address up to 2^31 - 1 rows and 16384 (A..XFD) columns
             final int ROW_COUNT = 10;
             final int COL_COUNT = 26;
 
@@ -62,25 +72,62 @@ public class Main {
                 data.add(new ArrayList<>());
                 data.get(row - 1).add(new DTypeInteger(row)); // The first element in the row is its index
 
-                for (int col = 1; col <= 26; col++) {
+                for (int col = 1; col <= COL_COUNT; col++) {
                     data.get(row - 1).add(new DTypeInteger(cnt++)); // For each, set a new exemplary value
                 }
             }
 
-            // Setup column names - columns are named '', 'A' ... 'A' + (COL_COUNT - 1) (i.e. COL_COUNT = 3 -> ''', A, B, C)
-            String[] columnNames = new String[COL_COUNT + 1];
+            CellStore store;
+            try {
+                store = createStore(data, COL_COUNT + 1);
+            }
+            catch (Exception e) {
+                JOptionPane.showMessageDialog(null, "Exception occured while opening the table: " + e.getMessage());
+                return;
+            }
+
+            // Setup column names - columns are named '', A ... Z, AA, AB ... (i.e. COL_COUNT = 3 -> '', A, B, C)
+            // A reopened table file keeps its own number of columns
+            String[] columnNames = new String[store.getColumnCount()];
             columnNames[0] = "";// The first column is blank
-            for (int idx = 1; idx <= COL_COUNT; idx++) {
-                columnNames[idx] = String.valueOf((char) ('A' + idx - 1));
+            for (int idx = 1; idx < columnNames.length; idx++) {
+                columnNames[idx] = CellReference.columnName(idx);
             }
 
             // Create a new Table!
-            new TableView(data, columnNames, tokenizer, parser);
+            new TableView(store, columnNames, tokenizer, parser);
         });
     }
 
     // HELPER FUNCTIONS
 
+    /**
+     * Creates the storage of the table's cells, chosen by the <code>table_editor.store</code> system property:
+     *   columnar - typed columns on the heap (default)
+     *   offheap  - typed columns outside of the heap
+     *   sparse   - tiles of cells, allocated only once written to
+     *   mapped   - memory-mapped file, given by the <code>table_editor.file</code> system property
+     *
+     * @param data       Row data.
+     * @param colCount   Number of columns.
+     * @return           Store holding the data.
+     * @throws Exception In case of an I/O error.
+     */
+    public static CellStore createStore(List<List<DType<?>>> data, int colCount) throws Exception {
+        switch (System.getProperty("table_editor.store", "columnar")) {
+            case "offheap":
+                return OffHeapCellStore.of(data, colCount);
+            case "sparse":
+                return TiledCellStore.of(data, colCount);
+            case "mapped":
+                // An existing file is reopened as it is, instead of being filled with the exemplary data
+                Path path = Paths.get(System.getProperty("table_editor.file", "table.teds"));
+                return Files.exists(path) ? MappedCellStore.open(path) : MappedCellStore.create(path, data, colCount);
+            default:
+                return ColumnarCellStore.of(data, colCount);
+        }
+    }
+
     /**
      * Creates the exemplary set of operations, namely:
      *   (01) Identity       - unary "+p", takes no effect
@@ -134,17 +181,23 @@ public class Main {
      *   (08) Min        - min(p, q),             returns the smaller element among p and q
      *   (09) Max        - max(p, q),             returns the greater element among p and q
      *   (10) IFEQ       - ifeq(p, q),            returns whether p and q are equivalent (DType included)
+     *                     ifeq(p, q, a, b),      returns a if p and q are equivalent; b, otherwise
      *   (11) Sum        - sum(p0, p1, ...),      returns the summation of all the values provided
      *   (12) Average    - average(p0, p1, ...),  returns the average of all the values provided
+     *   (13) If         - if(p, a, b),           returns a if p holds; b, otherwise
+     *   (14) And        - and(p, q),             returns whether both p and q hold
+     *   (15) Or         - or(p, q),              returns whether any of p and q holds
+     * <p>
+     * Conditional functions evaluate only the arguments they need (e.g. the branch of if() taken), see {@link com.lnedimovic.table_editor.expression.function.Thunk}.
      * <p>
      * It is possible to expand upon this set of functions with custom ones.
      * Functions may have any number of parameters, however their number is expected to be constant.
-     * They are expected to be created by the developer themselves, keeping track of whether any have same operators.
+     * Every function has to have its own id - functions are registered by it.
      *
-     * @return Array of functions created.
+     * @return Registry of functions created.
      */
-    public static Function[] setupFunctions() {
-        Function[] functions = null;
+    public static FunctionRegistry setupFunctions() {
+        FunctionRegistry functions = null;
 
         try {
             // Functions without arguments - can be useful for constants!
@@ -162,6 +215,9 @@ public class Main {
 
             // Conditional functions also exist
             Function ifeq    = new IFEQ("ifeq");
+            Function _if     = new If("if");
+            Function and     = new And("and");
+            Function or      = new Or("or");
 
             // Arbitrary number of parameter functions
             Function min     = new Min("min");
@@ -169,7 +225,7 @@ public class Main {
             Function sum     = new Sum("sum");
             Function average = new Average("average");
 
-            functions = new Function[]{e, pi, abs, sqrt, pow, gcd, lcm, min, max, ifeq, sum, average};
+            functions = new FunctionRegistry(e, pi, abs, sqrt, pow, gcd, lcm, min, max, ifeq, sum, average, _if, and, or);
         }
         catch (Exception e) {
             System.out.println("Error while setting up operations: " + e.getMessage());
@@ -24,6 +24,13 @@ public interface DType<T> {
      */
     boolean equals(Object obj);
 
+    /**
+     * @return Id of the data type (see {@link DTypeId}), used to index type-specialized tables.
+     */
+    default int getTypeId() {
+        return DTypeId.OTHER;
+    }
+
     // Unary operations (prefix)
     DType<?> id()   throws Exception;
     DType<?> neg()  throws Exception;
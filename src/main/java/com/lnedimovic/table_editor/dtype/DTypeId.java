@@ -0,0 +1,23 @@
+package com.lnedimovic.table_editor.dtype;
+
+/**
+ * Integer ids of data types, used to index type-specialized tables (e.g. operation kernels) instead of checking classes one by one.
+ */
+public final class DTypeId {
+    public static final int INTEGER = 0;
+    public static final int DOUBLE  = 1;
+    public static final int BOOLEAN = 2;
+    public static final int STRING  = 3;
+    public static final int ARRAY   = 4;
+    /**
+     * Any other implementation of {@link DType}.
+     */
+    public static final int OTHER   = 5;
+
+    /**
+     * Number of data type ids.
+     */
+    public static final int COUNT   = 6;
+
+    private DTypeId() {}
+}
@@ -1,6 +1,7 @@
 package com.lnedimovic.table_editor.dtype.dtypes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
 
 import java.util.Arrays;
 
@@ -24,6 +25,11 @@ public class DTypeArray implements DType<DType<?>[]> {
         return Arrays.toString(value);
     }
 
+    @Override
+    public int getTypeId() {
+        return DTypeId.ARRAY;
+    }
+
     public int length() {
         return this.getValue().length;
     }
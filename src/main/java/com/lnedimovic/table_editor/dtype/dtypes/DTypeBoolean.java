@@ -1,6 +1,7 @@
 package com.lnedimovic.table_editor.dtype.dtypes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
 
 public class DTypeBoolean implements DType<Boolean> {
     private Boolean value;
@@ -64,6 +65,11 @@ public class DTypeBoolean implements DType<Boolean> {
         return value.equals(objBoolean.value);
     }
 
+    @Override
+    public int getTypeId() {
+        return DTypeId.BOOLEAN;
+    }
+
     @Override
     public DType<?> id() throws Exception {
         return this;
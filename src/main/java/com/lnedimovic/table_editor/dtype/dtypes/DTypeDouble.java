@@ -1,6 +1,7 @@
 package com.lnedimovic.table_editor.dtype.dtypes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
 
 public class DTypeDouble implements DType<Double> {
     private Double value;
@@ -45,6 +46,11 @@ public class DTypeDouble implements DType<Double> {
         return value.equals(objDouble.getValue());
     }
 
+    @Override
+    public int getTypeId() {
+        return DTypeId.DOUBLE;
+    }
+
     // OPERATIONS
 
     public DType<?> id() throws Exception {
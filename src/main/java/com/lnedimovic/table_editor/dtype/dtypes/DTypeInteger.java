@@ -1,6 +1,7 @@
 package com.lnedimovic.table_editor.dtype.dtypes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
 
 public class DTypeInteger implements DType<Integer> {
     private Integer value;
@@ -45,6 +46,11 @@ public class DTypeInteger implements DType<Integer> {
         return value.equals(objInteger.value);
     }
 
+    @Override
+    public int getTypeId() {
+        return DTypeId.INTEGER;
+    }
+
     // OPERATIONS
 
     public DType<?> id() throws Exception {
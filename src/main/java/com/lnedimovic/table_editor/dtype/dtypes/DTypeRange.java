@@ -0,0 +1,306 @@
+package com.lnedimovic.table_editor.dtype.dtypes;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+
+/**
+ * DTypeRange is a read-only, two-dimensional view of a rectangular cell range (a range view).
+ * <p>
+ * Unlike a <code>DTypeArray</code> of row arrays, no cell values are copied: every access reads the underlying storage in place.
+ * Views are meant to be consumed during the evaluation of a formula (e.g. by <code>sum</code>); a view leaving the formula
+ * should be materialized (see {@link #materialize()}), as it would otherwise follow the later changes of the cells.
+ */
+public class DTypeRange extends DTypeArray {
+    /**
+     * Storage of the cell values.
+     * <p>
+     * Storages keeping values unboxed should override the typed accessors, so the values can be read without allocating a <code>DType</code>.
+     */
+    @FunctionalInterface
+    public interface CellSource {
+        /**
+         * @param row Row of the cell.
+         * @param col Column of the cell.
+         * @return    Value of the cell.
+         */
+        DType<?> get(int row, int col);
+
+        /**
+         * @param row Row of the cell.
+         * @param col Column of the cell.
+         * @return    Type of the cell value (see {@link DTypeId}); <code>DTypeId.OTHER</code> for an empty cell.
+         */
+        default int getTypeId(int row, int col) {
+            DType<?> value = get(row, col);
+            return (value == null) ? DTypeId.OTHER : value.getTypeId();
+        }
+
+        /**
+         * @return Value of an integer cell.
+         */
+        default int getInt(int row, int col) {
+            return ((DTypeInteger) get(row, col)).getValue();
+        }
+
+        /**
+         * @return Value of a double cell.
+         */
+        default double getDouble(int row, int col) {
+            return ((DTypeDouble) get(row, col)).getValue();
+        }
+
+        /**
+         * @return Value of a boolean cell.
+         */
+        default boolean getBoolean(int row, int col) {
+            return ((DTypeBoolean) get(row, col)).getValue();
+        }
+
+        /**
+         * Visits the non-empty cells of the block, row by row.
+         * Sources keeping empty regions apart (e.g. sparse stores) skip them without visiting their cells one by one.
+         * @param rowStart   First row of the block.
+         * @param colStart   First column of the block.
+         * @param rowEnd     Row after the last row of the block.
+         * @param colEnd     Column after the last column of the block.
+         * @param visitor    Visitor of the cells.
+         * @throws Exception In case of the visitor failing.
+         */
+        default void forEachCell(int rowStart, int colStart, int rowEnd, int colEnd, CellVisitor visitor) throws Exception {
+            for (int row = rowStart; row < rowEnd; row++) {
+                for (int col = colStart; col < colEnd; col++) {
+                    if (getTypeId(row, col) != DTypeId.OTHER || get(row, col) != null) {
+                        visitor.visit(this, row, col);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visitor of the cells of a {@link CellSource}.
+     */
+    @FunctionalInterface
+    public interface CellVisitor {
+        void visit(CellSource source, int row, int col) throws Exception;
+    }
+
+    private final CellSource source;
+    private final int        rowStart;
+    private final int        colStart;
+    private final int        rowCount;
+    private final int        colCount;
+
+    /**
+     * Creates a view of the cell range.
+     * @param source   Storage of the cell values.
+     * @param rowStart First row of the range.
+     * @param colStart First column of the range.
+     * @param rowCount Number of rows in the range.
+     * @param colCount Number of columns in the range.
+     */
+    public DTypeRange(CellSource source, int rowStart, int colStart, int rowCount, int colCount) {
+        super((DType<?>[]) null);
+
+        this.source   = source;
+        this.rowStart = rowStart;
+        this.colStart = colStart;
+        this.rowCount = rowCount;
+        this.colCount = colCount;
+    }
+
+    /**
+     * @return Array of row arrays, holding the current values of the cells.
+     */
+    public DTypeArray materialize() {
+        DType<?>[] rows = new DType<?>[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            DType<?>[] values = new DType<?>[colCount];
+            for (int col = 0; col < colCount; col++) {
+                values[col] = source.get(rowStart + row, colStart + col);
+            }
+            rows[row] = new DTypeArray(values);
+        }
+
+        return new DTypeArray(rows);
+    }
+
+    public String toString() {
+        return materialize().toString();
+    }
+
+    @Override
+    public int length() {
+        return rowCount;
+    }
+
+    /**
+     * @return Number of columns in the range.
+     */
+    public int width() {
+        return colCount;
+    }
+
+    public CellSource getSource() {
+        return source;
+    }
+    public int getRowStart() {
+        return rowStart;
+    }
+    public int getColStart() {
+        return colStart;
+    }
+
+    /**
+     * @param from First row of the sub-range, inclusive.
+     * @param to   Last row of the sub-range, exclusive.
+     * @return     View of the given rows of the range, e.g. for splitting the range between several threads.
+     */
+    public DTypeRange rows(int from, int to) {
+        return new DTypeRange(source, rowStart + from, colStart, to - from, colCount);
+    }
+
+    @Override
+    public Integer totalDimensions() {
+        return 2;
+    }
+
+    @Override
+    public DTypeArray toTwoDimensional() {
+        return this;
+    }
+
+    /**
+     * @return True, since elements of the view are all rows.
+     */
+    @Override
+    public boolean isClassUniform() {
+        return true;
+    }
+
+    @Override
+    public boolean containsDType(Class<?> dtype) {
+        for (int row = 0; row < rowCount; row++) {
+            for (int col = 0; col < colCount; col++) {
+                DType<?> value = source.get(rowStart + row, colStart + col);
+                if (value != null && value.getClass().equals(dtype)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param idx        Row index within the range.
+     * @return           View of the row.
+     * @throws Exception In case of index out of bounds.
+     */
+    @Override
+    public DType<?> get(int idx) throws Exception {
+        if (idx < 0 || idx >= rowCount) {
+            throw new Exception(String.format("DTypeArray: Index %s out of bounds for size %d.", idx, rowCount));
+        }
+
+        return new DTypeRange(source, rowStart + idx, colStart, 1, colCount).new Row();
+    }
+
+    @Override
+    public DType<?> get(int row, int col) throws Exception {
+        if (row < 0 || row >= rowCount || col < 0 || col >= colCount) {
+            throw new Exception(String.format("DTypeArray.get: Index (%s, %s) out of bounds for size (%d, %d).", row, col, rowCount, colCount));
+        }
+
+        return source.get(rowStart + row, colStart + col);
+    }
+
+    @Override
+    public void set(int idx, DType<?> newValue) throws Exception {
+        throw new Exception("DTypeRange.set: Cell range is read-only.");
+    }
+
+    /**
+     * @return Array of row arrays, holding the current values of the cells (see {@link #materialize()}).
+     */
+    @Override
+    public DType<?>[] getValue() {
+        return materialize().getValue();
+    }
+
+    @Override
+    public void setValue(DType<?>[] value) {
+        throw new UnsupportedOperationException("DTypeRange.setValue: Cell range is read-only.");
+    }
+
+    /**
+     * One-dimensional view of the only row of a single-row range.
+     */
+    public class Row extends DTypeArray {
+        private Row() {
+            super((DType<?>[]) null);
+        }
+
+        public String toString() {
+            return materialize().getValue()[0].toString();
+        }
+
+        @Override
+        public int length() {
+            return colCount;
+        }
+
+        @Override
+        public Integer totalDimensions() {
+            return 1;
+        }
+
+        @Override
+        public DTypeArray toTwoDimensional() {
+            return DTypeRange.this;
+        }
+
+        @Override
+        public boolean isClassUniform() {
+            for (int col = 0; col < colCount - 1; col++) {
+                DType<?> value = source.get(rowStart, colStart + col);
+                DType<?> next  = source.get(rowStart, colStart + col + 1);
+                if (value.getClass() != next.getClass()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean containsDType(Class<?> dtype) {
+            return DTypeRange.this.containsDType(dtype);
+        }
+
+        @Override
+        public DType<?> get(int idx) throws Exception {
+            return DTypeRange.this.get(0, idx);
+        }
+
+        @Override
+        public DType<?> get(int row, int col) throws Exception {
+            throw new Exception("DTypeArray.get: Can't access column because DTypeArray is one-dimensional.");
+        }
+
+        @Override
+        public void set(int idx, DType<?> newValue) throws Exception {
+            throw new Exception("DTypeRange.set: Cell range is read-only.");
+        }
+
+        @Override
+        public DType<?>[] getValue() {
+            return ((DTypeArray) materialize().getValue()[0]).getValue();
+        }
+
+        @Override
+        public void setValue(DType<?>[] value) {
+            throw new UnsupportedOperationException("DTypeRange.setValue: Cell range is read-only.");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.lnedimovic.table_editor.dtype.dtypes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
 
 public class DTypeString implements DType<String> {
     private String value;
@@ -45,6 +46,11 @@ public class DTypeString implements DType<String> {
         return value.equals(objString.getValue());
     }
 
+    @Override
+    public int getTypeId() {
+        return DTypeId.STRING;
+    }
+
     // OPERATIONS
 
     @Override
@@ -0,0 +1,113 @@
+package com.lnedimovic.table_editor.expression;
+
+import com.lnedimovic.table_editor.expression.ast.ASTree;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <code>FormulaCache</code> is a bounded, least-recently-used cache of parsed formulas, keyed by their tokens
+ * (see {@link com.lnedimovic.table_editor.expression.token.TokenStream#getKey()}).
+ * <p>
+ * Trees hold no evaluation state (see {@link com.lnedimovic.table_editor.expression.ast.EvaluationContext}), so every lookup returns the cached
+ * instance itself, which may be evaluated by any number of threads at once. Callers rewriting a tree (e.g. making its references relative)
+ * are expected to copy it first.
+ */
+public class FormulaCache {
+    /**
+     * Default maximum number of cached formulas.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int                 capacity;
+    private final Map<String, ASTree> trees;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates an instance of <code>FormulaCache</code>, holding at most <code>DEFAULT_CAPACITY</code> formulas.
+     */
+    public FormulaCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an instance of <code>FormulaCache</code>.
+     * @param capacity Maximum number of cached formulas; least recently used ones are evicted first.
+     */
+    public FormulaCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive.");
+        }
+
+        this.capacity = capacity;
+        this.trees    = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ASTree> eldest) {
+                if (size() > FormulaCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks the formula up, marking it as recently used.
+     * @param key Normalized expression text.
+     * @return    Cached tree, shared - to be evaluated, but not modified; null, if the formula is not cached.
+     */
+    public synchronized ASTree get(String key) {
+        ASTree tree = trees.get(key);
+        if (tree == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return tree;
+    }
+
+    /**
+     * Caches the parsed formula, possibly evicting the least recently used one.
+     * The tree is shared from then on, so it must no longer be modified.
+     * @param key  Normalized expression text.
+     * @param tree Parsed expression.
+     */
+    public synchronized void put(String key, ASTree tree) {
+        trees.put(key, tree);
+    }
+
+    /**
+     * Removes all the cached formulas, e.g. after the tokenizer or parser changes. Counters are kept.
+     */
+    public synchronized void clear() {
+        trees.clear();
+    }
+
+    /**
+     * @return String representation of <code>FormulaCache</code>.
+     */
+    public synchronized String toString() {
+        return String.format("FormulaCache(size=%d, capacity=%d, hits=%d, misses=%d, evictions=%d)", trees.size(), capacity, hits, misses, evictions);
+    }
+
+    public synchronized int getSize() {
+        return trees.size();
+    }
+    public int getCapacity() {
+        return capacity;
+    }
+    public synchronized long getHits() {
+        return hits;
+    }
+    public synchronized long getMisses() {
+        return misses;
+    }
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
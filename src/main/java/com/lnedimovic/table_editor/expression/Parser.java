@@ -1,16 +1,21 @@
 package com.lnedimovic.table_editor.expression;
 
 // Operation and Function
+import com.lnedimovic.table_editor.dtype.DType;
 import com.lnedimovic.table_editor.dtype.dtypes.DTypeArray;
 import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
 import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
 import com.lnedimovic.table_editor.expression.operation.Operation;
 import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.FunctionRegistry;
 
 // Tokenization
 import com.lnedimovic.table_editor.expression.operation.OperationSet;
+import com.lnedimovic.table_editor.expression.typing.TypeInference;
 import com.lnedimovic.table_editor.expression.token.Token;
+import com.lnedimovic.table_editor.expression.token.TokenStream;
 import com.lnedimovic.table_editor.expression.token.TokenType;
+import com.lnedimovic.table_editor.table.model.CellReference;
 import com.lnedimovic.table_editor.table.model.TableModel;
 
 // AST Building
@@ -24,8 +29,22 @@ import java.util.*;
  * <code>Parser</code> used for parsing already tokenized expressions.
  * Parser aims to create an <a href="https://en.wikipedia.org/wiki/Abstract_syntax_tree">Abstract Syntax Tree</a>.
  * Then, the AST created is evaluated in standard post-order traversal fashion.
+ * <p>
+ * State of a single parse is kept in its own context (see {@link ParseContext}), so one parser can be shared by any number of threads.
+ * <p>
+ * By default, expressions are parsed iteratively, keeping the pending sub-expressions on an explicit stack rather than the Java stack,
+ * so machine-generated formulas with thousands of nested parentheses parse in linear time, at a constant depth of the Java stack.
+ * The recursive descent parser, producing the same trees, can be switched back to (see {@link #setIterative(boolean)}).
+ * The passes following the parse (type inference, optimization, evaluation) walk the tree recursively,
+ * so trees deeper than {@link #MAX_DEPTH} are reported as parse errors, rather than overflowing the Java stack later on.
  */
 public class Parser {
+    /**
+     * Maximum depth of a parsed tree (see {@link ASTree#getDepth()}). Each level takes a few frames of every recursive pass,
+     * so the limit leaves the whole pipeline enough headroom on the default (1MB) thread stack.
+     */
+    public static final int MAX_DEPTH = 1000;
+
     /**
      * Set of operations used by the instance of parser.
      * It is possible to create different versions of parsers with totally different operation sets - it is totally customizable.
@@ -35,19 +54,14 @@ public class Parser {
     /**
      * Set of functions used by the instance of parser.
      * It is possible to create different versions of parsers with totally different function sets - it is totally customizable.
-     * Parser doesn't use this array. It has been added for future flexibility use.
+     * Calls of registered functions are checked for the number of arguments (see {@link #createFunctionNode(Function, Node[])}).
      */
-    private Function[]  functions  = new Function[]{};
+    private FunctionRegistry functions = new FunctionRegistry();
 
     /**
-     * Array of Token objects, used during the parsing. Implemented this way, instead of ArrayList, so the Iterators are bypassed, and the parsing is a bit more natural.
+     * Whether expressions are parsed with an explicit stack (see {@link #parseIterative(ParseContext)}), or recursively (see {@link #parse(ParseContext, int)}).
      */
-    private Token[] tokens;
-
-    /**
-     * Variable holding the current token looked at.
-     */
-    private int     tokensIdx;
+    private boolean     iterative  = true;
 
     /**
      * Creates an instance of <code>Parser</code>, provided set of operations and functions.
@@ -55,8 +69,17 @@ public class Parser {
      * @param functions  Set of functions to be used during parsing.
      * */
     public Parser(OperationSet operations, Function[] functions) {
+        this(operations, new FunctionRegistry(functions));
+    }
+
+    /**
+     * Creates an instance of <code>Parser</code>, provided set of operations and registry of functions (shared with the {@link Tokenizer}).
+     * @param operations Set of operations to be used during parsing.
+     * @param functions  Registry of functions to be used during parsing.
+     * */
+    public Parser(OperationSet operations, FunctionRegistry functions) {
         this.operations = operations;
-        this.functions = functions;
+        this.functions  = functions;
     }
 
     /**
@@ -76,7 +99,7 @@ public class Parser {
      * @param functions Set of functions to be used during parsing.
      * */
     public Parser(Function[] functions) {
-        this.functions = functions;
+        this.functions = new FunctionRegistry(functions);
     }
 
     /**
@@ -86,8 +109,7 @@ public class Parser {
      * @param model      Table model, whose data is to be referenced.
      * */
     public Parser(OperationSet operations, Function[] functions, TableModel model) {
-        this.operations = operations;
-        this.functions = functions;
+        this(operations, functions);
     }
 
     /**
@@ -101,41 +123,55 @@ public class Parser {
      * @throws Exception In case there is a parsing error (invalid formula).
      */
     public ASTree parseTokens(ArrayList<Token> tokens) throws Exception {
-        // Convert ArrayList of tokens into a fixed size array
-        // Easier for traversal while parsing
-        Token[] tokensArray = new Token[tokens.size()];
-        tokensArray = tokens.toArray(tokensArray);
-        this.tokens = tokensArray;
-
-        tokensIdx = -1; // parse() increments `tokensIdx` by itself, so to start with the first token - this is needed
-
-        // Print tokenized expression
-        System.out.println("Tokenized expression: ");
-        for (Token token : tokens) {
-            System.out.print(token + " :: ");
-        }
-        System.out.println();
+        return parseTokens(TokenStream.of(tokens));
+    }
+
+    /**
+     * Parses given stream of tokens (see {@link #parseTokens(ArrayList)}).
+     *
+     * @param  tokens    Stream of tokens in a given expression.
+     * @return           Abstract syntax tree of given tokens (expression).
+     * @throws Exception In case there is a parsing error (invalid formula).
+     */
+    public ASTree parseTokens(TokenStream tokens) throws Exception {
+        // parse() increments the index by itself, so to start with the first token - starting at -1 is needed
+        ParseContext context = new ParseContext(tokens);
 
         // Create new Abstract Syntax Tree and parse the tokenized expression into nodes of one
         ASTree tree = new ASTree();
-        tree.setRoot(parse(0));
+        tree.setRoot(iterative ? parseIterative(context) : parse(context, 0));
+
+        // The whole expression has to be a single value, e.g. "=1 2" is not
+        if (context.index < tokens.size()) {
+            throw new Exception("Invalid expression. Unexpected: " + tokens.text(context.index));
+        }
+
+        // Depth is measured iteratively; every pass from here on is recursive
+        if (tree.getDepth() > MAX_DEPTH) {
+            throw new Exception(String.format("Invalid expression. Nested deeper than %d levels.", MAX_DEPTH));
+        }
+
+        // Report type errors already at parse time, rather than mid-evaluation
+        TypeInference.check(tree.getRoot());
 
-        System.out.println(tree);
         return tree;
     }
 
     /**
      * Recursively parses given expression. The only relevant piece of information used is precedence at the current level.
      *
+     * @param  context    State of the parse.
      * @param  precedence Precedence of given part of the expression (i.e. it's operation)
      * @return            Abstract syntax tree node (to be root)
      * @throws Exception  In case there is a parsing error (invalid formula).
      */
-    public Node parse(int precedence) throws Exception {
-        tokensIdx++; // For the ease of use, `parse()` increments to the next token by itself
+    private Node parse(ParseContext context, int precedence) throws Exception {
+        TokenStream tokens = context.tokens;
+
+        context.index++; // For the ease of use, `parse()` increments to the next token by itself
 
         // If the end is reached - return null
-        if (tokensIdx == tokens.length) {
+        if (context.index >= tokens.size()) {
             return null;
         }
 
@@ -143,30 +179,26 @@ public class Parser {
         Node node; // Right part of the expression - is used in certain cases
 
         // Gather information about current token
-        Token token         = tokens[tokensIdx];
-        TokenType tokenType = token.getType();
-        Object related      = token.getRelated();
+        TokenType tokenType = tokens.type(context.index);
+        Object    related   = tokens.literal(context.index);
 
         // Parse the token according to the grammar
         switch (tokenType) {
             case PARENTHESIS: {
-                String value = (String) token.getValue().getValue();
-
                 // Must be a "("
-                if (value.equals("(")) {
-                    left = parse(0); // Parse what is inside. Parenthesis resets the precedence.
+                if (tokens.is(context.index, '(')) {
+                    left = parse(context, 0); // Parse what is inside. Parenthesis resets the precedence.
 
                     // For every open parenthesis, there must come a closed one
-                    token = tokens[tokensIdx];
-                    if (!token.getValue().getValue().equals(")")) {
+                    if (!tokens.is(context.index, ')')) {
                         throw new Exception("Invalid expression. Expected a ')'");
                     }
 
                     // Skip the ")" token
-                    tokensIdx++;
+                    context.index++;
                 }
                 else {
-                    throw new Exception("Expected a value, found: " + value);
+                    throw new Exception("Expected a value, found: " + tokens.text(context.index));
                 }
 
                 break;
@@ -174,14 +206,14 @@ public class Parser {
 
             case BRACKET: {
                 // Closed bracket is always parsed after opened one. See code below.
-                if (token.getValue().getValue().equals("]")) {
+                if (tokens.is(context.index, ']')) {
                     throw new Exception("Invalid expression. Did not expect a ']'");
                 }
 
                 // Check for empty arrays:
-                if (tokensIdx < tokens.length - 1 && tokens[tokensIdx + 1].getValue().getValue().equals(")")) {
+                if (tokens.is(context.index + 1, ')')) {
                     left = new ConstantNode(new DTypeArray(0));
-                    tokensIdx += 2; // Skip the ")"
+                    context.index += 2; // Skip the ")"
 
                     break;
                 }
@@ -190,12 +222,11 @@ public class Parser {
                 ArrayList<Node> elements = new ArrayList<>();
 
                 // Parse until "]" is encountered (end of function)
-                while (!tokens[tokensIdx].getValue().getValue().equals("]")) {
-                    Node element = parse(0); // Parse the element
+                while (!tokens.is(context.index, ']')) {
+                    Node element = parse(context, 0); // Parse the element
 
                     // Elements must be separated by commas, or if there are no more, "]" is expected
-                    if (tokens[tokensIdx].getType() != TokenType.COMMA &&
-                        !tokens[tokensIdx].getValue().getValue().equals("]")) {
+                    if (tokens.type(context.index) != TokenType.COMMA && !tokens.is(context.index, ']')) {
                         throw new Exception("Invalid expression. Expected comma.");
                     }
 
@@ -207,7 +238,7 @@ public class Parser {
 
                 // Create a node with a complete array
                 left = new ArrayNode(elementsArray);
-                tokensIdx++;
+                context.index++;
 
                 break;
             }
@@ -218,7 +249,7 @@ public class Parser {
                 if (((Operation) related).isUnary()) {
                     // Parse what comes after the unary operation
                     int unaryPrecedence = ((Operation) related).getPrecedence();
-                    Node unaryValue = parse(unaryPrecedence);
+                    Node unaryValue = parse(context, unaryPrecedence);
 
                     // Store the operation itself and  what comes after the unary operation
                     left = new UnaryOpNode((Operation) related, unaryValue);
@@ -229,28 +260,19 @@ public class Parser {
                 break;
             }
 
-            case NUMERICAL_CONSTANT: {
-                // Create a new node, keeping the numerical constant value
-                left = new ConstantNode(token.getValue());
-                tokensIdx++;
-
-                break;
-            }
-
             case FUNCTION: {
                 // Get the function inside the token and the arity of it.
-                Function function = (Function) (token.getRelated());
+                Function function = (Function) related;
 
                 // Test for the existence of "(" for function parameters
-                token = tokens[++tokensIdx];
-                if (!token.getValue().getValue().equals("(")) {
-                    throw new Exception("Invalid expression. Expected a '(', found: " + token);
+                if (!tokens.is(++context.index, '(')) {
+                    throw new Exception("Invalid expression. Expected a '(', found: " + (context.index < tokens.size() ? tokens.text(context.index) : "end of expression"));
                 }
 
                 // Check for nullary functions:
-                if (tokensIdx < tokens.length - 1 && tokens[tokensIdx + 1].getValue().getValue().equals(")")) {
-                    left = new FunctionNode(function, new Node[0]);
-                    tokensIdx += 2; // Skip the ")"
+                if (tokens.is(context.index + 1, ')')) {
+                    left = createFunctionNode(function, new Node[0]);
+                    context.index += 2; // Skip the ")"
 
                     break;
                 }
@@ -259,12 +281,11 @@ public class Parser {
                 ArrayList<Node> arguments = new ArrayList<>();
 
                 // Parse until ")" is encountered (end of function)
-                while (!tokens[tokensIdx].getValue().getValue().equals(")")) {
-                    Node parameter = parse(0); // Parse the parameter
+                while (!tokens.is(context.index, ')')) {
+                    Node parameter = parse(context, 0); // Parse the parameter
 
                     // Parameters must be separated by commas, or if there are no more, ")" is expected
-                    if (tokens[tokensIdx].getType() != TokenType.COMMA &&
-                        !tokens[tokensIdx].getValue().getValue().equals(")")) {
+                    if (tokens.type(context.index) != TokenType.COMMA && !tokens.is(context.index, ')')) {
                         throw new Exception("Invalid expression. Expected comma.");
                     }
 
@@ -275,45 +296,124 @@ public class Parser {
                 argumentsArray = arguments.toArray(argumentsArray);
 
                 // Create a node with corresponding function and all the parameters as separate nodes
-                left = new FunctionNode(function, argumentsArray);
-                tokensIdx++;
+                left = createFunctionNode(function, argumentsArray);
+                context.index++;
+
+                break;
+            }
+
+            default: {
+                left = parseValue(context);
+
+                break;
+            }
+        }
+
+        // Parsing the binary operations
+        // It is done recursively due to the cases such as 1+3+5+7
+
+        // Parse until there are no more tokens
+        while (context.index < tokens.size()) {
+            if (tokens.type(context.index) == TokenType.OPERATION) {
+                Operation operation = (Operation) tokens.literal(context.index);
+
+                // Unary operations should've been parsed
+                if (operation.isUnary()) {
+                    throw new Exception("Invalid expression. Expected a binary operation.");
+                }
+
+                // Continue parsing only if the precedence of current operation is less than the next one
+                if (precedence < operation.getPrecedence()) {
+                    Node right = parse(context, operation.getPrecedence());
+
+                    // Set values for children nodes
+                    node = new BinaryOpNode(operation, left, right);
+
+                    left = node; // Recursively parse next
+                }
+                else {
+                    break;
+                }
+            }
+            else {
+                break;
+            }
+        }
+
+        return left;
+    }
+
+    /**
+     * Creates the node of a function call. Calls of registered functions are rejected if no overload takes given number of arguments.
+     *
+     * @param  function  Function called.
+     * @param  arguments Arguments of the call.
+     * @return           Node of the call.
+     * @throws Exception In case of invalid number of arguments.
+     */
+    private Node createFunctionNode(Function function, Node[] arguments) throws Exception {
+        FunctionRegistry.Entry entry = functions.getEntry(function.getId());
+        if (entry != null && !entry.acceptsArity(arguments.length)) {
+            throw new Exception(String.format("Invalid expression. Function %s doesn't take %d arguments (takes %s).",
+                                              function.getId(), arguments.length, Arrays.toString(entry.getArities())));
+        }
+
+        return new FunctionNode(function, arguments);
+    }
+
+    /**
+     * Parses the value of the current token, for tokens that are values on their own - constants, cell references and strings.
+     *
+     * @param  context   State of the parse, at the token. Left after the value.
+     * @return           Node of the value.
+     * @throws Exception In case the token is not a value.
+     */
+    private Node parseValue(ParseContext context) throws Exception {
+        TokenStream tokens  = context.tokens;
+        Object      related = tokens.literal(context.index);
+        Node        value;
+
+        switch (tokens.type(context.index)) {
+            case NUMERICAL_CONSTANT: {
+                // Create a new node, keeping the numerical constant value
+                value = new ConstantNode((DType<?>) related);
+                context.index++;
 
                 break;
             }
 
             case REFERENCE: {
-                // Cell reference is handled by simply passing the value of range
-                left = new ReferenceNode(token.getValue().toString());
-                tokensIdx++;
+                // Cell reference is already resolved by the tokenizer
+                value = new ReferenceNode((CellReference) related);
+                context.index++;
 
                 break;
             }
 
             case QUOTATION_MARK: {
                 // Whatever comes until next occurence of " symbol, will be rendered as a string.
-                tokensIdx++;
+                context.index++;
 
-                String stringValue = "";
-                while (tokensIdx < tokens.length && tokens[tokensIdx].getType() != TokenType.QUOTATION_MARK) {
-                    token = tokens[tokensIdx];
-                    stringValue += token.getValue();
+                StringBuilder stringValue = new StringBuilder();
+                while (context.index < tokens.size() && tokens.type(context.index) != TokenType.QUOTATION_MARK) {
+                    stringValue.append(tokens.type(context.index) == TokenType.STRING ? (String) tokens.literal(context.index) : tokens.text(context.index));
 
-                    tokensIdx++;
+                    context.index++;
                 }
 
                 // Another " is expected after the first one
-                if (tokensIdx >= tokens.length || tokens[tokensIdx].getType() != TokenType.QUOTATION_MARK) {
+                if (tokens.type(context.index) != TokenType.QUOTATION_MARK) {
                     throw new Exception("Invalid expression. Expected quotation mark.");
                 }
 
-                left = new ConstantNode(new DTypeString(stringValue));
-                tokensIdx++;
+                value = new ConstantNode(new DTypeString(stringValue.toString()));
+                context.index++;
 
-                if (tokensIdx < tokens.length &&
-                    tokens[tokensIdx].getType() != TokenType.OPERATION &&
-                    tokens[tokensIdx].getType() != TokenType.COMMA &&
-                    !(tokens[tokensIdx].getType() == TokenType.PARENTHESIS && tokens[tokensIdx].getValue().getValue().equals(")"))) {
-                    throw new Exception("Invalid expression. Expected an operator, comma, or a closed parenthesis, but found: " + tokens[tokensIdx].getValue());
+                if (context.index < tokens.size() &&
+                    tokens.type(context.index) != TokenType.OPERATION &&
+                    tokens.type(context.index) != TokenType.COMMA &&
+                    !tokens.is(context.index, ')')) {
+                    throw new Exception("Invalid expression. Expected an operator, comma, or a closed parenthesis, but found: " + tokens.text(context.index));
                 }
 
                 break;
@@ -324,15 +424,15 @@ public class Parser {
             }
 
             case TRUE: {
-                left = new ConstantNode(new DTypeBoolean(true));
-                tokensIdx++;
+                value = new ConstantNode(new DTypeBoolean(true));
+                context.index++;
 
                 break;
             }
 
             case FALSE: {
-                left = new ConstantNode(new DTypeBoolean(false));
-                tokensIdx++;
+                value = new ConstantNode(new DTypeBoolean(false));
+                context.index++;
 
                 break;
             }
@@ -342,39 +442,185 @@ public class Parser {
             }
         }
 
-        // Parsing the binary operations
-        // It is done recursively due to the cases such as 1+3+5+7
+        return value;
+    }
 
-        // Parse until there are no more tokens
-        while (tokensIdx < tokens.length) {
-            token = tokens[tokensIdx]; // Get current token
+    /**
+     * Parses given expression iteratively, producing the same tree as {@link #parse(ParseContext, int)} does.
+     * <p>
+     * Every sub-expression the recursive parser would descend into (inside parentheses, an argument, an array element,
+     * the operand of a unary operation, or the right operand of a binary operation) is pushed onto an explicit stack as a {@link Frame} instead.
+     * Once a sub-expression is parsed, its frame is popped and its node is handed to the frame below, which carries on from where it stopped.
+     * Every token is looked at a constant number of times, so parsing takes linear time, whatever the nesting.
+     *
+     * @param  context   State of the parse.
+     * @return           Abstract syntax tree node (to be root)
+     * @throws Exception In case there is a parsing error (invalid formula).
+     */
+    private Node parseIterative(ParseContext context) throws Exception {
+        TokenStream  tokens = context.tokens;
+        Deque<Frame> stack  = new ArrayDeque<>();
+        stack.push(new Frame(0));
+
+        Node result = null; // Node of the last sub-expression parsed, handed to the frame below
+        while (true) {
+            Frame frame = stack.peek();
+
+            switch (frame.state) {
+                case Frame.START: {
+                    context.index++;
+
+                    // If the end is reached - the sub-expression is null
+                    if (context.index >= tokens.size()) {
+                        frame.left  = null;
+                        frame.state = Frame.DONE;
+                        break;
+                    }
 
-            if (token.getType() == TokenType.OPERATION) {
-                // Unary operations should've been parsed
-                if (((Operation) token.getRelated()).isUnary()) {
-                    throw new Exception("Invalid expression. Expected a binary operation.");
+                    TokenType tokenType = tokens.type(context.index);
+                    Object    related   = tokens.literal(context.index);
+                    frame.state = Frame.BINARY;
+
+                    switch (tokenType) {
+                        case PARENTHESIS: {
+                            if (!tokens.is(context.index, '(')) {
+                                throw new Exception("Expected a value, found: " + tokens.text(context.index));
+                            }
+                            // Parse what is inside. Parenthesis resets the precedence.
+                            frame.state = Frame.PARENTHESIS;
+                            stack.push(new Frame(0));
+                            break;
+                        }
+
+                        case BRACKET: {
+                            if (tokens.is(context.index, ']')) {
+                                throw new Exception("Invalid expression. Did not expect a ']'");
+                            }
+                            if (tokens.is(context.index + 1, ')')) {
+                                frame.left = new ConstantNode(new DTypeArray(0));
+                                context.index += 2;
+                                break;
+                            }
+                            frame.items = new ArrayList<>();
+                            frame.state = Frame.ELEMENTS;
+                            break;
+                        }
+
+                        case OPERATION: {
+                            Operation operation = (Operation) related;
+                            if (!operation.isUnary()) {
+                                throw new Exception("Invalid expression. Expected unary operation.");
+                            }
+                            // Parse what comes after the unary operation
+                            frame.operation = operation;
+                            frame.state     = Frame.UNARY;
+                            stack.push(new Frame(operation.getPrecedence()));
+                            break;
+                        }
+
+                        case FUNCTION: {
+                            frame.function = (Function) related;
+                            if (!tokens.is(++context.index, '(')) {
+                                throw new Exception("Invalid expression. Expected a '(', found: " + (context.index < tokens.size() ? tokens.text(context.index) : "end of expression"));
+                            }
+                            if (tokens.is(context.index + 1, ')')) {
+                                frame.left = createFunctionNode(frame.function, new Node[0]);
+                                context.index += 2;
+                                break;
+                            }
+                            frame.items = new ArrayList<>();
+                            frame.state = Frame.ARGUMENTS;
+                            break;
+                        }
+
+                        default: {
+                            frame.left = parseValue(context);
+                            break;
+                        }
+                    }
+                    break;
                 }
 
-                // Continue parsing only if the precedence of current operation is less than the next one
-                Operation operation = (Operation) token.getRelated();
-                if (precedence < operation.getPrecedence()) {
-                    Node right = parse(operation.getPrecedence());
+                case Frame.PARENTHESIS: {
+                    // For every open parenthesis, there must come a closed one
+                    if (!tokens.is(context.index, ')')) {
+                        throw new Exception("Invalid expression. Expected a ')'");
+                    }
+                    context.index++;
 
-                    // Set values for children nodes
-                    node = new BinaryOpNode(operation, left, right);
+                    frame.left  = result;
+                    frame.state = Frame.BINARY;
+                    break;
+                }
 
-                    left = node; // Recursively parse next
+                case Frame.ELEMENTS:
+                case Frame.ARGUMENTS: {
+                    char closing = (frame.state == Frame.ELEMENTS) ? ']' : ')';
+                    if (frame.parsedItem) {
+                        // Items must be separated by commas, or if there are no more, a closing bracket (parenthesis) is expected
+                        if (tokens.type(context.index) != TokenType.COMMA && !tokens.is(context.index, closing)) {
+                            throw new Exception("Invalid expression. Expected comma.");
+                        }
+                        frame.items.add(result);
+                    }
+
+                    // Parse until the closing bracket (parenthesis) is encountered
+                    if (!tokens.is(context.index, closing)) {
+                        frame.parsedItem = true;
+                        stack.push(new Frame(0));
+                        break;
+                    }
+
+                    Node[] items = frame.items.toArray(new Node[0]);
+                    frame.left       = (closing == ']') ? new ArrayNode(items) : createFunctionNode(frame.function, items);
+                    frame.parsedItem = false;
+                    frame.state      = Frame.BINARY;
+                    context.index++;
+                    break;
                 }
-                else {
+
+                case Frame.UNARY: {
+                    frame.left  = new UnaryOpNode(frame.operation, result);
+                    frame.state = Frame.BINARY;
+                    break;
+                }
+
+                case Frame.BINARY_RIGHT: {
+                    frame.left  = new BinaryOpNode(frame.operation, frame.left, result);
+                    frame.state = Frame.BINARY;
+                    break;
+                }
+
+                case Frame.BINARY: {
+                    // Continue parsing binary operations only while their precedence is greater than the one of the sub-expression
+                    frame.state = Frame.DONE;
+                    if (context.index < tokens.size() && tokens.type(context.index) == TokenType.OPERATION) {
+                        Operation operation = (Operation) tokens.literal(context.index);
+
+                        // Unary operations should've been parsed
+                        if (operation.isUnary()) {
+                            throw new Exception("Invalid expression. Expected a binary operation.");
+                        }
+
+                        if (frame.precedence < operation.getPrecedence()) {
+                            frame.operation = operation;
+                            frame.state     = Frame.BINARY_RIGHT;
+                            stack.push(new Frame(operation.getPrecedence()));
+                        }
+                    }
                     break;
                 }
             }
-            else {
-                break;
+
+            // Hand the parsed sub-expression to the frame below
+            result = null;
+            if (stack.peek().state == Frame.DONE) {
+                result = stack.pop().left;
+                if (stack.isEmpty()) {
+                    return result;
+                }
             }
         }
-
-        return left;
     }
 
     /**
@@ -393,24 +639,87 @@ public class Parser {
     }
 
     /**
-     * @return Latest array of tokens used in the parser.
+     * @return True if expressions are parsed with an explicit stack; false, if they are parsed recursively.
+     */
+    public FunctionRegistry getFunctions() {
+        return functions;
+    }
+    public boolean isIterative() {
+        return iterative;
+    }
+
+    /**
+     * Switches between parsing with an explicit stack (default), and recursive descent parsing. Both produce the same trees.
+     * @param iterative True to parse with an explicit stack; false, to parse recursively.
      */
-    public Token[] getTokens() {
-        return tokens;
+    public void setIterative(boolean iterative) {
+        this.iterative = iterative;
     }
 
     /**
-     * New array of tokens to use in the parser.
-     * @param tokens New set of tokens to be used.
+     * Sub-expression pending on the stack of the iterative parser (see {@link #parseIterative(ParseContext)}).
+     * It is the counterpart of a single call of {@link #parse(ParseContext, int)}, with its state saved in between.
      */
-    public void setTokens(Token[] tokens) {
-        this.tokens = tokens;
+    private static final class Frame {
+        /**
+         * States of the frame - which part of the sub-expression is parsed next.
+         */
+        private static final int START        = 0; // Value, at the next token
+        private static final int PARENTHESIS  = 1; // ")", after the expression inside the parentheses
+        private static final int ELEMENTS     = 2; // Next element of an array, or "]"
+        private static final int ARGUMENTS    = 3; // Next argument of a function, or ")"
+        private static final int UNARY        = 4; // Unary operation, after its operand
+        private static final int BINARY       = 5; // Binary operation following the value, if any
+        private static final int BINARY_RIGHT = 6; // Binary operation, after its right operand
+        private static final int DONE         = 7;
+
+        /**
+         * Precedence of the sub-expression.
+         */
+        private final int       precedence;
+        private int             state = START;
+
+        /**
+         * Value parsed so far (i.e. the left operand of the next binary operation).
+         */
+        private Node            left;
+        /**
+         * Operation whose operand is being parsed.
+         */
+        private Operation       operation;
+        /**
+         * Function whose arguments are being parsed.
+         */
+        private Function        function;
+        /**
+         * Arguments (elements) parsed so far.
+         */
+        private ArrayList<Node> items;
+        /**
+         * Whether an argument (element) has been pushed, and its node is handed to the frame.
+         */
+        private boolean         parsedItem;
+
+        private Frame(int precedence) {
+            this.precedence = precedence;
+        }
     }
 
     /**
-     * @return Index of the current token perceived by the parser.
+     * State of a single parse.
      */
-    public int getTokensIdx() {
-        return tokensIdx;
+    private static final class ParseContext {
+        /**
+         * Stream of tokens being parsed.
+         */
+        private final TokenStream tokens;
+        /**
+         * Index of the current token looked at.
+         */
+        private int               index = -1;
+
+        private ParseContext(TokenStream tokens) {
+            this.tokens = tokens;
+        }
     }
 }
@@ -1,13 +1,17 @@
 package com.lnedimovic.table_editor.expression;
 
-import com.lnedimovic.table_editor.dtype.DTypeFactory;
-import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
 import com.lnedimovic.table_editor.expression.operation.Operation;
 import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.FunctionRegistry;
 
 import com.lnedimovic.table_editor.expression.operation.OperationSet;
 import com.lnedimovic.table_editor.expression.token.Token;
+import com.lnedimovic.table_editor.expression.token.TokenStream;
 import com.lnedimovic.table_editor.expression.token.TokenType;
+import com.lnedimovic.table_editor.table.model.CellAddress;
+import com.lnedimovic.table_editor.table.model.CellReference;
 
 import java.util.ArrayList;
 
@@ -16,24 +20,32 @@ import java.util.ArrayList;
  * It could've been omitted, however, due to scalability reasons, it was explicitly implemented, so the {@link Parser} can focus only on the parsing part.
  * <p>
  * As of now, tokenizer supports token types that can be found in {@link TokenType}.
+ * <p>
+ * Tokenizer holds no state of a single tokenization, so one tokenizer can be shared by any number of threads.
  */
 public class Tokenizer {
     /**
      * Set of operations used by the instance of tokenizer.
      * It is possible to create different versions of tokenizers with totally different operation sets - it is totally customizable.
      */
-    private OperationSet operations;
+    private final OperationSet operations;
 
     /**
      * Set of functions used by the instance of tokenizer.
      * It is possible to create different versions of tokenizers with totally different function sets - it is totally customizable.
      */
-    private Function[]  functions  = new Function[]{};
+    private final FunctionRegistry functions;
+
+    /**
+     * Size of the tables of operations - symbols outside of them are looked up in the set of operations.
+     */
+    private static final int TABLE_SIZE = 128;
 
     /**
-     * Current position inside the expression String. Created as a class-level variable, to omit passing between functions.
+     * Unary and binary operations, indexed by their (single character) symbol, for symbols below {@link #TABLE_SIZE}.
      */
-    private int pos;
+    private final Operation[] unaryOperations  = new Operation[TABLE_SIZE];
+    private final Operation[] binaryOperations = new Operation[TABLE_SIZE];
 
     /**
      * Creates an instance of <code>Tokenizer</code>, provided set of operations and functions.
@@ -41,8 +53,19 @@ public class Tokenizer {
      * @param functions  Set of functions to be used during parsing.
      */
     public Tokenizer(OperationSet operations, Function[] functions) {
+        this(operations, new FunctionRegistry(functions));
+    }
+
+    /**
+     * Creates an instance of <code>Tokenizer</code>, provided set of operations and registry of functions (shared with the {@link Parser}).
+     * @param operations Set of operations to be used during parsing.
+     * @param functions  Registry of functions to be used during parsing.
+     */
+    public Tokenizer(OperationSet operations, FunctionRegistry functions) {
         this.operations = operations;
-        this.functions = functions;
+        this.functions  = functions;
+
+        indexOperations();
     }
     /*
     /**
@@ -62,200 +85,165 @@ public class Tokenizer {
      * @param functions Set of functions to be used during tokenization.
      */
     public Tokenizer(Function[] functions) {
-        this.functions = functions;
+        this.operations = null;
+        this.functions  = new FunctionRegistry(functions);
+    }
+
+    /**
+     * Fills the tables of operations, indexed by their symbol.
+     */
+    private void indexOperations() {
+        for (Operation operation : operations.operations) {
+            String id = operation.getId();
+            if (id.length() != 1 || id.charAt(0) >= TABLE_SIZE) {
+                continue;
+            }
+
+            // The first operation of a symbol is used, as by OperationSet.find
+            Operation[] table = operation.isUnary() ? unaryOperations : binaryOperations;
+            if (table[id.charAt(0)] == null) {
+                table[id.charAt(0)] = operation;
+            }
+        }
+    }
+
+    /**
+     * Tokenizes given expression, if it is a formula (see {@link #lex(char[])}).
+     *
+     * @param  expression Expression to parse
+     * @return            List of tokens found inside given expression.
+     * @throws Exception  In case of invalid expression.
+     */
+    public ArrayList<Token> tokenize(String expression) throws Exception {
+        return lex(expression).toTokens();
+    }
+
+    /**
+     * Tokenizes given expression, if it is a formula (see {@link #lex(char[])}).
+     *
+     * @param  expression Expression to parse
+     * @return            Stream of tokens found inside given expression.
+     * @throws Exception  In case of invalid expression.
+     */
+    public TokenStream lex(String expression) throws Exception {
+        return lex(expression.toCharArray());
     }
 
     /**
      * Tokenizes given expression, if it is a formula.
      * For the sake of convenience, a formula must start with a "=" symbol. This can easily be modified to anything else.
      * <p>
-     * Tokenization implemented is no specific algorithm, yet just following rules of thought grammar.
+     * Tokenization is done in a single pass over the characters, following rules of thought grammar.
+     * Tokens are written into a compact stream (see {@link TokenStream}); only values of literals are allocated.
      *
      * @param  expression Expression to parse
-     * @return            List of tokens found inside given expression.
+     * @return            Stream of tokens found inside given expression.
      * @throws Exception  In case of invalid expression.
      */
-    public ArrayList<Token> tokenize(String expression) throws Exception {
+    public TokenStream lex(char[] expression) throws Exception {
         /// For the sake of convenience, a formula must start with a "=" symbol.
-        if (!expression.startsWith("=")) {
+        if (expression.length == 0 || expression[0] != '=') {
             throw new Exception("A formula must start with a '='");
         }
 
-        // Preprocess expression (i.e. remove whitespaces)
-        // expression = preprocess(expression);
-        pos = 1;
-
-        ArrayList<Token>     tokens          = new ArrayList<>(); // To be returned list of tokens
-        ArrayList<Character> characterBuffer = new ArrayList<>(); // Buffers for characters
-        ArrayList<Character> digitBuffer     = new ArrayList<>(); // Separate digit buffer - for the sake of convenience
+        TokenStream tokens = new TokenStream(expression);
+        int         length = expression.length;
+        int         pos    = 1;
 
         // Parse for each character in the expression
-        while (pos < expression.length()) {
-            skipWS(expression);
-            if (pos == expression.length()) {
-                break;
-            }
+        while (pos < length) {
+            char curr  = expression[pos]; // Current character
+            int  start = pos;
 
-            char curr = expression.charAt(pos); // Current character
+            if (Character.isWhitespace(curr)) {
+                pos++;
+            }
 
             // If current token represents an operation
-            if (operations.find(Character.toString(curr)) != null) {
-                // Case 1 - a definitive unary operation. Operation is unary if there are no tokens preceding it.
-                if (tokens.isEmpty()) {
-                    // Try finding a unary operation with given symbol
-                    Operation foundOperation = operations.find(Character.toString(curr), true);
-                    if (foundOperation != null) {
-                        // Create now operation token and add it to the list of tokens
-                        tokens.add(new Token(new DTypeString(Character.toString(curr)), foundOperation, TokenType.OPERATION));
-                    }
-                    else {
-                        throw new Exception("Impossible to parse (undefined unary operation).");
-                    }
+            else if (isOperation(curr)) {
+                // Operation is unary if there are no tokens preceding it, or if it comes after a "(" (e.g. (-5 + ...)),
+                // a "," (e.g. pow(..., -5)), or another operation (e.g. --5)
+                int     last  = tokens.size() - 1;
+                boolean unary = tokens.size() == 0 || tokens.is(last, '(') || tokens.kind(last) == TokenType.COMMA.ordinal()
+                                                   || tokens.kind(last) == TokenType.OPERATION.ordinal();
+
+                Operation foundOperation = findOperation(curr, unary);
+                if (foundOperation == null) {
+                    throw new Exception(unary ? "Impossible to parse (undefined unary operation)." : "Impossible to parse (undefined binary operation).");
                 }
-
-                // Case 2 - possible unary / binary operation
-                else {
-                    Token lastToken = tokens.get(tokens.size() - 1); // tokens.size() > 0, otherwise would fall into previous condition
-
-                    // Unary operation can come after a "(" (e.g. (-5 + ...)), a "," (e.g. pow(..., -5)), or another operation (e.g. --5)
-                    if (lastToken.getValue().getValue().equals("(") || lastToken.getValue().getValue().equals(",") || lastToken.getType() == TokenType.OPERATION) {
-                        // Try finding a unary operation with given symbol
-                        Operation foundOperation = operations.find(Character.toString(curr), true);
-                        if (foundOperation != null) {
-                            // Create a new operation token and add it to the list of tokens
-                            tokens.add(new Token(new DTypeString(Character.toString(curr)), foundOperation, TokenType.OPERATION));
-                        }
-                        else {
-                            throw new Exception("Impossible to parse (undefined unary operation).");
-                        }
-                    }
-
-                    // If not unary, binary operation is encountered
-                    else  {
-                        // Try finding a binary operation with given symbol
-                        Operation foundOperation = operations.find(Character.toString(curr), false);
-                        if (foundOperation != null) {
-                            // Create a new operation token and add it to the list of tokens
-                            tokens.add(new Token(new DTypeString(Character.toString(curr)), foundOperation, TokenType.OPERATION));
-                        }
-                        else {
-                            throw new Exception("Impossible to parse (undefined binary operation).");
-                        }
-                    }
-                }
-
-                pos++;
+                tokens.add(TokenType.OPERATION, start, ++pos, foundOperation);
             }
+
             // Cell references, function identifiers and "True / False" start with letters
             else if (Character.isLetter(curr)) {
                 // Cell references are written in uppercase
                 if (Character.isUpperCase(curr)) {
-                    // Make sure there is nothing unprocessed
-                    checkBuffers(characterBuffer, digitBuffer);
-
-                    // Check if "True / False"
-                    String possibleBoolean = checkForBooleanValue(expression);
-                    if (possibleBoolean != null) {
-                        if (possibleBoolean.equals("True")) {
-                            tokens.add(new Token(new DTypeString(possibleBoolean), operations, TokenType.TRUE));
-                        }
-                        else {
-                            tokens.add(new Token(new DTypeString(possibleBoolean), operations, TokenType.FALSE));
-                        }
+                    if (startsWith(expression, pos, "True")) {
+                        pos += 4;
+                        tokens.add(TokenType.TRUE, start, pos, null);
+                    }
+                    else if (startsWith(expression, pos, "False")) {
+                        pos += 5;
+                        tokens.add(TokenType.FALSE, start, pos, null);
                     }
                     else {
-                        // Cell references include singular cells (e.g. B2) and cell ranges (e.g. C2:D3)
-
-                        // Parse singular cell of expression (left part)
-                        String leftCell = parseCell(expression, characterBuffer, digitBuffer);
-
-                        String rightCell;
-                        // In case cell range is referenced
-                        if (pos < expression.length() && expression.charAt(pos) == ':') {
-                            if (pos + 2 >= expression.length()) {
-                                throw new Exception("Invalid cell reference (impossible to parse another cell after ':')");
-                            }
-                            pos++; // Move from ":" to start of another cell reference
-
-                            rightCell = parseCell(expression, characterBuffer, digitBuffer);
-                        }
-
-                        // Single cell references are, for the sake of convenience, turned into ranges
-                        // Naturally, a single cell range contains only itself as start and as an end (e.g. A3:A3)
-                        else {
-                            rightCell = leftCell;
-                        }
-
-                        // Test the cell range for validity before continuing.
-                        if (!validCellRange(leftCell, rightCell)) {
-                            throw new Exception("Invalid cell range provided.");
-                        }
-
-                        // Handling two cases in uniform way:
-                        // (1) Single-cell reference, e.g. A2:A2
-                        // (2) Cell-range reference,  e.g. A2:B4
-                        String completeReference = leftCell + ":" + rightCell;
-
-                        // Create a new cell reference token and add it to the list of tokens
-                        tokens.add(new Token(new DTypeString(completeReference), "", TokenType.REFERENCE));
+                        pos = lexReference(expression, pos, tokens);
                     }
                 }
 
-                // Named functions are written in lowercase
+                // Named functions are written in lowercase, and may only contain letters and digits
                 else {
-                    // Parse function identifier and check for the existence of such in the list of available functions
-                    String   functionName  = parseFunction(expression, characterBuffer);
-                    Function foundFunction = findFunction(functionName);
+                    while (pos < length && Character.isLetterOrDigit(expression[pos])) {
+                        pos++;
+                    }
 
-                    // If a function is found ...
+                    Function foundFunction = findFunction(expression, start, pos);
                     if (foundFunction != null) {
-                        // Create a new function token and add it to the list of tokens
-                        tokens.add(new Token(new DTypeString(functionName), foundFunction, TokenType.FUNCTION));
+                        tokens.add(TokenType.FUNCTION, start, pos, foundFunction);
                     }
                     else {
-                        tokens.add(new Token(new DTypeString(functionName), null, TokenType.STRING));
+                        tokens.add(TokenType.STRING, start, pos, new String(expression, start, pos - start));
                     }
                 }
             }
 
-            // Only numerical constants start with a digit
-            else if (Character.isDigit(curr)) {
-                // Make sure there is nothing unprocessed
-                checkBuffers(characterBuffer, digitBuffer);
-
-                // Find the value of numerical constant
-                String numericalConstant = parseNumericalConstant(expression, digitBuffer);
+            // Cell references with a fixed ("$") column
+            else if (curr == '$') {
+                pos = lexReference(expression, pos, tokens);
+            }
 
-                // Create a new numerical constant token and add it to the list of tokens
-                tokens.add(new Token(DTypeFactory.create(numericalConstant) , null, TokenType.NUMERICAL_CONSTANT));
+            // Only numerical constants, and references to whole rows (e.g. 3:5), start with a digit
+            else if (Character.isDigit(curr)) {
+                int end = lexLines(expression, pos, tokens);
+                pos = (end >= 0) ? end : lexNumericalConstant(expression, pos, tokens);
             }
 
             // Everything else is directly stored
             else if (curr == '(' || curr == ')') {
-                tokens.add(new Token(new DTypeString(String.valueOf(curr)), "", TokenType.PARENTHESIS));
-                pos++;
+                tokens.add(TokenType.PARENTHESIS, start, ++pos, null);
             }
 
             else if (curr == '[' || curr == ']') {
-                tokens.add(new Token(new DTypeString(String.valueOf(curr)), "", TokenType.BRACKET));
-                pos++;
+                tokens.add(TokenType.BRACKET, start, ++pos, null);
             }
 
             else if (curr == ',') {
-                tokens.add(new Token(new DTypeString(","), "", TokenType.COMMA));
-                pos++;
+                tokens.add(TokenType.COMMA, start, ++pos, null);
             }
 
             else if (curr == '"') {
-                tokens.add(new Token(new DTypeString("\""), "", TokenType.QUOTATION_MARK));
-                // checkBuffers();
-                pos++;
+                tokens.add(TokenType.QUOTATION_MARK, start, ++pos, null);
 
-                String stringConstant = parseStringConstant(expression, characterBuffer);
-                tokens.add(new Token(new DTypeString(stringConstant), "", TokenType.STRING));
+                // Whatever comes until the next " is a string constant
+                while (pos < length && expression[pos] != '"') {
+                    pos++;
+                }
+                if (pos == length) {
+                    throw new Exception("Invalid expression. Expected a closing \"");
+                }
+                tokens.add(TokenType.STRING, start + 1, pos, new String(expression, start + 1, pos - start - 1));
 
-                tokens.add(new Token(new DTypeString("\""), "", TokenType.QUOTATION_MARK));
-                pos++;
+                tokens.add(TokenType.QUOTATION_MARK, pos, ++pos, null);
             }
 
             else {
@@ -267,222 +255,339 @@ public class Tokenizer {
     }
 
     /**
-     * Preprocesses given expression.
-     * @param expression Expression to preprocess.
-     * @return           Preprocessed expression.
+     * Lexes the part of the expression that is a potential cell reference.
+     * Cell reference can be in two formats: single-cell reference (e.g. B2), or cell range reference (e.g. B2:D4).
+     * For the sake of convenience, single-cell references are transformed into cell range references (where the start and the end cell are equal, e.g. B2:B2).
+     * <p>
+     * The reference is resolved right away into packed cells (see {@link CellReference}), so its text is never parsed again.
+     * References to whole columns or rows are lexed by {@link #lexLines(char[], int, TokenStream)}.
+     *
+     * @param expression Complete expression currently being tokenized.
+     * @param pos        Start of the reference.
+     * @param tokens     Stream to append the reference token to.
+     * @return           Position after the reference.
+     * @throws Exception In case of invalid expression.
      */
-    public String preprocess(String expression) {
-        expression = expression.replaceAll(" ", "");
-        expression = expression.replaceAll("\n", "");
+    private int lexReference(char[] expression, int pos, TokenStream tokens) throws Exception {
+        int lines = lexLines(expression, pos, tokens);
+        if (lines >= 0) {
+            return lines;
+        }
+
+        int start = pos;
+
+        // Parse singular cell of expression (left part)
+        int  leftEnd  = lexCell(expression, pos);
+        long leftCell = packCell(expression, start, leftEnd);
+        pos = leftEnd;
 
-        return expression;
+        // In case cell range is referenced
+        int  rightStart = start;
+        int  rightEnd   = leftEnd;
+        long rightCell  = leftCell;
+        if (pos < expression.length && expression[pos] == ':') {
+            if (pos + 2 >= expression.length) {
+                throw new Exception("Invalid cell reference (impossible to parse another cell after ':')");
+            }
+            rightStart = pos + 1;
+            rightEnd   = lexCell(expression, rightStart);
+            rightCell  = packCell(expression, rightStart, rightEnd);
+            pos        = rightEnd;
+        }
+
+        // Test the cell range for validity before continuing.
+        // A range is alright if left cell's column and row come before (or are the same as) right cell's column and row.
+        if (CellAddress.col(leftCell) > CellAddress.col(rightCell) || CellAddress.row(leftCell) > CellAddress.row(rightCell)) {
+            throw new Exception("Invalid cell range provided.");
+        }
+
+        // Handling two cases in uniform way:
+        // (1) Single-cell reference, e.g. A2:A2
+        // (2) Cell-range reference,  e.g. A2:B4
+        int fixed = fixedFlags(expression, start, leftEnd, CellReference.ROW_START, CellReference.COL_START)
+                  | fixedFlags(expression, rightStart, rightEnd, CellReference.ROW_END, CellReference.COL_END);
+        tokens.add(TokenType.REFERENCE, start, pos, new CellReference(leftCell, rightCell, fixed));
+
+        return pos;
     }
 
     /**
-     * Skips whitespace characters.
-     * @param expression Expression currently being parsed.
+     * Lexes the part of the expression that is a potential reference to whole columns (e.g. A:C) or whole rows (e.g. 3:5).
+     * Either bound may be fixed by a preceding "$" (e.g. $A:A).
+     *
+     * @param expression Complete expression currently being tokenized.
+     * @param pos        Start of the reference.
+     * @param tokens     Stream to append the reference token to.
+     * @return           Position after the reference; -1, if there is no such reference at the position.
+     * @throws Exception In case of invalid columns or rows.
      */
-    public void skipWS(String expression) {
-        while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
-            pos++;
+    private int lexLines(char[] expression, int pos, TokenStream tokens) throws Exception {
+        int     start   = pos;
+        boolean rows    = Character.isDigit(expression[(expression[pos] == '$' && pos + 1 < expression.length) ? pos + 1 : pos]);
+        int     leftEnd = skipLine(expression, pos, rows);
+        if (leftEnd < 0 || leftEnd >= expression.length || expression[leftEnd] != ':') {
+            return -1;
         }
-    }
 
-    private String checkForBooleanValue(String expression) {
-        if (pos < expression.length() - 4 + 1 && expression.startsWith("True", pos)) {
-            pos += 4;
-            return "True";
+        int rightStart = leftEnd + 1;
+        int rightEnd   = (rightStart < expression.length) ? skipLine(expression, rightStart, rows) : -1;
+        if (rightEnd < 0 || (rightEnd < expression.length && (Character.isLetterOrDigit(expression[rightEnd]) || expression[rightEnd] == '$'))) {
+            return -1;
         }
-        if (pos < expression.length() - 5 + 1 && expression.startsWith("False", pos)) {
-            pos += 5;
-            return "False";
+
+        long first = parseLine(expression, start, leftEnd, rows);
+        long last  = parseLine(expression, rightStart, rightEnd, rows);
+        if (first > last) {
+            throw new Exception("Invalid cell range provided.");
         }
 
-        return null;
+        int fixed = ((expression[start] == '$')      ? (rows ? CellReference.ROW_START : CellReference.COL_START) : 0)
+                  | ((expression[rightStart] == '$') ? (rows ? CellReference.ROW_END   : CellReference.COL_END)   : 0);
+        CellReference reference = rows ? CellReference.rows((int) (first - 1), (int) (last - 1), fixed)
+                                       : CellReference.columns((int) first, (int) last, fixed);
+        tokens.add(TokenType.REFERENCE, start, rightEnd, reference);
+
+        return rightEnd;
     }
 
     /**
-     * Parses the part of the expression that is a potential cell reference.
-     * Cell reference can be in two formats: single-cell reference (e.g. B2), or cell range reference (e.g. B2:D4).
-     * For the sake of convenience, single-cell references are transformed into cell range references (where the start and the end cell are equal, e.g. B2:B2).
-     * <p>
-     *
-     * TODO Support for cells whose name has more than a single character.
-     * @param expression      Complete expression currently being tokenized.
-     * @param characterBuffer Character buffer - used for column processing.
-     * @param digitBuffer     Digit buffer - used for row processing.
-     * @return                String value of referenced cell, in cell range format.
-     * @throws Exception      In case of invalid expression.
+     * @return Position after the column letters (row digits), preceded by an optional "$"; -1, if there are none.
      */
-    public String parseCell(String expression, ArrayList<Character> characterBuffer, ArrayList<Character> digitBuffer) throws Exception {
-        // TODO: Support for cells whose name has more than a single character.
-        characterBuffer.add(expression.charAt(pos)); // Add current character
-        pos++;
-
-        // After column name, collect all the digits (representing a row)
-        while (pos < expression.length() && Character.isDigit(expression.charAt(pos))) {
-            digitBuffer.add(expression.charAt(pos));
+    private static int skipLine(char[] expression, int pos, boolean rows) {
+        if (expression[pos] == '$') {
             pos++;
         }
 
-        if (digitBuffer.isEmpty()) {
-            throw new Exception("No row reference." + digitBuffer + " " + pos);
+        int start = pos;
+        while (pos < expression.length && (rows ? Character.isDigit(expression[pos]) : (expression[pos] >= 'A' && expression[pos] <= 'Z'))) {
+            pos++;
         }
 
-        // Setup left cell and clear the buffers
-        String cellColumn = bufferToString(characterBuffer);
-        String cellRow    = bufferToString(digitBuffer);
-
-        characterBuffer.clear();
-        digitBuffer.clear();
+        return (pos == start) ? -1 : pos;
+    }
 
-        if (cellColumn.compareTo("A") < 0 || cellColumn.compareTo("Z") > 0 || Integer.parseInt(cellRow) <= 0) {
-            throw new Exception("Invalid row / column references (must be greater than 0).");
+    /**
+     * @return           Column (row) number of the already lexed column letters (row digits) between the positions.
+     * @throws Exception In case of the column being greater than XFD, or the row not being within 1..2^31 - 1.
+     */
+    private static long parseLine(char[] expression, int start, int end, boolean rows) throws Exception {
+        if (expression[start] == '$') {
+            start++;
+        }
+        if (rows) {
+            long row = parseRow(expression, start, end);
+            if (row <= 0) {
+                throw new Exception("Invalid row / column references (must be greater than 0).");
+            }
+            return row;
         }
 
-        // Cell is in format of a capital letter, followed by a row, e.g. B12
-        return cellColumn + cellRow;
+        int column = 0;
+        for (int pos = start; pos < end; pos++) {
+            column = 26 * column + (expression[pos] - 'A' + 1);
+            if (column > CellReference.MAX_COLUMN) {
+                throw new Exception("Invalid column reference (must be at most XFD).");
+            }
+        }
+        return column;
     }
 
     /**
-     * Parses the part of the expression that is a potential numerical constant (e.g. 2.5).
-     * Returns a decimal representation of a given number (e.g. 1 -> 1.0, 2.5 -> 2.5).
-     * @param expression  Complete expression currently being tokenized.
-     * @param digitBuffer Digit buffer - used in value processing.
-     * @return            String representation of given number in decimal format.
-     * @throws Exception  In case of invalid expression.
+     * Lexes a single cell, in format of column letters followed by a row, e.g. B12 or AA7.
+     * Either of them may be fixed by a preceding "$" (e.g. $B$12), so it doesn't move once the formula is copied to another cell.
+     * Columns go up to XFD, and rows up to 2^31 - 1 (see {@link CellReference}).
+     * @param expression Complete expression currently being tokenized.
+     * @param pos        Start of the cell.
+     * @return           Position after the cell.
+     * @throws Exception In case of invalid cell.
      */
-    public String parseNumericalConstant(String expression, ArrayList<Character> digitBuffer) throws Exception {
-        // Collect all the digits
-        while (pos < expression.length() && Character.isDigit(expression.charAt(pos))) {
-            digitBuffer.add(expression.charAt(pos));
+    private int lexCell(char[] expression, int pos) throws Exception {
+        if (expression[pos] == '$') {
             pos++;
         }
 
-        // Convert the buffer into a concrete value and clear the buffer
-        String integerPart = bufferToString(digitBuffer);
-        digitBuffer.clear();
-
-        // In case there is a decimal point
-        if (pos < expression.length() && expression.charAt(pos) == '.') {
-            pos++; // Skip the ".", then collect all the digits
-            while (pos < expression.length() && Character.isDigit(expression.charAt(pos))) {
-                digitBuffer.add(expression.charAt(pos));
-                pos++;
+        // Collect the column letters
+        int column = 0;
+        int columnStart = pos;
+        while (pos < expression.length && expression[pos] >= 'A' && expression[pos] <= 'Z') {
+            column = 26 * column + (expression[pos++] - 'A' + 1);
+            if (column > CellReference.MAX_COLUMN) {
+                throw new Exception("Invalid column reference (must be at most XFD).");
             }
+        }
+        if (pos == columnStart) {
+            throw new Exception("No column reference.");
+        }
 
-            if (digitBuffer.isEmpty()) {
-                throw new Exception("Invalid decimal part.");
-            }
+        if (pos < expression.length && expression[pos] == '$') {
+            pos++;
+        }
 
-            // Again, convert the buffer and clear it
-            String decimalPart = bufferToString(digitBuffer);
-            digitBuffer.clear();
+        // After column name, collect all the digits (representing a row)
+        int rowStart = pos;
+        while (pos < expression.length && Character.isDigit(expression[pos])) {
+            pos++;
+        }
 
-            // Return complete representation of decimal number
-            return integerPart + "." + decimalPart;
+        if (pos == rowStart) {
+            throw new Exception("No row reference.");
         }
-        else {
-            // Return complete representation of integer number
-            return integerPart;
+        long row = parseRow(expression, rowStart, pos);
+        if (row <= 0) {
+            throw new Exception("Invalid row / column references (must be greater than 0).");
         }
+
+        return pos;
     }
 
-    public String parseStringConstant(String expression, ArrayList<Character> buffer) throws Exception {
-        while (pos < expression.length() && expression.charAt(pos) != '"') {
-            buffer.add(expression.charAt(pos));
+    /**
+     * @return Packed address (see {@link CellAddress}) of the already lexed cell between the positions.
+     */
+    private static long packCell(char[] expression, int start, int end) throws Exception {
+        int pos = start;
+        if (expression[pos] == '$') {
             pos++;
         }
 
-        if (pos == expression.length() || (pos < expression.length() && expression.charAt(pos) != '"')) {
-            throw new Exception("Invalid expression. Expected a closing \"");
+        int column = 0;
+        while (expression[pos] >= 'A' && expression[pos] <= 'Z') {
+            column = 26 * column + (expression[pos++] - 'A' + 1);
+        }
+        if (expression[pos] == '$') {
+            pos++;
         }
 
-        String result = bufferToString(buffer);
-        buffer.clear();
+        // Internally, 0-column is reserved for row indexing, while the row 0 is standard
+        return CellAddress.pack((int) (parseRow(expression, pos, end) - 1), column);
+    }
 
-        return result;
+    /**
+     * @return Flags of the row and column of the already lexed cell between the positions, if they are marked with a "$".
+     */
+    private static int fixedFlags(char[] expression, int start, int end, int rowFlag, int colFlag) {
+        int flags = (expression[start] == '$') ? colFlag : 0;
+        for (int pos = start + 1; pos < end; pos++) {
+            if (expression[pos] == '$') {
+                flags |= rowFlag;
+            }
+        }
+
+        return flags;
     }
 
     /**
-     * Converts given buffer into a String.
-     * Used while tokenizing the expression and needing to create a complete token, or a part of the token, out of certain amount of characters.
-     * @param buffer Buffer to convert into a String.
-     * @return       The String representation of content of buffer.
+     * @return           Value of the row digits.
+     * @throws Exception In case of the row being greater than 2^31 - 1.
      */
-    public String bufferToString(ArrayList<Character> buffer) {
-        String repr = "";
-        for (Character c : buffer) {
-            repr += c;
+    private static long parseRow(char[] expression, int start, int end) throws Exception {
+        long value = 0;
+        for (int idx = start; idx < end; idx++) {
+            value = 10 * value + Character.digit(expression[idx], 10);
+            if (value > CellReference.MAX_ROW) {
+                throw new Exception(String.format("Row too large: %s", new String(expression, start, end - start)));
+            }
         }
 
-        return repr;
+        return value;
     }
 
     /**
-     * Checks whether given buffers (<code>characterBuffer</code>, <code>digitBuffer</code>) have any content inside.
-     * @param characterBuffer Character buffer.
-     * @param digitBuffer     Digit buffer.
-     * @throws Exception      If any of buffers is not empty.
+     * Lexes the part of the expression that is a potential numerical constant (e.g. 2.5).
+     * Constants with a decimal point are doubles; integers, otherwise.
+     *
+     * @param expression Complete expression currently being tokenized.
+     * @param pos        Start of the constant.
+     * @param tokens     Stream to append the constant token to.
+     * @return           Position after the constant.
+     * @throws Exception In case of invalid expression.
      */
-    public void checkBuffers(ArrayList<Character> characterBuffer, ArrayList<Character> digitBuffer) throws Exception {
-        if (!characterBuffer.isEmpty()) {
-            throw new Exception("Character buffer is not empty.");
+    private int lexNumericalConstant(char[] expression, int pos, TokenStream tokens) throws Exception {
+        int start = pos;
+
+        // Collect all the digits
+        while (pos < expression.length && Character.isDigit(expression[pos])) {
+            pos++;
         }
-        if (!digitBuffer.isEmpty()) {
-            throw new Exception("Digit buffer is not empty.");
+        int integerEnd = pos;
+
+        // In case there is a decimal point
+        if (pos < expression.length && expression[pos] == '.') {
+            pos++; // Skip the ".", then collect all the digits
+            int decimalStart = pos;
+            while (pos < expression.length && Character.isDigit(expression[pos])) {
+                pos++;
+            }
+
+            if (pos == decimalStart) {
+                throw new Exception("Invalid decimal part.");
+            }
+
+            tokens.add(TokenType.NUMERICAL_CONSTANT, start, pos, new DTypeDouble(Double.parseDouble(new String(expression, start, pos - start))));
+        }
+        else {
+            tokens.add(TokenType.NUMERICAL_CONSTANT, start, pos, new DTypeInteger(parseInt(expression, start, integerEnd)));
         }
+
+        return pos;
     }
 
     /**
-     * Checks whether the provided cell range is valid.
-     * @param leftCell  Left cell.
-     * @param rightCell Right cell.
-     * @return          True, if cell range is referenced in a valid way; false, otherwise.
+     * @return           Value of the decimal digits.
+     * @throws Exception In case of the value not fitting into an int.
      */
-    public boolean validCellRange(String leftCell, String rightCell) {
-        // A range is alright if left cell's column comes before (or is the same) right cell's column AND
-        // left cell's is comes before (or is the same) right cell's row.
-        return leftCell.charAt(0) <= rightCell.charAt(0) &&
-                Integer.parseInt(leftCell.substring(1)) <= Integer.parseInt(rightCell.substring(1));
+    private static int parseInt(char[] expression, int start, int end) throws Exception {
+        long value = 0;
+        for (int idx = start; idx < end; idx++) {
+            value = 10 * value + Character.digit(expression[idx], 10);
+            if (value > Integer.MAX_VALUE) {
+                throw new Exception(String.format("Number too large: %s", new String(expression, start, end - start)));
+            }
+        }
+
+        return (int) value;
+    }
+
+    private static boolean startsWith(char[] expression, int pos, String prefix) {
+        if (pos + prefix.length() > expression.length) {
+            return false;
+        }
+        for (int idx = 0; idx < prefix.length(); idx++) {
+            if (expression[pos + idx] != prefix.charAt(idx)) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     /**
-     * Checks whether the given character is valid as a part of function identifier.
-     * Function identifiers may only contain letters and digits
      * @param chr Character inspected.
-     * @return    Whether the character inspected is valid part of function identifier.
+     * @return    True if any operation has the character as its symbol; false, otherwise.
      */
-    public boolean validNamedFunctionCharacter(Character chr) {
-        // Function identifiers may only contain letters and digits
-        return (Character.isLetterOrDigit(chr));
+    private boolean isOperation(char chr) {
+        if (chr < TABLE_SIZE) {
+            return unaryOperations[chr] != null || binaryOperations[chr] != null;
+        }
+        return operations != null && operations.find(Character.toString(chr)) != null;
     }
 
     /**
-     * Parses the part of the expression that is a potential function identifier (e.g. pow).
-     *
-     * @param expression      Complete expression currently being tokenized.
-     * @param characterBuffer Character buffer - used in identifier processing.
-     * @return                Function identifier, as a String.
-     * @throws Exception      In case of invalid expression.
+     * @param chr     Symbol of the operation.
+     * @param isUnary Whether the operation is unary.
+     * @return        Operation with given symbol; null, if there is none.
      */
-    public String parseFunction(String expression, ArrayList<Character> characterBuffer) throws Exception {
-        // Collect the valid characters for function representation
-        while (pos < expression.length() && validNamedFunctionCharacter(expression.charAt(pos))) {
-            characterBuffer.add(expression.charAt(pos));
-            pos++;
+    private Operation findOperation(char chr, boolean isUnary) {
+        if (chr < TABLE_SIZE) {
+            return isUnary ? unaryOperations[chr] : binaryOperations[chr];
         }
+        return operations.find(Character.toString(chr), isUnary);
+    }
 
-        // Store the function identifier and flush the buffer
-        String functionName = bufferToString(characterBuffer);
-        characterBuffer.clear();
-
-        // After a function identifier, "(" must come
-//        if (pos >= expression.length() || expression.charAt(pos) != '(') {
-//            throw new Exception("Improperly named function token.");
-//        }
-
-        return functionName;
+    /**
+     * @return Registry of functions used by the tokenizer.
+     */
+    public FunctionRegistry getFunctions() {
+        return functions;
     }
 
     /**
@@ -490,11 +595,16 @@ public class Tokenizer {
      * @return      Function instance in case function is found; null, otherwise.
      */
     public Function findFunction(String token) {
-        for (Function function : functions) {
-            if (function.equals(token)) {
-                return function;
-            }
-        }
-        return null;
+        return functions.find(token);
+    }
+
+    /**
+     * @param expression Expression currently being tokenized.
+     * @param start      Start of the function identifier.
+     * @param end        End of the function identifier.
+     * @return           Function instance in case function is found; null, otherwise.
+     */
+    private Function findFunction(char[] expression, int start, int end) {
+        return functions.find(expression, start, end);
     }
 }
@@ -1,25 +1,53 @@
 package com.lnedimovic.table_editor.expression.ast;
 
 import com.lnedimovic.table_editor.dtype.DType;
-import com.lnedimovic.table_editor.dtype.DTypeFactory;
-import com.lnedimovic.table_editor.dtype.dtypes.DTypeArray;
-import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
 import com.lnedimovic.table_editor.expression.ast.node.Node;
-import com.lnedimovic.table_editor.expression.ast.node.nodes.ReferenceNode;
+import com.lnedimovic.table_editor.expression.compiler.FormulaCompiler;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.*;
 import com.lnedimovic.table_editor.expression.operation.OperationSet;
-import com.lnedimovic.table_editor.table.model.TableModel;
+import com.lnedimovic.table_editor.table.model.CellRange;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <code>ASTree</code> is a class representing an abstract syntax tree, generated in expression parsing.
  * Its main role is representing the structure of given expression and being able to evaluate it.
- * Before evaluation, cell references have to be supplemented with values.
+ * Cell references are resolved against the context of every evaluation (see {@link EvaluationContext}), so a tree holds no evaluation state,
+ * and may be shared between cells and threads.
  */
 public class ASTree {
+    /**
+     * Number of interpreted evaluations after which the tree is compiled (see {@link FormulaCompiler}).
+     */
+    public static final int COMPILE_THRESHOLD = 16;
+    /**
+     * Maximum depth of a tree to be compiled (see {@link #getDepth()}). Compiling recurses over the tree, taking more stack per level than
+     * interpreting it does, so deeper trees stay interpreted.
+     */
+    public static final int MAX_COMPILE_DEPTH = 256;
+
     /**
      * Root node of respective tree.
      */
     private Node root;
 
+    /**
+     * Number of evaluations done by walking the tree (the interpreted, cold tier). Approximate, if the tree is evaluated concurrently.
+     */
+    private int                   evaluationCount = 0;
+    /**
+     * Compiled tree (the hot tier), or null while the tree is still interpreted.
+     */
+    private volatile MethodHandle compiled;
+    /**
+     * Whether the tree is pinned to the interpreted tier, being too deep to compile, or having failed to compile.
+     */
+    private volatile boolean      interpretedOnly = false;
+
     /**
      * Creates an instance of <code>ASTree</code>.
      */
@@ -34,93 +62,262 @@ public class ASTree {
     }
 
     /**
-     * Evaluates the complete tree, using post-order traversal.
+     * Evaluates the complete tree, given it contains no cell references (see {@link #evaluate(EvaluationContext)}).
+     * @param operations Operations used in evaluation.
      * @return           Evaluation result.
-     * @throws Exception If root is unassigned.
+     * @throws Exception If root is unassigned, or in case of evaluation error.
      */
     public DType<?> evaluate(OperationSet operations) throws Exception {
+        return evaluate(new EvaluationContext(operations));
+    }
+
+    /**
+     * Evaluates the complete tree, using post-order traversal.
+     * Trees evaluated at least {@link #COMPILE_THRESHOLD} times are compiled, and evaluated through the compiled form from then on.
+     * Trees which cannot be compiled (see {@link #promote()}) are interpreted.
+     * @param context    Context of the evaluation.
+     * @return           Evaluation result.
+     * @throws Exception If root is unassigned, or in case of evaluation error.
+     */
+    public DType<?> evaluate(EvaluationContext context) throws Exception {
         if (root == null) {
             throw new Exception("Root is not assigned.");
         }
+
+        MethodHandle compiledTree = compiled;
+        if (compiledTree == null && !interpretedOnly && ++evaluationCount >= COMPILE_THRESHOLD) {
+            compiledTree = promote();
+        }
+
+        DType<?> result;
         try {
-            return this.root.evaluate(operations);
+            if (compiledTree != null) {
+                result = (DType<?>) compiledTree.invokeExact(context);
+            }
+            else {
+                result = this.root.evaluate(context);
+            }
         }
         catch (Exception e) {
             throw new Exception(e);
         }
+        catch (Throwable t) {
+            throw new Exception(t);
+        }
+
+        // Range views are only valid during the evaluation, so a range being the result is copied out
+        return (result instanceof DTypeRange) ? ((DTypeRange) result).materialize() : result;
     }
 
     /**
-     * Fills reference cells with concrete values, given <code>TableModel</code> to fetch data from.
-     * @param node       Current node.
-     * @param model      TableModel used to fetch the data of cells.
-     * @throws Exception
+     * Compiles the tree, unless it is deeper than {@link #MAX_COMPILE_DEPTH}. Compiling is only an optimization, so any failure of it
+     * (including a {@link StackOverflowError} or a {@link LinkageError} while spinning the method handles) pins the tree to the interpreted tier.
+     * @return Compiled tree; null, if the tree stays interpreted.
      */
-    public void fillReferences(Node node, TableModel model) throws Exception {
-        if (node instanceof ReferenceNode) {
-            // Extract the exact cell and its value
-            String cellReference = ((ReferenceNode) node).getReference();
-            DType<?> value         = getReferenceValue(cellReference, model);
+    private MethodHandle promote() {
+        if (getDepth() > MAX_COMPILE_DEPTH) {
+            interpretedOnly = true;
+            return null;
+        }
+
+        try {
+            return compile();
+        }
+        catch (Throwable t) {
+            interpretedOnly = true;
+            return null;
+        }
+    }
+
+    /**
+     * Compiles the tree, promoting it to the hot tier.
+     * @return Compiled tree.
+     */
+    public MethodHandle compile() {
+        MethodHandle compiledTree = FormulaCompiler.compile(root);
+        compiled = compiledTree;
+
+        return compiledTree;
+    }
+
+    /**
+     * @return True if the tree has been compiled; false, otherwise.
+     */
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    /**
+     * Makes every cell reference within the tree relative to the cell owning the formula (see {@link ReferenceNode#relativize(int, int)}).
+     * @param ownerRow Row of the owning cell.
+     * @param ownerCol Column of the owning cell.
+     */
+    public void relativize(int ownerRow, int ownerCol) {
+        if (root != null) {
+            relativize(root, ownerRow, ownerCol);
+        }
+    }
 
-            // Set the value from given table into the node
-            ((ReferenceNode) node).setValue(value);
+    /**
+     * Recursively makes the references within the subtree of given node relative.
+     * @param node     Current node.
+     * @param ownerRow Row of the owning cell.
+     * @param ownerCol Column of the owning cell.
+     */
+    private void relativize(Node node, int ownerRow, int ownerCol) {
+        if (node instanceof ReferenceNode) {
+            ((ReferenceNode) node).relativize(ownerRow, ownerCol);
         }
         else {
-            // Recursively fill the rest of the tree with reference values
             for (Node nextNode : node.getChildren()) {
-                fillReferences(nextNode, model);
+                relativize(nextNode, ownerRow, ownerCol);
             }
         }
     }
 
     /**
-     * Return value from specific cell.
-     * @param range      String representing the cell range. As of now, only singular cells are supported.
-     * @param model      <code>TableModel</code> to fetch data from.
-     * @return           Cell value.
-     * @throws Exception In case of cell range not being a singular cell.
+     * Canonical form identifies the structure of the tree - two trees of equal canonical form evaluate the same way.
+     * With relative references, formulas filled down a column (e.g. "=A1*B1", "=A2*B2", ...) share the canonical form.
+     * @return Canonical form of the tree.
      */
-    public DType<?> getReferenceValue(String range, TableModel model) throws Exception {
-        String leftCell  = range.substring(0, range.indexOf(":"));
-        String rightCell = range.substring(range.indexOf(":") + 1);
+    public String getCanonicalForm() {
+        StringBuilder builder = new StringBuilder();
+        if (root != null) {
+            appendCanonicalForm(root, builder);
+        }
 
-//        if (!leftCell.equals(rightCell)) {
-//            throw new Exception("Cell range support to be added.");
-//        }
+        return builder.toString();
+    }
 
-        // Internally, 0-column is reserved for row indexing, while the row 0 is standard
-        int leftCol = leftCell.charAt(0) - 'A' + 1;
-        int leftRow = Integer.parseInt(leftCell.substring(1)) - 1;
+    /**
+     * Recursively appends the canonical form of the subtree of given node.
+     * @param node    Current node.
+     * @param builder Builder to append to.
+     */
+    private void appendCanonicalForm(Node node, StringBuilder builder) {
+        if (node instanceof ConstantNode) {
+            // Type is included, and the value length-prefixed, so e.g. 1 and "1" differ
+            DType<?> value = ((ConstantNode) node).getValue();
+            String   text  = String.valueOf(value);
+            builder.append('C').append(value == null ? "null" : value.getClass().getSimpleName())
+                   .append('#').append(text.length()).append(':').append(text);
+            return;
+        }
+        if (node instanceof ReferenceNode) {
+            builder.append('R').append(((ReferenceNode) node).getCanonicalReference());
+            return;
+        }
+        if (node instanceof SharedNode) {
+            builder.append('S').append(((SharedNode) node).getIndex());
+            return;
+        }
 
-        int rightCol = rightCell.charAt(0) - 'A' + 1;
-        int rightRow = Integer.parseInt(rightCell.substring(1)) - 1;
+        if (node instanceof BinaryOpNode) {
+            builder.append('B').append(((BinaryOpNode) node).getOperation().getId());
+        }
+        else if (node instanceof UnaryOpNode) {
+            builder.append('U').append(((UnaryOpNode) node).getOperation().getId());
+        }
+        else if (node instanceof FunctionNode) {
+            builder.append('F').append(((FunctionNode) node).getFunction().getId());
+        }
+        else {
+            builder.append(node.getClass().getSimpleName());
+        }
 
-        // Single-cell reference
-        if (leftCol == rightCol && leftRow == rightRow) {
-            return (DType<?>) model.getValueAt(leftRow, leftCol);
+        builder.append('(');
+        for (Node nextNode : node.getChildren()) {
+            appendCanonicalForm(nextNode, builder);
+            builder.append(',');
         }
+        builder.append(')');
+    }
 
-        int totalRows = rightRow - leftRow + 1;
-        int totalCols = rightCol - leftCol + 1;
+    /**
+     * Collects all the cell ranges referenced within the tree, i.e. precedents of the formula it represents.
+     * @return Array of referenced cell ranges, in order of appearance.
+     */
+    public CellRange[] getReferencedRanges() {
+        return getReferencedRanges(0, 0);
+    }
 
-        DTypeArray fetchedRange = new DTypeArray(totalRows);
+    /**
+     * Collects all the cell ranges referenced within the tree, resolving relative references against the cell owning the formula.
+     * @param ownerRow Row of the owning cell.
+     * @param ownerCol Column of the owning cell.
+     * @return         Array of referenced cell ranges, in order of appearance.
+     */
+    public CellRange[] getReferencedRanges(int ownerRow, int ownerCol) {
+        List<CellRange> ranges = new ArrayList<>();
+        if (root != null) {
+            collectReferences(root, ranges, ownerRow, ownerCol);
+        }
 
-        int rowIdx = 0;
-        for (int row = leftRow; row <= rightRow; row++) {
-            DTypeArray rowArray = new DTypeArray(totalCols);
-            int colIdx = 0;
-            for (int col = leftCol; col <= rightCol; col++) {
-                DType<?> rowColValue = (DType<?>) model.getValueAt(row, col);
-                rowArray.set(colIdx, rowColValue);
-                colIdx++;
+        return ranges.toArray(new CellRange[0]);
+    }
 
+    /**
+     * Recursively collects cell ranges referenced within the subtree of given node.
+     * @param node     Current node.
+     * @param ranges   List to store found ranges into.
+     * @param ownerRow Row of the owning cell.
+     * @param ownerCol Column of the owning cell.
+     */
+    private void collectReferences(Node node, List<CellRange> ranges, int ownerRow, int ownerCol) {
+        if (node instanceof ReferenceNode) {
+            ranges.add(((ReferenceNode) node).getRange(ownerRow, ownerCol));
+        }
+        else {
+            for (Node nextNode : node.getChildren()) {
+                collectReferences(nextNode, ranges, ownerRow, ownerCol);
             }
+        }
+    }
+
+    /**
+     * @return Depth of the tree, i.e. number of nodes on its longest root-to-leaf path (see {@link #depth(Node)}).
+     */
+    public int getDepth() {
+        return depth(root);
+    }
 
-            fetchedRange.set(rowIdx, rowArray);
-            rowIdx++;
+    /**
+     * Measures depth of given subtree. Nodes are visited with an explicit stack, so trees of any depth are measured at a constant depth of the Java stack.
+     * @param node Root of the subtree.
+     * @return     Number of nodes on the longest root-to-leaf path; 0, if the subtree is empty.
+     */
+    public static int depth(Node node) {
+        if (node == null) {
+            return 0;
+        }
+
+        ArrayDeque<Node>    nodes  = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        nodes.push(node);
+        depths.push(1);
+
+        int maxDepth = 0;
+        while (!nodes.isEmpty()) {
+            Node current = nodes.pop();
+            int  depth   = depths.pop();
+            maxDepth = Math.max(maxDepth, depth);
+
+            for (Node child : current.getChildren()) {
+                if (child != null) {
+                    nodes.push(child);
+                    depths.push(depth + 1);
+                }
+            }
         }
 
-        return fetchedRange;
+        return maxDepth;
+    }
+
+    /**
+     * @return Deep copy of the tree, starting in the interpreted tier.
+     */
+    public ASTree copy() {
+        return new ASTree(root == null ? null : root.copy());
     }
 
     /**
@@ -135,5 +332,10 @@ public class ASTree {
     }
     public void setRoot(Node root) {
         this.root = root;
+
+        // Compiled form of the previous root is no longer valid
+        this.compiled        = null;
+        this.interpretedOnly = false;
+        this.evaluationCount = 0;
     }
 }
@@ -0,0 +1,218 @@
+package com.lnedimovic.table_editor.expression.ast;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.LetNode;
+import com.lnedimovic.table_editor.expression.operation.OperationSet;
+import com.lnedimovic.table_editor.table.model.CellRange;
+import com.lnedimovic.table_editor.table.model.UsedRange;
+
+import java.util.Arrays;
+
+/**
+ * <code>EvaluationContext</code> holds everything a single evaluation of a tree depends on: the operations, the cells references are read from,
+ * the cell the formula is evaluated for, and the values of shared subexpressions (see {@link LetNode}).
+ * <p>
+ * Trees themselves hold no evaluation state, so the same tree may be shared between cells (e.g. by a template, or a cache)
+ * and evaluated by several threads at once - every evaluation is given its own context.
+ */
+public class EvaluationContext {
+    private static final LetNode[] NO_LETS = new LetNode[0];
+
+    /**
+     * Operations used in evaluation.
+     */
+    private final OperationSet          operations;
+    /**
+     * Cells references are read from; null, if the tree may not contain any references.
+     */
+    private final DTypeRange.CellSource cells;
+    /**
+     * Part of the cells in use, references to whole columns (rows) are clipped to; null, if unknown.
+     */
+    private final UsedRange             used;
+    /**
+     * Row of the cell the formula is evaluated for.
+     */
+    private final int                   row;
+    /**
+     * Column of the cell the formula is evaluated for.
+     */
+    private final int                   col;
+
+    /**
+     * <code>LetNodes</code> evaluated so far, and the values of their definitions.
+     */
+    private LetNode[]    lets   = NO_LETS;
+    private DType<?>[][] values;
+
+    /**
+     * Creates a context for a tree without cell references.
+     * @param operations Operations used in evaluation.
+     */
+    public EvaluationContext(OperationSet operations) {
+        this(operations, null, 0, 0);
+    }
+
+    /**
+     * Creates a context evaluating a formula for the given cell.
+     * @param operations Operations used in evaluation.
+     * @param cells      Cells references are read from.
+     * @param row        Row of the cell the formula is evaluated for.
+     * @param col        Column of the cell the formula is evaluated for.
+     */
+    public EvaluationContext(OperationSet operations, DTypeRange.CellSource cells, int row, int col) {
+        this(operations, cells, null, row, col);
+    }
+
+    /**
+     * Creates a context evaluating a formula for the given cell, with references to whole columns (rows) clipped to the part of the cells in use.
+     * @param operations Operations used in evaluation.
+     * @param cells      Cells references are read from.
+     * @param used       Part of the cells in use; null, if unknown.
+     * @param row        Row of the cell the formula is evaluated for.
+     * @param col        Column of the cell the formula is evaluated for.
+     */
+    public EvaluationContext(OperationSet operations, DTypeRange.CellSource cells, UsedRange used, int row, int col) {
+        this.operations = operations;
+        this.cells      = cells;
+        this.used       = used;
+        this.row        = row;
+        this.col        = col;
+    }
+
+    /**
+     * @param range      Cell range.
+     * @return           Cell value, if the range is a single cell; view of the range, otherwise (see {@link DTypeRange}).
+     * @throws Exception In case of there being no cells to read from.
+     */
+    public DType<?> getRangeValue(CellRange range) throws Exception {
+        return getRangeValue(range.getRowStart(), range.getColStart(), range.getRowEnd(), range.getColEnd());
+    }
+
+    /**
+     * @param rowStart   Top row of the range.
+     * @param colStart   Left column of the range.
+     * @param rowEnd     Bottom row of the range.
+     * @param colEnd     Right column of the range.
+     * @return           Cell value, if the range is a single cell; view of the range, otherwise (see {@link DTypeRange}).
+     * @throws Exception In case of there being no cells to read from.
+     */
+    public DType<?> getRangeValue(int rowStart, int colStart, int rowEnd, int colEnd) throws Exception {
+        // Single-cell reference
+        if (rowEnd == rowStart && colEnd == colStart) {
+            return getCellValue(rowStart, colStart);
+        }
+        return getRangeView(rowStart, colStart, rowEnd, colEnd);
+    }
+
+    /**
+     * @param row        Row of the cell.
+     * @param col        Column of the cell.
+     * @return           Cell value.
+     * @throws Exception In case of there being no cells to read from.
+     */
+    public DType<?> getCellValue(int row, int col) throws Exception {
+        if (cells == null) {
+            throw new Exception("Cell references can't be evaluated outside of a table.");
+        }
+        return cells.get(row, col);
+    }
+
+    /**
+     * Ranges are viewed in place, instead of copying every cell into a fresh array.
+     * @param rowStart   Top row of the range.
+     * @param colStart   Left column of the range.
+     * @param rowEnd     Bottom row of the range.
+     * @param colEnd     Right column of the range.
+     * @return           View of the range (see {@link DTypeRange}), even if it is a single cell.
+     * @throws Exception In case of there being no cells to read from, or the range being too large to view.
+     */
+    public DTypeRange getRangeView(int rowStart, int colStart, int rowEnd, int colEnd) throws Exception {
+        if (cells == null) {
+            throw new Exception("Cell references can't be evaluated outside of a table.");
+        }
+
+        // Extents are computed in long, since a range may span nearly every int row
+        long rowCount = (long) rowEnd - rowStart + 1;
+        long colCount = (long) colEnd - colStart + 1;
+        if (rowCount > Integer.MAX_VALUE || colCount > Integer.MAX_VALUE) {
+            throw new Exception(String.format("Range too large: %d rows, %d columns.", rowCount, colCount));
+        }
+        return new DTypeRange(cells, rowStart, colStart, (int) rowCount, (int) colCount);
+    }
+
+    /**
+     * Views the range only as far as the cells in use reach (see {@link UsedRange}), e.g. for references to whole columns (rows).
+     * The view is empty if none of the cells are in use; it isn't clipped at all if the part in use is unknown.
+     * @param rowStart   Top row of the range.
+     * @param colStart   Left column of the range.
+     * @param rowEnd     Bottom row of the range.
+     * @param colEnd     Right column of the range.
+     * @return           View of the part of the range in use (see {@link DTypeRange}).
+     * @throws Exception In case of there being no cells to read from.
+     */
+    public DTypeRange getUsedRangeView(int rowStart, int colStart, int rowEnd, int colEnd) throws Exception {
+        if (used != null) {
+            rowEnd = Math.min(rowEnd, used.getRowExtent(colStart, colEnd) - 1);
+            colEnd = Math.min(colEnd, used.getColumnExtent(rowStart, rowEnd) - 1);
+            if (rowEnd < rowStart || colEnd < colStart) {
+                return getRangeView(rowStart, colStart, rowStart - 1, colStart - 1);
+            }
+        }
+        return getRangeView(rowStart, colStart, rowEnd, colEnd);
+    }
+
+    /**
+     * Stores the value of a definition of the <code>LetNode</code>.
+     * @param let   Node the definition belongs to.
+     * @param index Index of the definition.
+     * @param value Value of the definition.
+     */
+    public void define(LetNode let, int index, DType<?> value) {
+        // Trees hold very few (usually a single) LetNodes, so they are looked up linearly
+        int slot = 0;
+        while (slot < lets.length && lets[slot] != let) {
+            slot++;
+        }
+        if (slot == lets.length) {
+            lets   = Arrays.copyOf(lets, slot + 1);
+            values = (values == null) ? new DType<?>[1][] : Arrays.copyOf(values, slot + 1);
+            lets[slot]   = let;
+            values[slot] = new DType<?>[let.getDefinitions().length];
+        }
+
+        values[slot][index] = value;
+    }
+
+    /**
+     * @param let        Node the definition belongs to.
+     * @param index      Index of the definition.
+     * @return           Value of the definition.
+     * @throws Exception In case of the definition not being evaluated yet.
+     */
+    public DType<?> getDefined(LetNode let, int index) throws Exception {
+        for (int slot = 0; slot < lets.length; slot++) {
+            if (lets[slot] == let && values[slot][index] != null) {
+                return values[slot][index];
+            }
+        }
+        throw new Exception(String.format("LetNode: Shared subexpression %d is not evaluated.", index));
+    }
+
+    public OperationSet getOperations() {
+        return operations;
+    }
+    public DTypeRange.CellSource getCells() {
+        return cells;
+    }
+    public UsedRange getUsed() {
+        return used;
+    }
+    public int getRow() {
+        return row;
+    }
+    public int getCol() {
+        return col;
+    }
+}
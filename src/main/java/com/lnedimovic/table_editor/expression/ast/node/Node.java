@@ -1,7 +1,7 @@
 package com.lnedimovic.table_editor.expression.ast.node;
 
 import com.lnedimovic.table_editor.dtype.DType;
-import com.lnedimovic.table_editor.expression.operation.OperationSet;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
 
 /**
  * Abstract class representing a node inside abstract syntax tree.
@@ -13,13 +13,45 @@ public abstract class Node {
     public Node() {}
 
     /**
+     * @param  context   Context of the evaluation - operations, referenced cells and the cell being evaluated (see {@link EvaluationContext}).
      * @return           Evaluation of given node - first evaluating its children, then the node itself.
      * @throws Exception
      */
-    public abstract DType<?> evaluate(OperationSet operations) throws Exception;
+    public abstract DType<?> evaluate(EvaluationContext context) throws Exception;
 
     /**
      * @return Array containing all the node's children.
      */
     public abstract Node[] getChildren();
+
+    /**
+     * @return Deep copy of the node, i.e. of its complete subtree. Immutable nodes may return themselves.
+     */
+    public abstract Node copy();
+
+    /**
+     * Used by tree rewrites (e.g. optimization), which keep the node itself but replace its children.
+     * @param children New children, in the order given by {@link #getChildren()}.
+     * @return         This node, if the children are unchanged; a node of the same kind with the new children, otherwise.
+     */
+    public Node withChildren(Node[] children) {
+        return this;
+    }
+
+    /**
+     * @param children New children.
+     * @return         True if the new children are the same instances as the current ones; false, otherwise.
+     */
+    protected boolean sameChildren(Node[] children) {
+        Node[] current = getChildren();
+        if (current.length != children.length) {
+            return false;
+        }
+        for (int idx = 0; idx < children.length; idx++) {
+            if (current[idx] != children[idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -1,8 +1,8 @@
 package com.lnedimovic.table_editor.expression.ast.node.nodes;
 
 import com.lnedimovic.table_editor.dtype.dtypes.DTypeArray;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
 import com.lnedimovic.table_editor.expression.ast.node.Node;
-import com.lnedimovic.table_editor.expression.operation.OperationSet;
 
 /**
  * <code>ArrayNode</code> is a Node resembling a typical array, whose values may not be final (i.e. they are to be evaluated).
@@ -21,11 +21,11 @@ public class ArrayNode extends Node {
      * @throws Exception
      */
     @Override
-    public DTypeArray evaluate(OperationSet operations) throws Exception {
+    public DTypeArray evaluate(EvaluationContext context) throws Exception {
         DTypeArray array = new DTypeArray(values.length);
 
         for (int idx = 0; idx < values.length; idx++) {
-            array.set(idx, values[idx].evaluate(operations));
+            array.set(idx, values[idx].evaluate(context));
         }
 
         return array;
@@ -39,6 +39,28 @@ public class ArrayNode extends Node {
         return values;
     }
 
+    /**
+     * @return Deep copy of the node.
+     */
+    @Override
+    public Node copy() {
+        Node[] copiedValues = new Node[values.length];
+        for (int idx = 0; idx < values.length; idx++) {
+            copiedValues[idx] = values[idx].copy();
+        }
+
+        return new ArrayNode(copiedValues);
+    }
+
+    /**
+     * @param children New elements.
+     * @return         Node with new elements.
+     */
+    @Override
+    public Node withChildren(Node[] children) {
+        return sameChildren(children) ? this : new ArrayNode(children);
+    }
+
     /**
      * @return String representation of <code>ArrayNode</code>.
      */
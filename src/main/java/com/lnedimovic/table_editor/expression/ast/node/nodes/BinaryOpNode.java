@@ -1,9 +1,11 @@
 package com.lnedimovic.table_editor.expression.ast.node.nodes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
 import com.lnedimovic.table_editor.expression.ast.node.Node;
+import com.lnedimovic.table_editor.expression.operation.OpCode;
 import com.lnedimovic.table_editor.expression.operation.Operation;
-import com.lnedimovic.table_editor.expression.operation.OperationSet;
+import com.lnedimovic.table_editor.expression.operation.OperationKernels;
 
 /**
  * <code>BinaryOpNode</code> is a Node resembling a binary operation within an abstract syntax tree of the given expression.
@@ -13,6 +15,10 @@ public class BinaryOpNode extends Node {
      * Operation used within the node.
      */
     private Operation operation;
+    /**
+     * Opcode of the operation, resolved when the node is created.
+     */
+    private int       opcode;
     /**
      * Left operand.
      */
@@ -32,6 +38,7 @@ public class BinaryOpNode extends Node {
         super();
 
         this.operation = operation;
+        this.opcode = operation.getOpcode();
         this.left = left;
         this.right = right;
     }
@@ -41,11 +48,15 @@ public class BinaryOpNode extends Node {
      * @throws Exception
      */
     @Override
-    public DType<?> evaluate(OperationSet operations) throws Exception {
-        DType<?> evaluationLeft  = left.evaluate(operations);
-        DType<?> evaluationRight = right.evaluate(operations);
+    public DType<?> evaluate(EvaluationContext context) throws Exception {
+        DType<?> evaluationLeft  = left.evaluate(context);
+        DType<?> evaluationRight = right.evaluate(context);
 
-        return operations.evaluateOperation(operation, evaluationLeft, evaluationRight);
+        if (opcode == OpCode.UNKNOWN) {
+            // Reports the unknown operation
+            return context.getOperations().evaluateOperation(operation, evaluationLeft, evaluationRight);
+        }
+        return OperationKernels.evaluateBinary(opcode, evaluationLeft, evaluationRight);
     }
 
     /**
@@ -56,6 +67,23 @@ public class BinaryOpNode extends Node {
         return new Node[]{left, right};
     }
 
+    /**
+     * @return Deep copy of the node.
+     */
+    @Override
+    public Node copy() {
+        return new BinaryOpNode(operation, left.copy(), right.copy());
+    }
+
+    /**
+     * @param children New left and right children.
+     * @return         Node with the same operation and new children.
+     */
+    @Override
+    public Node withChildren(Node[] children) {
+        return sameChildren(children) ? this : new BinaryOpNode(operation, children[0], children[1]);
+    }
+
     /**
      * @return String representation of BinaryOpNode.
      */
@@ -80,5 +108,6 @@ public class BinaryOpNode extends Node {
     }
     public void setOperation(Operation operation) {
         this.operation = operation;
+        this.opcode = operation.getOpcode();
     }
 }
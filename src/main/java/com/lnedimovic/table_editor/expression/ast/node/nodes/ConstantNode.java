@@ -1,8 +1,8 @@
 package com.lnedimovic.table_editor.expression.ast.node.nodes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
 import com.lnedimovic.table_editor.expression.ast.node.Node;
-import com.lnedimovic.table_editor.expression.operation.OperationSet;
 
 /**
  * <code>ConstantNode</code> is a Node resembling a constant, known value.
@@ -28,7 +28,7 @@ public class ConstantNode extends Node {
      * @throws Exception
      */
     @Override
-    public DType<?> evaluate(OperationSet operations) throws Exception {
+    public DType<?> evaluate(EvaluationContext context) throws Exception {
         return value;
     }
 
@@ -40,10 +40,22 @@ public class ConstantNode extends Node {
         return new Node[0];
     }
 
+    /**
+     * @return The node itself - constant nodes are immutable, so they can be shared between trees.
+     */
+    @Override
+    public Node copy() {
+        return this;
+    }
+
     /**
      * @return String representation of ConstantNode.
      */
     public String toString() {
         return String.format("ConstantNode(value=%s)", value);
     }
+
+    public DType<?> getValue() {
+        return value;
+    }
 }
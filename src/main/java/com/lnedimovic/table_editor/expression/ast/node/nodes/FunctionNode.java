@@ -1,12 +1,19 @@
 package com.lnedimovic.table_editor.expression.ast.node.nodes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
 import com.lnedimovic.table_editor.expression.ast.node.Node;
 import com.lnedimovic.table_editor.expression.function.Function;
-import com.lnedimovic.table_editor.expression.operation.OperationSet;
+import com.lnedimovic.table_editor.expression.function.Thunk;
+
+import java.lang.invoke.MethodHandle;
 
 /**
  * <code>FunctionNode</code> is a Node resembling a function of variable length of parameters.
+ * <p>
+ * Every node is a call site, caching the overload selected for the argument types seen last (a monomorphic inline cache).
+ * <p>
+ * Arguments of lazy parameters (see {@link Function#getLazyParameters(int)}) are passed unevaluated, as {@link Thunk}s.
  */
 public class FunctionNode extends Node {
     /**
@@ -17,6 +24,14 @@ public class FunctionNode extends Node {
      * List of all arguments passed to the function.
      */
     private Node[] arguments;
+    /**
+     * Flags of the arguments passed lazily; null, if every argument is evaluated before the call.
+     */
+    private boolean[] lazy;
+    /**
+     * Overload selected for the argument types seen last, or null before the first call.
+     */
+    private InlineCache cache;
 
     /**
      * Creates a new instance of <code>FunctionNode</code>, given function and arguments.
@@ -28,20 +43,26 @@ public class FunctionNode extends Node {
 
         this.function  = function;
         this.arguments = arguments;
+        this.lazy      = function.getLazyParameters(arguments.length);
     }
 
     /**
-     * @return           Function evaluation of given arguments. Every argument must be first recursively evaluated itself.
+     * @return           Function evaluation of given arguments. Every argument, apart from the lazy ones, must be first recursively evaluated itself.
      * @throws Exception In case of error in the child evaluation, or the function evaluation itself.
      */
     @Override
-    public DType<?> evaluate(OperationSet operations) throws Exception {
+    public DType<?> evaluate(EvaluationContext context) throws Exception {
         // To evaluate a function, values of all the children must be known
         // Therefore, first evaluate the children nodes in AST, then use those values to evaluate the function itself
-        DType<?>[] childEvaluations = new DType[arguments.length];
+        Object[] childEvaluations = new Object[arguments.length];
         for (int i = 0; i < arguments.length; i++) {
+            if (lazy != null && lazy[i]) {
+                childEvaluations[i] = new Thunk(arguments[i], context);
+                continue;
+            }
+
             try {
-                childEvaluations[i] = arguments[i].evaluate(operations);
+                childEvaluations[i] = arguments[i].evaluate(context);
             }
             catch (Exception e) {
                 throw new Exception(e);
@@ -50,13 +71,31 @@ public class FunctionNode extends Node {
 
         // Return function evaluation
         try {
-            return function.evaluate(childEvaluations);
+            return apply(childEvaluations);
         }
         catch (Exception e) {
             throw new Exception(e);
         }
     }
 
+    /**
+     * Calls the function with already evaluated arguments, through the overload cached at this call site.
+     * @param args       Evaluated arguments, and thunks of the lazy ones.
+     * @return           Function evaluation of given arguments.
+     * @throws Exception In case of no overload accepting given arguments, or error in the function evaluation itself.
+     */
+    public DType<?> apply(Object[] args) throws Exception {
+        InlineCache cached = cache;
+        if (cached == null || !cached.matches(args)) {
+            Class<?>[] argumentTypes = function.getArgumentTypes(args);
+
+            cached = new InlineCache(argumentTypes, function.resolve(argumentTypes));
+            cache  = cached;
+        }
+
+        return Function.invoke(cached.target, args);
+    }
+
     /**
      * @return Array of <code>Nodes</code> of variable length, resembling the arguments passed to the function.
      */
@@ -65,6 +104,28 @@ public class FunctionNode extends Node {
         return arguments;
     }
 
+    /**
+     * @return Deep copy of the node.
+     */
+    @Override
+    public Node copy() {
+        Node[] copiedArguments = new Node[arguments.length];
+        for (int idx = 0; idx < arguments.length; idx++) {
+            copiedArguments[idx] = arguments[idx].copy();
+        }
+
+        return new FunctionNode(function, copiedArguments);
+    }
+
+    /**
+     * @param children New arguments.
+     * @return         Node calling the same function with new arguments.
+     */
+    @Override
+    public Node withChildren(Node[] children) {
+        return sameChildren(children) ? this : new FunctionNode(function, children);
+    }
+
     /**
      * @return String representation of <code>FunctionNode</code>.
      */
@@ -76,11 +137,57 @@ public class FunctionNode extends Node {
     }
     public void setFunction(Function function) {
         this.function = function;
+        this.cache    = null;
+        this.lazy     = function.getLazyParameters(arguments.length);
     }
     public Node[] getArguments() {
         return arguments;
     }
     public void setArguments(Node[] arguments) {
         this.arguments = arguments;
+        this.lazy      = function.getLazyParameters(arguments.length);
+    }
+
+    /**
+     * @param idx Index of an argument.
+     * @return    True if the argument is passed lazily; false, otherwise.
+     */
+    public boolean isLazy(int idx) {
+        return lazy != null && lazy[idx];
+    }
+    /**
+     * @return Flags of the arguments passed lazily, not to be modified; null, if there are none.
+     */
+    public boolean[] getLazyArguments() {
+        return lazy;
+    }
+
+    /**
+     * Argument types seen at the call site, and the overload selected for them.
+     */
+    private static class InlineCache {
+        private final Class<?>[]   argumentTypes;
+        private final MethodHandle target;
+
+        private InlineCache(Class<?>[] argumentTypes, MethodHandle target) {
+            this.argumentTypes = argumentTypes;
+            this.target        = target;
+        }
+
+        /**
+         * @param args Evaluated arguments, and thunks of the lazy ones.
+         * @return     True if the arguments are of exactly the cached types; false, otherwise.
+         */
+        private boolean matches(Object[] args) {
+            if (args.length != argumentTypes.length) {
+                return false;
+            }
+            for (int idx = 0; idx < args.length; idx++) {
+                if (args[idx].getClass() != argumentTypes[idx]) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 }
@@ -0,0 +1,139 @@
+package com.lnedimovic.table_editor.expression.ast.node.nodes;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+
+import java.util.Arrays;
+
+/**
+ * <code>LetNode</code> is a Node evaluating a list of definitions once, before its body, which refers to their values through {@link SharedNode}s.
+ * <p>
+ * It is produced by common subexpression elimination (see {@link com.lnedimovic.table_editor.expression.optimizer.Optimizer}):
+ * every subtree appearing several times within a formula becomes a definition, and each of its appearances a <code>SharedNode</code>.
+ * Values of the definitions are held by the context of every evaluation (see {@link EvaluationContext}), so the node may be evaluated concurrently.
+ */
+public final class LetNode extends Node {
+    /**
+     * Shared subexpressions, in evaluation order - a definition may only refer to the ones before it.
+     */
+    private final Node[]     definitions;
+    /**
+     * Expression using the shared subexpressions.
+     */
+    private final Node       body;
+
+    private LetNode(Node[] definitions, Node body) {
+        super();
+
+        this.definitions = definitions;
+        this.body        = body;
+    }
+
+    /**
+     * Creates an instance of <code>LetNode</code>, binding every <code>SharedNode</code> within the definitions and the body to it.
+     * @param definitions Shared subexpressions, in evaluation order.
+     * @param body        Expression using the shared subexpressions.
+     * @return            Node evaluating the definitions, then the body.
+     */
+    public static LetNode of(Node[] definitions, Node body) {
+        LetNode let = new LetNode(definitions, body);
+        for (Node definition : definitions) {
+            let.bind(definition);
+        }
+        let.bind(body);
+
+        return let;
+    }
+
+    /**
+     * Recursively binds the <code>SharedNodes</code> within the subtree of given node.
+     * @param node Current node.
+     */
+    private void bind(Node node) {
+        if (node instanceof SharedNode) {
+            ((SharedNode) node).setOwner(this);
+            return;
+        }
+        if (node instanceof LetNode) {
+            // Nested definitions are bound to their own node
+            return;
+        }
+        for (Node nextNode : node.getChildren()) {
+            bind(nextNode);
+        }
+    }
+
+    /**
+     * @return           Evaluation of the body, after evaluating every definition.
+     * @throws Exception In case of error in the evaluation of a definition, or the body.
+     */
+    @Override
+    public DType<?> evaluate(EvaluationContext context) throws Exception {
+        for (int idx = 0; idx < definitions.length; idx++) {
+            context.define(this, idx, definitions[idx].evaluate(context));
+        }
+
+        return body.evaluate(context);
+    }
+
+    /**
+     * Stores the value of a definition, evaluated outside of the node (e.g. by a compiled tree).
+     * @param context Context of the evaluation.
+     * @param index   Index of the definition.
+     * @param value   Value of the definition.
+     */
+    public void define(EvaluationContext context, int index, DType<?> value) {
+        context.define(this, index, value);
+    }
+
+    /**
+     * @return Array of <code>Nodes</code>, resembling the definitions followed by the body.
+     */
+    @Override
+    public Node[] getChildren() {
+        Node[] children = Arrays.copyOf(definitions, definitions.length + 1);
+        children[definitions.length] = body;
+
+        return children;
+    }
+
+    /**
+     * @return Deep copy of the node, with the copied <code>SharedNodes</code> bound to the copy.
+     */
+    @Override
+    public Node copy() {
+        Node[] copiedDefinitions = new Node[definitions.length];
+        for (int idx = 0; idx < definitions.length; idx++) {
+            copiedDefinitions[idx] = definitions[idx].copy();
+        }
+
+        return LetNode.of(copiedDefinitions, body.copy());
+    }
+
+    /**
+     * @param children New definitions, followed by the new body.
+     * @return         Node with new definitions and body. <code>SharedNodes</code> within them are bound to the new node.
+     */
+    @Override
+    public Node withChildren(Node[] children) {
+        if (sameChildren(children)) {
+            return this;
+        }
+        return LetNode.of(Arrays.copyOf(children, children.length - 1), children[children.length - 1]);
+    }
+
+    /**
+     * @return String representation of <code>LetNode</code>.
+     */
+    public String toString() {
+        return String.format("LetNode(definitions=%s, body=%s)", Arrays.toString(definitions), body);
+    }
+
+    public Node[] getDefinitions() {
+        return definitions;
+    }
+    public Node getBody() {
+        return body;
+    }
+}
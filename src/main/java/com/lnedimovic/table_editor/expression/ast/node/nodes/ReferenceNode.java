@@ -1,39 +1,167 @@
 package com.lnedimovic.table_editor.expression.ast.node.nodes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
 import com.lnedimovic.table_editor.expression.ast.node.Node;
-import com.lnedimovic.table_editor.expression.operation.OperationSet;
+import com.lnedimovic.table_editor.table.model.CellAddress;
+import com.lnedimovic.table_editor.table.model.CellRange;
+import com.lnedimovic.table_editor.table.model.CellReference;
 
 /**
  * <code>ReferenceNode</code>  is a Node resembling a cell reference.
+ * <p>
+ * The reference is resolved into integer bounds once, when it is parsed, so evaluation never touches its text.
+ * A reference is absolute, as parsed, until it is made relative to the cell owning the formula (see {@link #relativize(int, int)}).
+ * Relative references (R1C1-style offsets) are resolved against the owning cell, so the same tree can serve every cell of a filled-down formula.
+ * Rows and columns marked with a "$" (e.g. $A$1, A$1) stay absolute regardless.
+ * <p>
+ * References to whole columns (e.g. A:A) or rows (e.g. 3:3) are evaluated only over the part of the sheet in use (see {@link EvaluationContext#getUsedRangeView}),
+ * so aggregating a growing column reads its populated cells rather than every row of the sheet.
+ * <p>
+ * Values are read from the context of every evaluation (see {@link EvaluationContext}), rather than being stored in the node.
  */
 public class ReferenceNode extends Node {
     /**
-     * Cell range being referenced.
+     * Cell range being referenced, as written (e.g. "A1:$B$2").
      */
-    private String reference;
+    private final CellReference reference;
     /**
-     * Value to be stored.
+     * Whether the reference is a single cell (see {@link #isSingleCell()}).
      */
-    private DType<?> value;
+    private final boolean       singleCell;
+
+    /**
+     * Packed (see {@link CellAddress}) top-left and bottom-right bounds of the range; offsets from the owning cell for the relative bounds.
+     */
+    private long bounds;
+    private long boundsEnd;
+    /**
+     * Bounds stored as offsets from the owning cell; 0, if the reference is absolute.
+     */
+    private int  relative = 0;
 
     /**
      * Creates an instance of <code>ReferenceNode</code>, given the cell range reference.
-     * @param reference Cell range.
+     * @param reference Cell range, in the format produced by the tokenizer (e.g. "A1:B2", or "$C$3:$C$3" for a single cell).
      */
     public ReferenceNode(String reference) {
+        this(CellReference.parse(reference));
+    }
+
+    /**
+     * Creates an instance of <code>ReferenceNode</code>, given the resolved cell range reference.
+     * @param reference Cell range.
+     */
+    public ReferenceNode(CellReference reference) {
         super();
 
         this.reference = reference;
+        this.bounds    = reference.getStart();
+        this.boundsEnd = reference.getEnd();
+
+        // Both bounds of the row (column) have to be fixed, or both relative, to stay equal
+        int rows = reference.getFixed() & (CellReference.ROW_START | CellReference.ROW_END);
+        int cols = reference.getFixed() & (CellReference.COL_START | CellReference.COL_END);
+        this.singleCell = reference.getStart() == reference.getEnd() && (rows == 0 || rows == (CellReference.ROW_START | CellReference.ROW_END))
+                                                                      && (cols == 0 || cols == (CellReference.COL_START | CellReference.COL_END));
+    }
+
+    private ReferenceNode(ReferenceNode node) {
+        this.reference  = node.reference;
+        this.singleCell = node.singleCell;
+        this.bounds     = node.bounds;
+        this.boundsEnd  = node.boundsEnd;
+        this.relative   = node.relative;
     }
 
     /**
-     * @return           Value inside given cell range (as of now, just a single cell).
-     * @throws Exception
+     * Makes the reference relative to the cell owning the formula. Bounds marked with a "$" are left absolute.
+     * @param ownerRow Row of the owning cell.
+     * @param ownerCol Column of the owning cell.
+     */
+    public void relativize(int ownerRow, int ownerCol) {
+        long start = reference.getStart();
+        long end   = reference.getEnd();
+
+        relative  = ~reference.getFixed() & (CellReference.ROW_START | CellReference.COL_START | CellReference.ROW_END | CellReference.COL_END);
+        bounds    = CellAddress.pack(offset(CellAddress.row(start), ownerRow, CellReference.ROW_START), offset(CellAddress.col(start), ownerCol, CellReference.COL_START));
+        boundsEnd = CellAddress.pack(offset(CellAddress.row(end),   ownerRow, CellReference.ROW_END),   offset(CellAddress.col(end),   ownerCol, CellReference.COL_END));
+    }
+
+    private int offset(int value, int owner, int flag) {
+        return ((relative & flag) != 0) ? value - owner : value;
+    }
+
+    private int resolve(int value, int owner, int flag) {
+        return ((relative & flag) != 0) ? owner + value : value;
+    }
+
+    public int getRowStart(int ownerRow) {
+        return resolve(CellAddress.row(bounds), ownerRow, CellReference.ROW_START);
+    }
+    public int getColStart(int ownerCol) {
+        return resolve(CellAddress.col(bounds), ownerCol, CellReference.COL_START);
+    }
+    public int getRowEnd(int ownerRow) {
+        return resolve(CellAddress.row(boundsEnd), ownerRow, CellReference.ROW_END);
+    }
+    public int getColEnd(int ownerCol) {
+        return resolve(CellAddress.col(boundsEnd), ownerCol, CellReference.COL_END);
+    }
+
+    /**
+     * @param ownerRow Row of the cell owning the formula.
+     * @param ownerCol Column of the cell owning the formula.
+     * @return         Referenced cell range, resolved against the owning cell if the reference is relative.
+     */
+    public CellRange getRange(int ownerRow, int ownerCol) {
+        return new CellRange(getRowStart(ownerRow), getColStart(ownerCol), getRowEnd(ownerRow), getColEnd(ownerCol));
+    }
+
+    /**
+     * @return True if the reference is a single cell, for any owning cell; false, otherwise.
+     */
+    public boolean isSingleCell() {
+        return singleCell;
+    }
+
+    /**
+     * @return Canonical (R1C1) form of the reference, e.g. "R[0]C[-1]:R[0]C[-1]" for a cell to the left of the owning cell,
+     *         or "R0C1:R0C1" for the absolute $A$1. Whole columns (rows) leave out the rows (columns), e.g. "C[-1]:C[-1]" or "R2:R2".
+     */
+    public String getCanonicalReference() {
+        if (reference.isWholeColumns()) {
+            return String.format("C%s:C%s", canonical(CellAddress.col(bounds), CellReference.COL_START), canonical(CellAddress.col(boundsEnd), CellReference.COL_END));
+        }
+        if (reference.isWholeRows()) {
+            return String.format("R%s:R%s", canonical(CellAddress.row(bounds), CellReference.ROW_START), canonical(CellAddress.row(boundsEnd), CellReference.ROW_END));
+        }
+        return String.format("R%sC%s:R%sC%s", canonical(CellAddress.row(bounds),    CellReference.ROW_START), canonical(CellAddress.col(bounds),    CellReference.COL_START),
+                                              canonical(CellAddress.row(boundsEnd), CellReference.ROW_END),   canonical(CellAddress.col(boundsEnd), CellReference.COL_END));
+    }
+
+    private String canonical(int value, int flag) {
+        return ((relative & flag) != 0) ? "[" + value + "]" : String.valueOf(value);
+    }
+
+    /**
+     * Single-cell references evaluate into the value of the cell. Ranges evaluate into a view of the range,
+     * even for owning cells where they happen to span a single cell (e.g. $A$1:A1, used in A1).
+     * @return           Value of the referenced cell, or view of the referenced cell range, resolved against the cell being evaluated.
+     * @throws Exception In case of the context having no cells.
      */
     @Override
-    public DType<?> evaluate(OperationSet operations) throws Exception {
-        return this.value;
+    public DType<?> evaluate(EvaluationContext context) throws Exception {
+        int ownerRow = context.getRow();
+        int ownerCol = context.getCol();
+
+        if (singleCell) {
+            return context.getCellValue(getRowStart(ownerRow), getColStart(ownerCol));
+        }
+        if (reference.isWholeColumns() || reference.isWholeRows()) {
+            return context.getUsedRangeView(getRowStart(ownerRow), getColStart(ownerCol), getRowEnd(ownerRow), getColEnd(ownerCol));
+        }
+        return context.getRangeView(getRowStart(ownerRow), getColStart(ownerCol), getRowEnd(ownerRow), getColEnd(ownerCol));
     }
 
     /**
@@ -44,23 +172,25 @@ public class ReferenceNode extends Node {
         return new Node[0]; // Redundant
     }
 
+    /**
+     * @return Copy of the node, referencing the same cell range.
+     */
+    @Override
+    public Node copy() {
+        return new ReferenceNode(this);
+    }
+
     /**
      * @return String representation of <code>ReferenceNode</code>.
      */
     public String toString() {
-        return String.format("ReferenceNode(reference=%s, value=%s)", reference, value);
+        return String.format("ReferenceNode(reference=%s)", reference);
     }
 
-    public String getReference() {
+    public CellReference getReference() {
         return reference;
     }
-    public void setReference(String reference) {
-        this.reference = reference;
-    }
-    public Object getValue() {
-        return value;
-    }
-    public void setValue(DType<?> value) {
-        this.value = value;
+    public boolean isRelative() {
+        return relative != 0;
     }
 }
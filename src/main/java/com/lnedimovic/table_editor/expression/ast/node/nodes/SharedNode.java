@@ -0,0 +1,74 @@
+package com.lnedimovic.table_editor.expression.ast.node.nodes;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+
+/**
+ * <code>SharedNode</code> is a Node resembling an appearance of a shared subexpression, defined by the enclosing {@link LetNode}.
+ */
+public class SharedNode extends Node {
+    /**
+     * Index of the definition within the enclosing <code>LetNode</code>.
+     */
+    private final int index;
+    /**
+     * Enclosing <code>LetNode</code>, defining the value.
+     */
+    private LetNode   owner;
+
+    /**
+     * Creates an instance of <code>SharedNode</code>. It is bound once the enclosing <code>LetNode</code> is created.
+     * @param index Index of the definition within the enclosing <code>LetNode</code>.
+     */
+    public SharedNode(int index) {
+        super();
+
+        this.index = index;
+    }
+
+    /**
+     * @return           Value of the definition, evaluated by the enclosing <code>LetNode</code>.
+     * @throws Exception In case of the node not being bound, or the definition not being evaluated.
+     */
+    @Override
+    public DType<?> evaluate(EvaluationContext context) throws Exception {
+        if (owner == null) {
+            throw new Exception(String.format("SharedNode: Shared subexpression %d is not defined.", index));
+        }
+        return context.getDefined(owner, index);
+    }
+
+    /**
+     * @return Empty array - the definition itself belongs to the enclosing <code>LetNode</code>.
+     */
+    @Override
+    public Node[] getChildren() {
+        return new Node[0];
+    }
+
+    /**
+     * @return Unbound copy of the node, to be bound by the copy of the enclosing <code>LetNode</code>.
+     */
+    @Override
+    public Node copy() {
+        return new SharedNode(index);
+    }
+
+    /**
+     * @return String representation of <code>SharedNode</code>.
+     */
+    public String toString() {
+        return String.format("SharedNode(index=%d)", index);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+    public LetNode getOwner() {
+        return owner;
+    }
+    public void setOwner(LetNode owner) {
+        this.owner = owner;
+    }
+}
@@ -0,0 +1,103 @@
+package com.lnedimovic.table_editor.expression.ast.node.nodes;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+import com.lnedimovic.table_editor.expression.typing.Deoptimization;
+import com.lnedimovic.table_editor.expression.typing.PrimitiveExpression;
+
+/**
+ * <code>SpecializedNode</code> is a Node evaluating its subtree through a type-specialized, primitive expression (see {@link PrimitiveExpression}),
+ * allocating only the final result.
+ * <p>
+ * The original subtree is kept as the generic fallback: it is used whenever the specialized evaluation fails for the current values,
+ * and for good once a speculated type turns out wrong.
+ */
+public class SpecializedNode extends Node {
+    /**
+     * Original subtree, evaluated generically.
+     */
+    private final Node                generic;
+    /**
+     * Specialized form of the subtree.
+     */
+    private final PrimitiveExpression expression;
+
+    /**
+     * Whether the specialization has been abandoned.
+     */
+    private volatile boolean deoptimized = false;
+
+    /**
+     * Creates an instance of <code>SpecializedNode</code>.
+     * @param generic    Original subtree.
+     * @param expression Specialized form of the subtree.
+     */
+    public SpecializedNode(Node generic, PrimitiveExpression expression) {
+        super();
+
+        this.generic    = generic;
+        this.expression = expression;
+    }
+
+    /**
+     * @return           Evaluation of the subtree.
+     * @throws Exception In case of error in the evaluation of the subtree.
+     */
+    @Override
+    public DType<?> evaluate(EvaluationContext context) throws Exception {
+        if (!deoptimized) {
+            try {
+                switch (expression.getType()) {
+                    case DTypeId.INTEGER: return new DTypeInteger(expression.evaluateInt(context));
+                    case DTypeId.DOUBLE:  return new DTypeDouble(expression.evaluateDouble(context));
+                    default:              return new DTypeBoolean(expression.evaluateBoolean(context));
+                }
+            }
+            catch (Deoptimization deoptimization) {
+                if (deoptimization.isPermanent()) {
+                    deoptimized = true;
+                }
+            }
+        }
+
+        return generic.evaluate(context);
+    }
+
+    /**
+     * @return Array of <code>Nodes</code> of length 1, resembling the original subtree.
+     */
+    @Override
+    public Node[] getChildren() {
+        return new Node[]{generic};
+    }
+
+    /**
+     * @return Deep copy of the original subtree - copies are not specialized.
+     */
+    @Override
+    public Node copy() {
+        return generic.copy();
+    }
+
+    /**
+     * @return String representation of <code>SpecializedNode</code>.
+     */
+    public String toString() {
+        return String.format("SpecializedNode(generic=%s, deoptimized=%b)", generic, deoptimized);
+    }
+
+    public Node getGeneric() {
+        return generic;
+    }
+    public PrimitiveExpression getExpression() {
+        return expression;
+    }
+    public boolean isDeoptimized() {
+        return deoptimized;
+    }
+}
@@ -1,9 +1,11 @@
 package com.lnedimovic.table_editor.expression.ast.node.nodes;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
 import com.lnedimovic.table_editor.expression.ast.node.Node;
+import com.lnedimovic.table_editor.expression.operation.OpCode;
 import com.lnedimovic.table_editor.expression.operation.Operation;
-import com.lnedimovic.table_editor.expression.operation.OperationSet;
+import com.lnedimovic.table_editor.expression.operation.OperationKernels;
 
 /**
  * <code>UnaryOpNode</code> is a Node resembling a unary operation within an abstract syntax tree of the given expression.
@@ -13,6 +15,10 @@ public class UnaryOpNode extends Node {
      * Operation used within the node.
      */
     private Operation operation;
+    /**
+     * Opcode of the operation, resolved when the node is created.
+     */
+    private int       opcode;
     /**
      * Operand.
      */
@@ -27,6 +33,7 @@ public class UnaryOpNode extends Node {
         super();
 
         this.operation = operation;
+        this.opcode = operation.getOpcode();
         this.next = next;
     }
 
@@ -35,10 +42,14 @@ public class UnaryOpNode extends Node {
      * @throws Exception
      */
     @Override
-    public DType<?> evaluate(OperationSet operations) throws Exception {
-        DType<?> childEvaluation = next.evaluate(operations);
+    public DType<?> evaluate(EvaluationContext context) throws Exception {
+        DType<?> childEvaluation = next.evaluate(context);
 
-        return operations.evaluateOperation(operation, childEvaluation, null);
+        if (opcode == OpCode.UNKNOWN) {
+            // Reports the unknown operation
+            return context.getOperations().evaluateOperation(operation, childEvaluation, null);
+        }
+        return OperationKernels.evaluateUnary(opcode, childEvaluation);
     }
 
     /**
@@ -49,6 +60,23 @@ public class UnaryOpNode extends Node {
         return new Node[]{next};
     }
 
+    /**
+     * @return Deep copy of the node.
+     */
+    @Override
+    public Node copy() {
+        return new UnaryOpNode(operation, next.copy());
+    }
+
+    /**
+     * @param children New operand, as the only child.
+     * @return         Node with the same operation and new operand.
+     */
+    @Override
+    public Node withChildren(Node[] children) {
+        return sameChildren(children) ? this : new UnaryOpNode(operation, children[0]);
+    }
+
     /**
      * @return String representation of <code>UnaryOpNode</code>
      */
@@ -67,5 +95,6 @@ public class UnaryOpNode extends Node {
     }
     public void setOperation(Operation operation) {
         this.operation = operation;
+        this.opcode = operation.getOpcode();
     }
 }
@@ -0,0 +1,172 @@
+package com.lnedimovic.table_editor.expression.compiler;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeArray;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.*;
+import com.lnedimovic.table_editor.expression.function.Thunk;
+import com.lnedimovic.table_editor.expression.operation.OpCode;
+import com.lnedimovic.table_editor.expression.operation.Operation;
+import com.lnedimovic.table_editor.expression.operation.OperationKernels;
+import com.lnedimovic.table_editor.expression.operation.OperationSet;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * <code>FormulaCompiler</code> lowers an abstract syntax tree into a single <code>MethodHandle</code> of type <code>(EvaluationContext)DType</code>.
+ * <p>
+ * Every node becomes a method handle combinator (constants, bound operations and functions, argument filters), so the whole formula is
+ * one method handle tree with all of its constants, operations and functions bound in. Once such a handle is invoked often enough, the JVM
+ * customizes its lambda forms into bytecode specific to the formula, which is then JIT-compiled and inlined as a whole - instead of
+ * walking the tree through a megamorphic {@link Node#evaluate(EvaluationContext)} call for every node.
+ * <p>
+ * Nothing of an evaluation is bound into the handle - it takes the context (see {@link EvaluationContext}) as its only argument,
+ * so a compiled tree may be invoked for any cell, from any thread.
+ * <p>
+ * Lazy arguments of function calls are compiled into the creation of a {@link Thunk}, so they are still evaluated only when forced - by walking their tree.
+ * <p>
+ * Compiled formulas are used as the hot tier of {@link com.lnedimovic.table_editor.expression.ast.ASTree}; the tree walk remains the cold tier.
+ */
+public final class FormulaCompiler {
+    /**
+     * Type of every compiled (sub)expression.
+     */
+    public static final MethodType EXPRESSION_TYPE = MethodType.methodType(DType.class, EvaluationContext.class);
+
+    private static final MethodHandle NODE_EVALUATE;
+    private static final MethodHandle CONTEXT_OPERATIONS;
+    private static final MethodHandle EVALUATE_OPERATION;
+    private static final MethodHandle EVALUATE_UNARY;
+    private static final MethodHandle EVALUATE_BINARY;
+    private static final MethodHandle FUNCTION_APPLY;
+    private static final MethodHandle NEW_ARRAY;
+    private static final MethodHandle NEW_THUNK;
+    private static final MethodHandle LET_DEFINE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+            NODE_EVALUATE      = lookup.findVirtual(Node.class, "evaluate", EXPRESSION_TYPE);
+            CONTEXT_OPERATIONS = lookup.findVirtual(EvaluationContext.class, "getOperations", MethodType.methodType(OperationSet.class));
+            EVALUATE_OPERATION = lookup.findVirtual(OperationSet.class, "evaluateOperation",
+                                                    MethodType.methodType(DType.class, Operation.class, DType.class, DType.class));
+            EVALUATE_UNARY     = lookup.findStatic(OperationKernels.class, "evaluateUnary",
+                                                   MethodType.methodType(DType.class, int.class, DType.class));
+            EVALUATE_BINARY    = lookup.findStatic(OperationKernels.class, "evaluateBinary",
+                                                   MethodType.methodType(DType.class, int.class, DType.class, DType.class));
+            FUNCTION_APPLY     = lookup.findVirtual(FunctionNode.class, "apply", MethodType.methodType(DType.class, Object[].class));
+            NEW_ARRAY          = lookup.findConstructor(DTypeArray.class, MethodType.methodType(void.class, DType[].class))
+                                       .asType(MethodType.methodType(DType.class, DType[].class));
+            NEW_THUNK          = lookup.findConstructor(Thunk.class, MethodType.methodType(void.class, Node.class, EvaluationContext.class))
+                                       .asType(MethodType.methodType(Object.class, Node.class, EvaluationContext.class));
+            LET_DEFINE         = lookup.findVirtual(LetNode.class, "define",
+                                                    MethodType.methodType(void.class, EvaluationContext.class, int.class, DType.class));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private FormulaCompiler() {}
+
+    /**
+     * Compiles the (sub)tree of given node.
+     * @param node Root of the (sub)tree to compile.
+     * @return     Method handle of type <code>(EvaluationContext)DType</code>, evaluating the (sub)tree.
+     */
+    public static MethodHandle compile(Node node) {
+        if (node instanceof ConstantNode) {
+            // Constant is known at compile time - no evaluation needed at all
+            DType<?> value = ((ConstantNode) node).getValue();
+            return MethodHandles.dropArguments(MethodHandles.constant(DType.class, value), 0, EvaluationContext.class);
+        }
+        if (node instanceof BinaryOpNode) {
+            BinaryOpNode binary = (BinaryOpNode) node;
+            int          opcode = binary.getOperation().getOpcode();
+            if (opcode == OpCode.UNKNOWN) {
+                // (context, left, right) -> context.getOperations().evaluateOperation(operation, left, right), reporting the unknown operation
+                MethodHandle operation = MethodHandles.insertArguments(EVALUATE_OPERATION, 1, binary.getOperation());
+                operation = MethodHandles.filterArguments(operation, 0, CONTEXT_OPERATIONS, compile(binary.getLeft()), compile(binary.getRight()));
+
+                return MethodHandles.permuteArguments(operation, EXPRESSION_TYPE, 0, 0, 0);
+            }
+
+            // (left, right) -> OperationKernels.evaluateBinary(opcode, left, right)
+            MethodHandle operation = MethodHandles.insertArguments(EVALUATE_BINARY, 0, opcode);
+            operation = MethodHandles.filterArguments(operation, 0, compile(binary.getLeft()), compile(binary.getRight()));
+
+            return MethodHandles.permuteArguments(operation, EXPRESSION_TYPE, 0, 0);
+        }
+        if (node instanceof UnaryOpNode) {
+            UnaryOpNode unary  = (UnaryOpNode) node;
+            int         opcode = unary.getOperation().getOpcode();
+            if (opcode == OpCode.UNKNOWN) {
+                // (context, next) -> context.getOperations().evaluateOperation(operation, next, null), reporting the unknown operation
+                MethodHandle operation = MethodHandles.insertArguments(EVALUATE_OPERATION, 1, unary.getOperation());
+                operation = MethodHandles.insertArguments(operation, 2, (Object) null);
+                operation = MethodHandles.filterArguments(operation, 0, CONTEXT_OPERATIONS, compile(unary.getNext()));
+
+                return MethodHandles.permuteArguments(operation, EXPRESSION_TYPE, 0, 0);
+            }
+
+            // (next) -> OperationKernels.evaluateUnary(opcode, next)
+            MethodHandle operation = MethodHandles.insertArguments(EVALUATE_UNARY, 0, opcode);
+            return MethodHandles.filterArguments(operation, 0, compile(unary.getNext()));
+        }
+        if (node instanceof FunctionNode) {
+            FunctionNode functionNode = (FunctionNode) node;
+
+            // Calls go through the node, so the compiled tree shares its call site cache
+            MethodHandle function     = FUNCTION_APPLY.bindTo(functionNode);
+
+            return collect(function, functionNode.getArguments(), functionNode.getLazyArguments());
+        }
+        if (node instanceof ArrayNode) {
+            return collect(NEW_ARRAY, node.getChildren(), null);
+        }
+        if (node instanceof LetNode) {
+            LetNode      let         = (LetNode) node;
+            Node[]       definitions = let.getDefinitions();
+            MethodHandle compiled    = compile(let.getBody());
+
+            // Definitions are folded in front of the body, the first one outermost: (context) -> { let.define(context, idx, definition(context)); ...; return body(context); }
+            for (int idx = definitions.length - 1; idx >= 0; idx--) {
+                MethodHandle define = MethodHandles.insertArguments(LET_DEFINE.bindTo(let), 1, idx);
+                define = MethodHandles.filterArguments(define, 1, compile(definitions[idx]));
+                compiled = MethodHandles.foldArguments(compiled, MethodHandles.permuteArguments(define, MethodType.methodType(void.class, EvaluationContext.class), 0, 0));
+            }
+            return compiled;
+        }
+
+        // Anything else (e.g. cell references, shared subexpressions) is evaluated by the node itself
+        return NODE_EVALUATE.bindTo(node);
+    }
+
+    /**
+     * Compiles a call of the handle, taking an array of evaluated children.
+     * @param target   Method handle of type <code>(DType[])DType</code>, or <code>(Object[])DType</code> for children passed as thunks.
+     * @param children Children, evaluated in order into the array passed to <code>target</code>.
+     * @param lazy     Flags of the children passed unevaluated, as thunks; null, if there are none.
+     * @return         Method handle of type <code>(EvaluationContext)DType</code>.
+     */
+    private static MethodHandle collect(MethodHandle target, Node[] children, boolean[] lazy) {
+        MethodHandle collector = target.asCollector(target.type().parameterType(0), children.length);
+        if (children.length == 0) {
+            return MethodHandles.dropArguments(collector, 0, EvaluationContext.class);
+        }
+
+        MethodHandle[] compiledChildren = new MethodHandle[children.length];
+        for (int idx = 0; idx < children.length; idx++) {
+            MethodHandle child = (lazy != null && lazy[idx]) ? MethodHandles.insertArguments(NEW_THUNK, 0, children[idx]) : compile(children[idx]);
+            compiledChildren[idx] = child.asType(MethodType.methodType(collector.type().parameterType(idx), EvaluationContext.class));
+        }
+        collector = MethodHandles.filterArguments(collector, 0, compiledChildren);
+
+        // Every child takes the same context
+        return MethodHandles.permuteArguments(collector, EXPRESSION_TYPE, new int[children.length]);
+    }
+}
@@ -0,0 +1,66 @@
+package com.lnedimovic.table_editor.expression.function;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeArray;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+
+/**
+ * Aggregate is a function folding an array (or a cell range) into a single value, one element at a time.
+ * <p>
+ * The partial result is kept in a mutable state of primitive fields, so accumulating an element allocates nothing.
+ * States of disjoint parts of the input can be merged, so large ranges are split between several threads (see {@link Aggregates}).
+ * @param <S> Type of the state.
+ */
+public interface Aggregate<S> {
+    /**
+     * @return State of an empty input.
+     */
+    S init();
+
+    /**
+     * Accumulates an element into the state.
+     * @param state      Current state.
+     * @param value      Element.
+     * @throws Exception In case of an element of invalid type.
+     */
+    void accumulate(S state, DType<?> value) throws Exception;
+
+    /**
+     * Accumulates a cell of a range into the state. Aggregates may read the cell through the typed accessors of the source,
+     * so no <code>DType</code> is allocated for storages keeping values unboxed.
+     * @param state      Current state.
+     * @param source     Storage of the cell values.
+     * @param row        Row of the cell.
+     * @param col        Column of the cell.
+     * @throws Exception In case of an element of invalid type.
+     */
+    default void accumulate(S state, DTypeRange.CellSource source, int row, int col) throws Exception {
+        accumulate(state, source.get(row, col));
+    }
+
+    /**
+     * Merges states of two consecutive parts of the input.
+     * @param left       State of the first part.
+     * @param right      State of the part following it.
+     * @return           State of both parts; null, if it can't be computed from the partial states exactly as it would be sequentially.
+     * @throws Exception In case of the parts being incompatible, e.g. of different types.
+     */
+    S merge(S left, S right) throws Exception;
+
+    /**
+     * @param state      State of the complete input.
+     * @return           Result of the aggregate.
+     * @throws Exception In case of no result being defined for the state, e.g. for an empty input.
+     */
+    DType<?> finish(S state) throws Exception;
+
+    /**
+     * Folds the values (a one- or two-dimensional array) into the result of the aggregate.
+     * @param values     Values to aggregate.
+     * @return           Result of the aggregate.
+     * @throws Exception In case of invalid values.
+     */
+    default DType<?> aggregate(DTypeArray values) throws Exception {
+        return finish(Aggregates.fold(this, values));
+    }
+}
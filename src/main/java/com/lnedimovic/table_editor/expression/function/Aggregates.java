@@ -0,0 +1,133 @@
+package com.lnedimovic.table_editor.expression.function;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeArray;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <code>Aggregates</code> folds arrays and cell ranges with an {@link Aggregate}, in a single pass over the elements.
+ * Empty cells of ranges are skipped, while empty elements of arrays are reported as invalid.
+ * <p>
+ * Cell ranges of at least {@link #PARALLEL_THRESHOLD} cells are split by rows and folded on the fork-join pool,
+ * unless the partial states can't be merged exactly - in which case the range is folded again, sequentially.
+ */
+public final class Aggregates {
+    /**
+     * Number of cells from which a range is folded in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+    /**
+     * Number of cells below which a part of a range is no longer split.
+     */
+    private static final int TASK_GRANULARITY  = 1 << 14;
+
+    private Aggregates() {}
+
+    /**
+     * @param aggregate  Aggregate to fold with.
+     * @param values     One- or two-dimensional array, or a cell range.
+     * @param <S>        Type of the state.
+     * @return           State of the folded values.
+     * @throws Exception In case of invalid values.
+     */
+    public static <S> S fold(Aggregate<S> aggregate, DTypeArray values) throws Exception {
+        if (values instanceof DTypeRange) {
+            DTypeRange range = (DTypeRange) values;
+            if ((long) range.length() * range.width() >= PARALLEL_THRESHOLD) {
+                S state = ForkJoinPool.commonPool().invoke(new FoldTask<>(aggregate, range));
+                if (state != null) {
+                    return state;
+                }
+            }
+        }
+
+        S state = aggregate.init();
+        accumulate(aggregate, state, values);
+
+        return state;
+    }
+
+    /**
+     * Accumulates every element of the array, sequentially.
+     * @param aggregate  Aggregate to fold with.
+     * @param state      State to accumulate into.
+     * @param values     One- or two-dimensional array, or a cell range.
+     * @param <S>        Type of the state.
+     * @throws Exception In case of invalid values, or array of higher dimension than 2.
+     */
+    private static <S> void accumulate(Aggregate<S> aggregate, S state, DTypeArray values) throws Exception {
+        if (values instanceof DTypeRange) {
+            // Empty cells of a range are skipped
+            DTypeRange range = (DTypeRange) values;
+            range.getSource().forEachCell(range.getRowStart(), range.getColStart(),
+                                          range.getRowStart() + range.length(), range.getColStart() + range.width(),
+                                          (source, row, col) -> aggregate.accumulate(state, source, row, col));
+            return;
+        }
+
+        for (int idx = 0; idx < values.length(); idx++) {
+            DType<?> value = values.get(idx);
+            if (!(value instanceof DTypeArray)) {
+                aggregate.accumulate(state, value);
+                continue;
+            }
+
+            // Row of a two-dimensional array
+            DTypeArray row = (DTypeArray) value;
+            for (int col = 0; col < row.length(); col++) {
+                DType<?> element = row.get(col);
+                if (element instanceof DTypeArray) {
+                    throw new Exception("Array of higher dimension than 2 provided.");
+                }
+                aggregate.accumulate(state, element);
+            }
+        }
+    }
+
+    /**
+     * Fork-join task folding a part of a range, splitting it in halves by rows until it is small enough.
+     * Results in null, if the partial states can't be merged exactly.
+     */
+    private static class FoldTask<S> extends RecursiveTask<S> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Aggregate<S> aggregate;
+        private final transient DTypeRange   range;
+
+        private FoldTask(Aggregate<S> aggregate, DTypeRange range) {
+            this.aggregate = aggregate;
+            this.range     = range;
+        }
+
+        @Override
+        protected S compute() {
+            try {
+                int rows = range.length();
+                if (rows < 2 || (long) rows * range.width() <= TASK_GRANULARITY) {
+                    S state = aggregate.init();
+                    accumulate(aggregate, state, range);
+                    return state;
+                }
+
+                int         middle = rows >>> 1;
+                FoldTask<S> left   = new FoldTask<>(aggregate, range.rows(0, middle));
+                FoldTask<S> right  = new FoldTask<>(aggregate, range.rows(middle, rows));
+                invokeAll(left, right);
+
+                S leftState  = left.join();
+                S rightState = right.join();
+                if (leftState == null || rightState == null) {
+                    return null;
+                }
+                return aggregate.merge(leftState, rightState);
+            }
+            catch (Exception e) {
+                // Errors are reported by the sequential fold, in order of the elements
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.lnedimovic.table_editor.expression.function;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+
+/**
+ * <code>ExtremumState</code> is the state of a running minimum or maximum (see {@link Aggregate}), kept in primitive fields.
+ * All the elements must be of the same type - integers, doubles or booleans.
+ */
+public class ExtremumState {
+    /**
+     * Whether the maximum is kept, rather than the minimum.
+     */
+    private final boolean maximum;
+
+    /**
+     * Type of the elements (see {@link DTypeId}); <code>DTypeId.OTHER</code> before the first element.
+     */
+    private int     type = DTypeId.OTHER;
+    private int     intValue;
+    private double  doubleValue;
+    private boolean booleanValue;
+
+    /**
+     * Creates an empty state.
+     * @param maximum True to keep the maximum; false, to keep the minimum.
+     */
+    public ExtremumState(boolean maximum) {
+        this.maximum = maximum;
+    }
+
+    /**
+     * Compares the element with the current extremum.
+     * @param value      Element.
+     * @param function   Id of the function accumulating, used in error messages.
+     * @throws Exception In case of an element of invalid type, or of a type different from the previous elements.
+     */
+    public void add(DType<?> value, String function) throws Exception {
+        if (value instanceof DTypeInteger) {
+            addInteger(((DTypeInteger) value).getValue(), function);
+        }
+        else if (value instanceof DTypeDouble) {
+            addDouble(((DTypeDouble) value).getValue(), function);
+        }
+        else if (value instanceof DTypeBoolean) {
+            addBoolean(((DTypeBoolean) value).getValue(), function);
+        }
+        else {
+            throw new Exception(String.format("%s(DTypeArray): Invalid type provided: %s", function, (value == null) ? "null" : value.getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * Compares the cell with the current extremum, reading it unboxed if possible.
+     * @param source     Storage of the cell values.
+     * @param row        Row of the cell.
+     * @param col        Column of the cell.
+     * @param function   Id of the function accumulating, used in error messages.
+     * @throws Exception In case of a cell of invalid type, or of a type different from the previous elements.
+     */
+    public void add(DTypeRange.CellSource source, int row, int col, String function) throws Exception {
+        switch (source.getTypeId(row, col)) {
+            case DTypeId.INTEGER: addInteger(source.getInt(row, col), function);     break;
+            case DTypeId.DOUBLE:  addDouble(source.getDouble(row, col), function);   break;
+            case DTypeId.BOOLEAN: addBoolean(source.getBoolean(row, col), function); break;
+            default:              add(source.get(row, col), function);               break;
+        }
+    }
+
+    public void addInteger(int operand, String function) throws Exception {
+        if (checkType(DTypeId.INTEGER, function)) {
+            intValue = operand;
+        }
+        else {
+            addInt(operand);
+        }
+    }
+    public void addDouble(double operand, String function) throws Exception {
+        if (checkType(DTypeId.DOUBLE, function)) {
+            doubleValue = operand;
+        }
+        else {
+            addDouble(operand);
+        }
+    }
+    public void addBoolean(boolean operand, String function) throws Exception {
+        if (checkType(DTypeId.BOOLEAN, function)) {
+            booleanValue = operand;
+        }
+        else {
+            addBoolean(operand);
+        }
+    }
+
+    /**
+     * @param valueType  Type of the next element.
+     * @param function   Id of the function accumulating, used in error messages.
+     * @return           True if the element is the first one; false, otherwise.
+     * @throws Exception In case of the element being of a type different from the previous elements.
+     */
+    private boolean checkType(int valueType, String function) throws Exception {
+        if (type == DTypeId.OTHER) {
+            type = valueType;
+            return true;
+        }
+        if (type != valueType) {
+            throw new Exception(String.format("%s(DTypeArray): Arguments must be of same DType.", function));
+        }
+        return false;
+    }
+
+    /**
+     * @param other      Extremum of other elements.
+     * @param function   Id of the function merging, used in error messages.
+     * @return           This state, holding the extremum of both.
+     * @throws Exception In case of the elements being of different types.
+     */
+    public ExtremumState merge(ExtremumState other, String function) throws Exception {
+        if (other.type == DTypeId.OTHER) {
+            return this;
+        }
+        if (type == DTypeId.OTHER) {
+            return other;
+        }
+        if (type != other.type) {
+            throw new Exception(String.format("%s(DTypeArray): Arguments must be of same DType.", function));
+        }
+
+        switch (type) {
+            case DTypeId.INTEGER: addInt(other.intValue);         break;
+            case DTypeId.DOUBLE:  addDouble(other.doubleValue);   break;
+            default:              addBoolean(other.booleanValue); break;
+        }
+        return this;
+    }
+
+    /**
+     * @return           Extremum of the elements.
+     * @throws Exception In case of no elements being accumulated.
+     */
+    public DType<?> getValue() throws Exception {
+        switch (type) {
+            case DTypeId.INTEGER: return new DTypeInteger(intValue);
+            case DTypeId.DOUBLE:  return new DTypeDouble(doubleValue);
+            case DTypeId.BOOLEAN: return new DTypeBoolean(booleanValue);
+            default:              throw new Exception("Can't find the extremum of an empty array.");
+        }
+    }
+
+    private void addInt(int operand) {
+        intValue = maximum ? Math.max(intValue, operand) : Math.min(intValue, operand);
+    }
+    private void addDouble(double operand) {
+        doubleValue = maximum ? Math.max(doubleValue, operand) : Math.min(doubleValue, operand);
+    }
+    private void addBoolean(boolean operand) {
+        booleanValue = maximum ? (booleanValue || operand) : (booleanValue && operand);
+    }
+}
@@ -2,13 +2,28 @@ package com.lnedimovic.table_editor.expression.function;
 
 import com.lnedimovic.table_editor.dtype.DType;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Abstract class representing a N-ary function.
  * The goal of the function is to create a basis for relatively safe creation of custom functions, that span wider from standard mathematical ones (like pow(), abs() and so on).
  * <p>
  * Every function implemented inherits from this class.
+ * <p>
+ * Overloads (public methods named after the function id) are resolved once, when the function is created, into method handles.
+ * The overload selected for each tuple of argument types is kept in a dispatch table, so no reflection happens during evaluation.
+ * <p>
+ * Parameters of type {@link Thunk} are lazy - their arguments are passed unevaluated, to be evaluated only if the function needs them (e.g. branches of a condition).
+ * Since a thunk is not a value, overloads take their arguments as an <code>Object[]</code>.
  */
 public abstract class Function {
     /**
@@ -40,6 +55,24 @@ public abstract class Function {
      */
     private Class<?>   returnType;
 
+    /**
+     * Type of every overload handle: arguments - values, and thunks of lazy parameters - are passed as an array.
+     */
+    public static final MethodType OVERLOAD_TYPE = MethodType.methodType(DType.class, Object[].class);
+
+    /**
+     * Overloads of the function, in order of declaration.
+     */
+    private List<Overload>                        overloads     = new ArrayList<>();
+    /**
+     * Overload handles selected for each tuple of argument types seen so far.
+     */
+    private final Map<List<Class<?>>, MethodHandle> dispatchTable = new ConcurrentHashMap<>();
+    /**
+     * Lazy parameters (i.e. of type {@link Thunk}) of the overloads, keyed by arity. Arities without lazy parameters are left out.
+     */
+    private Map<Integer, boolean[]>                 lazyParameters = new HashMap<>();
+
     /**
      * Creates an instance of Function, given id and types.
      * @param id         Unique identifier of the function.
@@ -50,6 +83,8 @@ public abstract class Function {
             throw new Exception("Invalid function id");
         }
         this.id = id;
+
+        resolveOverloads();
     }
 
     /**
@@ -65,29 +100,115 @@ public abstract class Function {
         // Get the argument types provided
         Class<?>[] argumentTypes = getArgumentTypes(args);
 
-        // Find if method with g
-        Method method;
+        // Find the overload matching given types
+        return invoke(resolve(argumentTypes), args);
+    }
+
+    /**
+     * Invokes the overload handle.
+     * @param overload   Overload handle, as returned by {@link #resolve(Class[])}.
+     * @param args       Arguments passed to the overload: values, and thunks of lazy parameters.
+     * @return           Result of function evaluation.
+     * @throws Exception In case of invalid data.
+     */
+    public static DType<?> invoke(MethodHandle overload, Object[] args) throws Exception {
         try {
-            method = findMatchingMethod(getId(), argumentTypes);
+            return (DType<?>) overload.invokeExact(args);
         }
         catch (Exception e) {
-            throw new Exception("Can't find method: " + e.getMessage());
+            throw new Exception(e);
+        }
+        catch (Throwable t) {
+            throw new Exception(t);
+        }
+    }
+
+    /**
+     * Selects the overload to call with arguments of given types. Selections are kept in the dispatch table.
+     * @param argumentTypes Types of arguments, in order.
+     * @return              Overload handle of type <code>(Object[])DType</code>.
+     * @throws Exception    In case of no overload accepting given types.
+     */
+    public MethodHandle resolve(Class<?>[] argumentTypes) throws Exception {
+        List<Class<?>> key    = Arrays.asList(argumentTypes);
+        MethodHandle   target = dispatchTable.get(key);
+        if (target != null) {
+            return target;
         }
 
-        // If method is found, call it and return.
         try {
-            return (DType<?>) method.invoke(this, (Object[]) args);
+            target = findMatchingOverload(argumentTypes).handle;
         }
         catch (Exception e) {
-            throw new Exception(e);
+            throw new Exception("Can't find method: " + e.getMessage());
+        }
+
+        // The key has to be a copy, since callers may reuse the array
+        dispatchTable.put(List.of(argumentTypes), target);
+        return target;
+    }
+
+    /**
+     * @param argumentTypes Types of arguments, in order.
+     * @return              Declared return type of the overload selected for arguments of given types.
+     * @throws Exception    In case of no overload accepting given types.
+     */
+    public Class<?> resolveReturnType(Class<?>[] argumentTypes) throws Exception {
+        return findMatchingOverload(argumentTypes).returnType;
+    }
+
+    /**
+     * Checks whether any overload could accept arguments of given types, where some types may not be known in advance.
+     * @param argumentTypes Types of arguments, in order; null for an argument of unknown type.
+     * @return              True if there is an overload of matching arity, accepting every argument of known type; false, otherwise.
+     */
+    public boolean acceptsArguments(Class<?>[] argumentTypes) {
+        for (Overload overload : overloads) {
+            Class<?>[] parameterTypes = overload.parameterTypes;
+            if (parameterTypes.length != argumentTypes.length) {
+                continue;
+            }
+
+            boolean allTypesMatching = true;
+            for (int idx = 0; idx < parameterTypes.length; idx++) {
+                if (argumentTypes[idx] != null && !parameterTypes[idx].isAssignableFrom(argumentTypes[idx])) {
+                    allTypesMatching = false;
+                    break;
+                }
+            }
+            if (allTypesMatching) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return Number of parameters of every overload, in order of declaration.
+     */
+    public int[] getOverloadArities() {
+        int[] arities = new int[overloads.size()];
+        for (int idx = 0; idx < arities.length; idx++) {
+            arities[idx] = overloads.get(idx).parameterTypes.length;
         }
+
+        return arities;
+    }
+
+    /**
+     * @param arity Number of arguments.
+     * @return      Flags of the parameters being lazy in any overload of given arity, not to be modified; null, if there are none.
+     */
+    public boolean[] getLazyParameters(int arity) {
+        return lazyParameters.get(arity);
     }
 
     /**
-     * @param args Arguments provided to the function.
+     * @param args Arguments provided to the function: values, and thunks of lazy parameters.
      * @return     Array containing type of every argument, in order.
      */
-    public Class<?>[] getArgumentTypes(DType<?>... args) {
+    public Class<?>[] getArgumentTypes(Object[] args) {
         int numOfArguments  = args.length;
         Class<?>[] argumentTypes = new Class[numOfArguments];
 
@@ -100,34 +221,29 @@ public abstract class Function {
     }
 
     /**
-     * Finds matching method in class being used for evaluation.
-     * @param methodName    Name of the method. It is always the same as the "identifier" of a function (i.e. "sum")
+     * Finds matching overload of the function.
      * @param argumentTypes List of argument types provided to the class for evaluation.
-     * @return              Found method.
+     * @return              Found overload.
      */
-    private Method findMatchingMethod(String methodName, Class<?>[] argumentTypes) throws Exception {
-        // For each method inside the class
-        for (Method method : getClass().getDeclaredMethods()) {
-            // Check if method name is desired (i.e. same)
-            if (method.getName().equals(methodName)) {
-                Class<?>[] parameterTypes = method.getParameterTypes();
-
-                // Number of parameters and provided values must match
-                if (parameterTypes.length == argumentTypes.length) {
-                    boolean allTypesMatching = true;
-                    for (int idx = 0; idx < parameterTypes.length; idx++) {
-                        // In case of parameter type mismatch, flip the flag to false and stop checking for other types.
-                        if (!parameterTypes[idx].isAssignableFrom(argumentTypes[idx])) {
-                            allTypesMatching = false;
-                            break;
-                        }
-                    }
+    private Overload findMatchingOverload(Class<?>[] argumentTypes) throws Exception {
+        for (Overload overload : overloads) {
+            Class<?>[] parameterTypes = overload.parameterTypes;
 
-                    // In case of all types matching, return the current function as found!
-                    if (allTypesMatching) {
-                        return method;
+            // Number of parameters and provided values must match
+            if (parameterTypes.length == argumentTypes.length) {
+                boolean allTypesMatching = true;
+                for (int idx = 0; idx < parameterTypes.length; idx++) {
+                    // In case of parameter type mismatch, flip the flag to false and stop checking for other types.
+                    if (!parameterTypes[idx].isAssignableFrom(argumentTypes[idx])) {
+                        allTypesMatching = false;
+                        break;
                     }
                 }
+
+                // In case of all types matching, return the current overload as found!
+                if (allTypesMatching) {
+                    return overload;
+                }
             }
         }
 
@@ -135,6 +251,67 @@ public abstract class Function {
         throw new Exception("Can't find function with given parameter types.");
     }
 
+    /**
+     * Collects the overloads of the function, i.e. methods inside the class named the same as the "identifier" of a function (i.e. "sum"),
+     * and binds each of them into a method handle of type <code>(Object[])DType</code>.
+     * Identifiers reserved in Java may be followed by an underscore (i.e. "if_").
+     */
+    private void resolveOverloads() {
+        List<Overload>          resolved = new ArrayList<>();
+        Map<Integer, boolean[]> lazy     = new HashMap<>();
+        for (Method method : getClass().getDeclaredMethods()) {
+            if (!isOverloadName(method.getName()) || !DType.class.isAssignableFrom(method.getReturnType())) {
+                continue;
+            }
+
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.lookup().unreflect(method);
+            }
+            catch (IllegalAccessException e) {
+                // E.g. methods of non-public classes
+                method.setAccessible(true);
+                try {
+                    handle = MethodHandles.lookup().unreflect(method);
+                }
+                catch (IllegalAccessException inaccessible) {
+                    continue;
+                }
+            }
+
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            for (int idx = 0; idx < parameterTypes.length; idx++) {
+                if (parameterTypes[idx] == Thunk.class) {
+                    lazy.computeIfAbsent(parameterTypes.length, arity -> new boolean[arity])[idx] = true;
+                }
+            }
+
+            handle = handle.bindTo(this)
+                           .asSpreader(Object[].class, parameterTypes.length)
+                           .asType(OVERLOAD_TYPE);
+
+            resolved.add(new Overload(parameterTypes, method.getReturnType(), handle));
+        }
+
+        this.overloads      = resolved;
+        this.lazyParameters = lazy;
+        this.dispatchTable.clear();
+    }
+
+    private boolean isOverloadName(String name) {
+        return name.equals(id) || (name.length() == id.length() + 1 && name.startsWith(id) && name.endsWith("_"));
+    }
+
+    /**
+     * Deterministic functions always return the same result for the same arguments, so calls with constant arguments
+     * can be evaluated once, ahead of time (see {@link com.lnedimovic.table_editor.expression.optimizer.Optimizer}).
+     * Functions depending on anything else (e.g. time, randomness) must override this.
+     * @return True if the function is deterministic; false, otherwise.
+     */
+    public boolean isDeterministic() {
+        return true;
+    }
+
     public boolean validId(String id) {
         boolean validCharacters = true;
         for (int i = 1; i < id.length(); i++) {
@@ -151,6 +328,7 @@ public abstract class Function {
     }
 
     /**
+     * Functions are equal if they have the same id. A function is also equal to its id.
      * @param obj Object to check equality with.
      * @return    True if objects are equal; false, otherwise.
      */
@@ -159,7 +337,7 @@ public abstract class Function {
             return false;
         }
         if (obj instanceof Function) {
-            return obj.equals(this);
+            return id.equals(((Function) obj).id);
         }
         if (obj instanceof String) {
             return obj.equals(id);
@@ -168,12 +346,21 @@ public abstract class Function {
         return false;
     }
 
+    /**
+     * @return Hash code of the id.
+     */
+    public int hashCode() {
+        return id.hashCode();
+    }
+
 
     public String getId() {
         return id;
     }
     public void setId(String id) {
         this.id = id;
+
+        resolveOverloads();
     }
     public int getArity() {
         return arity;
@@ -199,4 +386,19 @@ public abstract class Function {
     public void setPrecedence(int precedence) {
         this.precedence = precedence;
     }
-}
\ No newline at end of file
+
+    /**
+     * Overload of the function, bound into a method handle.
+     */
+    private static class Overload {
+        private final Class<?>[]   parameterTypes;
+        private final Class<?>     returnType;
+        private final MethodHandle handle;
+
+        private Overload(Class<?>[] parameterTypes, Class<?> returnType, MethodHandle handle) {
+            this.parameterTypes = parameterTypes;
+            this.returnType     = returnType;
+            this.handle         = handle;
+        }
+    }
+}
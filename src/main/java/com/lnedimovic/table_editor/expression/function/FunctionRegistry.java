@@ -0,0 +1,136 @@
+package com.lnedimovic.table_editor.expression.function;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <code>FunctionRegistry</code> is the set of functions available to formulas, keyed by their id.
+ * <p>
+ * Every function is registered once, into an immutable entry, along with the arities of its overloads,
+ * so identifiers are looked up in constant time, and calls with a wrong number of arguments are rejected without resolving any overload.
+ * The same registry is meant to be shared by the tokenizer and the parser.
+ * <p>
+ * Functions shouldn't be renamed (see {@link Function#setId(String)}) once registered.
+ */
+public final class FunctionRegistry {
+    /**
+     * Entries of the functions, keyed by id.
+     */
+    private final Map<String, Entry> entries;
+
+    /**
+     * Creates an instance of <code>FunctionRegistry</code>, given the functions.
+     * @param functions Functions to register; null, for none.
+     * @throws IllegalArgumentException In case of two functions having the same id.
+     */
+    public FunctionRegistry(Function... functions) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (functions != null) {
+            for (Function function : functions) {
+                if (entries.putIfAbsent(function.getId(), new Entry(function)) != null) {
+                    throw new IllegalArgumentException("Function already registered: " + function.getId());
+                }
+            }
+        }
+
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * @param id Id of the function.
+     * @return   Entry of the function; null, if there is no function of given id.
+     */
+    public Entry getEntry(String id) {
+        return entries.get(id);
+    }
+
+    /**
+     * @param id Id of the function.
+     * @return   Function of given id; null, if there is none.
+     */
+    public Function find(String id) {
+        Entry entry = entries.get(id);
+        return (entry != null) ? entry.function : null;
+    }
+
+    /**
+     * @param expression Expression containing the identifier.
+     * @param start      Start of the identifier.
+     * @param end        End (exclusive) of the identifier.
+     * @return           Function named by the identifier; null, if there is none.
+     */
+    public Function find(char[] expression, int start, int end) {
+        return find(new String(expression, start, end - start));
+    }
+
+    /**
+     * @return Entries of every function, in no particular order.
+     */
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    /**
+     * @return Number of functions registered.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Registered function, along with the arities of its overloads.
+     */
+    public static final class Entry {
+        private final Function function;
+        /**
+         * Distinct numbers of parameters of the overloads, in ascending order.
+         */
+        private final int[]    arities;
+        private final int      overloadCount;
+
+        private Entry(Function function) {
+            int[] arities = function.getOverloadArities();
+
+            this.function      = function;
+            this.arities       = Arrays.stream(arities).distinct().sorted().toArray();
+            this.overloadCount = arities.length;
+        }
+
+        /**
+         * @param count Number of arguments.
+         * @return      True if any overload takes given number of arguments; false, otherwise.
+         */
+        public boolean acceptsArity(int count) {
+            return Arrays.binarySearch(arities, count) >= 0;
+        }
+
+        public Function getFunction() {
+            return function;
+        }
+        public String getId() {
+            return function.getId();
+        }
+        public int[] getArities() {
+            return arities.clone();
+        }
+        public int getMinArity() {
+            return (arities.length > 0) ? arities[0] : 0;
+        }
+        public int getMaxArity() {
+            return (arities.length > 0) ? arities[arities.length - 1] : 0;
+        }
+        public int getOverloadCount() {
+            return overloadCount;
+        }
+
+        /**
+         * @return String representation of the entry.
+         */
+        public String toString() {
+            return String.format("Entry(id=%s, arities=%s, overloads=%d)", getId(), Arrays.toString(arities), overloadCount);
+        }
+    }
+}
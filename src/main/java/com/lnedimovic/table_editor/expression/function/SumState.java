@@ -0,0 +1,201 @@
+package com.lnedimovic.table_editor.expression.function;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+
+/**
+ * <code>SumState</code> is the state of a running sum (see {@link Aggregate}), kept in primitive fields.
+ * <p>
+ * Elements are added exactly as by {@link DType#add(Object)}, starting with the first element:
+ * integers are added as integers until the first double, and booleans added to booleans are or-ed.
+ * Sums merged from parts (see {@link #merge(SumState)}) are the same, apart from the rounding of doubles added in a different order.
+ */
+public class SumState {
+    /**
+     * Type of the running sum (see {@link DTypeId}); <code>DTypeId.OTHER</code> before the first element.
+     */
+    private int     type = DTypeId.OTHER;
+    private int     intValue;
+    private double  doubleValue;
+    private boolean booleanValue;
+    /**
+     * Integer sum of the elements before the first double, added in integer arithmetic (i.e. wrapping around on overflow).
+     */
+    private int     leadingInt;
+
+    /**
+     * Number of accumulated elements.
+     */
+    private long    count;
+    /**
+     * Whether the sum could be computed in parts, and merged (see {@link #merge(SumState)}).
+     */
+    private boolean mergeable = true;
+
+    /**
+     * Adds the element to the sum.
+     * @param value      Element.
+     * @param function   Id of the function accumulating, used in error messages.
+     * @throws Exception In case of an element of invalid type.
+     */
+    public void add(DType<?> value, String function) throws Exception {
+        if (value instanceof DTypeInteger) {
+            addInteger(((DTypeInteger) value).getValue());
+        }
+        else if (value instanceof DTypeDouble) {
+            addDouble(((DTypeDouble) value).getValue());
+        }
+        else if (value instanceof DTypeBoolean) {
+            addBoolean(((DTypeBoolean) value).getValue());
+        }
+        else if (value instanceof DTypeString) {
+            throw new Exception(String.format("%s(DTypeArray): Invalid type provided: DTypeString", function));
+        }
+        else if (type == DTypeId.OTHER) {
+            throw new Exception(String.format("%s(DTypeArray): Invalid type provided: %s", function, (value == null) ? "null" : value.getClass().getSimpleName()));
+        }
+        else {
+            // Reports the error of adding the element
+            getValue().add(value);
+        }
+    }
+
+    /**
+     * Adds the cell to the sum, reading it unboxed if possible.
+     * @param source     Storage of the cell values.
+     * @param row        Row of the cell.
+     * @param col        Column of the cell.
+     * @param function   Id of the function accumulating, used in error messages.
+     * @throws Exception In case of a cell of invalid type.
+     */
+    public void add(DTypeRange.CellSource source, int row, int col, String function) throws Exception {
+        switch (source.getTypeId(row, col)) {
+            case DTypeId.INTEGER: addInteger(source.getInt(row, col));     break;
+            case DTypeId.DOUBLE:  addDouble(source.getDouble(row, col));   break;
+            case DTypeId.BOOLEAN: addBoolean(source.getBoolean(row, col)); break;
+            default:              add(source.get(row, col), function);     break;
+        }
+    }
+
+    /**
+     * @param operand Integer element.
+     */
+    public void addInteger(int operand) {
+        if (type == DTypeId.OTHER) {
+            type     = DTypeId.INTEGER;
+            intValue = operand;
+        }
+        else {
+            addInt(operand);
+        }
+        count++;
+    }
+
+    /**
+     * @param operand Double element.
+     */
+    public void addDouble(double operand) {
+        if (type == DTypeId.INTEGER) {
+            leadingInt  = intValue;
+            doubleValue = intValue;
+        }
+        else if (type == DTypeId.BOOLEAN) {
+            doubleValue = booleanValue ? 1.0 : 0.0;
+        }
+        else if (type == DTypeId.OTHER) {
+            doubleValue = 0.0;
+        }
+        type         = DTypeId.DOUBLE;
+        doubleValue += operand;
+        count++;
+    }
+
+    /**
+     * @param operand Boolean element.
+     */
+    public void addBoolean(boolean operand) {
+        // Or-ing doesn't distribute over integer addition, so parts can't be merged
+        mergeable = false;
+
+        if (type == DTypeId.OTHER) {
+            type         = DTypeId.BOOLEAN;
+            booleanValue = operand;
+        }
+        else if (type == DTypeId.BOOLEAN) {
+            booleanValue |= operand;
+        }
+        else if (type == DTypeId.INTEGER) {
+            addInt(operand ? 1 : 0);
+        }
+        else {
+            doubleValue += operand ? 1.0 : 0.0;
+        }
+        count++;
+    }
+
+    /**
+     * @param other      Sum of the elements following the ones of this sum.
+     * @return           This sum, with the elements of the other one added; null, if the sums can't be merged exactly (i.e. with booleans involved).
+     */
+    public SumState merge(SumState other) {
+        if (!mergeable || !other.mergeable) {
+            return null;
+        }
+        if (other.type == DTypeId.OTHER) {
+            return this;
+        }
+        if (type == DTypeId.OTHER) {
+            return other;
+        }
+
+        if (other.type == DTypeId.INTEGER) {
+            addInt(other.intValue);
+        }
+        else if (type == DTypeId.INTEGER) {
+            // Integers of this part are still added in integer arithmetic to the leading integers of the other part
+            leadingInt  = intValue + other.leadingInt;
+            doubleValue = leadingInt + (other.doubleValue - other.leadingInt);
+            type        = DTypeId.DOUBLE;
+        }
+        else {
+            doubleValue += other.doubleValue;
+        }
+        count += other.count;
+
+        return this;
+    }
+
+    /**
+     * @return           Sum of the accumulated elements.
+     * @throws Exception In case of no elements being accumulated.
+     */
+    public DType<?> getValue() throws Exception {
+        switch (type) {
+            case DTypeId.INTEGER: return new DTypeInteger(intValue);
+            case DTypeId.DOUBLE:  return new DTypeDouble(doubleValue);
+            case DTypeId.BOOLEAN: return new DTypeBoolean(booleanValue);
+            default:              throw new Exception("Can't sum an empty array.");
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private void addInt(int operand) {
+        if (type == DTypeId.DOUBLE) {
+            doubleValue += operand;
+            return;
+        }
+        if (type == DTypeId.BOOLEAN) {
+            type     = DTypeId.INTEGER;
+            intValue = booleanValue ? 1 : 0;
+        }
+        intValue += operand;
+    }
+}
@@ -0,0 +1,94 @@
+package com.lnedimovic.table_editor.expression.function;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+
+/**
+ * <code>Thunk</code> is a lazy argument of a function call - the argument's node, along with the context of the call, not yet evaluated.
+ * <p>
+ * Functions declare a parameter lazy by its type, e.g. <code>if(DType&lt;?&gt; condition, Thunk then, Thunk otherwise)</code>.
+ * The argument is evaluated once it is first forced (see {@link #force()}), and never again (call-by-need), so a branch not taken is never evaluated at all.
+ * <p>
+ * A thunk is not a value - it is passed to functions alongside the evaluated arguments (see {@link Function#invoke(java.lang.invoke.MethodHandle, Object[])}),
+ * and only its forced value may end up in a cell.
+ */
+public final class Thunk {
+    /**
+     * Node of the argument.
+     */
+    private final Node              node;
+    /**
+     * Context of the call; null, for deferred thunks (see {@link #deferred(Node)}).
+     */
+    private final EvaluationContext context;
+
+    /**
+     * Value of the argument, once forced.
+     */
+    private DType<?> value;
+    private boolean  forced = false;
+
+    /**
+     * Creates an instance of <code>Thunk</code>.
+     * @param node    Node of the argument.
+     * @param context Context of the call.
+     */
+    public Thunk(Node node, EvaluationContext context) {
+        this.node    = node;
+        this.context = context;
+    }
+
+    /**
+     * Creates a thunk whose argument is never evaluated - forcing it returns a placeholder, a value distinct from every other.
+     * Used to find out which lazy arguments a call takes, without evaluating them (see {@link com.lnedimovic.table_editor.expression.optimizer.Optimizer}).
+     * @param node Node of the argument.
+     * @return     Deferred thunk.
+     */
+    public static Thunk deferred(Node node) {
+        return new Thunk(node, null);
+    }
+
+    /**
+     * @return           Value of the argument, evaluated on the first call only.
+     * @throws Exception In case of error in the evaluation of the argument.
+     */
+    public DType<?> force() throws Exception {
+        if (!forced) {
+            value  = (context != null) ? node.evaluate(context) : new DTypeString("#DEFERRED");
+            forced = true;
+        }
+
+        return value;
+    }
+
+    /**
+     * @return True if the argument has been forced; false, otherwise.
+     */
+    public boolean isForced() {
+        return forced;
+    }
+
+    /**
+     * @return Value of the argument; null, if it hasn't been forced yet.
+     */
+    public DType<?> getForcedValue() {
+        return value;
+    }
+
+    /**
+     * @return Node of the argument.
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * @return String representation of <code>Thunk</code>.
+     */
+    @Override
+    public String toString() {
+        return String.format("Thunk(node=%s, forced=%s)", node, forced);
+    }
+}
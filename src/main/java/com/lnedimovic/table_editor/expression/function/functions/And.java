@@ -0,0 +1,31 @@
+package com.lnedimovic.table_editor.expression.function.functions;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.Thunk;
+
+/**
+ * And is a function resembling standard logical conjunction, i.e. and(1 &lt; 2, 3 &gt; 4) = false.
+ * It short-circuits - the right operand is evaluated only if the left one holds.
+ */
+public class And extends Function {
+    /**
+     * Creates an instance of And, given its id.
+     * @param id          Function identifier.
+     * @throws Exception  In case of invalid number of parameters.
+     */
+    public And(String id) throws Exception {
+        super(id);
+    }
+
+    /**
+     * @param left       Left operand.
+     * @param right      Right operand, evaluated only if the left one holds.
+     * @return           True if both operands hold; false, otherwise.
+     * @throws Exception In case of invalid operand (see {@link If#isTrue(DType)}).
+     */
+    public DTypeBoolean and(DType<?> left, Thunk right) throws Exception {
+        return new DTypeBoolean(If.isTrue(left) && If.isTrue(right.force()));
+    }
+}
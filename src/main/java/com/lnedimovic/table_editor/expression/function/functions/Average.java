@@ -2,14 +2,16 @@ package com.lnedimovic.table_editor.expression.function.functions;
 
 import com.lnedimovic.table_editor.dtype.DType;
 import com.lnedimovic.table_editor.dtype.dtypes.DTypeArray;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
 import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
-import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+import com.lnedimovic.table_editor.expression.function.Aggregate;
 import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.SumState;
 
 /**
  * Average is a function representing standard mathematical notion of "average", i.e. (sum of all values) / (total number of value).
  */
-public class Average extends Function {
+public class Average extends Function implements Aggregate<SumState> {
     /**
      * Creates an instance of Average, given its id.
      * @param id          Function identifier.
@@ -28,33 +30,35 @@ public class Average extends Function {
      */
     public DType<?> average(DTypeArray args) throws Exception {
         try {
-            checkTypes(args);               // Check for invalid types
-            args = args.toTwoDimensional(); // Upscale to 2D array, if needed
+            return aggregate(args);
         }
         catch (Exception e) {
             throw new Exception(e);
         }
+    }
 
-        DType<?> sum = args.get(0, 0);
-        for (int row = 0; row < args.length(); row++) {
-            DTypeArray rowArray = (DTypeArray) args.get(row);
+    @Override
+    public SumState init() {
+        return new SumState();
+    }
 
-            for (int col = 0; col < rowArray.length(); col++) {
-                if (row == 0 && col == 0) {
-                    continue;
-                }
+    @Override
+    public void accumulate(SumState state, DType<?> value) throws Exception {
+        state.add(value, getId());
+    }
 
-                sum = sum.add(args.get(row, col));
-            }
-        }
+    @Override
+    public void accumulate(SumState state, DTypeRange.CellSource source, int row, int col) throws Exception {
+        state.add(source, row, col, getId());
+    }
 
-        DTypeDouble elementCount = new DTypeDouble(args.length() * ((DTypeArray) args.get(0)).length());
-        return sum.div(elementCount);
+    @Override
+    public SumState merge(SumState left, SumState right) {
+        return left.merge(right);
     }
 
-    public void checkTypes(DTypeArray args) throws Exception {
-        if (args.containsDType(DTypeString.class)) {
-            throw new Exception("avg(DTypeArray).checkTypes: Invalid type provided: DTypeString");
-        }
+    @Override
+    public DType<?> finish(SumState state) throws Exception {
+        return state.getValue().div(new DTypeDouble((double) state.getCount()));
     }
-}
\ No newline at end of file
+}
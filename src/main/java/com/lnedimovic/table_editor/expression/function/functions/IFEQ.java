@@ -3,9 +3,11 @@ package com.lnedimovic.table_editor.expression.function.functions;
 import com.lnedimovic.table_editor.dtype.DType;
 import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
 import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.Thunk;
 
 /**
  * IFEQ is a function resembling standard equal-condition, i.e. ifeq(5, 3) = false, ifeq(25.0, pow(2, 5)) = true.
+ * Given two more arguments, it chooses between them, i.e. ifeq(5, 3, 1, 0) = 0, evaluating only the one chosen.
  */
 public class IFEQ extends Function {
     /**
@@ -26,4 +28,17 @@ public class IFEQ extends Function {
     public DTypeBoolean ifeq(DType<?> left, DType<?> right) {
         return new DTypeBoolean(left.equals(right));
     }
+
+    /**
+     * Returns one of two values, depending on whether two given DType objects are equal.
+     * @param left       Left operand
+     * @param right      Right operand
+     * @param then       Value in case the operands are equal, evaluated only then.
+     * @param otherwise  Value in case the operands are not equal, evaluated only then.
+     * @return           Value chosen.
+     * @throws Exception In case of error in the evaluation of the value chosen.
+     */
+    public DType<?> ifeq(DType<?> left, DType<?> right, Thunk then, Thunk otherwise) throws Exception {
+        return left.equals(right) ? then.force() : otherwise.force();
+    }
 }
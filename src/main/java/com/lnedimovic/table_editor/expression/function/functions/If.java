@@ -0,0 +1,53 @@
+package com.lnedimovic.table_editor.expression.function.functions;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.Thunk;
+
+/**
+ * If is a function resembling standard condition, i.e. if(1 &lt; 2, 3, 4) = 3.
+ * Only the branch taken is evaluated.
+ */
+public class If extends Function {
+    /**
+     * Creates an instance of If, given its id.
+     * @param id          Function identifier.
+     * @throws Exception  In case of invalid number of parameters.
+     */
+    public If(String id) throws Exception {
+        super(id);
+    }
+
+    /**
+     * @param condition  Condition.
+     * @param then       Value in case the condition holds, evaluated only then.
+     * @param otherwise  Value in case the condition doesn't hold, evaluated only then.
+     * @return           Value of the branch taken.
+     * @throws Exception In case of invalid condition, or error in the evaluation of the branch.
+     */
+    public DType<?> if_(DType<?> condition, Thunk then, Thunk otherwise) throws Exception {
+        return isTrue(condition) ? then.force() : otherwise.force();
+    }
+
+    /**
+     * @param condition  Condition - a boolean, or a number (true if not 0).
+     * @return           True if the condition holds; false, otherwise.
+     * @throws Exception In case of the condition being of any other type.
+     */
+    public static boolean isTrue(DType<?> condition) throws Exception {
+        if (condition instanceof DTypeBoolean) {
+            return ((DTypeBoolean) condition).getValue();
+        }
+        if (condition instanceof DTypeInteger) {
+            return new DTypeBoolean((DTypeInteger) condition).getValue();
+        }
+        if (condition instanceof DTypeDouble) {
+            return new DTypeBoolean((DTypeDouble) condition).getValue();
+        }
+
+        throw new Exception("Invalid condition: " + condition);
+    }
+}
@@ -2,6 +2,8 @@ package com.lnedimovic.table_editor.expression.function.functions;
 
 import com.lnedimovic.table_editor.dtype.DType;
 import com.lnedimovic.table_editor.dtype.dtypes.*;
+import com.lnedimovic.table_editor.expression.function.Aggregate;
+import com.lnedimovic.table_editor.expression.function.ExtremumState;
 import com.lnedimovic.table_editor.expression.function.Function;
 
 import java.lang.reflect.Constructor;
@@ -10,7 +12,7 @@ import java.util.Arrays;
 /**
  * Max is a function resembling standard mathematical minimum value function, i.e. max(2, 3) = 3.
  */
-public class Max extends Function {
+public class Max extends Function implements Aggregate<ExtremumState> {
     /**
      * Creates an instance of Max, given its id.
      * @param id          Function identifier.
@@ -50,31 +52,36 @@ public class Max extends Function {
      */
     public DType<?> max(DTypeArray args) throws Exception {
         try {
-            checkTypes(args);               // Check for invalid types
-            if (!args.isClassUniform()) {   // Check for class uniformity
-                throw new Exception("max(DTypeArray): Arguments must be of same DType.");
-            }
-            args = args.toTwoDimensional(); // Upscale to 2D array, if needed
+            return aggregate(args);
         }
         catch (Exception e) {
             throw new Exception(e);
         }
-        // To "bias" the result type around the actual data in the DTypeArray, the first element is stored inside.
-        DType<?> result = args.get(0, 0);
+    }
 
-        // Go through every element and add it to the result
-        for (int row = 0; row < args.length(); row++) {
-            for (int col = 0; col < ((DTypeArray) args.get(row)).length(); col++) {
-                if (row == 0 && col == 0) {
-                    continue;
-                }
+    @Override
+    public ExtremumState init() {
+        return new ExtremumState(true);
+    }
 
-                // Take the maximum of the new element, and the current maximum
-                result = _max(result, args.get(row, col));
-            }
-        }
+    @Override
+    public void accumulate(ExtremumState state, DType<?> value) throws Exception {
+        state.add(value, getId());
+    }
 
-        return result;
+    @Override
+    public void accumulate(ExtremumState state, DTypeRange.CellSource source, int row, int col) throws Exception {
+        state.add(source, row, col, getId());
+    }
+
+    @Override
+    public ExtremumState merge(ExtremumState left, ExtremumState right) throws Exception {
+        return left.merge(right, getId());
+    }
+
+    @Override
+    public DType<?> finish(ExtremumState state) throws Exception {
+        return state.getValue();
     }
 
     /**
@@ -100,10 +107,4 @@ public class Max extends Function {
 
         return result;
     }
-
-    public void checkTypes(DTypeArray args) throws Exception {
-        if (args.containsDType(DTypeString.class)) {
-            throw new Exception("max(DTypeArray).checkTypes: Invalid type provided: DTypeString");
-        }
-    }
 }
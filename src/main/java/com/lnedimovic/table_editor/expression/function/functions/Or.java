@@ -0,0 +1,31 @@
+package com.lnedimovic.table_editor.expression.function.functions;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.Thunk;
+
+/**
+ * Or is a function resembling standard logical disjunction, i.e. or(1 &lt; 2, 3 &gt; 4) = true.
+ * It short-circuits - the right operand is evaluated only if the left one doesn't hold.
+ */
+public class Or extends Function {
+    /**
+     * Creates an instance of Or, given its id.
+     * @param id          Function identifier.
+     * @throws Exception  In case of invalid number of parameters.
+     */
+    public Or(String id) throws Exception {
+        super(id);
+    }
+
+    /**
+     * @param left       Left operand.
+     * @param right      Right operand, evaluated only if the left one doesn't hold.
+     * @return           True if any of the operands holds; false, otherwise.
+     * @throws Exception In case of invalid operand (see {@link If#isTrue(DType)}).
+     */
+    public DTypeBoolean or(DType<?> left, Thunk right) throws Exception {
+        return new DTypeBoolean(If.isTrue(left) || If.isTrue(right.force()));
+    }
+}
@@ -2,13 +2,16 @@ package com.lnedimovic.table_editor.expression.function.functions;
 
 import com.lnedimovic.table_editor.dtype.DType;
 import com.lnedimovic.table_editor.dtype.dtypes.DTypeArray;
-import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+import com.lnedimovic.table_editor.expression.function.Aggregate;
 import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.SumState;
 
 /**
  * Sum is a function representing standard mathematical notion of "summation", i.e. addition of all the values.
+ * Values are summed in a single pass, into a primitive running sum (see {@link SumState}).
  */
-public class Sum extends Function {
+public class Sum extends Function implements Aggregate<SumState> {
     /**
      * Creates an instance of Sum, given its id.
      * @param id          Function identifier.
@@ -26,39 +29,35 @@ public class Sum extends Function {
      */
     public DType<?> sum(DTypeArray args) throws Exception {
         try {
-            checkTypes(args);               // Check for invalid types
-            args = args.toTwoDimensional(); // Upscale to 2D array, if needed
+            return aggregate(args);
         }
         catch (Exception e) {
             throw new Exception(e);
         }
+    }
 
-        // To "bias" the result type around the actual data in the DTypeArray, the first element is stored inside.
-        DType<?> result = args.get(0, 0);
+    @Override
+    public SumState init() {
+        return new SumState();
+    }
 
-        // Go through every element and add it to the result
-        for (int row = 0; row < args.length(); row++) {
-            for (int col = 0; col < ((DTypeArray) args.get(row)).length(); col++) {
-                if (row == 0 && col == 0) { // Skip the first value because it's already calculated
-                    continue;
-                }
+    @Override
+    public void accumulate(SumState state, DType<?> value) throws Exception {
+        state.add(value, getId());
+    }
 
-                // Add the current value to the sum
-                result = result.add(args.get(row, col));
-            }
-        }
+    @Override
+    public void accumulate(SumState state, DTypeRange.CellSource source, int row, int col) throws Exception {
+        state.add(source, row, col, getId());
+    }
 
-        return result;
+    @Override
+    public SumState merge(SumState left, SumState right) {
+        return left.merge(right);
     }
 
-    /**
-     * Auxiliary function, created to check whether certain types are not meaningful to use inside the function.
-     * @param args       Complete list of arguments.
-     * @throws Exception In case of invalid type provided to the function.
-     */
-    public void checkTypes(DTypeArray args) throws Exception {
-        if (args.containsDType(DTypeString.class)) {
-            throw new Exception("sum(DTypeArray).checkTypes: Invalid type provided: DTypeString");
-        }
+    @Override
+    public DType<?> finish(SumState state) throws Exception {
+        return state.getValue();
     }
-}
\ No newline at end of file
+}
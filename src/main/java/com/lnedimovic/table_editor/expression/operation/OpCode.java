@@ -0,0 +1,63 @@
+package com.lnedimovic.table_editor.expression.operation;
+
+/**
+ * Integer opcodes of operations, resolved from operation id (symbol) once, when the operation is created.
+ * Evaluation dispatches on the opcode (see {@link OperationKernels}), so operation ids are never compared while evaluating.
+ */
+public final class OpCode {
+    /**
+     * Operation with no known implementation.
+     */
+    public static final int UNKNOWN = -1;
+
+    // Unary operations
+    public static final int ID  = 0;
+    public static final int NEG = 1;
+
+    // Binary operations
+    public static final int ADD = 2;
+    public static final int SUB = 3;
+    public static final int MUL = 4;
+    public static final int DIV = 5;
+    public static final int EXP = 6;
+    public static final int MOD = 7;
+    public static final int LT  = 8;
+    public static final int GT  = 9;
+
+    /**
+     * Number of opcodes.
+     */
+    public static final int COUNT = 10;
+
+    private OpCode() {}
+
+    /**
+     * @param id      Id (symbol) of the operation.
+     * @param isUnary Whether the operation is unary or not.
+     * @return        Opcode of the operation; <code>UNKNOWN</code>, if there is no such operation.
+     */
+    public static int resolve(String id, boolean isUnary) {
+        if (id == null) {
+            return UNKNOWN;
+        }
+
+        if (isUnary) {
+            switch (id) {
+                case "+": return ID;
+                case "-": return NEG;
+                default:  return UNKNOWN;
+            }
+        }
+        switch (id) {
+            case "+": return ADD;
+            case "-": return SUB;
+            case "*": return MUL;
+            case "/": return DIV;
+            case "^": return EXP;
+            case "%": return MOD;
+            case "<": return LT;
+            case ">": return GT;
+            default:  return UNKNOWN;
+        }
+    }
+}
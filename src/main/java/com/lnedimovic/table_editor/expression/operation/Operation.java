@@ -26,6 +26,11 @@ public class Operation {
      */
     private boolean isUnary = false;
 
+    /**
+     * Opcode of operation (see {@link OpCode}), resolved from its id and arity.
+     */
+    private int     opcode  = OpCode.UNKNOWN;
+
     /**
      * Creates an instance of <code>Operation</code>, without explicitly setting the id and the precedence of the operation.
      */
@@ -40,6 +45,7 @@ public class Operation {
         this.id = id;
         this.precedence = precedence;
         this.isUnary = isUnary;
+        this.opcode = OpCode.resolve(id, isUnary);
     }
 
     /**
@@ -79,6 +85,7 @@ public class Operation {
      */
     public void setId(String id) {
         this.id = id;
+        this.opcode = OpCode.resolve(id, isUnary);
     }
 
     /**
@@ -109,5 +116,13 @@ public class Operation {
      */
     public void setUnary(boolean unary) {
         isUnary = unary;
+        opcode = OpCode.resolve(id, isUnary);
+    }
+
+    /**
+     * @return Operation's opcode (see {@link OpCode}).
+     */
+    public int getOpcode() {
+        return opcode;
     }
 }
@@ -0,0 +1,176 @@
+package com.lnedimovic.table_editor.expression.operation;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+
+/**
+ * <code>OperationKernels</code> is a table of operation implementations (kernels), indexed by operand type ids (see {@link DTypeId}) and opcode (see {@link OpCode}).
+ * <p>
+ * Numeric operand combinations get specialized kernels, computing directly on the unboxed values.
+ * Every other combination falls back to the respective <code>DType</code> method (e.g. {@link DType#add(Object)}), so results and errors are the same in both cases.
+ */
+public final class OperationKernels {
+    /**
+     * Implementation of a unary operation for a certain operand type.
+     */
+    @FunctionalInterface
+    public interface UnaryKernel {
+        DType<?> apply(DType<?> operand) throws Exception;
+    }
+
+    /**
+     * Implementation of a binary operation for a certain pair of operand types.
+     */
+    @FunctionalInterface
+    public interface BinaryKernel {
+        DType<?> apply(DType<?> left, DType<?> right) throws Exception;
+    }
+
+    /**
+     * Unary kernels, indexed by <code>operandTypeId * OpCode.COUNT + opcode</code>.
+     */
+    private static final UnaryKernel[]  UNARY  = new UnaryKernel[DTypeId.COUNT * OpCode.COUNT];
+    /**
+     * Binary kernels, indexed by <code>(leftTypeId * DTypeId.COUNT + rightTypeId) * OpCode.COUNT + opcode</code>.
+     */
+    private static final BinaryKernel[] BINARY = new BinaryKernel[DTypeId.COUNT * DTypeId.COUNT * OpCode.COUNT];
+
+    static {
+        // Generic kernels, for every combination of types
+        for (int type = 0; type < DTypeId.COUNT; type++) {
+            UNARY[unaryIndex(type, OpCode.ID)]  = DType::id;
+            UNARY[unaryIndex(type, OpCode.NEG)] = DType::neg;
+
+            for (int rightType = 0; rightType < DTypeId.COUNT; rightType++) {
+                BINARY[binaryIndex(type, rightType, OpCode.ADD)] = DType::add;
+                BINARY[binaryIndex(type, rightType, OpCode.SUB)] = DType::sub;
+                BINARY[binaryIndex(type, rightType, OpCode.MUL)] = DType::mul;
+                BINARY[binaryIndex(type, rightType, OpCode.DIV)] = DType::div;
+                BINARY[binaryIndex(type, rightType, OpCode.EXP)] = DType::exp;
+                BINARY[binaryIndex(type, rightType, OpCode.MOD)] = DType::mod;
+                BINARY[binaryIndex(type, rightType, OpCode.LT)]  = DType::lt;
+                BINARY[binaryIndex(type, rightType, OpCode.GT)]  = DType::gt;
+            }
+        }
+
+        // Specialized kernels
+        UNARY[unaryIndex(DTypeId.INTEGER, OpCode.NEG)] = operand -> new DTypeInteger(-intValue(operand));
+        UNARY[unaryIndex(DTypeId.DOUBLE,  OpCode.NEG)] = operand -> new DTypeDouble(-doubleValue(operand));
+
+        //// DTypeInteger, DTypeInteger
+        binary(DTypeId.INTEGER, DTypeId.INTEGER, OpCode.ADD, (left, right) -> new DTypeInteger(intValue(left) + intValue(right)));
+        binary(DTypeId.INTEGER, DTypeId.INTEGER, OpCode.SUB, (left, right) -> new DTypeInteger(intValue(left) - intValue(right)));
+        binary(DTypeId.INTEGER, DTypeId.INTEGER, OpCode.MUL, (left, right) -> new DTypeInteger(intValue(left) * intValue(right)));
+        binary(DTypeId.INTEGER, DTypeId.INTEGER, OpCode.DIV, (left, right) -> {
+            int divisor = intValue(right);
+            if (divisor == 0) {
+                throw new Exception("DTypeInteger.div: Can't perform division with 0.");
+            }
+            return new DTypeInteger(intValue(left) / divisor);
+        });
+        binary(DTypeId.INTEGER, DTypeId.INTEGER, OpCode.EXP, (left, right) -> new DTypeInteger(Math.pow(intValue(left), intValue(right))));
+        binary(DTypeId.INTEGER, DTypeId.INTEGER, OpCode.MOD, (left, right) -> {
+            int divisor = intValue(right);
+            if (divisor == 0) {
+                throw new Exception("DTypeInteger.mod: Can't perform modulo with 0.");
+            }
+            return new DTypeInteger(intValue(left) % divisor);
+        });
+        binary(DTypeId.INTEGER, DTypeId.INTEGER, OpCode.LT,  (left, right) -> new DTypeBoolean(intValue(left) < intValue(right)));
+        binary(DTypeId.INTEGER, DTypeId.INTEGER, OpCode.GT,  (left, right) -> new DTypeBoolean(intValue(left) > intValue(right)));
+
+        //// DTypeInteger, DTypeDouble
+        binary(DTypeId.INTEGER, DTypeId.DOUBLE, OpCode.ADD, (left, right) -> new DTypeDouble(intValue(left) + doubleValue(right)));
+        binary(DTypeId.INTEGER, DTypeId.DOUBLE, OpCode.SUB, (left, right) -> new DTypeDouble(intValue(left) - doubleValue(right)));
+        binary(DTypeId.INTEGER, DTypeId.DOUBLE, OpCode.MUL, (left, right) -> new DTypeDouble(intValue(left) * doubleValue(right)));
+        binary(DTypeId.INTEGER, DTypeId.DOUBLE, OpCode.DIV, (left, right) -> {
+            double divisor = doubleValue(right);
+            if (divisor == 0) {
+                throw new Exception("DTypeInteger.div: Can't perform division with 0.");
+            }
+            return new DTypeDouble(intValue(left) / divisor);
+        });
+        binary(DTypeId.INTEGER, DTypeId.DOUBLE, OpCode.EXP, (left, right) -> new DTypeDouble(Math.pow(intValue(left), doubleValue(right))));
+        binary(DTypeId.INTEGER, DTypeId.DOUBLE, OpCode.LT,  (left, right) -> new DTypeBoolean(intValue(left) < doubleValue(right)));
+        binary(DTypeId.INTEGER, DTypeId.DOUBLE, OpCode.GT,  (left, right) -> new DTypeBoolean(intValue(left) > doubleValue(right)));
+
+        //// DTypeDouble, DTypeInteger
+        binary(DTypeId.DOUBLE, DTypeId.INTEGER, OpCode.ADD, (left, right) -> new DTypeDouble(doubleValue(left) + intValue(right)));
+        binary(DTypeId.DOUBLE, DTypeId.INTEGER, OpCode.SUB, (left, right) -> new DTypeDouble(doubleValue(left) - intValue(right)));
+        binary(DTypeId.DOUBLE, DTypeId.INTEGER, OpCode.MUL, (left, right) -> new DTypeDouble(doubleValue(left) * intValue(right)));
+        binary(DTypeId.DOUBLE, DTypeId.INTEGER, OpCode.DIV, (left, right) -> {
+            int divisor = intValue(right);
+            if (divisor == 0) {
+                throw new Exception("DTypeDouble.div: Can't perform division with 0.");
+            }
+            return new DTypeDouble(doubleValue(left) / divisor);
+        });
+        binary(DTypeId.DOUBLE, DTypeId.INTEGER, OpCode.EXP, (left, right) -> new DTypeDouble(Math.pow(doubleValue(left), intValue(right))));
+        binary(DTypeId.DOUBLE, DTypeId.INTEGER, OpCode.LT,  (left, right) -> new DTypeBoolean(doubleValue(left) < intValue(right)));
+        binary(DTypeId.DOUBLE, DTypeId.INTEGER, OpCode.GT,  (left, right) -> new DTypeBoolean(doubleValue(left) > intValue(right)));
+
+        //// DTypeDouble, DTypeDouble
+        binary(DTypeId.DOUBLE, DTypeId.DOUBLE, OpCode.ADD, (left, right) -> new DTypeDouble(doubleValue(left) + doubleValue(right)));
+        binary(DTypeId.DOUBLE, DTypeId.DOUBLE, OpCode.SUB, (left, right) -> new DTypeDouble(doubleValue(left) - doubleValue(right)));
+        binary(DTypeId.DOUBLE, DTypeId.DOUBLE, OpCode.MUL, (left, right) -> new DTypeDouble(doubleValue(left) * doubleValue(right)));
+        binary(DTypeId.DOUBLE, DTypeId.DOUBLE, OpCode.DIV, (left, right) -> {
+            double divisor = doubleValue(right);
+            if (divisor == 0) {
+                throw new Exception("DTypeDouble.div: Can't perform division with 0.");
+            }
+            return new DTypeDouble(doubleValue(left) / divisor);
+        });
+        binary(DTypeId.DOUBLE, DTypeId.DOUBLE, OpCode.EXP, (left, right) -> new DTypeDouble(Math.pow(doubleValue(left), doubleValue(right))));
+        binary(DTypeId.DOUBLE, DTypeId.DOUBLE, OpCode.LT,  (left, right) -> new DTypeBoolean(doubleValue(left) < doubleValue(right)));
+        binary(DTypeId.DOUBLE, DTypeId.DOUBLE, OpCode.GT,  (left, right) -> new DTypeBoolean(doubleValue(left) > doubleValue(right)));
+    }
+
+    private OperationKernels() {}
+
+    /**
+     * Evaluates the unary operation.
+     * @param opcode     Opcode of a unary operation.
+     * @param operand    Operand.
+     * @return           Result of the operation.
+     * @throws Exception In case of operation being undefined for the operand.
+     */
+    public static DType<?> evaluateUnary(int opcode, DType<?> operand) throws Exception {
+        return UNARY[unaryIndex(operand.getTypeId(), opcode)].apply(operand);
+    }
+
+    /**
+     * Evaluates the binary operation.
+     * @param opcode     Opcode of a binary operation.
+     * @param left       Left operand.
+     * @param right      Right operand.
+     * @return           Result of the operation.
+     * @throws Exception In case of operation being undefined for the operands.
+     */
+    public static DType<?> evaluateBinary(int opcode, DType<?> left, DType<?> right) throws Exception {
+        // Missing right operand is reported by the generic kernel
+        int rightTypeId = (right == null) ? DTypeId.OTHER : right.getTypeId();
+
+        return BINARY[binaryIndex(left.getTypeId(), rightTypeId, opcode)].apply(left, right);
+    }
+
+    private static int unaryIndex(int typeId, int opcode) {
+        return typeId * OpCode.COUNT + opcode;
+    }
+    private static int binaryIndex(int leftTypeId, int rightTypeId, int opcode) {
+        return (leftTypeId * DTypeId.COUNT + rightTypeId) * OpCode.COUNT + opcode;
+    }
+
+    private static void binary(int leftTypeId, int rightTypeId, int opcode, BinaryKernel kernel) {
+        BINARY[binaryIndex(leftTypeId, rightTypeId, opcode)] = kernel;
+    }
+
+    private static int intValue(DType<?> value) {
+        return ((DTypeInteger) value).getValue();
+    }
+    private static double doubleValue(DType<?> value) {
+        return ((DTypeDouble) value).getValue();
+    }
+}
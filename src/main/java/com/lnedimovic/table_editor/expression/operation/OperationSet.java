@@ -9,109 +9,29 @@ public class OperationSet {
         this.operations = operations;
     }
 
+    /**
+     * Evaluates the operation, dispatching on its opcode and operand types (see {@link OperationKernels}).
+     * @param operation  Operation to evaluate.
+     * @param left       Left (or the only) operand.
+     * @param right      Right operand; ignored for unary operations.
+     * @return           Result of the operation.
+     * @throws Exception In case of unknown operation, or operation being undefined for the operands.
+     */
     public DType<?> evaluateOperation(Operation operation, DType<?> left, DType<?> right) throws Exception {
-        String id       = operation.getId();
-        int precedence  = operation.getPrecedence();
-        boolean isUnary = operation.isUnary();
+        int opcode = operation.getOpcode();
 
-        DType<?> result = null;
-
-        if (isUnary) {
-            switch (id) {
-                case "+": {
-                    result = left.id();
-                    break;
-                }
-                case "-": {
-                    result = left.neg();
-                    break;
-                }
-                default: {
-                    throw new Exception(String.format("Unary operation not found: %s", id));
-                }
+        if (operation.isUnary()) {
+            if (opcode == OpCode.UNKNOWN) {
+                throw new Exception(String.format("Unary operation not found: %s", operation.getId()));
             }
+            return OperationKernels.evaluateUnary(opcode, left);
         }
         else {
-            switch (id) {
-                case "+": {
-                    try {
-                        result = left.add(right);
-                    }
-                    catch (Exception e) {
-                        throw new Exception(e.getMessage());
-                    }
-                    break;
-                }
-                case "-": {
-                    try {
-                        result = left.sub(right);
-                    }
-                    catch (Exception e) {
-                        throw new Exception(e.getMessage());
-                    }
-                    break;
-                }
-                case "*": {
-                    try {
-                        result = left.mul(right);
-                    }
-                    catch (Exception e) {
-                        throw new Exception(e.getMessage());
-                    }
-                    break;
-                }
-                case "/": {
-                    try {
-                        result = left.div(right);
-                    }
-                    catch (Exception e) {
-                        throw new Exception(e.getMessage());
-                    }
-                    break;
-                }
-                case "^": {
-                    try {
-                        result = left.exp(right);
-                    }
-                    catch (Exception e) {
-                        throw new Exception(e.getMessage());
-                    }
-                    break;
-                }
-                case "%": {
-                    try {
-                        result = left.mod(right);
-                    }
-                    catch (Exception e) {
-                        throw new Exception(e.getMessage());
-                    }
-                    break;
-                }
-                case "<": {
-                    try {
-                        result = left.lt(right);
-                    }
-                    catch (Exception e) {
-                        throw new Exception(e.getMessage());
-                    }
-                    break;
-                }
-                case ">": {
-                    try {
-                        result = left.gt(right);
-                    }
-                    catch (Exception e) {
-                        throw new Exception(e.getMessage());
-                    }
-                    break;
-                }
-                default: {
-                    throw new Exception(String.format("Binary operation not found: %s", id));
-                }
+            if (opcode == OpCode.UNKNOWN) {
+                throw new Exception(String.format("Binary operation not found: %s", operation.getId()));
             }
+            return OperationKernels.evaluateBinary(opcode, left, right);
         }
-
-        return result;
     }
 
     public Operation find(String id) {
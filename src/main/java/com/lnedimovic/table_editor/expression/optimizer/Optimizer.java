@@ -0,0 +1,273 @@
+package com.lnedimovic.table_editor.expression.optimizer;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.*;
+import com.lnedimovic.table_editor.expression.function.Thunk;
+import com.lnedimovic.table_editor.expression.operation.OperationSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <code>Optimizer</code> rewrites an abstract syntax tree into an equivalent one, cheaper to evaluate:
+ * <ul>
+ *     <li>Constant folding - operations and calls of deterministic functions with constant arguments (including nullary ones, e.g. pi()),
+ *     are evaluated once, and replaced by their result. Subtrees whose evaluation fails are kept, so the error is reported at evaluation time.</li>
+ *     <li>Pruning - calls with lazy arguments (see {@link Thunk}) whose other arguments are constant, are replaced by the lazy argument they take,
+ *     e.g. if(1 &lt; 2, A1, B1) by A1.</li>
+ *     <li>Common subexpression elimination - a subtree appearing several times within the formula is evaluated only once
+ *     (see {@link LetNode}, {@link SharedNode}). Subtrees are never hoisted out of lazy arguments, which may not be evaluated at all.</li>
+ * </ul>
+ * Given trees are never modified; rewritten nodes are new instances.
+ */
+public final class Optimizer {
+    private Optimizer() {}
+
+    /**
+     * Optimizes the (sub)tree.
+     * @param root       Root of the (sub)tree.
+     * @param operations Operations used to evaluate constant subtrees.
+     * @return           Root of the optimized (sub)tree; the given root, if nothing could be optimized.
+     */
+    public static Node optimize(Node root, OperationSet operations) {
+        return eliminateCommonSubexpressions(fold(root, operations));
+    }
+
+    /**
+     * Folds constant subtrees, bottom-up.
+     * @param node       Current node.
+     * @param operations Operations used to evaluate constant subtrees.
+     * @return           Folded node.
+     */
+    public static Node fold(Node node, OperationSet operations) {
+        Node[] children = node.getChildren();
+        if (children.length == 0 && !(node instanceof FunctionNode)) {
+            return node;
+        }
+
+        Node[]  folded      = new Node[children.length];
+        boolean allConstant = true;
+        for (int idx = 0; idx < children.length; idx++) {
+            folded[idx]  = fold(children[idx], operations);
+            allConstant &= folded[idx] instanceof ConstantNode;
+        }
+        Node rebuilt = node.withChildren(folded);
+
+        if (rebuilt instanceof FunctionNode && ((FunctionNode) rebuilt).getLazyArguments() != null) {
+            return prune((FunctionNode) rebuilt);
+        }
+        if (!allConstant || !isFoldable(rebuilt)) {
+            return rebuilt;
+        }
+        try {
+            DType<?> value = rebuilt.evaluate(new EvaluationContext(operations));
+            return (value == null) ? rebuilt : new ConstantNode(value);
+        }
+        catch (Exception e) {
+            // E.g. division by 0 - left to fail at evaluation time, as it would without folding
+            return rebuilt;
+        }
+    }
+
+    /**
+     * Prunes the call with lazy arguments, if all of its other arguments are constant. The call is evaluated with deferred thunks
+     * (see {@link Thunk#deferred(Node)}), so no lazy argument is evaluated - the call either returns the forced value of one of them as it is, or doesn't force any.
+     * @param call Call, with folded arguments.
+     * @return     Lazy argument the call returns, or the constant result of the call; the call itself, if it depends on the values of lazy arguments.
+     */
+    private static Node prune(FunctionNode call) {
+        if (!call.getFunction().isDeterministic()) {
+            return call;
+        }
+
+        Node[]     arguments = call.getArguments();
+        Object[]   values    = new Object[arguments.length];
+        for (int idx = 0; idx < arguments.length; idx++) {
+            if (call.isLazy(idx)) {
+                values[idx] = Thunk.deferred(arguments[idx]);
+            }
+            else if (arguments[idx] instanceof ConstantNode && ((ConstantNode) arguments[idx]).getValue() != null) {
+                values[idx] = ((ConstantNode) arguments[idx]).getValue();
+            }
+            else {
+                return call;
+            }
+        }
+
+        DType<?> result;
+        try {
+            result = call.apply(values);
+        }
+        catch (Exception e) {
+            return call;
+        }
+
+        boolean forced = false;
+        for (int idx = 0; idx < arguments.length; idx++) {
+            if (values[idx] instanceof Thunk && ((Thunk) values[idx]).isForced()) {
+                if (result == ((Thunk) values[idx]).getForcedValue()) {
+                    return arguments[idx];
+                }
+                forced = true;
+            }
+        }
+
+        return (forced || result == null) ? call : new ConstantNode(result);
+    }
+
+    /**
+     * @param node Node with constant children.
+     * @return     True if the node always evaluates the same way, given constant children; false, otherwise.
+     */
+    private static boolean isFoldable(Node node) {
+        if (node instanceof UnaryOpNode || node instanceof BinaryOpNode || node instanceof ArrayNode) {
+            return true;
+        }
+        if (node instanceof FunctionNode) {
+            return ((FunctionNode) node).getFunction().isDeterministic();
+        }
+        return false;
+    }
+
+    /**
+     * Replaces every repeated subtree with a {@link SharedNode}, defined once by a {@link LetNode} at the root.
+     * @param root Root of the (sub)tree.
+     * @return     Root of the rewritten (sub)tree; the given root, if nothing is repeated.
+     */
+    public static Node eliminateCommonSubexpressions(Node root) {
+        // Structurally equal subtrees are given the same number (hash-consing)
+        Map<Node, Integer> numbers = new IdentityHashMap<>();
+        number(root, numbers, new HashMap<>());
+
+        // Occurrences are counted top-down, not descending into repeated occurrences - their subtrees are shared as a whole
+        Map<Integer, Integer> occurrences = new HashMap<>();
+        countOccurrences(root, numbers, occurrences);
+
+        // Lazy arguments are rewritten on their own, even if nothing else is repeated
+        List<Node>            definitions = new ArrayList<>();
+        Map<Integer, Integer> indices     = new HashMap<>();
+        Node                  body        = share(root, numbers, occurrences, indices, definitions);
+        if (definitions.isEmpty()) {
+            return body;
+        }
+
+        return LetNode.of(definitions.toArray(new Node[0]), body);
+    }
+
+    /**
+     * Numbers the subtree of given node, bottom-up.
+     * @param node    Current node.
+     * @param numbers Numbers of the visited nodes.
+     * @param keys    Numbers of the structural keys seen so far.
+     * @return        Number of the node.
+     */
+    private static int number(Node node, Map<Node, Integer> numbers, Map<List<Object>, Integer> keys) {
+        Node[]       children = node.getChildren();
+        List<Object> key      = new ArrayList<>(children.length + 2);
+        key.add(node.getClass());
+        key.add(payload(node));
+        for (Node child : children) {
+            key.add(number(child, numbers, keys));
+        }
+
+        Integer number = keys.get(key);
+        if (number == null) {
+            number = keys.size();
+            keys.put(key, number);
+        }
+        numbers.put(node, number);
+
+        return number;
+    }
+
+    /**
+     * @param node Node.
+     * @return     What distinguishes the node from other nodes of the same class, apart from its children.
+     */
+    private static Object payload(Node node) {
+        if (node instanceof ConstantNode) {
+            DType<?> value = ((ConstantNode) node).getValue();
+            return (value == null) ? "null" : Arrays.asList(value.getClass(), value.toString());
+        }
+        if (node instanceof ReferenceNode) {
+            return ((ReferenceNode) node).getCanonicalReference();
+        }
+        if (node instanceof UnaryOpNode) {
+            return ((UnaryOpNode) node).getOperation().getId();
+        }
+        if (node instanceof BinaryOpNode) {
+            return ((BinaryOpNode) node).getOperation().getId();
+        }
+        if (node instanceof FunctionNode) {
+            return ((FunctionNode) node).getFunction().getId();
+        }
+        if (node instanceof ArrayNode) {
+            return "";
+        }
+
+        // Nodes of unknown semantics are never equal to each other
+        return new Object();
+    }
+
+    private static void countOccurrences(Node node, Map<Node, Integer> numbers, Map<Integer, Integer> occurrences) {
+        int count = occurrences.merge(numbers.get(node), 1, Integer::sum);
+        if (count > 1) {
+            return;
+        }
+        Node[] children = node.getChildren();
+        for (int idx = 0; idx < children.length; idx++) {
+            // Lazy arguments may not be evaluated at all, so their subtrees are never shared with the rest of the formula
+            if (!isLazy(node, idx)) {
+                countOccurrences(children[idx], numbers, occurrences);
+            }
+        }
+    }
+
+    private static boolean isLazy(Node node, int idx) {
+        return node instanceof FunctionNode && ((FunctionNode) node).isLazy(idx);
+    }
+
+    /**
+     * Rewrites the subtree of given node, replacing the repeated subtrees with <code>SharedNodes</code>.
+     * Definitions are collected bottom-up, so every definition only uses the ones before it.
+     * Lazy arguments get definitions of their own, evaluated only along with them.
+     * @param node        Current node.
+     * @param numbers     Numbers of the nodes.
+     * @param occurrences Number of occurrences of each number.
+     * @param indices     Definition indices of the numbers already shared.
+     * @param definitions Definitions collected so far.
+     * @return            Rewritten node.
+     */
+    private static Node share(Node node, Map<Node, Integer> numbers, Map<Integer, Integer> occurrences,
+                              Map<Integer, Integer> indices, List<Node> definitions) {
+        Node[] children = node.getChildren();
+        int    number   = numbers.get(node);
+
+        // Leaves are as cheap to evaluate as the shared value itself
+        boolean shared = occurrences.getOrDefault(number, 0) > 1 && children.length > 0;
+        if (shared && indices.containsKey(number)) {
+            return new SharedNode(indices.get(number));
+        }
+
+        Node[] rewritten = new Node[children.length];
+        for (int idx = 0; idx < children.length; idx++) {
+            rewritten[idx] = isLazy(node, idx) ? eliminateCommonSubexpressions(children[idx])
+                                               : share(children[idx], numbers, occurrences, indices, definitions);
+        }
+        Node rebuilt = node.withChildren(rewritten);
+
+        if (!shared) {
+            return rebuilt;
+        }
+        indices.put(number, definitions.size());
+        definitions.add(rebuilt);
+
+        return new SharedNode(definitions.size() - 1);
+    }
+}
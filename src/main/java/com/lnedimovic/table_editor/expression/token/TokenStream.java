@@ -0,0 +1,218 @@
+package com.lnedimovic.table_editor.expression.token;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+import com.lnedimovic.table_editor.table.model.CellReference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <code>TokenStream</code> is a compact sequence of tokens of an expression, produced by {@link com.lnedimovic.table_editor.expression.Tokenizer#lex(char[])}.
+ * <p>
+ * Every token is kept as three ints - its kind (see {@link TokenType}) and the bounds of its text within the expression.
+ * Tokens carrying a value have it in a side table of literals: operations and functions they stand for,
+ * values of numerical constants, contents of strings and resolved cell ranges of references (see {@link CellReference}).
+ */
+public final class TokenStream {
+    /**
+     * Kind of a token past the end of the stream.
+     */
+    public static final int END = -1;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    /**
+     * Expression the tokens were found in.
+     */
+    private final char[] source;
+
+    /**
+     * Kind, start and end of every token, in order.
+     */
+    private int[]    tokens;
+    /**
+     * Literal of every token; null, for tokens without one.
+     */
+    private Object[] literals;
+    /**
+     * Number of tokens.
+     */
+    private int      size = 0;
+
+    /**
+     * Creates an empty stream.
+     * @param source Expression the tokens are found in.
+     */
+    public TokenStream(char[] source) {
+        this.source   = source;
+        this.tokens   = new int[3 * 16];
+        this.literals = new Object[16];
+    }
+
+    /**
+     * Creates a stream out of tokens (see {@link Token}). The text of every token is its value.
+     * @param tokens Tokens, in order.
+     * @return       Stream of the tokens.
+     */
+    public static TokenStream of(List<Token> tokens) {
+        StringBuilder builder = new StringBuilder();
+        int[]         bounds  = new int[tokens.size() + 1];
+        for (int idx = 0; idx < tokens.size(); idx++) {
+            builder.append(tokens.get(idx).getValue());
+            bounds[idx + 1] = builder.length();
+        }
+
+        TokenStream stream = new TokenStream(builder.toString().toCharArray());
+        for (int idx = 0; idx < tokens.size(); idx++) {
+            Token  token   = tokens.get(idx);
+            Object literal = null;
+            switch (token.getType()) {
+                case OPERATION:
+                case FUNCTION:           literal = token.getRelated();              break;
+                case NUMERICAL_CONSTANT: literal = token.getValue();                break;
+                case REFERENCE:          literal = CellReference.parse((String) token.getValue().getValue()); break;
+                case STRING:             literal = token.getValue().getValue();     break;
+                default:                                                            break;
+            }
+            stream.add(token.getType(), bounds[idx], bounds[idx + 1], literal);
+        }
+
+        return stream;
+    }
+
+    /**
+     * Appends a token.
+     * @param type    Type of the token.
+     * @param start   Start of the token's text.
+     * @param end     End (exclusive) of the token's text.
+     * @param literal Literal of the token; null, if it has none.
+     */
+    public void add(TokenType type, int start, int end, Object literal) {
+        if (size == literals.length) {
+            tokens   = Arrays.copyOf(tokens,   2 * tokens.length);
+            literals = Arrays.copyOf(literals, 2 * literals.length);
+        }
+
+        tokens[3 * size]     = type.ordinal();
+        tokens[3 * size + 1] = start;
+        tokens[3 * size + 2] = end;
+        literals[size]       = literal;
+        size++;
+    }
+
+    /**
+     * @return Number of tokens.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param idx Index of a token.
+     * @return    Kind of the token (i.e. ordinal of its {@link TokenType}); {@link #END}, past the end of the stream.
+     */
+    public int kind(int idx) {
+        return (idx < 0 || idx >= size) ? END : tokens[3 * idx];
+    }
+
+    /**
+     * @param idx Index of a token.
+     * @return    Type of the token; null, past the end of the stream.
+     */
+    public TokenType type(int idx) {
+        int kind = kind(idx);
+        return (kind == END) ? null : TYPES[kind];
+    }
+
+    public int start(int idx) {
+        return tokens[3 * idx + 1];
+    }
+    public int end(int idx) {
+        return tokens[3 * idx + 2];
+    }
+
+    /**
+     * @param idx Index of a token.
+     * @return    Literal of the token; null, if it has none.
+     */
+    public Object literal(int idx) {
+        return literals[idx];
+    }
+
+    /**
+     * @param idx Index of a token.
+     * @param chr Character.
+     * @return    True if the token is a single character token (e.g. a parenthesis) of given character; false, otherwise.
+     */
+    public boolean is(int idx, char chr) {
+        if (idx < 0 || idx >= size) {
+            return false;
+        }
+        int start = tokens[3 * idx + 1];
+        return tokens[3 * idx + 2] - start == 1 && source[start] == chr && literals[idx] == null;
+    }
+
+    /**
+     * @param idx Index of a token.
+     * @return    Text of the token, as found in the expression.
+     */
+    public String text(int idx) {
+        return new String(source, start(idx), end(idx) - start(idx));
+    }
+
+    /**
+     * Key of the stream - kind and length-prefixed text of every token. Whitespace between tokens is left out,
+     * while the boundaries of tokens and the contents of strings are kept, so only expressions of the same tokens share a key.
+     * @return Key of the stream, e.g. <code>=1 + 2</code> and <code>=1+2</code> share a key, while <code>=1 2</code> and <code>=12</code> don't.
+     */
+    public String getKey() {
+        StringBuilder builder = new StringBuilder(source.length + 2 * size);
+        for (int idx = 0; idx < size; idx++) {
+            builder.append(tokens[3 * idx]).append(',').append(end(idx) - start(idx)).append(':').append(source, start(idx), end(idx) - start(idx));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @return Tokens of the stream, as separate objects (see {@link Token}).
+     */
+    public ArrayList<Token> toTokens() {
+        ArrayList<Token> list = new ArrayList<>(size);
+        for (int idx = 0; idx < size; idx++) {
+            list.add(toToken(idx));
+        }
+
+        return list;
+    }
+
+    private Token toToken(int idx) {
+        Object literal = literals[idx];
+        switch (type(idx)) {
+            case OPERATION:
+            case FUNCTION:
+                return new Token(new DTypeString(text(idx)), literal, type(idx));
+            case NUMERICAL_CONSTANT:
+                return new Token((DType<?>) literal, null, type(idx));
+            case REFERENCE:
+            case STRING:
+                return new Token(new DTypeString(literal.toString()), "", type(idx));
+            default:
+                return new Token(new DTypeString(text(idx)), "", type(idx));
+        }
+    }
+
+    /**
+     * @return String representation of the stream.
+     */
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int idx = 0; idx < size; idx++) {
+            builder.append(toToken(idx)).append(" :: ");
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.lnedimovic.table_editor.expression.typing;
+
+/**
+ * <code>Deoptimization</code> signals that a specialized evaluation can't produce the result, so the generic (boxed) evaluation has to be used instead.
+ * <p>
+ * It never escapes {@link com.lnedimovic.table_editor.expression.ast.node.nodes.SpecializedNode}. Both instances are preallocated and carry no stack trace,
+ * so signalling is cheap.
+ */
+public final class Deoptimization extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A speculated type turned out wrong - the specialization is no longer valid.
+     */
+    public static final Deoptimization GUARD_FAILED = new Deoptimization("Type guard failed.", true);
+    /**
+     * The operation fails for the current values (e.g. division by 0) - the generic evaluation reports the error.
+     */
+    public static final Deoptimization FALLBACK     = new Deoptimization("Specialized evaluation failed.", false);
+
+    /**
+     * Whether the specialization should be abandoned for good.
+     */
+    private final boolean permanent;
+
+    private Deoptimization(String message, boolean permanent) {
+        super(message, null, false, false);
+
+        this.permanent = permanent;
+    }
+
+    public boolean isPermanent() {
+        return permanent;
+    }
+}
@@ -0,0 +1,219 @@
+package com.lnedimovic.table_editor.expression.typing;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+import com.lnedimovic.table_editor.expression.operation.OpCode;
+
+/**
+ * <code>PrimitiveExpression</code> is a type-specialized (sub)expression, computing on primitive <code>int</code>, <code>double</code>
+ * and <code>boolean</code> values instead of allocating a <code>DType</code> for every intermediate result.
+ * <p>
+ * Integers are 32-bit, wrapping around on overflow exactly as {@link DTypeInteger} does.
+ * Only the method matching the expression's type (see {@link #getType()}) is to be called.
+ */
+public abstract class PrimitiveExpression {
+    /**
+     * Result type: <code>DTypeId.INTEGER</code>, <code>DTypeId.DOUBLE</code> or <code>DTypeId.BOOLEAN</code>.
+     */
+    private final int type;
+
+    protected PrimitiveExpression(int type) {
+        this.type = type;
+    }
+
+    public int evaluateInt(EvaluationContext context) throws Exception {
+        throw new IllegalStateException("Not an integer expression.");
+    }
+    public double evaluateDouble(EvaluationContext context) throws Exception {
+        throw new IllegalStateException("Not a double expression.");
+    }
+    public boolean evaluateBoolean(EvaluationContext context) throws Exception {
+        throw new IllegalStateException("Not a boolean expression.");
+    }
+
+    /**
+     * @return           Value of a numeric expression, promoted to double.
+     * @throws Exception In case of deoptimization, or evaluation error.
+     */
+    public double evaluateAsDouble(EvaluationContext context) throws Exception {
+        return (type == DTypeId.INTEGER) ? evaluateInt(context) : evaluateDouble(context);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Integer constant.
+     */
+    public static class IntConstant extends PrimitiveExpression {
+        private final int value;
+
+        public IntConstant(int value) {
+            super(DTypeId.INTEGER);
+            this.value = value;
+        }
+
+        @Override
+        public int evaluateInt(EvaluationContext context) {
+            return value;
+        }
+    }
+
+    /**
+     * Double constant.
+     */
+    public static class DoubleConstant extends PrimitiveExpression {
+        private final double value;
+
+        public DoubleConstant(double value) {
+            super(DTypeId.DOUBLE);
+            this.value = value;
+        }
+
+        @Override
+        public double evaluateDouble(EvaluationContext context) {
+            return value;
+        }
+    }
+
+    /**
+     * Generically evaluated node (e.g. a cell reference, or a function call) of speculated numeric type, unboxed behind a type guard.
+     */
+    public static class Guarded extends PrimitiveExpression {
+        private final Node node;
+
+        public Guarded(Node node, int type) {
+            super(type);
+            this.node = node;
+        }
+
+        @Override
+        public int evaluateInt(EvaluationContext context) throws Exception {
+            DType<?> value = node.evaluate(context);
+            if (value == null || value.getTypeId() != DTypeId.INTEGER) {
+                throw Deoptimization.GUARD_FAILED;
+            }
+            return ((DTypeInteger) value).getValue();
+        }
+
+        @Override
+        public double evaluateDouble(EvaluationContext context) throws Exception {
+            DType<?> value = node.evaluate(context);
+            if (value == null || value.getTypeId() != DTypeId.DOUBLE) {
+                throw Deoptimization.GUARD_FAILED;
+            }
+            return ((DTypeDouble) value).getValue();
+        }
+    }
+
+    /**
+     * Negation of a numeric expression.
+     */
+    public static class Negation extends PrimitiveExpression {
+        private final PrimitiveExpression operand;
+
+        public Negation(PrimitiveExpression operand) {
+            super(operand.getType());
+            this.operand = operand;
+        }
+
+        @Override
+        public int evaluateInt(EvaluationContext context) throws Exception {
+            return -operand.evaluateInt(context);
+        }
+
+        @Override
+        public double evaluateDouble(EvaluationContext context) throws Exception {
+            return -operand.evaluateDouble(context);
+        }
+    }
+
+    /**
+     * Arithmetic operation or comparison of two numeric expressions.
+     * Mixed integer and double operands are computed in double, as the respective <code>DType</code> operations do.
+     */
+    public static class Binary extends PrimitiveExpression {
+        private final int                 opcode;
+        private final PrimitiveExpression left;
+        private final PrimitiveExpression right;
+
+        /**
+         * @param opcode Opcode of a binary operation, other than modulo on doubles.
+         * @param type   Result type of the operation.
+         * @param left   Left operand.
+         * @param right  Right operand.
+         */
+        public Binary(int opcode, int type, PrimitiveExpression left, PrimitiveExpression right) {
+            super(type);
+            this.opcode = opcode;
+            this.left   = left;
+            this.right  = right;
+        }
+
+        @Override
+        public int evaluateInt(EvaluationContext context) throws Exception {
+            int leftValue  = left.evaluateInt(context);
+            int rightValue = right.evaluateInt(context);
+
+            switch (opcode) {
+                case OpCode.ADD: return leftValue + rightValue;
+                case OpCode.SUB: return leftValue - rightValue;
+                case OpCode.MUL: return leftValue * rightValue;
+                case OpCode.EXP: return (int) Math.pow(leftValue, rightValue);
+                case OpCode.DIV: {
+                    if (rightValue == 0) {
+                        throw Deoptimization.FALLBACK;
+                    }
+                    return leftValue / rightValue;
+                }
+                case OpCode.MOD: {
+                    if (rightValue == 0) {
+                        throw Deoptimization.FALLBACK;
+                    }
+                    return leftValue % rightValue;
+                }
+                default: throw new IllegalStateException("Not an integer operation: " + opcode);
+            }
+        }
+
+        @Override
+        public double evaluateDouble(EvaluationContext context) throws Exception {
+            double leftValue  = left.evaluateAsDouble(context);
+            double rightValue = right.evaluateAsDouble(context);
+
+            switch (opcode) {
+                case OpCode.ADD: return leftValue + rightValue;
+                case OpCode.SUB: return leftValue - rightValue;
+                case OpCode.MUL: return leftValue * rightValue;
+                case OpCode.EXP: return Math.pow(leftValue, rightValue);
+                case OpCode.DIV: {
+                    if (rightValue == 0) {
+                        throw Deoptimization.FALLBACK;
+                    }
+                    return leftValue / rightValue;
+                }
+                default: throw new IllegalStateException("Not a double operation: " + opcode);
+            }
+        }
+
+        @Override
+        public boolean evaluateBoolean(EvaluationContext context) throws Exception {
+            if (left.getType() == DTypeId.INTEGER && right.getType() == DTypeId.INTEGER) {
+                int leftValue  = left.evaluateInt(context);
+                int rightValue = right.evaluateInt(context);
+
+                return (opcode == OpCode.LT) ? leftValue < rightValue : leftValue > rightValue;
+            }
+
+            double leftValue  = left.evaluateAsDouble(context);
+            double rightValue = right.evaluateAsDouble(context);
+
+            return (opcode == OpCode.LT) ? leftValue < rightValue : leftValue > rightValue;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.lnedimovic.table_editor.expression.typing;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.*;
+import com.lnedimovic.table_editor.expression.function.Thunk;
+import com.lnedimovic.table_editor.expression.operation.OpCode;
+
+/**
+ * <code>Specializer</code> replaces numeric subtrees of an abstract syntax tree with type-specialized nodes (see {@link SpecializedNode}).
+ * <p>
+ * Types are inferred bottom-up (see {@link TypeInference}): constants and function results have their type known in advance,
+ * while the types of referenced cells are speculated, and guarded at evaluation time.
+ * Every maximal subtree of arithmetic operations and comparisons on numeric operands is turned into a single {@link PrimitiveExpression}.
+ */
+public final class Specializer {
+    private Specializer() {}
+
+    /**
+     * Specializes the (sub)tree.
+     * @param root           Root of the (sub)tree.
+     * @param referenceTypes Speculated types of (single-cell) referenced values.
+     * @return               Root of the specialized (sub)tree; the given root, if nothing could be specialized.
+     */
+    public static Node specialize(Node root, TypeInference.ReferenceTypes referenceTypes) {
+        return visit(root, referenceTypes).wrap();
+    }
+
+    /**
+     * Infers the type of the node and its specialized form, specializing the subtrees that can't become part of it.
+     * @param node           Current node.
+     * @param referenceTypes Speculated types of referenced values.
+     * @return               Result of the visit.
+     */
+    private static Result visit(Node node, TypeInference.ReferenceTypes referenceTypes) {
+        if (node instanceof ConstantNode) {
+            DType<?> value = ((ConstantNode) node).getValue();
+            if (value instanceof DTypeInteger) {
+                return new Result(node, DTypeId.INTEGER, new PrimitiveExpression.IntConstant(((DTypeInteger) value).getValue()));
+            }
+            if (value instanceof DTypeDouble) {
+                return new Result(node, DTypeId.DOUBLE, new PrimitiveExpression.DoubleConstant(((DTypeDouble) value).getValue()));
+            }
+            return new Result(node, (value == null) ? DTypeId.OTHER : value.getTypeId(), null);
+        }
+        if (node instanceof ReferenceNode) {
+            ReferenceNode reference = (ReferenceNode) node;
+            if (!reference.isSingleCell()) {
+                return new Result(node, DTypeId.ARRAY, null);
+            }
+
+            int type = referenceTypes.typeOf(reference);
+            return new Result(node, type, isNumeric(type) ? new PrimitiveExpression.Guarded(node, type) : null);
+        }
+        if (node instanceof UnaryOpNode) {
+            UnaryOpNode unary   = (UnaryOpNode) node;
+            Result      operand = visit(unary.getNext(), referenceTypes);
+
+            int type;
+            try {
+                type = TypeInference.unaryType(unary.getOperation(), operand.type);
+            }
+            catch (Exception e) {
+                type = DTypeId.OTHER;
+            }
+
+            if (operand.expression != null && isNumeric(operand.type)) {
+                int opcode = unary.getOperation().getOpcode();
+                if (opcode == OpCode.ID) {
+                    return new Result(node.withChildren(new Node[]{operand.node}), type, operand.expression);
+                }
+                if (opcode == OpCode.NEG) {
+                    return new Result(node.withChildren(new Node[]{operand.node}), type, new PrimitiveExpression.Negation(operand.expression));
+                }
+            }
+            return new Result(node.withChildren(new Node[]{operand.wrap()}), type, null);
+        }
+        if (node instanceof BinaryOpNode) {
+            BinaryOpNode binary = (BinaryOpNode) node;
+            Result       left   = visit(binary.getLeft(),  referenceTypes);
+            Result       right  = visit(binary.getRight(), referenceTypes);
+
+            int type;
+            try {
+                type = TypeInference.binaryType(binary.getOperation(), left.type, right.type);
+            }
+            catch (Exception e) {
+                type = DTypeId.OTHER;
+            }
+
+            int opcode = binary.getOperation().getOpcode();
+            if (left.expression != null && right.expression != null && isNumeric(left.type) && isNumeric(right.type) && isSpecializable(opcode, left.type, right.type)) {
+                PrimitiveExpression expression = new PrimitiveExpression.Binary(opcode, type, left.expression, right.expression);
+                return new Result(node.withChildren(new Node[]{left.node, right.node}), type, expression);
+            }
+            return new Result(node.withChildren(new Node[]{left.wrap(), right.wrap()}), type, null);
+        }
+
+        // Function calls, arrays and anything else are evaluated generically, with their children specialized
+        Node[]     children      = node.getChildren();
+        Node[]     specialized   = new Node[children.length];
+        Class<?>[] argumentTypes = new Class<?>[children.length];
+        boolean    allKnown      = true;
+        for (int idx = 0; idx < children.length; idx++) {
+            Result child = visit(children[idx], referenceTypes);
+
+            specialized[idx]   = child.wrap();
+            argumentTypes[idx] = (node instanceof FunctionNode && ((FunctionNode) node).isLazy(idx)) ? Thunk.class : TypeInference.typeClass(child.type);
+            allKnown &= argumentTypes[idx] != null;
+        }
+        Node rebuilt = node.withChildren(specialized);
+
+        if (node instanceof ArrayNode) {
+            return new Result(rebuilt, DTypeId.ARRAY, null);
+        }
+        if (node instanceof FunctionNode && allKnown) {
+            int type;
+            try {
+                type = TypeInference.classType(((FunctionNode) node).getFunction().resolveReturnType(argumentTypes));
+            }
+            catch (Exception e) {
+                type = DTypeId.OTHER;
+            }
+
+            // Numeric results of a call can still be used by a specialized parent
+            return new Result(rebuilt, type, isNumeric(type) ? new PrimitiveExpression.Guarded(rebuilt, type) : null);
+        }
+
+        return new Result(rebuilt, DTypeId.OTHER, null);
+    }
+
+    /**
+     * @return True if the operation on given numeric types has a specialized implementation (see {@link PrimitiveExpression.Binary}).
+     */
+    private static boolean isSpecializable(int opcode, int left, int right) {
+        switch (opcode) {
+            case OpCode.ADD:
+            case OpCode.SUB:
+            case OpCode.MUL:
+            case OpCode.DIV:
+            case OpCode.EXP:
+            case OpCode.LT:
+            case OpCode.GT:
+                return true;
+            case OpCode.MOD:
+                return left == DTypeId.INTEGER && right == DTypeId.INTEGER;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isNumeric(int type) {
+        return type == DTypeId.INTEGER || type == DTypeId.DOUBLE;
+    }
+
+    /**
+     * Result of visiting a node.
+     */
+    private static class Result {
+        /**
+         * Node with its non-specializable subtrees specialized, i.e. the generic form of the node.
+         */
+        private final Node                node;
+        /**
+         * Inferred type of the node.
+         */
+        private final int                 type;
+        /**
+         * Specialized form of the node, or null if it has none.
+         */
+        private final PrimitiveExpression expression;
+
+        private Result(Node node, int type, PrimitiveExpression expression) {
+            this.node       = node;
+            this.type       = type;
+            this.expression = expression;
+        }
+
+        /**
+         * @return Node to use when the result can't become part of its parent's specialized form.
+         */
+        private Node wrap() {
+            if (expression == null || expression instanceof PrimitiveExpression.IntConstant
+                                   || expression instanceof PrimitiveExpression.DoubleConstant
+                                   || expression instanceof PrimitiveExpression.Guarded) {
+                // Nothing would be gained by specializing a single value
+                return node;
+            }
+            return new SpecializedNode(node, expression);
+        }
+    }
+}
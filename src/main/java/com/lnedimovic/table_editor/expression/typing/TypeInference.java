@@ -0,0 +1,254 @@
+package com.lnedimovic.table_editor.expression.typing;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.*;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.*;
+import com.lnedimovic.table_editor.expression.function.Thunk;
+import com.lnedimovic.table_editor.expression.operation.OpCode;
+import com.lnedimovic.table_editor.expression.operation.Operation;
+import com.lnedimovic.table_editor.expression.operation.OperationKernels;
+
+/**
+ * <code>TypeInference</code> infers result types of (sub)expressions, given as data type ids (see {@link DTypeId}).
+ * Types are inferred from constants, referenced cells and function overload signatures; {@link DTypeId#OTHER} stands for a type not known in advance.
+ * <p>
+ * Operations and function calls whose operand types are all known, but for which no implementation exists, are reported as type errors.
+ */
+public final class TypeInference {
+    /**
+     * Marks an operation undefined for given operand types.
+     */
+    private static final int UNDEFINED = -1;
+
+    /**
+     * Result types of unary operations, indexed by <code>[opcode][operandType]</code>.
+     */
+    private static final int[][]   UNARY_TYPES  = new int[OpCode.COUNT][DTypeId.COUNT];
+    /**
+     * Result types of binary operations, indexed by <code>[opcode][leftType][rightType]</code>.
+     */
+    private static final int[][][] BINARY_TYPES = new int[OpCode.COUNT][DTypeId.COUNT][DTypeId.COUNT];
+
+    static {
+        // Result types follow from the types alone, so they are found by evaluating each operation on a sample value of every type.
+        // Samples are chosen not to hit value-dependent errors (e.g. division by 0), so only genuine type errors remain.
+        DType<?>[] samples = new DType<?>[DTypeId.COUNT];
+        samples[DTypeId.INTEGER] = new DTypeInteger(2);
+        samples[DTypeId.DOUBLE]  = new DTypeDouble(2.0);
+        samples[DTypeId.BOOLEAN] = new DTypeBoolean(true);
+        samples[DTypeId.STRING]  = new DTypeString("a");
+        samples[DTypeId.ARRAY]   = new DTypeArray(new DType<?>[]{new DTypeInteger(2)});
+
+        for (int opcode = 0; opcode < OpCode.COUNT; opcode++) {
+            for (int left = 0; left < DTypeId.COUNT; left++) {
+                UNARY_TYPES[opcode][left] = (left == DTypeId.OTHER) ? DTypeId.OTHER : probeUnary(opcode, samples[left]);
+
+                for (int right = 0; right < DTypeId.COUNT; right++) {
+                    if (left == DTypeId.OTHER || right == DTypeId.OTHER) {
+                        BINARY_TYPES[opcode][left][right] = DTypeId.OTHER;
+                    }
+                    else {
+                        BINARY_TYPES[opcode][left][right] = probeBinary(opcode, samples[left], samples[right]);
+                    }
+                }
+            }
+        }
+    }
+
+    private TypeInference() {}
+
+    /**
+     * Checks the (sub)tree for type errors. References are of unknown type, unless they are ranges.
+     * @param node       Root of the (sub)tree.
+     * @return           Result type of the (sub)tree.
+     * @throws Exception In case of a type error.
+     */
+    public static int check(Node node) throws Exception {
+        return infer(node, reference -> DTypeId.OTHER);
+    }
+
+    /**
+     * Infers the result type of the (sub)tree.
+     * @param node           Root of the (sub)tree.
+     * @param referenceTypes Types of (single-cell) referenced values.
+     * @return               Result type of the (sub)tree.
+     * @throws Exception     In case of a type error.
+     */
+    public static int infer(Node node, ReferenceTypes referenceTypes) throws Exception {
+        if (node instanceof ConstantNode) {
+            DType<?> value = ((ConstantNode) node).getValue();
+            return (value == null) ? DTypeId.OTHER : value.getTypeId();
+        }
+        if (node instanceof ReferenceNode) {
+            // Ranges always evaluate into arrays
+            if (!((ReferenceNode) node).isSingleCell()) {
+                return DTypeId.ARRAY;
+            }
+            return referenceTypes.typeOf((ReferenceNode) node);
+        }
+        if (node instanceof UnaryOpNode) {
+            UnaryOpNode unary = (UnaryOpNode) node;
+            return unaryType(unary.getOperation(), infer(unary.getNext(), referenceTypes));
+        }
+        if (node instanceof BinaryOpNode) {
+            BinaryOpNode binary = (BinaryOpNode) node;
+            int left  = infer(binary.getLeft(),  referenceTypes);
+            int right = infer(binary.getRight(), referenceTypes);
+
+            return binaryType(binary.getOperation(), left, right);
+        }
+        if (node instanceof FunctionNode) {
+            return functionType((FunctionNode) node, referenceTypes);
+        }
+        if (node instanceof ArrayNode) {
+            for (Node child : node.getChildren()) {
+                infer(child, referenceTypes);
+            }
+            return DTypeId.ARRAY;
+        }
+        if (node instanceof SpecializedNode) {
+            return ((SpecializedNode) node).getExpression().getType();
+        }
+
+        return DTypeId.OTHER;
+    }
+
+    /**
+     * @param operation  Unary operation.
+     * @param operand    Type of the operand.
+     * @return           Result type of the operation.
+     * @throws Exception In case of operation being undefined for the type.
+     */
+    public static int unaryType(Operation operation, int operand) throws Exception {
+        int opcode = operation.getOpcode();
+        if (opcode == OpCode.UNKNOWN) {
+            return DTypeId.OTHER;
+        }
+
+        int result = UNARY_TYPES[opcode][operand];
+        if (result == UNDEFINED) {
+            throw new Exception(String.format("Type error: Operation %s is undefined for %s.", operation.getId(), typeName(operand)));
+        }
+        return result;
+    }
+
+    /**
+     * @param operation  Binary operation.
+     * @param left       Type of the left operand.
+     * @param right      Type of the right operand.
+     * @return           Result type of the operation.
+     * @throws Exception In case of operation being undefined for the types.
+     */
+    public static int binaryType(Operation operation, int left, int right) throws Exception {
+        int opcode = operation.getOpcode();
+        if (opcode == OpCode.UNKNOWN) {
+            return DTypeId.OTHER;
+        }
+
+        int result = BINARY_TYPES[opcode][left][right];
+        if (result == UNDEFINED) {
+            throw new Exception(String.format("Type error: Operation %s is undefined for %s and %s.", operation.getId(), typeName(left), typeName(right)));
+        }
+        return result;
+    }
+
+    /**
+     * @param node           Function call.
+     * @param referenceTypes Types of (single-cell) referenced values.
+     * @return               Declared return type of the selected overload, if known.
+     * @throws Exception     In case of no overload accepting the arguments.
+     */
+    private static int functionType(FunctionNode node, ReferenceTypes referenceTypes) throws Exception {
+        Node[]     arguments     = node.getArguments();
+        Class<?>[] argumentTypes = new Class<?>[arguments.length];
+
+        boolean allKnown = true;
+        for (int idx = 0; idx < arguments.length; idx++) {
+            // Lazy arguments are checked all the same, but passed as thunks
+            int type = infer(arguments[idx], referenceTypes);
+
+            argumentTypes[idx] = node.isLazy(idx) ? Thunk.class : typeClass(type);
+            allKnown &= argumentTypes[idx] != null;
+        }
+
+        if (!node.getFunction().acceptsArguments(argumentTypes)) {
+            throw new Exception(String.format("Type error: Can't find function %s accepting given arguments.", node.getFunction().getId()));
+        }
+        if (!allKnown) {
+            return DTypeId.OTHER;
+        }
+
+        return classType(node.getFunction().resolveReturnType(argumentTypes));
+    }
+
+    /**
+     * @param type Data type id.
+     * @return     Class of the data type; null, if not known.
+     */
+    public static Class<?> typeClass(int type) {
+        switch (type) {
+            case DTypeId.INTEGER: return DTypeInteger.class;
+            case DTypeId.DOUBLE:  return DTypeDouble.class;
+            case DTypeId.BOOLEAN: return DTypeBoolean.class;
+            case DTypeId.STRING:  return DTypeString.class;
+            case DTypeId.ARRAY:   return DTypeArray.class;
+            default:              return null;
+        }
+    }
+
+    /**
+     * @param type Class of a data type.
+     * @return     Data type id; <code>DTypeId.OTHER</code>, if the class is not a concrete data type.
+     */
+    public static int classType(Class<?> type) {
+        for (int id = 0; id < DTypeId.OTHER; id++) {
+            if (typeClass(id) == type) {
+                return id;
+            }
+        }
+        return DTypeId.OTHER;
+    }
+
+    private static String typeName(int type) {
+        Class<?> typeClass = typeClass(type);
+        return (typeClass == null) ? "unknown type" : typeClass.getSimpleName();
+    }
+
+    private static int probeUnary(int opcode, DType<?> operand) {
+        if (opcode != OpCode.ID && opcode != OpCode.NEG) {
+            return UNDEFINED;
+        }
+        try {
+            return OperationKernels.evaluateUnary(opcode, operand).getTypeId();
+        }
+        catch (Exception e) {
+            return UNDEFINED;
+        }
+    }
+
+    private static int probeBinary(int opcode, DType<?> left, DType<?> right) {
+        if (opcode == OpCode.ID || opcode == OpCode.NEG) {
+            return UNDEFINED;
+        }
+        try {
+            return OperationKernels.evaluateBinary(opcode, left, right).getTypeId();
+        }
+        catch (Exception e) {
+            return UNDEFINED;
+        }
+    }
+
+    /**
+     * Source of the types of referenced cells.
+     */
+    @FunctionalInterface
+    public interface ReferenceTypes {
+        /**
+         * @param reference Single-cell reference.
+         * @return          Type of the referenced value; <code>DTypeId.OTHER</code>, if not known.
+         */
+        int typeOf(ReferenceNode reference);
+    }
+}
@@ -0,0 +1,96 @@
+package com.lnedimovic.table_editor.table.handlers;
+
+import com.lnedimovic.table_editor.table.StandardTable;
+import com.lnedimovic.table_editor.table.model.CellAddress;
+import com.lnedimovic.table_editor.table.model.ParsedExpressions;
+import com.lnedimovic.table_editor.table.model.TableModel;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.event.ActionEvent;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <code>PasteHandler</code> is an action pasting tab-separated text from the clipboard (e.g. copied out of another spreadsheet) into the table,
+ * starting at the selected cell. Cells falling outside the table are dropped.
+ * <p>
+ * Formulas are parsed in the background, on all cores (see {@link TableModel#parseExpressions(Map, TableModel.ProgressListener)}), with the progress shown to the user,
+ * and stored into the model once parsed. Invalid formulas don't stop the paste - their cells are marked as errors, and reported at the end.
+ */
+public class PasteHandler extends AbstractAction {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Table this <code>PasteHandler</code> is tied to.
+     */
+    private StandardTable table;
+    /**
+     * Model the <code>table</code> is using.
+     */
+    private TableModel    model;
+
+    /**
+     * @param table Table this <code>PasteHandler</code> is tied to.
+     * @param model Model the <code>table</code> is using.
+     */
+    public PasteHandler(StandardTable table, TableModel model) {
+        this.table = table;
+        this.model = model;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        String text;
+        try {
+            text = (String) Toolkit.getDefaultToolkit().getSystemClipboard().getData(DataFlavor.stringFlavor);
+        }
+        catch (Exception ex) {
+            return; // Nothing to paste
+        }
+
+        // The index column can't be pasted into
+        int rowStart = Math.max(table.getSelectedRow(), 0);
+        int colStart = Math.max(table.getSelectedColumn(), 1);
+
+        Map<Long, String> expressions = new LinkedHashMap<>();
+        String[] lines = text.split("\\R");
+        for (int row = 0; row < lines.length && rowStart + row < model.getRowCount(); row++) {
+            String[] values = lines[row].split("\t", -1);
+            for (int col = 0; col < values.length && colStart + col < model.getColumnCount(); col++) {
+                expressions.put(CellAddress.pack(rowStart + row, colStart + col), values[col].trim());
+            }
+        }
+
+        ProgressMonitor monitor = new ProgressMonitor(table, "Pasting " + expressions.size() + " cells", null, 0, 100);
+        SwingWorker<ParsedExpressions, Void> worker = new SwingWorker<>() {
+            @Override
+            protected ParsedExpressions doInBackground() {
+                return model.parseExpressions(expressions, (done, total) -> setProgress(100 * done / total));
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                try {
+                    Map<Long, Exception> errors = model.setExpressions(get());
+                    if (!errors.isEmpty()) {
+                        long cell = errors.keySet().iterator().next();
+                        JOptionPane.showMessageDialog(null, String.format("%d pasted cell(s) have invalid formulas, e.g. %s%d: %s",
+                                errors.size(), table.getColumnName(CellAddress.col(cell)), CellAddress.row(cell) + 1, errors.get(cell).getMessage()));
+                    }
+                }
+                catch (Exception ex) {
+                    JOptionPane.showMessageDialog(null, "Exception occured while pasting: " + ex.getMessage());
+                }
+            }
+        };
+        worker.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                monitor.setProgress((Integer) event.getNewValue());
+            }
+        });
+        worker.execute();
+    }
+}
@@ -1,6 +1,5 @@
 package com.lnedimovic.table_editor.table.handlers;
 
-import com.lnedimovic.table_editor.dtype.DType;
 import com.lnedimovic.table_editor.table.model.TableModel;
 
 import javax.swing.*;
@@ -48,8 +47,8 @@ public class PopupCellEditor extends AbstractCellEditor implements TableCellEdit
 
     /**
      * In case of user wishing to edit the cell, it prompts them with a simple dialog to enter new cell value.
-     * Afterward, the value is checked for being a formula and, if yes, it's being evaluated.
-     * If no, new value is directly stored within the cell.
+     * Afterward, the value is checked for being a formula and, if yes, it's being evaluated (as if it was stored in the edited cell).
+     * Once editing stops, the expression itself is stored within the cell, so formulas are kept and re-evaluated by the model.
      *
      * @param table           The <code>JTable</code> that is asking the
      *                          editor to edit; can be <code>null</code>
@@ -68,30 +67,20 @@ public class PopupCellEditor extends AbstractCellEditor implements TableCellEdit
      */
     @Override
     public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
-        String expression = JOptionPane.showInputDialog(table, "Enter new cell value:", value);
+        TableModel model = (TableModel) table.getModel();
+        String oldExpression = model.getExpressionAt(row, column);
 
-        // If something has actually been entered
-        if (expression != null) {
-            TableModel model = (TableModel) table.getModel();
-            String newValue;
+        String expression = JOptionPane.showInputDialog(table, "Enter new cell value:", oldExpression);
 
-            DType<?> oldValue = (DType<?>) table.getModel().getValueAt(row, column);
+        // Unless something valid is entered, the cell keeps its old expression
+        textField.setText(oldExpression);
 
+        // If something has actually been entered
+        if (expression != null) {
             // Check if the entered expression is formula and try evaluating it
             try {
-                if (expression.startsWith("=")) {
-                    DType<?> result = model.checkForFormula(expression);
-                    if (result == null) {
-                        newValue = oldValue.toString();
-                    }
-                    else {
-                        newValue = result.toString();
-                    }
-                }
-                else {
-                    newValue = expression;
-                }
-                textField.setText(newValue);
+                model.checkForFormula(expression, row, column);
+                textField.setText(expression);
             }
             // If error occurs, show the error message to the user.
             catch (Exception ex) {
@@ -0,0 +1,34 @@
+package com.lnedimovic.table_editor.table.model;
+
+/**
+ * <code>CellAddress</code> packs a (row, column) pair of a cell into a single <code>long</code>.
+ * Packed addresses are used as keys wherever cells have to be stored or looked up (formulas, dependency graph), so no address objects are allocated.
+ */
+public final class CellAddress {
+    private CellAddress() {}
+
+    /**
+     * @param row Row of the cell (internal, 0-based).
+     * @param col Column of the cell (internal, column 0 being the index column).
+     * @return    Packed address of the cell.
+     */
+    public static long pack(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param address Packed address.
+     * @return        Row of the packed address.
+     */
+    public static int row(long address) {
+        return (int) (address >>> 32);
+    }
+
+    /**
+     * @param address Packed address.
+     * @return        Column of the packed address.
+     */
+    public static int col(long address) {
+        return (int) address;
+    }
+}
@@ -0,0 +1,81 @@
+package com.lnedimovic.table_editor.table.model;
+
+/**
+ * <code>CellRange</code> is a rectangular range of cells, given by its (inclusive) top-left and bottom-right corner.
+ * Rows and columns are stored in their internal form, i.e. rows start from 0, while column 0 is reserved for row indexing.
+ */
+public class CellRange {
+    private final int rowStart;
+    private final int colStart;
+    private final int rowEnd;
+    private final int colEnd;
+
+    /**
+     * Creates an instance of <code>CellRange</code>, given its corners.
+     * @param rowStart Top row.
+     * @param colStart Left column.
+     * @param rowEnd   Bottom row.
+     * @param colEnd   Right column.
+     */
+    public CellRange(int rowStart, int colStart, int rowEnd, int colEnd) {
+        this.rowStart = rowStart;
+        this.colStart = colStart;
+        this.rowEnd   = rowEnd;
+        this.colEnd   = colEnd;
+    }
+
+    /**
+     * Parses the cell range reference, in the format produced by the tokenizer (e.g. "A1:B2", or "C3:C3" for a single cell).
+     * Fixed ("$") rows and columns are read as any other.
+     * @param reference Cell range reference.
+     * @return          Parsed cell range.
+     */
+    public static CellRange parse(String reference) {
+        return CellReference.parse(reference).toRange();
+    }
+
+    /**
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     * @return    True if the cell lies within the range; false, otherwise.
+     */
+    public boolean contains(int row, int col) {
+        return row >= rowStart && row <= rowEnd && col >= colStart && col <= colEnd;
+    }
+
+    /**
+     * @param rows Number of rows to move the range by (negative moves it up).
+     * @param cols Number of columns to move the range by (negative moves it left).
+     * @return     Range of the same shape, moved by the given offsets.
+     */
+    public CellRange translate(int rows, int cols) {
+        return new CellRange(rowStart + rows, colStart + cols, rowEnd + rows, colEnd + cols);
+    }
+
+    /**
+     * @return True if the range consists of a single cell; false, otherwise.
+     */
+    public boolean isSingleCell() {
+        return rowStart == rowEnd && colStart == colEnd;
+    }
+
+    /**
+     * @return String representation of <code>CellRange</code>.
+     */
+    public String toString() {
+        return String.format("CellRange(rows=%d..%d, cols=%d..%d)", rowStart, rowEnd, colStart, colEnd);
+    }
+
+    public int getRowStart() {
+        return rowStart;
+    }
+    public int getColStart() {
+        return colStart;
+    }
+    public int getRowEnd() {
+        return rowEnd;
+    }
+    public int getColEnd() {
+        return colEnd;
+    }
+}
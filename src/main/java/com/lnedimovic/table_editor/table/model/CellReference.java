@@ -0,0 +1,267 @@
+package com.lnedimovic.table_editor.table.model;
+
+/**
+ * <code>CellReference</code> is a cell range reference as written in a formula (e.g. "A1:B2", "$AA$10:XFD1048576"),
+ * resolved into packed top-left and bottom-right cells (see {@link CellAddress}), and the flags of its bounds fixed by a "$".
+ * <p>
+ * Columns are named as in common spreadsheets - A..Z, then AA..ZZ, AAA.. up to {@link #MAX_COLUMN} (XFD).
+ * Rows are numbered from 1 up to {@link #MAX_ROW}.
+ * <p>
+ * References may also span whole columns (e.g. "A:C") or whole rows (e.g. "3:5"). Their missing bounds are the first and the last row (column) of the sheet,
+ * and are fixed, so they stay in place once the formula is copied to another cell.
+ */
+public final class CellReference {
+    /**
+     * Flags of the bounds of the range, marking them as fixed (i.e. "$").
+     */
+    public static final int ROW_START = 1;
+    public static final int COL_START = 2;
+    public static final int ROW_END   = 4;
+    public static final int COL_END   = 8;
+    /**
+     * Flags of references spanning whole columns (e.g. "A:C"), or whole rows (e.g. "3:5").
+     */
+    public static final int COLUMNS   = 16;
+    public static final int ROWS      = 32;
+
+    /**
+     * Greatest column number (XFD).
+     */
+    public static final int  MAX_COLUMN = 16384;
+    /**
+     * Greatest row number, so that the number of rows of a sheet (see {@link com.lnedimovic.table_editor.table.model.store.CellStore#getRowCount()}) fits into an <code>int</code>.
+     */
+    public static final long MAX_ROW    = Integer.MAX_VALUE;
+    /**
+     * Last row (internal, i.e. 0-based) - bottom bound of whole-column references.
+     */
+    public static final int  LAST_ROW   = (int) (MAX_ROW - 1);
+
+    /**
+     * Packed top-left and bottom-right cell of the range.
+     */
+    private final long start;
+    private final long end;
+    /**
+     * Bounds marked with a "$", and the flag of references spanning whole columns (rows).
+     */
+    private final int  fixed;
+
+    /**
+     * Creates an instance of <code>CellReference</code>.
+     * @param start Packed top-left cell.
+     * @param end   Packed bottom-right cell.
+     * @param fixed Bounds marked with a "$", and the flag of references spanning whole columns (rows).
+     */
+    public CellReference(long start, long end, int fixed) {
+        this.start = start;
+        this.end   = end;
+        this.fixed = fixed;
+    }
+
+    /**
+     * @param colStart First column.
+     * @param colEnd   Last column.
+     * @param fixed    Columns marked with a "$" (i.e. {@link #COL_START}, {@link #COL_END}).
+     * @return         Reference to the whole columns, e.g. "A:C".
+     */
+    public static CellReference columns(int colStart, int colEnd, int fixed) {
+        return new CellReference(CellAddress.pack(0, colStart), CellAddress.pack(LAST_ROW, colEnd), fixed | ROW_START | ROW_END | COLUMNS);
+    }
+
+    /**
+     * @param rowStart First row (internal, i.e. 0-based).
+     * @param rowEnd   Last row (internal, i.e. 0-based).
+     * @param fixed    Rows marked with a "$" (i.e. {@link #ROW_START}, {@link #ROW_END}).
+     * @return         Reference to the whole rows, e.g. "3:5".
+     */
+    public static CellReference rows(int rowStart, int rowEnd, int fixed) {
+        return new CellReference(CellAddress.pack(rowStart, 1), CellAddress.pack(rowEnd, MAX_COLUMN), fixed | COL_START | COL_END | ROWS);
+    }
+
+    /**
+     * Parses the cell range reference, in the format produced by the tokenizer (e.g. "A1:B2", or "$C$3:$C$3" for a single cell),
+     * or the reference to whole columns (e.g. "A:C") or rows (e.g. "3:5").
+     * @param reference Cell range reference.
+     * @return          Parsed reference.
+     * @throws IllegalArgumentException In case of invalid reference.
+     */
+    public static CellReference parse(String reference) {
+        int separator = reference.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cell range: " + reference);
+        }
+
+        int[] fixed = new int[1];
+        if (reference.chars().noneMatch(Character::isDigit)) {
+            int colStart = (int) parseLine(reference, 0, separator, false, COL_START, fixed);
+            int colEnd   = (int) parseLine(reference, separator + 1, reference.length(), false, COL_END, fixed);
+            return columns(colStart, colEnd, fixed[0]);
+        }
+        if (reference.chars().noneMatch(Character::isLetter)) {
+            long rowStart = parseLine(reference, 0, separator, true, ROW_START, fixed);
+            long rowEnd   = parseLine(reference, separator + 1, reference.length(), true, ROW_END, fixed);
+            return rows((int) (rowStart - 1), (int) (rowEnd - 1), fixed[0]);
+        }
+
+        long  start = parseCell(reference, 0, separator, ROW_START, COL_START, fixed);
+        long  end   = parseCell(reference, separator + 1, reference.length(), ROW_END, COL_END, fixed);
+
+        return new CellReference(start, end, fixed[0]);
+    }
+
+    /**
+     * @return Packed cell written between the positions, e.g. "B12" or "$AB$12". Its "$" flags are added to <code>fixed[0]</code>.
+     */
+    private static long parseCell(String reference, int from, int to, int rowFlag, int colFlag, int[] fixed) {
+        int pos = from;
+        if (pos < to && reference.charAt(pos) == '$') {
+            fixed[0] |= colFlag;
+            pos++;
+        }
+
+        int col = 0;
+        while (pos < to && reference.charAt(pos) >= 'A' && reference.charAt(pos) <= 'Z' && col <= MAX_COLUMN) {
+            col = 26 * col + (reference.charAt(pos++) - 'A' + 1);
+        }
+        if (pos < to && reference.charAt(pos) == '$') {
+            fixed[0] |= rowFlag;
+            pos++;
+        }
+
+        long row = 0;
+        int  rowStart = pos;
+        while (pos < to && Character.isDigit(reference.charAt(pos)) && row <= MAX_ROW) {
+            row = 10 * row + (reference.charAt(pos++) - '0');
+        }
+
+        if (pos != to || pos == rowStart || col < 1 || col > MAX_COLUMN || row < 1 || row > MAX_ROW) {
+            throw new IllegalArgumentException("Invalid cell reference: " + reference.substring(from, to));
+        }
+
+        // Internally, 0-column is reserved for row indexing, while the row 0 is standard
+        return CellAddress.pack((int) (row - 1), col);
+    }
+
+    /**
+     * @return Column (row) number written between the positions, e.g. "AB" or "$12". Its "$" flag is added to <code>fixed[0]</code>.
+     */
+    private static long parseLine(String reference, int from, int to, boolean row, int flag, int[] fixed) {
+        int pos = from;
+        if (pos < to && reference.charAt(pos) == '$') {
+            fixed[0] |= flag;
+            pos++;
+        }
+
+        long value = 0;
+        int  start = pos;
+        while (pos < to && value <= MAX_ROW) {
+            char chr = reference.charAt(pos);
+            if (row ? !Character.isDigit(chr) : (chr < 'A' || chr > 'Z')) {
+                break;
+            }
+            value = row ? 10 * value + (chr - '0') : 26 * value + (chr - 'A' + 1);
+            pos++;
+        }
+
+        if (pos != to || pos == start || value < 1 || value > (row ? MAX_ROW : MAX_COLUMN)) {
+            throw new IllegalArgumentException("Invalid cell reference: " + reference.substring(from, to));
+        }
+        return value;
+    }
+
+    /**
+     * @param col Column number (internal, i.e. A = 1).
+     * @return    Name of the column, e.g. "A", "Z", "AA", "XFD".
+     */
+    public static String columnName(int col) {
+        StringBuilder name = new StringBuilder();
+        while (col > 0) {
+            col--;
+            name.append((char) ('A' + col % 26));
+            col /= 26;
+        }
+
+        return name.reverse().toString();
+    }
+
+    /**
+     * @return Packed top-left cell.
+     */
+    public long getStart() {
+        return start;
+    }
+    /**
+     * @return Packed bottom-right cell.
+     */
+    public long getEnd() {
+        return end;
+    }
+    /**
+     * @return Bounds marked with a "$".
+     */
+    public int getFixed() {
+        return fixed;
+    }
+
+    /**
+     * @return True if the reference spans whole columns (e.g. "A:C"); false, otherwise.
+     */
+    public boolean isWholeColumns() {
+        return (fixed & COLUMNS) != 0;
+    }
+    /**
+     * @return True if the reference spans whole rows (e.g. "3:5"); false, otherwise.
+     */
+    public boolean isWholeRows() {
+        return (fixed & ROWS) != 0;
+    }
+
+    /**
+     * @return Range of the reference, as written (i.e. not relative to any cell).
+     */
+    public CellRange toRange() {
+        return new CellRange(CellAddress.row(start), CellAddress.col(start), CellAddress.row(end), CellAddress.col(end));
+    }
+
+    /**
+     * @return Reference in the format produced by the tokenizer, e.g. "A1:$B$2", "$A:C" or "3:5".
+     */
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (isWholeColumns()) {
+            builder.append((fixed & COL_START) != 0 ? "$" : "").append(columnName(CellAddress.col(start))).append(':')
+                   .append((fixed & COL_END)   != 0 ? "$" : "").append(columnName(CellAddress.col(end)));
+        }
+        else if (isWholeRows()) {
+            builder.append((fixed & ROW_START) != 0 ? "$" : "").append(CellAddress.row(start) + 1L).append(':')
+                   .append((fixed & ROW_END)   != 0 ? "$" : "").append(CellAddress.row(end) + 1L);
+        }
+        else {
+            appendCell(builder, start, (fixed & ROW_START) != 0, (fixed & COL_START) != 0);
+            builder.append(':');
+            appendCell(builder, end, (fixed & ROW_END) != 0, (fixed & COL_END) != 0);
+        }
+
+        return builder.toString();
+    }
+
+    private static void appendCell(StringBuilder builder, long cell, boolean fixedRow, boolean fixedCol) {
+        builder.append(fixedCol ? "$" : "").append(columnName(CellAddress.col(cell)))
+               .append(fixedRow ? "$" : "").append(CellAddress.row(cell) + 1L);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CellReference)) {
+            return false;
+        }
+        CellReference reference = (CellReference) other;
+        return start == reference.start && end == reference.end && fixed == reference.fixed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(start) * 31 + Long.hashCode(end) * 7 + fixed;
+    }
+}
@@ -0,0 +1,275 @@
+package com.lnedimovic.table_editor.table.model;
+
+import java.util.*;
+
+/**
+ * <code>DependencyGraph</code> keeps track of precedents (cells a formula references) and dependents (formulas referencing a cell) of every formula cell.
+ * It is used to find out which formulas have to be re-evaluated after a cell changes, and in which order.
+ * <p>
+ * Cells are identified by their packed address (see {@link CellAddress}).
+ * Single-cell references are indexed directly by the referenced cell, while range references are indexed by every column they span -
+ * or by every row, for ranges wider than they are tall (e.g. whole rows, such as 3:3) - so finding the dependents of a cell
+ * never requires enumerating the cells of a (possibly huge) range.
+ */
+public class DependencyGraph {
+    /**
+     * Ranges referenced by each formula cell.
+     */
+    private final Map<Long, CellRange[]>             precedents      = new HashMap<>();
+    /**
+     * Formula cells referencing a single cell, keyed by the referenced cell.
+     */
+    private final Map<Long, Set<Long>>               cellDependents  = new HashMap<>();
+    /**
+     * Formula cells referencing a multi-cell range, keyed by every column the range spans.
+     */
+    private final Map<Integer, List<RangeDependent>> rangeDependents = new HashMap<>();
+    /**
+     * Formula cells referencing a multi-cell range wider than it is tall, keyed by every row the range spans.
+     */
+    private final Map<Integer, List<RangeDependent>> rowDependents   = new HashMap<>();
+
+    /**
+     * Creates an instance of <code>DependencyGraph</code>.
+     */
+    public DependencyGraph() {}
+
+    /**
+     * Sets the precedents of a formula cell, replacing the previous ones (if any).
+     * @param cell   Packed address of the formula cell.
+     * @param ranges Ranges referenced by the formula.
+     */
+    public void setPrecedents(long cell, CellRange[] ranges) {
+        removePrecedents(cell);
+        if (ranges.length == 0) {
+            return;
+        }
+
+        precedents.put(cell, ranges);
+        for (CellRange range : ranges) {
+            if (range.isSingleCell()) {
+                long referenced = CellAddress.pack(range.getRowStart(), range.getColStart());
+                cellDependents.computeIfAbsent(referenced, key -> new HashSet<>()).add(cell);
+            }
+            else {
+                RangeDependent dependent = new RangeDependent(range, cell);
+                if (isIndexedByRows(range)) {
+                    // Iterated as long, as the last row of the sheet is Integer.MAX_VALUE
+                    for (long row = range.getRowStart(); row <= range.getRowEnd(); row++) {
+                        rowDependents.computeIfAbsent((int) row, key -> new ArrayList<>()).add(dependent);
+                    }
+                }
+                else {
+                    for (int col = range.getColStart(); col <= range.getColEnd(); col++) {
+                        rangeDependents.computeIfAbsent(col, key -> new ArrayList<>()).add(dependent);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all the precedents of a cell, i.e. the cell is no longer a formula cell.
+     * @param cell Packed address of the cell.
+     */
+    public void removePrecedents(long cell) {
+        CellRange[] ranges = precedents.remove(cell);
+        if (ranges == null) {
+            return;
+        }
+
+        for (CellRange range : ranges) {
+            if (range.isSingleCell()) {
+                long referenced = CellAddress.pack(range.getRowStart(), range.getColStart());
+                Set<Long> dependents = cellDependents.get(referenced);
+                if (dependents != null) {
+                    dependents.remove(cell);
+                    if (dependents.isEmpty()) {
+                        cellDependents.remove(referenced);
+                    }
+                }
+            }
+            else if (isIndexedByRows(range)) {
+                for (long row = range.getRowStart(); row <= range.getRowEnd(); row++) {
+                    removeDependent(rowDependents, (int) row, cell);
+                }
+            }
+            else {
+                for (int col = range.getColStart(); col <= range.getColEnd(); col++) {
+                    removeDependent(rangeDependents, col, cell);
+                }
+            }
+        }
+    }
+
+    private static void removeDependent(Map<Integer, List<RangeDependent>> index, int key, long cell) {
+        List<RangeDependent> dependents = index.get(key);
+        if (dependents != null) {
+            dependents.removeIf(dependent -> dependent.cell == cell);
+            if (dependents.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @param range Multi-cell range.
+     * @return      True if the range is indexed by its rows, being wider than it is tall; false, if it is indexed by its columns.
+     */
+    private static boolean isIndexedByRows(CellRange range) {
+        return (long) range.getColEnd() - range.getColStart() > (long) range.getRowEnd() - range.getRowStart();
+    }
+
+    /**
+     * @param cell Packed address of the cell.
+     * @return     Formula cells directly referencing the given cell.
+     */
+    public Set<Long> getDependents(long cell) {
+        Set<Long> result = new HashSet<>();
+
+        Set<Long> direct = cellDependents.get(cell);
+        if (direct != null) {
+            result.addAll(direct);
+        }
+
+        int row = CellAddress.row(cell);
+        int col = CellAddress.col(cell);
+        collectRangeDependents(rangeDependents.get(col), row, col, result);
+        collectRangeDependents(rowDependents.get(row),   row, col, result);
+
+        return result;
+    }
+
+    private static void collectRangeDependents(List<RangeDependent> ranged, int row, int col, Set<Long> result) {
+        if (ranged != null) {
+            for (RangeDependent dependent : ranged) {
+                if (dependent.range.contains(row, col)) {
+                    result.add(dependent.cell);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param cells Packed addresses of the cells.
+     * @return      All formula cells directly or transitively depending on any of the given cells.
+     */
+    public Set<Long> collectDependents(Collection<Long> cells) {
+        Set<Long>   visited = new HashSet<>();
+        Deque<Long> stack   = new ArrayDeque<>(cells);
+
+        while (!stack.isEmpty()) {
+            for (long dependent : getDependents(stack.pop())) {
+                if (visited.add(dependent)) {
+                    stack.push(dependent);
+                }
+            }
+        }
+
+        return visited;
+    }
+
+    /**
+     * Checks whether setting the given precedents on the cell would introduce a circular reference.
+     * That is the case if the cell references itself, or any of the cells (transitively) depending on it.
+     * @param cell   Packed address of the formula cell.
+     * @param ranges Ranges the formula would reference.
+     * @return       True if a circular reference would be introduced; false, otherwise.
+     */
+    public boolean introducesCycle(long cell, CellRange[] ranges) {
+        Set<Long> reachable = collectDependents(List.of(cell));
+        reachable.add(cell);
+
+        for (long reached : reachable) {
+            for (CellRange range : ranges) {
+                if (range.contains(CellAddress.row(reached), CellAddress.col(reached))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds all the formula cells that have to be re-evaluated after the given cells have changed, grouped into wavefronts.
+     * See {@link #getWavefronts(Set)}.
+     * @param changed Packed addresses of the changed cells.
+     * @return        Wavefronts of formula cells to re-evaluate, in evaluation order.
+     */
+    public List<List<Long>> getRecalculationWavefronts(Collection<Long> changed) {
+        return getWavefronts(collectDependents(changed));
+    }
+
+    /**
+     * Groups the given formula cells into wavefronts, using a level-by-level topological sort (Kahn's algorithm).
+     * Every cell of a wavefront depends only on cells outside the given set, or on cells of earlier wavefronts -
+     * cells of the same wavefront are independent of each other, so they can be evaluated in any order, or in parallel.
+     * @param dirty Packed addresses of the formula cells to re-evaluate.
+     * @return      Wavefronts of formula cells, in evaluation order.
+     */
+    public List<List<Long>> getWavefronts(Set<Long> dirty) {
+        // Count, for every dirty cell, how many of its precedents are dirty as well
+        Map<Long, List<Long>> edges    = new HashMap<>();
+        Map<Long, Integer>    inDegree = new HashMap<>();
+        for (long cell : dirty) {
+            inDegree.putIfAbsent(cell, 0);
+
+            List<Long> dirtyDependents = new ArrayList<>();
+            for (long dependent : getDependents(cell)) {
+                if (dirty.contains(dependent)) {
+                    dirtyDependents.add(dependent);
+                    inDegree.merge(dependent, 1, Integer::sum);
+                }
+            }
+            edges.put(cell, dirtyDependents);
+        }
+
+        List<Long> wavefront = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : inDegree.entrySet()) {
+            if (entry.getValue() == 0) {
+                wavefront.add(entry.getKey());
+            }
+        }
+
+        List<List<Long>> wavefronts = new ArrayList<>();
+        while (!wavefront.isEmpty()) {
+            wavefronts.add(wavefront);
+
+            // Cells whose last dirty precedent is in the current wavefront form the next one
+            List<Long> next = new ArrayList<>();
+            for (long cell : wavefront) {
+                for (long dependent : edges.get(cell)) {
+                    if (inDegree.merge(dependent, -1, Integer::sum) == 0) {
+                        next.add(dependent);
+                    }
+                }
+            }
+            wavefront = next;
+        }
+
+        // Cells left out are part of a circular reference - these are rejected when formulas are set, so none should remain
+        return wavefronts;
+    }
+
+    /**
+     * @param cell Packed address of the cell.
+     * @return     Ranges referenced by the cell, or an empty array if it is not a formula cell.
+     */
+    public CellRange[] getPrecedents(long cell) {
+        return precedents.getOrDefault(cell, new CellRange[0]);
+    }
+
+    /**
+     * Pair of a referenced multi-cell range and the formula cell referencing it.
+     */
+    private static class RangeDependent {
+        private final CellRange range;
+        private final long      cell;
+
+        private RangeDependent(CellRange range, long cell) {
+            this.range = range;
+            this.cell  = cell;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.lnedimovic.table_editor.table.model;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+import com.lnedimovic.table_editor.expression.ast.ASTree;
+import com.lnedimovic.table_editor.expression.operation.OperationSet;
+
+/**
+ * <code>Formula</code> is the persisted form of a formula cell - the expression as entered by the user, together with its parsed form.
+ * Keeping the parsed form around lets the cell be re-evaluated whenever any of the cells it references changes, without parsing the expression again.
+ * <p>
+ * The parsed form is a {@link FormulaTemplate}, shared by every cell holding a formula of the same relative (R1C1) shape.
+ */
+public class Formula {
+    /**
+     * Expression as entered by the user (e.g. "=sum(A1:A5)").
+     */
+    private final String          expression;
+    /**
+     * Parsed expression, with references relative to the formula cell.
+     */
+    private final FormulaTemplate template;
+    /**
+     * Row of the formula cell.
+     */
+    private final int             row;
+    /**
+     * Column of the formula cell.
+     */
+    private final int             col;
+
+    /**
+     * Creates an instance of <code>Formula</code>.
+     * @param expression Expression as entered by the user.
+     * @param template   Parsed expression, with references relative to the formula cell.
+     * @param row        Row of the formula cell.
+     * @param col        Column of the formula cell.
+     */
+    public Formula(String expression, FormulaTemplate template, int row, int col) {
+        this.expression = expression;
+        this.template   = template;
+        this.row        = row;
+        this.col        = col;
+    }
+
+    /**
+     * Evaluates the formula for its cell.
+     * @param cells      Cells to fetch the referenced values from.
+     * @param used       Part of the cells in use (see {@link UsedRange}); null, if unknown.
+     * @param operations Operations used in evaluation.
+     * @return           Evaluation result.
+     * @throws Exception In case of evaluation error.
+     */
+    public DType<?> evaluate(DTypeRange.CellSource cells, UsedRange used, OperationSet operations) throws Exception {
+        return template.evaluate(cells, used, row, col, operations);
+    }
+
+    /**
+     * @return Cell ranges referenced by the expression (i.e. precedents of the formula cell).
+     */
+    public CellRange[] getPrecedents() {
+        return template.getPrecedents(row, col);
+    }
+
+    /**
+     * @return String representation of <code>Formula</code>.
+     */
+    public String toString() {
+        return String.format("Formula(expression=%s)", expression);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+    public FormulaTemplate getTemplate() {
+        return template;
+    }
+    public ASTree getTree() {
+        return template.getTree();
+    }
+    public int getRow() {
+        return row;
+    }
+    public int getCol() {
+        return col;
+    }
+}
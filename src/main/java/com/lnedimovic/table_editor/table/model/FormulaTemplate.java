@@ -0,0 +1,96 @@
+package com.lnedimovic.table_editor.table.model;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+import com.lnedimovic.table_editor.expression.ast.ASTree;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.operation.OperationSet;
+
+/**
+ * <code>FormulaTemplate</code> is a parsed formula with all of its cell references relative to the owning cell (R1C1-style).
+ * <p>
+ * Formulas of the same canonical form (see {@link ASTree#getCanonicalForm()}), e.g. "=A1*B1", "=A2*B2", ... filled down a column,
+ * share a single template, so the whole column carries one tree - which is also compiled once, and then reused by every cell.
+ * Cell coordinates are bound only when the template is evaluated for a particular cell, through the context of the evaluation,
+ * so the template may be evaluated for many cells at once.
+ */
+public class FormulaTemplate {
+    /**
+     * Canonical form of the template's tree.
+     */
+    private final String canonicalForm;
+    /**
+     * Parsed formula, with relative references.
+     */
+    private final ASTree tree;
+
+    /**
+     * Number of formula cells using the template.
+     */
+    private int users = 0;
+
+    /**
+     * Creates an instance of <code>FormulaTemplate</code>.
+     * @param canonicalForm Canonical form of the tree.
+     * @param tree          Parsed formula, with relative references.
+     */
+    public FormulaTemplate(String canonicalForm, ASTree tree) {
+        this.canonicalForm = canonicalForm;
+        this.tree          = tree;
+    }
+
+    /**
+     * Evaluates the template for the given cell.
+     * @param cells      Cells to fetch the referenced values from.
+     * @param used       Part of the cells in use (see {@link UsedRange}); null, if unknown.
+     * @param ownerRow   Row of the cell the template is evaluated for.
+     * @param ownerCol   Column of the cell the template is evaluated for.
+     * @param operations Operations used in evaluation.
+     * @return           Evaluation result.
+     * @throws Exception In case of evaluation error.
+     */
+    public DType<?> evaluate(DTypeRange.CellSource cells, UsedRange used, int ownerRow, int ownerCol, OperationSet operations) throws Exception {
+        return tree.evaluate(new EvaluationContext(operations, cells, used, ownerRow, ownerCol));
+    }
+
+    /**
+     * @param ownerRow Row of the cell using the template.
+     * @param ownerCol Column of the cell using the template.
+     * @return         Cell ranges referenced by the template, when used by the given cell.
+     */
+    public CellRange[] getPrecedents(int ownerRow, int ownerCol) {
+        return tree.getReferencedRanges(ownerRow, ownerCol);
+    }
+
+    /**
+     * Registers one more formula cell using the template.
+     */
+    public void acquire() {
+        users++;
+    }
+
+    /**
+     * Unregisters a formula cell using the template.
+     * @return True if the template is no longer used; false, otherwise.
+     */
+    public boolean release() {
+        return --users == 0;
+    }
+
+    /**
+     * @return String representation of <code>FormulaTemplate</code>.
+     */
+    public String toString() {
+        return String.format("FormulaTemplate(canonicalForm=%s, users=%d)", canonicalForm, users);
+    }
+
+    public String getCanonicalForm() {
+        return canonicalForm;
+    }
+    public ASTree getTree() {
+        return tree;
+    }
+    public int getUsers() {
+        return users;
+    }
+}
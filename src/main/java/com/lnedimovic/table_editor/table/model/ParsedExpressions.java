@@ -0,0 +1,65 @@
+package com.lnedimovic.table_editor.table.model;
+
+import com.lnedimovic.table_editor.expression.ast.ASTree;
+
+import java.util.Map;
+
+/**
+ * <code>ParsedExpressions</code> is a batch of expressions meant for many cells at once (e.g. a loaded or pasted sheet),
+ * with their formulas already parsed (see {@link TableModel#parseExpressions(Map, TableModel.ProgressListener)}).
+ * <p>
+ * Formulas are kept by their text, so a formula repeated across cells is parsed, and kept, only once.
+ */
+public class ParsedExpressions {
+    /**
+     * Expressions, keyed by packed cell address (see {@link CellAddress}).
+     */
+    private final Map<Long, String>      expressions;
+    /**
+     * Trees of the valid formulas, keyed by formula.
+     */
+    private final Map<String, ASTree>    trees;
+    /**
+     * Parse errors of the invalid formulas, keyed by formula.
+     */
+    private final Map<String, Exception> errors;
+
+    /**
+     * Creates an instance of <code>ParsedExpressions</code>.
+     * @param expressions Expressions, keyed by packed cell address.
+     * @param trees       Trees of the valid formulas, keyed by formula.
+     * @param errors      Parse errors of the invalid formulas, keyed by formula.
+     */
+    public ParsedExpressions(Map<Long, String> expressions, Map<String, ASTree> trees, Map<String, Exception> errors) {
+        this.expressions = expressions;
+        this.trees       = trees;
+        this.errors      = errors;
+    }
+
+    /**
+     * @param key Formula.
+     * @return    Tree of the formula; null, if it is invalid.
+     */
+    public ASTree getTree(String key) {
+        return trees.get(key);
+    }
+
+    /**
+     * @param key Formula.
+     * @return    Parse error of the formula; null, if it is valid.
+     */
+    public Exception getError(String key) {
+        return errors.get(key);
+    }
+
+    public Map<Long, String> getExpressions() {
+        return expressions;
+    }
+
+    /**
+     * @return Number of distinct formulas parsed.
+     */
+    public int getFormulaCount() {
+        return trees.size() + errors.size();
+    }
+}
@@ -2,28 +2,57 @@ package com.lnedimovic.table_editor.table.model;
 
 import com.lnedimovic.table_editor.dtype.DType;
 import com.lnedimovic.table_editor.dtype.DTypeFactory;
+import com.lnedimovic.table_editor.dtype.DTypeId;
 import com.lnedimovic.table_editor.expression.operation.OperationSet;
-import com.lnedimovic.table_editor.expression.token.Token;
+import com.lnedimovic.table_editor.expression.FormulaCache;
 import com.lnedimovic.table_editor.expression.Tokenizer;
 import com.lnedimovic.table_editor.expression.Parser;
 import com.lnedimovic.table_editor.expression.ast.ASTree;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.optimizer.Optimizer;
+import com.lnedimovic.table_editor.expression.typing.Specializer;
+import com.lnedimovic.table_editor.expression.token.TokenStream;
+
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+import com.lnedimovic.table_editor.table.model.store.CellStore;
+import com.lnedimovic.table_editor.table.model.store.ColumnarCellStore;
 
 import javax.swing.table.AbstractTableModel;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <code>TableModel</code> is a simple table model, whose main purpose is to be able to check for formula and cleanly communicate with other parts of the project.
+ * <p>
+ * Formula cells keep their expression and parsed tree (see {@link Formula}), while the table data holds their latest evaluated value.
+ * Whenever a cell changes, only the formulas (transitively) depending on it are re-evaluated, in the order given by the {@link DependencyGraph}.
+ * <p>
+ * The model also keeps track of the part of the sheet in use (see {@link UsedRange}), so references to whole columns (e.g. A:A) or rows (e.g. 3:3)
+ * read only the populated cells. A cell written within a whole column (row) is one of its precedents, so growing or shrinking the column re-evaluates its dependents.
  */
 public class TableModel extends AbstractTableModel {
     /**
-     * Row data
+     * Value shown in a formula cell whose evaluation failed after one of its precedents changed.
+     */
+    public static final String ERROR_VALUE = "#ERROR";
+
+    /**
+     * Cell values.
      */
-    private List<List<DType<?>>> data;
+    private CellStore store;
     /**
      * Names of columns.
      */
-    private String[]             columnNames;
+    private String[]  columnNames;
 
     /**
      * Tokenizer used with the model.
@@ -37,7 +66,43 @@ public class TableModel extends AbstractTableModel {
     private OperationSet operations;
 
     /**
-     * Creates an instance of new <code>TableModel</code>.
+     * Parsed formulas, so repeated formula text is tokenized and parsed only once.
+     */
+    private final transient FormulaCache formulaCache = new FormulaCache();
+
+    /**
+     * Formulas of formula cells, keyed by packed cell address (see {@link CellAddress}).
+     */
+    private final transient Map<Long, Formula> formulas     = new HashMap<>();
+    /**
+     * Precedents and dependents of formula cells.
+     */
+    private final transient DependencyGraph    dependencies = new DependencyGraph();
+    /**
+     * Templates used by formula cells, keyed by canonical form (see {@link FormulaTemplate}).
+     */
+    private final transient Map<String, FormulaTemplate> templates = new HashMap<>();
+    /**
+     * Part of the sheet in use, references to whole columns (rows) are clipped to.
+     */
+    private final transient UsedRange usedRange;
+
+    /**
+     * Wavefronts with at least this many cells are evaluated in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 256;
+    /**
+     * Number of cells below which an evaluation task is no longer split.
+     */
+    private static final int TASK_GRANULARITY   = 64;
+
+    /**
+     * Pool used for parallel evaluation of large wavefronts.
+     */
+    private transient ForkJoinPool recalculationPool = ForkJoinPool.commonPool();
+
+    /**
+     * Creates an instance of new <code>TableModel</code>, holding the data in columns (see {@link ColumnarCellStore}).
      *
      * @param data        Row data
      * @param columnNames Column names
@@ -45,16 +110,29 @@ public class TableModel extends AbstractTableModel {
      * @param parser      Parser used with the model
      */
     public TableModel(List<List<DType<?>>> data, String[] columnNames, Tokenizer tokenizer, Parser parser) {
-        this.data        = data;
+        this(ColumnarCellStore.of(data, columnNames.length), columnNames, tokenizer, parser);
+    }
+
+    /**
+     * Creates an instance of new <code>TableModel</code>.
+     *
+     * @param store       Cell values
+     * @param columnNames Column names
+     * @param tokenizer   Tokenizer used with the model
+     * @param parser      Parser used with the model
+     */
+    public TableModel(CellStore store, String[] columnNames, Tokenizer tokenizer, Parser parser) {
+        this.store       = store;
         this.columnNames = columnNames;
         this.tokenizer   = tokenizer;
         this.parser      = parser;
         this.operations  = parser.getOperations();
+        this.usedRange   = UsedRange.of(store);
     }
 
     /**
      * Checks for formula and evaluates it if true.
-     * Before evaluation, it is mandatory to fill the abstract syntax tree with actual cell values.
+     * Cell references are resolved as absolute, against the table model's data.
      * @param expression Complete expression to tokenize, parse and evaluate
      * @return           String representation of evaluation result, if formula; null, otherwise.
      * @throws Exception In case of invalid expression
@@ -62,17 +140,11 @@ public class TableModel extends AbstractTableModel {
     public DType<?> checkForFormula(String expression) throws Exception {
         if (expression.startsWith("=")) {
             try {
-                // First tokenize the expression
-                ArrayList<Token> tokens = tokenizer.tokenize(expression);
-
-                // Parse the expression
-                ASTree expressionTree = parser.parseTokens(tokens);
+                // Tokenize and parse the expression, unless already parsed before
+                ASTree expressionTree = parseFormula(expression);
 
-                // Before evaluation, cell references need to be filled according to the table model's data
-                expressionTree.fillReferences(expressionTree.getRoot(), this);
-
-                // Evaluate and return the value
-                return expressionTree.evaluate(operations);
+                // Evaluate the (possibly cached, shared) tree and return the value
+                return expressionTree.evaluate(new EvaluationContext(operations, store, usedRange, 0, 0));
             }
             catch (Exception e) {
                 throw new Exception(e);
@@ -83,9 +155,391 @@ public class TableModel extends AbstractTableModel {
         }
     }
 
+    /**
+     * Checks for formula and evaluates it if true, as if it was entered into the given cell.
+     * Unlike {@link #checkForFormula(String)}, it also rejects formulas that would introduce a circular reference.
+     * @param expression Complete expression to tokenize, parse and evaluate
+     * @param rowIndex   Row of the cell the expression is meant for
+     * @param colIndex   Column of the cell the expression is meant for
+     * @return           Evaluation result, if formula; null, otherwise.
+     * @throws Exception In case of invalid expression, or circular reference
+     */
+    public DType<?> checkForFormula(String expression, int rowIndex, int colIndex) throws Exception {
+        if (expression.startsWith("=")) {
+            return evaluateFormula(compileFormula(expression, rowIndex, colIndex));
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the expression into the given cell and re-evaluates every formula depending on the cell.
+     * Formulas (expressions starting with "=") are persisted, so they can be re-evaluated whenever any of the cells they reference changes.
+     * Anything else is stored as a plain value, while an empty expression clears the cell.
+     * @param expression Expression entered into the cell
+     * @param rowIndex   Row of the cell
+     * @param colIndex   Column of the cell
+     * @throws Exception In case of invalid expression, or circular reference - the cell is left unchanged
+     */
+    public void setExpressionAt(String expression, int rowIndex, int colIndex) throws Exception {
+        long cell = CellAddress.pack(rowIndex, colIndex);
+
+        DType<?> value;
+        if (expression.startsWith("=")) {
+            Formula formula = compileFormula(expression, rowIndex, colIndex);
+            value = evaluateFormula(formula);
+
+            acquireTemplate(formula.getTemplate());
+            releaseTemplate(formulas.put(cell, formula));
+            dependencies.setPrecedents(cell, formula.getPrecedents());
+        }
+        else {
+            value = expression.isEmpty() ? null : DTypeFactory.create(expression);
+
+            releaseTemplate(formulas.remove(cell));
+            dependencies.removePrecedents(cell);
+        }
+
+        storeValue(rowIndex, colIndex, value);
+        fireTableCellUpdated(rowIndex, colIndex);
+
+        recalculate(List.of(cell));
+    }
+
+    /**
+     * @param rowIndex Row of the cell
+     * @param colIndex Column of the cell
+     * @return         Expression of the cell - formula, if it is a formula cell; String representation of its value, otherwise.
+     */
+    public String getExpressionAt(int rowIndex, int colIndex) {
+        Formula formula = formulas.get(CellAddress.pack(rowIndex, colIndex));
+        if (formula != null) {
+            return formula.getExpression();
+        }
+
+        Object value = getValueAt(rowIndex, colIndex);
+        return (value == null) ? "" : value.toString();
+    }
+
+    /**
+     * Parses the formulas among the given expressions in parallel, on the recalculation pool, in preparation for {@link #setExpressions(ParsedExpressions)}.
+     * Equal formulas are parsed only once, and parse errors are kept per formula rather than aborting the whole batch.
+     * Formulas differing in whitespace only are parsed separately, but share their tree through the formula cache.
+     * <p>
+     * The model is left unchanged, so parsing may happen on any thread, e.g. a background worker of the UI.
+     * @param expressions Expressions, keyed by packed cell address (see {@link CellAddress})
+     * @param listener    Listener notified of the progress, from the parsing threads; null, if none
+     * @return            Parsed expressions
+     */
+    public ParsedExpressions parseExpressions(Map<Long, String> expressions, ProgressListener listener) {
+        // Distinct formulas, each parsed once no matter how many cells hold it
+        Set<String> formulaSet = new LinkedHashSet<>();
+        for (String expression : expressions.values()) {
+            if (expression.startsWith("=")) {
+                formulaSet.add(expression);
+            }
+        }
+
+        String[]      keys   = formulaSet.toArray(new String[0]);
+        ASTree[]      trees  = new ASTree[keys.length];
+        Exception[]   errors = new Exception[keys.length];
+        AtomicInteger parsed = new AtomicInteger();
+
+        recalculationPool.invoke(new ParseTask(keys, trees, errors, 0, keys.length, parsed, listener));
+
+        Map<String, ASTree>    treesByKey  = new HashMap<>();
+        Map<String, Exception> errorsByKey = new HashMap<>();
+        for (int idx = 0; idx < keys.length; idx++) {
+            if (errors[idx] != null) {
+                errorsByKey.put(keys[idx], errors[idx]);
+            }
+            else {
+                treesByKey.put(keys[idx], trees[idx]);
+            }
+        }
+
+        return new ParsedExpressions(expressions, treesByKey, errorsByKey);
+    }
+
+    /**
+     * Stores the parsed expressions into their cells (see {@link #parseExpressions(Map, ProgressListener)}),
+     * then evaluates the new formulas and the formulas depending on any of the cells - each formula once, in topological order.
+     * <p>
+     * Cells whose formula is invalid, or would introduce a circular reference, are given the {@link #ERROR_VALUE}, and the rest of the batch is stored regardless.
+     * @param parsed Parsed expressions
+     * @return       Errors of the invalid cells, keyed by packed cell address; empty, if every cell was stored
+     */
+    public Map<Long, Exception> setExpressions(ParsedExpressions parsed) {
+        Map<Long, Exception> errors  = new LinkedHashMap<>();
+        Set<Long>            changed = new HashSet<>();
+        Set<Long>            dirty   = new HashSet<>();
+
+        for (Map.Entry<Long, String> entry : parsed.getExpressions().entrySet()) {
+            long   cell       = entry.getKey();
+            String expression = entry.getValue();
+            int    rowIndex   = CellAddress.row(cell);
+            int    colIndex   = CellAddress.col(cell);
+            changed.add(cell);
+
+            if (expression.startsWith("=")) {
+                try {
+                    Exception error = parsed.getError(expression);
+                    if (error != null) {
+                        throw new Exception(error);
+                    }
+
+                    Formula formula = compileFormula(expression, parsed.getTree(expression), rowIndex, colIndex);
+                    acquireTemplate(formula.getTemplate());
+                    releaseTemplate(formulas.put(cell, formula));
+                    dependencies.setPrecedents(cell, formula.getPrecedents());
+                    usedRange.markUsed(rowIndex, colIndex);
+
+                    // Evaluated once the whole batch is stored
+                    dirty.add(cell);
+                    continue;
+                }
+                catch (Exception e) {
+                    errors.put(cell, e);
+                }
+            }
+
+            releaseTemplate(formulas.remove(cell));
+            dependencies.removePrecedents(cell);
+            if (errors.containsKey(cell)) {
+                storeValue(rowIndex, colIndex, new DTypeString(ERROR_VALUE));
+            }
+            else {
+                storeValue(rowIndex, colIndex, expression.isEmpty() ? null : DTypeFactory.create(expression));
+            }
+        }
+
+        dirty.addAll(dependencies.collectDependents(changed));
+        evaluateWavefronts(dependencies.getWavefronts(dirty));
+        fireTableDataChanged();
+
+        return errors;
+    }
+
+    /**
+     * Re-evaluates all the formulas (transitively) depending on the given cells, in topological order.
+     * Formulas whose evaluation fails are given the {@link #ERROR_VALUE}.
+     * @param changed Packed addresses of the changed cells
+     */
+    public void recalculate(List<Long> changed) {
+        evaluateWavefronts(dependencies.getRecalculationWavefronts(changed));
+    }
+
+    /**
+     * Re-evaluates every formula in the table, in topological order.
+     */
+    public void recalculateAll() {
+        evaluateWavefronts(dependencies.getWavefronts(new HashSet<>(formulas.keySet())));
+    }
+
+    /**
+     * Evaluates the wavefronts one after another.
+     * Cells within a wavefront don't depend on each other, so large wavefronts are split among the cores of the fork-join pool,
+     * while small ones are evaluated directly on the calling thread, where the overhead of scheduling would outweigh the gain.
+     * Table listeners are notified only after the evaluation, from the calling thread.
+     * @param wavefronts Wavefronts of formula cells, in evaluation order
+     */
+    private void evaluateWavefronts(List<List<Long>> wavefronts) {
+        for (List<Long> wavefront : wavefronts) {
+            if (wavefront.size() >= PARALLEL_THRESHOLD) {
+                recalculationPool.invoke(new EvaluationTask(wavefront, 0, wavefront.size()));
+            }
+            else {
+                for (long cell : wavefront) {
+                    evaluateCell(cell);
+                }
+            }
+
+            for (long cell : wavefront) {
+                fireTableCellUpdated(CellAddress.row(cell), CellAddress.col(cell));
+            }
+        }
+    }
+
+    /**
+     * Re-evaluates a single formula cell and stores its value.
+     * Formulas whose evaluation fails are given the {@link #ERROR_VALUE}.
+     * @param cell Packed address of the formula cell
+     */
+    private void evaluateCell(long cell) {
+        DType<?> value;
+        try {
+            value = evaluateFormula(formulas.get(cell));
+        }
+        catch (Exception e) {
+            value = new DTypeString(ERROR_VALUE);
+        }
+
+        store.set(CellAddress.row(cell), CellAddress.col(cell), value);
+    }
+
+    /**
+     * Writes the value into the cell, keeping track of the part of the sheet in use.
+     * @param rowIndex Row of the cell
+     * @param colIndex Column of the cell
+     * @param value    Value of the cell; null, for an empty cell
+     */
+    private void storeValue(int rowIndex, int colIndex, DType<?> value) {
+        store.set(rowIndex, colIndex, value);
+        if (value == null) {
+            usedRange.markEmpty(store, rowIndex, colIndex);
+        }
+        else {
+            usedRange.markUsed(rowIndex, colIndex);
+        }
+    }
+
+    /**
+     * Tokenizes and parses the expression meant for the given cell, reusing the template of an equally shaped formula if there is one.
+     * @param expression Formula to compile
+     * @param rowIndex   Row of the cell the formula is meant for
+     * @param colIndex   Column of the cell the formula is meant for
+     * @return           Compiled formula
+     * @throws Exception In case of invalid expression, or circular reference
+     */
+    private Formula compileFormula(String expression, int rowIndex, int colIndex) throws Exception {
+        ASTree expressionTree;
+        try {
+            expressionTree = parseFormula(expression);
+        }
+        catch (Exception e) {
+            throw new Exception(e);
+        }
+
+        return compileFormula(expression, expressionTree, rowIndex, colIndex);
+    }
+
+    /**
+     * Compiles the already parsed expression meant for the given cell (see {@link #compileFormula(String, int, int)}).
+     * @param expression     Formula to compile
+     * @param expressionTree Parsed formula; left unchanged, as it may be shared (see {@link FormulaCache})
+     * @param rowIndex       Row of the cell the formula is meant for
+     * @param colIndex       Column of the cell the formula is meant for
+     * @return               Compiled formula
+     * @throws Exception     In case of invalid expression, or circular reference
+     */
+    private Formula compileFormula(String expression, ASTree expressionTree, int rowIndex, int colIndex) throws Exception {
+        FormulaTemplate template;
+        try {
+            // Formulas of the same relative shape share a template
+            expressionTree = expressionTree.copy();
+            expressionTree.relativize(rowIndex, colIndex);
+            String canonicalForm = expressionTree.getCanonicalForm();
+
+            template = templates.get(canonicalForm);
+            if (template == null) {
+                // Template carries the optimized tree, so constant folding and shared subexpressions are worked out once per shape
+                expressionTree.setRoot(Optimizer.optimize(expressionTree.getRoot(), operations));
+
+                // Numeric subtrees are specialized, speculating that referenced cells keep the types they have now
+                expressionTree.setRoot(Specializer.specialize(expressionTree.getRoot(), reference -> getTypeAt(reference.getRange(rowIndex, colIndex))));
+                template = new FormulaTemplate(canonicalForm, expressionTree);
+            }
+        }
+        catch (Exception | StackOverflowError e) {
+            throw new Exception(e);
+        }
+
+        if (dependencies.introducesCycle(CellAddress.pack(rowIndex, colIndex), template.getPrecedents(rowIndex, colIndex))) {
+            throw new Exception("Circular reference.");
+        }
+
+        return new Formula(expression, template, rowIndex, colIndex);
+    }
+
+    /**
+     * Registers a formula cell as a user of the template, sharing the template with formulas of the same canonical form from then on.
+     * @param template Template of the formula being stored
+     */
+    private void acquireTemplate(FormulaTemplate template) {
+        templates.putIfAbsent(template.getCanonicalForm(), template);
+        template.acquire();
+    }
+
+    /**
+     * Unregisters a formula cell using the template, dropping the template once unused.
+     * @param formula Formula being removed; null, if there was none
+     */
+    private void releaseTemplate(Formula formula) {
+        if (formula != null && formula.getTemplate().release()) {
+            templates.remove(formula.getTemplate().getCanonicalForm());
+        }
+    }
+
+    /**
+     * Tokenizes and parses the expression, or takes its tree from the formula cache if an expression of the same tokens was parsed before.
+     * @param expression Formula to parse
+     * @return           Parsed expression, shared with the cache - to be evaluated, but not modified
+     * @throws Exception In case of invalid expression, including one too deeply nested to be parsed on the current thread's stack
+     */
+    private ASTree parseFormula(String expression) throws Exception {
+        TokenStream tokens = tokenizer.lex(expression);
+        String      key    = tokens.getKey();
+
+        ASTree expressionTree = formulaCache.get(key);
+        if (expressionTree == null) {
+            try {
+                expressionTree = parser.parseTokens(tokens);
+            }
+            catch (StackOverflowError e) {
+                // Depth of parsed trees is bounded (see Parser#MAX_DEPTH), but a thread with a smaller stack may still run out of it
+                throw new Exception("Invalid expression. Nested too deeply.", e);
+            }
+            formulaCache.put(key, expressionTree);
+        }
+
+        return expressionTree;
+    }
+
+    /**
+     * @param range Single-cell range
+     * @return      Type id of the cell's current value (see {@link DTypeId}); <code>DTypeId.OTHER</code>, if there is no such cell.
+     */
+    private int getTypeAt(CellRange range) {
+        int row = range.getRowStart();
+        int col = range.getColStart();
+        if (row < 0 || row >= getRowCount() || col < 0 || col >= getColumnCount()) {
+            return DTypeId.OTHER;
+        }
+
+        return store.getTypeId(row, col);
+    }
+
+    /**
+     * Evaluates the formula against the current table data.
+     * @param formula    Formula to evaluate
+     * @return           Evaluation result
+     * @throws Exception In case of evaluation error
+     */
+    private DType<?> evaluateFormula(Formula formula) throws Exception {
+        return formula.evaluate(store, usedRange, operations);
+    }
+
+    /**
+     * Saves the table, writing the cell values through to the storage backing the store (see {@link CellStore#flush()}).
+     */
+    public void save() {
+        store.flush();
+    }
+
+    /**
+     * Releases the store, if it holds resources (e.g. off-heap memory, or a mapped file). The model can't be used afterwards.
+     * @throws Exception In case of an error while releasing the store.
+     */
+    public void close() throws Exception {
+        if (store instanceof AutoCloseable) {
+            ((AutoCloseable) store).close();
+        }
+    }
+
     @Override
     public int getRowCount() {
-        return data.size();
+        return store.getRowCount();
     }
     @Override
     public int getColumnCount() {
@@ -93,14 +547,16 @@ public class TableModel extends AbstractTableModel {
     }
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        return data.get(rowIndex).get(columnIndex);
+        return store.get(rowIndex, columnIndex);
     }
     @Override
     public void setValueAt(Object value, int rowIndex, int columnIndex) {
-        DType<?> valueDTypeInstance = DTypeFactory.create((String) value);
-
-        data.get(rowIndex).set(columnIndex, valueDTypeInstance);
-        fireTableCellUpdated(rowIndex, columnIndex);
+        try {
+            setExpressionAt((String) value, rowIndex, columnIndex);
+        }
+        catch (Exception e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
     }
     @Override
     public String getColumnName(int column) {
@@ -115,14 +571,28 @@ public class TableModel extends AbstractTableModel {
     }
     public void setTokenizer(Tokenizer tokenizer) {
         this.tokenizer = tokenizer;
+        formulaCache.clear();
     }
     public Parser getParser() {
         return parser;
     }
     public void setParser(Parser parser) {
         this.parser = parser;
+        formulaCache.clear();
     }
 
+    public FormulaCache getFormulaCache() {
+        return formulaCache;
+    }
+    public DTypeRange.CellSource getCellSource() {
+        return store;
+    }
+    public CellStore getStore() {
+        return store;
+    }
+    public UsedRange getUsedRange() {
+        return usedRange;
+    }
     public OperationSet getOperations() {
         return operations;
     }
@@ -130,5 +600,120 @@ public class TableModel extends AbstractTableModel {
     public void setOperations(OperationSet operations) {
         this.operations = operations;
     }
+
+    /**
+     * @param rowIndex Row of the cell
+     * @param colIndex Column of the cell
+     * @return         Formula of the cell, or null if it is not a formula cell.
+     */
+    public Formula getFormulaAt(int rowIndex, int colIndex) {
+        return formulas.get(CellAddress.pack(rowIndex, colIndex));
+    }
+
+    public int getTemplateCount() {
+        return templates.size();
+    }
+    public DependencyGraph getDependencies() {
+        return dependencies;
+    }
+    public ForkJoinPool getRecalculationPool() {
+        return recalculationPool;
+    }
+    public void setRecalculationPool(ForkJoinPool recalculationPool) {
+        this.recalculationPool = recalculationPool;
+    }
+
+    /**
+     * Listener of the progress of a long running operation (e.g. {@link #parseExpressions(Map, ProgressListener)}).
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param done  Number of items done.
+         * @param total Total number of items.
+         */
+        void progress(int done, int total);
+    }
+
+    /**
+     * Fork-join task parsing a slice of distinct formulas, splitting it in halves until it is small enough.
+     * Tokenizer, parser and formula cache may be shared among threads, and failures are kept rather than thrown.
+     */
+    private class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[]                   sources;
+        private final transient ASTree[]         trees;
+        private final Exception[]                errors;
+        private final int                        from;
+        private final int                        to;
+        private final AtomicInteger              parsed;
+        private final transient ProgressListener listener;
+
+        private ParseTask(String[] sources, ASTree[] trees, Exception[] errors, int from, int to, AtomicInteger parsed, ProgressListener listener) {
+            this.sources  = sources;
+            this.trees    = trees;
+            this.errors   = errors;
+            this.from     = from;
+            this.to       = to;
+            this.parsed   = parsed;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_GRANULARITY) {
+                for (int idx = from; idx < to; idx++) {
+                    try {
+                        trees[idx] = parseFormula(sources[idx]);
+                    }
+                    catch (Exception e) {
+                        errors[idx] = e;
+                    }
+                }
+
+                int done = parsed.addAndGet(to - from);
+                if (listener != null) {
+                    listener.progress(done, sources.length);
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseTask(sources, trees, errors, from, middle, parsed, listener),
+                          new ParseTask(sources, trees, errors, middle, to,   parsed, listener));
+            }
+        }
+    }
+
+    /**
+     * Fork-join task evaluating a slice of a wavefront, splitting it in halves until it is small enough.
+     * Cells of a wavefront are distinct and independent, so tasks never write into, or read from, each other's cells.
+     */
+    private class EvaluationTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Long> cells;
+        private final int                  from;
+        private final int                  to;
+
+        private EvaluationTask(List<Long> cells, int from, int to) {
+            this.cells = cells;
+            this.from  = from;
+            this.to    = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= TASK_GRANULARITY) {
+                for (int idx = from; idx < to; idx++) {
+                    evaluateCell(cells.get(idx));
+                }
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EvaluationTask(cells, from, middle), new EvaluationTask(cells, middle, to));
+            }
+        }
+    }
 }
 
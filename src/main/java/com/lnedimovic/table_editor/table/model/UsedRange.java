@@ -0,0 +1,171 @@
+package com.lnedimovic.table_editor.table.model;
+
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+import com.lnedimovic.table_editor.table.model.store.CellStore;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * <code>UsedRange</code> keeps track of the part of the sheet in use - for every column, the number of rows up to its last non-empty cell,
+ * and for every row, the number of columns up to its last non-empty cell.
+ * <p>
+ * References to whole columns (e.g. A:A) or rows (e.g. 3:3) are clipped to it, so they only reach as far as the populated cells.
+ * Extents of rows are kept in tiles of {@link #TILE_ROWS} rows, allocated once a cell within them is in use, so sparse sheets of millions of rows stay small.
+ * <p>
+ * Extents are updated by the model as cells are written, and may be read by any number of evaluations in between.
+ */
+public class UsedRange {
+    public static final int TILE_ROWS = 4096;
+
+    /**
+     * Number of rows in use, for every column.
+     */
+    private int[] columnExtents;
+    /**
+     * Tiles of the numbers of columns in use, for every row, keyed by row block.
+     */
+    private final NavigableMap<Integer, Tile> rowTiles = new TreeMap<>();
+
+    /**
+     * Creates an empty <code>UsedRange</code>.
+     * @param colCount Number of columns.
+     */
+    public UsedRange(int colCount) {
+        this.columnExtents = new int[colCount];
+    }
+
+    /**
+     * Creates the <code>UsedRange</code> of the cells currently in the store. The index column (0) is left out.
+     * @param store Cell values.
+     * @return      Part of the store in use.
+     */
+    public static UsedRange of(CellStore store) {
+        UsedRange used = new UsedRange(store.getColumnCount());
+        try {
+            store.forEachCell(0, 1, store.getRowCount(), store.getColumnCount(), (source, row, col) -> used.markUsed(row, col));
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+
+        return used;
+    }
+
+    /**
+     * Marks the cell as non-empty, growing the extents of its row and column if needed.
+     * @param row Row of the cell.
+     * @param col Column of the cell.
+     */
+    public void markUsed(int row, int col) {
+        if (col >= columnExtents.length) {
+            columnExtents = Arrays.copyOf(columnExtents, col + 1);
+        }
+        columnExtents[col] = Math.max(columnExtents[col], row + 1);
+
+        Tile tile  = rowTiles.computeIfAbsent(row / TILE_ROWS, key -> new Tile());
+        int  index = row % TILE_ROWS;
+        tile.extents[index] = Math.max(tile.extents[index], col + 1);
+        tile.max            = Math.max(tile.max, col + 1);
+    }
+
+    /**
+     * Marks the cell as empty. If it was the last non-empty cell of its row (column), the extent shrinks to the previous non-empty cell.
+     * @param cells Cell values, with the cell already emptied.
+     * @param row   Row of the cell.
+     * @param col   Column of the cell.
+     */
+    public void markEmpty(DTypeRange.CellSource cells, int row, int col) {
+        Tile tile = rowTiles.get(row / TILE_ROWS);
+        if (tile == null) {
+            return;
+        }
+
+        // Last cell of the row - columns before it are looked up one by one, down to the first (i.e. 1) column
+        int index = row % TILE_ROWS;
+        if (tile.extents[index] == col + 1) {
+            int extent = col;
+            while (extent > 1 && cells.get(row, extent - 1) == null) {
+                extent--;
+            }
+            tile.extents[index] = (extent > 1) ? extent : 0;
+
+            if (tile.max == col + 1) {
+                tile.max = Arrays.stream(tile.extents).max().orElse(0);
+                if (tile.max == 0) {
+                    rowTiles.remove(row / TILE_ROWS);
+                }
+            }
+        }
+
+        // Last cell of the column - only rows reaching the column are looked up, skipping the tiles that don't
+        if (col < columnExtents.length && columnExtents[col] == row + 1) {
+            columnExtents[col] = 0;
+            for (Map.Entry<Integer, Tile> entry : rowTiles.headMap(row / TILE_ROWS, true).descendingMap().entrySet()) {
+                Tile previous = entry.getValue();
+                if (previous.max <= col) {
+                    continue;
+                }
+
+                int first = entry.getKey() * TILE_ROWS;
+                for (int idx = Math.min(row - 1 - first, TILE_ROWS - 1); idx >= 0; idx--) {
+                    if (previous.extents[idx] > col && cells.get(first + idx, col) != null) {
+                        columnExtents[col] = first + idx + 1;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param colStart First column.
+     * @param colEnd   Last column.
+     * @return         Number of rows up to the last non-empty cell of any of the columns; 0, if they are all empty.
+     */
+    public int getRowExtent(int colStart, int colEnd) {
+        int extent = 0;
+        for (int col = Math.max(colStart, 0); col <= Math.min(colEnd, columnExtents.length - 1); col++) {
+            extent = Math.max(extent, columnExtents[col]);
+        }
+
+        return extent;
+    }
+
+    /**
+     * @param rowStart First row.
+     * @param rowEnd   Last row.
+     * @return         Number of columns up to the last non-empty cell of any of the rows; 0, if they are all empty.
+     */
+    public int getColumnExtent(int rowStart, int rowEnd) {
+        int extent = 0;
+        for (Map.Entry<Integer, Tile> entry : rowTiles.subMap(rowStart / TILE_ROWS, true, rowEnd / TILE_ROWS, true).entrySet()) {
+            Tile tile  = entry.getValue();
+            int  first = entry.getKey() * TILE_ROWS;
+            if (rowStart <= first && first + TILE_ROWS - 1 <= rowEnd) {
+                extent = Math.max(extent, tile.max);
+                continue;
+            }
+
+            // Tile only partially within the rows
+            for (int row = Math.max(rowStart, first); row <= Math.min(rowEnd, first + TILE_ROWS - 1); row++) {
+                extent = Math.max(extent, tile.extents[row - first]);
+            }
+        }
+
+        return extent;
+    }
+
+    /**
+     * Numbers of columns in use, for a block of {@link #TILE_ROWS} rows.
+     */
+    private static class Tile {
+        private final int[] extents = new int[TILE_ROWS];
+        /**
+         * Greatest of the extents.
+         */
+        private int         max     = 0;
+    }
+}
@@ -0,0 +1,76 @@
+package com.lnedimovic.table_editor.table.model.store;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <code>AtomicBitSet</code> is a fixed-size bitset whose bits can be read while other bits of the same word are being written.
+ * Unlike {@link java.util.BitSet}, every write is published to concurrent readers, and never loses a write to a neighbouring bit.
+ */
+final class AtomicBitSet {
+    private final AtomicLongArray words;
+    private final int             size;
+
+    /**
+     * Creates a bitset of given size, with every bit clear.
+     * @param size Number of bits.
+     */
+    AtomicBitSet(int size) {
+        this.words = new AtomicLongArray((size + 63) >>> 6);
+        this.size  = size;
+    }
+
+    boolean get(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    void set(int index) {
+        long mask = 1L << index;
+        words.getAndAccumulate(index >>> 6, mask, (word, bits) -> word | bits);
+    }
+
+    void clear(int index) {
+        long mask = ~(1L << index);
+        words.getAndAccumulate(index >>> 6, mask, (word, bits) -> word & bits);
+    }
+
+    void set(int index, boolean value) {
+        if (value) {
+            set(index);
+        }
+        else {
+            clear(index);
+        }
+    }
+
+    /**
+     * Sets the bits of the range.
+     * @param from Start of the range.
+     * @param to   End (exclusive) of the range.
+     */
+    void set(int from, int to) {
+        for (int index = from; index < to; ) {
+            int  word  = index >>> 6;
+            int  end   = Math.min(to, (word + 1) << 6);
+            long mask  = (end - index == 64) ? -1L : ((1L << (end - index)) - 1) << index;
+            words.getAndAccumulate(word, mask, (value, bits) -> value | bits);
+            index = end;
+        }
+    }
+
+    /**
+     * @param from Index to start from.
+     * @return     Index of the first clear bit at or after <code>from</code>; the size of the bitset, if there is none.
+     */
+    int nextClearBit(int from) {
+        for (int word = from >>> 6; word < words.length(); word++) {
+            long clear = ~words.get(word);
+            if (word == from >>> 6) {
+                clear &= -1L << from;
+            }
+            if (clear != 0) {
+                return Math.min(size, (word << 6) + Long.numberOfTrailingZeros(clear));
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,35 @@
+package com.lnedimovic.table_editor.table.model.store;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+
+/**
+ * <code>CellStore</code> is the storage of cell values behind {@link com.lnedimovic.table_editor.table.model.TableModel}.
+ * <p>
+ * Stores are free to keep values in any representation; values are handed out as <code>DType</code> instances,
+ * while the typed accessors (see {@link DTypeRange.CellSource}) read them without boxing.
+ */
+public interface CellStore extends DTypeRange.CellSource {
+    /**
+     * @return Number of rows.
+     */
+    int getRowCount();
+
+    /**
+     * @return Number of columns.
+     */
+    int getColumnCount();
+
+    /**
+     * Writes the value into the cell. Writes into distinct cells may happen concurrently.
+     * @param row   Row of the cell.
+     * @param col   Column of the cell.
+     * @param value Value of the cell; null, for an empty cell.
+     */
+    void set(int row, int col, DType<?> value);
+
+    /**
+     * Writes the values through to the backing storage, for stores having one (e.g. {@link MappedCellStore}).
+     */
+    default void flush() {}
+}
@@ -0,0 +1,332 @@
+package com.lnedimovic.table_editor.table.model.store;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <code>Column</code> is a column of {@link ColumnarCellStore}, holding values of a single type in a primitive array.
+ * Columns of mixed values are boxed (see {@link Boxed}).
+ * <p>
+ * Writes are serialized by the store, but cells are read concurrently with them. A cell's value is written before its bit of
+ * {@link #empty} is cleared, so a reader seeing a non-empty cell sees its value as well.
+ */
+abstract class Column {
+    /**
+     * Empty cells of the column.
+     */
+    protected final AtomicBitSet empty;
+    /**
+     * Number of cells of the column.
+     */
+    protected final int          rowCount;
+
+    protected Column(int rowCount) {
+        this.empty    = new AtomicBitSet(rowCount);
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * @param rowCount Number of rows.
+     * @param typeId   Type of the values (see {@link DTypeId}).
+     * @return         Empty column for values of the type.
+     */
+    static Column create(int rowCount, int typeId) {
+        Column column;
+        switch (typeId) {
+            case DTypeId.INTEGER: column = new Ints(rowCount);     break;
+            case DTypeId.DOUBLE:  column = new Doubles(rowCount);  break;
+            case DTypeId.BOOLEAN: column = new Booleans(rowCount); break;
+            case DTypeId.STRING:  column = new Strings(rowCount);  break;
+            default:              return new Boxed(rowCount);
+        }
+        column.empty.set(0, rowCount);
+
+        return column;
+    }
+
+    /**
+     * @return Type of the values of the column (see {@link DTypeId}); <code>DTypeId.OTHER</code> for a boxed column.
+     */
+    abstract int getTypeId();
+
+    /**
+     * @param row Row of the cell.
+     * @return    View of the cell value; null, for an empty cell.
+     */
+    abstract DType<?> get(int row);
+
+    /**
+     * Writes the value, if it is of the column's type.
+     * @param row   Row of the cell.
+     * @param value Value of the cell, not null.
+     * @return      True if written; false, if the value is of another type.
+     */
+    abstract boolean set(int row, DType<?> value);
+
+    /**
+     * @param row Row of the cell.
+     * @return    Type of the cell value; <code>DTypeId.OTHER</code> for an empty cell.
+     */
+    int getTypeId(int row) {
+        return empty.get(row) ? DTypeId.OTHER : getTypeId();
+    }
+
+    int getInt(int row) {
+        return ((DTypeInteger) get(row)).getValue();
+    }
+    double getDouble(int row) {
+        return ((DTypeDouble) get(row)).getValue();
+    }
+    boolean getBoolean(int row) {
+        return ((DTypeBoolean) get(row)).getValue();
+    }
+
+    /**
+     * @param row Row of the cell.
+     */
+    void clear(int row) {
+        empty.set(row);
+    }
+
+    /**
+     * @return True if every cell of the column is empty; false, otherwise.
+     */
+    boolean isEmpty() {
+        return empty.nextClearBit(0) >= rowCount;
+    }
+
+    /**
+     * @return Boxed column holding the same values.
+     */
+    Boxed toBoxed() {
+        Boxed boxed = new Boxed(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            DType<?> value = get(row);
+            if (value != null) {
+                boxed.set(row, value);
+            }
+        }
+
+        return boxed;
+    }
+
+    static class Ints extends Column {
+        private final int[] values;
+
+        Ints(int rowCount) {
+            super(rowCount);
+            this.values = new int[rowCount];
+        }
+
+        @Override
+        int getTypeId() {
+            return DTypeId.INTEGER;
+        }
+
+        @Override
+        DType<?> get(int row) {
+            return empty.get(row) ? null : new DTypeInteger(values[row]);
+        }
+
+        @Override
+        boolean set(int row, DType<?> value) {
+            if (!(value instanceof DTypeInteger)) {
+                return false;
+            }
+            values[row] = ((DTypeInteger) value).getValue();
+            empty.clear(row);
+            return true;
+        }
+
+        @Override
+        int getInt(int row) {
+            return values[row];
+        }
+    }
+
+    static class Doubles extends Column {
+        private final double[] values;
+
+        Doubles(int rowCount) {
+            super(rowCount);
+            this.values = new double[rowCount];
+        }
+
+        @Override
+        int getTypeId() {
+            return DTypeId.DOUBLE;
+        }
+
+        @Override
+        DType<?> get(int row) {
+            return empty.get(row) ? null : new DTypeDouble(values[row]);
+        }
+
+        @Override
+        boolean set(int row, DType<?> value) {
+            if (!(value instanceof DTypeDouble)) {
+                return false;
+            }
+            values[row] = ((DTypeDouble) value).getValue();
+            empty.clear(row);
+            return true;
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+    }
+
+    static class Booleans extends Column {
+        private final AtomicBitSet values;
+
+        Booleans(int rowCount) {
+            super(rowCount);
+            this.values = new AtomicBitSet(rowCount);
+        }
+
+        @Override
+        int getTypeId() {
+            return DTypeId.BOOLEAN;
+        }
+
+        @Override
+        DType<?> get(int row) {
+            return empty.get(row) ? null : new DTypeBoolean(values.get(row));
+        }
+
+        @Override
+        boolean set(int row, DType<?> value) {
+            if (!(value instanceof DTypeBoolean)) {
+                return false;
+            }
+            values.set(row, ((DTypeBoolean) value).getValue());
+            empty.clear(row);
+            return true;
+        }
+
+        @Override
+        boolean getBoolean(int row) {
+            return values.get(row);
+        }
+    }
+
+    /**
+     * Dictionary-encoded strings: every distinct string is kept once, and cells hold its code.
+     * The dictionary grows into a copy, published once it holds the new string, so it can be read while it grows.
+     */
+    static class Strings extends Column {
+        private final int[]                codes;
+        private volatile String[]          dictionary = new String[16];
+        /**
+         * Number of strings in the dictionary.
+         */
+        private int                        size       = 0;
+        /**
+         * Codes of the strings; used by writes only.
+         */
+        private final Map<String, Integer> index      = new HashMap<>();
+
+        Strings(int rowCount) {
+            super(rowCount);
+            this.codes = new int[rowCount];
+        }
+
+        @Override
+        int getTypeId() {
+            return DTypeId.STRING;
+        }
+
+        @Override
+        DType<?> get(int row) {
+            return empty.get(row) ? null : new DTypeString(dictionary[codes[row]]);
+        }
+
+        @Override
+        boolean set(int row, DType<?> value) {
+            if (!(value instanceof DTypeString)) {
+                return false;
+            }
+
+            String  string = ((DTypeString) value).getValue();
+            Integer code   = index.get(string);
+            if (code == null) {
+                code = size++;
+                String[] grown = (code < dictionary.length) ? dictionary : Arrays.copyOf(dictionary, 2 * dictionary.length);
+                grown[code] = string;
+                dictionary  = grown;
+                index.put(string, code);
+            }
+            codes[row] = code;
+            empty.clear(row);
+            return true;
+        }
+    }
+
+    /**
+     * Values of mixed types, kept as they are.
+     */
+    static class Boxed extends Column {
+        private final AtomicReferenceArray<DType<?>> values;
+        /**
+         * Number of non-empty cells.
+         */
+        private int                                  size = 0;
+
+        Boxed(int rowCount) {
+            super(rowCount);
+            this.values = new AtomicReferenceArray<>(rowCount);
+        }
+
+        @Override
+        int getTypeId() {
+            return DTypeId.OTHER;
+        }
+
+        @Override
+        int getTypeId(int row) {
+            DType<?> value = values.get(row);
+            return (value == null) ? DTypeId.OTHER : value.getTypeId();
+        }
+
+        @Override
+        DType<?> get(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        boolean set(int row, DType<?> value) {
+            if (values.getAndSet(row, value) == null) {
+                size++;
+            }
+            return true;
+        }
+
+        @Override
+        void clear(int row) {
+            if (values.getAndSet(row, null) != null) {
+                size--;
+            }
+        }
+
+        @Override
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        Boxed toBoxed() {
+            return this;
+        }
+    }
+}
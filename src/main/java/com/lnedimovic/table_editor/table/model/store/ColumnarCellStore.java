@@ -0,0 +1,144 @@
+package com.lnedimovic.table_editor.table.model.store;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <code>ColumnarCellStore</code> keeps every column of the table in a primitive array of its type:
+ * integers in an <code>int[]</code>, doubles in a <code>double[]</code>, booleans in a bitset, and strings dictionary-encoded.
+ * Columns holding values of several types fall back to an array of <code>DType</code>s.
+ * <p>
+ * Values are handed out as fresh <code>DType</code> views of the stored values, so changing a handed out value doesn't change the store.
+ * Cells can be read while others are written, e.g. by parallel recalculation.
+ */
+public class ColumnarCellStore implements CellStore {
+    private final int                          rowCount;
+    /**
+     * Columns of the store; a replaced column is published only once it holds every value.
+     */
+    private final AtomicReferenceArray<Column> columns;
+
+    /**
+     * Creates an empty store.
+     * @param rowCount Number of rows.
+     * @param colCount Number of columns.
+     */
+    public ColumnarCellStore(int rowCount, int colCount) {
+        this.rowCount = rowCount;
+        this.columns  = new AtomicReferenceArray<>(colCount);
+
+        for (int col = 0; col < colCount; col++) {
+            columns.set(col, Column.create(rowCount, DTypeId.OTHER));
+        }
+    }
+
+    /**
+     * Creates a store holding the row data. Every column is given the type of its values, if they are all of the same type.
+     * @param data     Row data; missing cells of shorter rows are left empty.
+     * @param colCount Number of columns.
+     * @return         Store holding the data.
+     */
+    public static ColumnarCellStore of(List<List<DType<?>>> data, int colCount) {
+        ColumnarCellStore store = new ColumnarCellStore(data.size(), colCount);
+        store.load(data);
+
+        return store;
+    }
+
+    /**
+     * Writes the row data into the store.
+     * @param data Row data; missing cells of shorter rows are left as they are.
+     */
+    void load(List<List<DType<?>>> data) {
+        for (int row = 0; row < Math.min(rowCount, data.size()); row++) {
+            List<DType<?>> rowData = data.get(row);
+            for (int col = 0; col < Math.min(columns.length(), rowData.size()); col++) {
+                set(row, col, rowData.get(col));
+            }
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length();
+    }
+
+    @Override
+    public DType<?> get(int row, int col) {
+        return columns.get(col).get(row);
+    }
+
+    /**
+     * Writes the value into the cell. A value not matching the type of a non-empty column turns it into a boxed column.
+     * Writes are serialized, since a column may be replaced by a write; reads are not.
+     * @param row   Row of the cell.
+     * @param col   Column of the cell.
+     * @param value Value of the cell; null, for an empty cell.
+     */
+    @Override
+    public synchronized void set(int row, int col, DType<?> value) {
+        Column column = columns.get(col);
+        if (value == null) {
+            column.clear(row);
+            return;
+        }
+
+        Column replaced = column;
+        if (column.getTypeId() != value.getTypeId() && column.isEmpty()) {
+            // An empty column takes the type of its first value
+            column = createColumn(value.getTypeId());
+        }
+        if (!column.set(row, value)) {
+            column = column.toBoxed();
+            column.set(row, value);
+        }
+        if (column != replaced) {
+            // Published only once written, so readers never see the new column without the value
+            columns.set(col, column);
+        }
+    }
+
+    /**
+     * @param typeId Type of the values (see {@link DTypeId}).
+     * @return       Empty column for values of the type.
+     */
+    Column createColumn(int typeId) {
+        return Column.create(rowCount, typeId);
+    }
+
+    @Override
+    public int getTypeId(int row, int col) {
+        return columns.get(col).getTypeId(row);
+    }
+
+    @Override
+    public int getInt(int row, int col) {
+        return columns.get(col).getInt(row);
+    }
+
+    @Override
+    public double getDouble(int row, int col) {
+        return columns.get(col).getDouble(row);
+    }
+
+    @Override
+    public boolean getBoolean(int row, int col) {
+        return columns.get(col).getBoolean(row);
+    }
+
+    /**
+     * @param col Column index.
+     * @return    Type of the column's values (see {@link DTypeId}); <code>DTypeId.OTHER</code> for a column of mixed values.
+     */
+    public int getColumnTypeId(int col) {
+        return columns.get(col).getTypeId();
+    }
+}
@@ -0,0 +1,328 @@
+package com.lnedimovic.table_editor.table.model.store;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <code>MappedCellStore</code> keeps the cells in a memory-mapped file, so that tables larger than the heap can be opened.
+ * Cells are paged in by the operating system on demand, edits are written into the mapping in place, and {@link #flush()} writes them back to the file.
+ * <p>
+ * The file consists of a header, a fixed-size slot for every cell (column by column), and a growing region of UTF-8 string bytes:
+ * <pre>
+ *   header  - magic, version, row count, column count, used and mapped size of the string region
+ *   slot    - tag (type id + 1; 0 for an empty cell), length of a string, value (or string offset)
+ *   strings - bytes of the strings, appended as they are written
+ * </pre>
+ * Values of other types (e.g. arrays resulting from formulas) are kept in memory only, and are not written into the file.
+ */
+public class MappedCellStore implements CellStore, AutoCloseable {
+    private static final int  MAGIC       = 0x54454453;
+    private static final int  VERSION     = 1;
+    private static final long HEADER_SIZE = 64;
+    private static final long SLOT_SIZE   = 16;
+
+    private static final long OFFSET_ROW_COUNT      = 8;
+    private static final long OFFSET_COL_COUNT      = 12;
+    private static final long OFFSET_STRINGS_SIZE   = 16;
+    private static final long OFFSET_STRINGS_MAPPED = 24;
+
+    private static final long SLOT_TAG    = 0;
+    private static final long SLOT_LENGTH = 4;
+    private static final long SLOT_VALUE  = 8;
+
+    /**
+     * Initial size of the string region.
+     */
+    private static final long MIN_STRINGS_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    /**
+     * Arena of the mappings. Shared, since cells are read by parallel recalculation.
+     */
+    private final Arena       arena = Arena.ofShared();
+    private final int         rowCount;
+    private final int         colCount;
+
+    /**
+     * Mapping of the header and the cell slots.
+     */
+    private final MemorySegment    cells;
+    /**
+     * Mapping of the string region; replaced by a larger mapping once full.
+     */
+    private volatile MemorySegment strings;
+    /**
+     * Number of used bytes of the string region.
+     */
+    private long                   stringsSize;
+
+    /**
+     * Values not representable in the file, by cell index.
+     */
+    private final Map<Long, DType<?>> overlay = new ConcurrentHashMap<>();
+
+    private MappedCellStore(FileChannel channel, int rowCount, int colCount, long stringsSize, long stringsMapped) throws IOException {
+        this.channel     = channel;
+        this.rowCount    = rowCount;
+        this.colCount    = colCount;
+        this.cells       = channel.map(FileChannel.MapMode.READ_WRITE, 0, cellsSize(rowCount, colCount), arena);
+        this.strings     = channel.map(FileChannel.MapMode.READ_WRITE, cellsSize(rowCount, colCount), stringsMapped, arena);
+        this.stringsSize = stringsSize;
+    }
+
+    /**
+     * Creates a new file holding an empty table, replacing the existing one.
+     * @param path       Path of the file.
+     * @param rowCount   Number of rows.
+     * @param colCount   Number of columns.
+     * @return           Store of the file.
+     * @throws Exception In case of an I/O error.
+     */
+    public static MappedCellStore create(Path path, int rowCount, int colCount) throws Exception {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                                     StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedCellStore store = new MappedCellStore(channel, rowCount, colCount, 0, MIN_STRINGS_SIZE);
+            store.cells.set(ValueLayout.JAVA_INT,  0,                     MAGIC);
+            store.cells.set(ValueLayout.JAVA_INT,  4,                     VERSION);
+            store.cells.set(ValueLayout.JAVA_INT,  OFFSET_ROW_COUNT,      rowCount);
+            store.cells.set(ValueLayout.JAVA_INT,  OFFSET_COL_COUNT,      colCount);
+            store.cells.set(ValueLayout.JAVA_LONG, OFFSET_STRINGS_SIZE,   0);
+            store.cells.set(ValueLayout.JAVA_LONG, OFFSET_STRINGS_MAPPED, MIN_STRINGS_SIZE);
+
+            return store;
+        }
+        catch (Exception e) {
+            channel.close();
+            throw new Exception(e);
+        }
+    }
+
+    /**
+     * Creates a new file holding the row data (see {@link #create(Path, int, int)}).
+     * @param path       Path of the file.
+     * @param data       Row data; missing cells of shorter rows are left empty.
+     * @param colCount   Number of columns.
+     * @return           Store of the file.
+     * @throws Exception In case of an I/O error.
+     */
+    public static MappedCellStore create(Path path, List<List<DType<?>>> data, int colCount) throws Exception {
+        MappedCellStore store = create(path, data.size(), colCount);
+        for (int row = 0; row < data.size(); row++) {
+            List<DType<?>> rowData = data.get(row);
+            for (int col = 0; col < Math.min(colCount, rowData.size()); col++) {
+                store.set(row, col, rowData.get(col));
+            }
+        }
+
+        return store;
+    }
+
+    /**
+     * Opens an existing file. Nothing is read up front, so opening takes the same time regardless of the size of the table.
+     * @param path       Path of the file.
+     * @return           Store of the file.
+     * @throws Exception In case of an I/O error, or the file not being a table file.
+     */
+    public static MappedCellStore open(Path path) throws Exception {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (Arena headerArena = Arena.ofConfined()) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new Exception(String.format("MappedCellStore: %s is not a table file.", path));
+            }
+
+            MemorySegment header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE, headerArena);
+            if (header.get(ValueLayout.JAVA_INT, 0) != MAGIC || header.get(ValueLayout.JAVA_INT, 4) != VERSION) {
+                throw new Exception(String.format("MappedCellStore: %s is not a table file.", path));
+            }
+
+            return new MappedCellStore(channel, header.get(ValueLayout.JAVA_INT,  OFFSET_ROW_COUNT),
+                                                header.get(ValueLayout.JAVA_INT,  OFFSET_COL_COUNT),
+                                                header.get(ValueLayout.JAVA_LONG, OFFSET_STRINGS_SIZE),
+                                                header.get(ValueLayout.JAVA_LONG, OFFSET_STRINGS_MAPPED));
+        }
+        catch (Exception e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static long cellsSize(int rowCount, int colCount) {
+        return HEADER_SIZE + SLOT_SIZE * rowCount * colCount;
+    }
+
+    /**
+     * @return Offset of the cell's slot within the mapping.
+     */
+    private long slot(int row, int col) {
+        if (row < 0 || row >= rowCount || col < 0 || col >= colCount) {
+            throw new IndexOutOfBoundsException(String.format("MappedCellStore: Cell (%d, %d) out of bounds for size (%d, %d).", row, col, rowCount, colCount));
+        }
+        return HEADER_SIZE + SLOT_SIZE * ((long) col * rowCount + row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return colCount;
+    }
+
+    @Override
+    public DType<?> get(int row, int col) {
+        long slot = slot(row, col);
+        switch (cells.get(ValueLayout.JAVA_INT, slot + SLOT_TAG) - 1) {
+            case DTypeId.INTEGER:
+                return new DTypeInteger((int) cells.get(ValueLayout.JAVA_LONG, slot + SLOT_VALUE));
+            case DTypeId.DOUBLE:
+                return new DTypeDouble(cells.get(ValueLayout.JAVA_DOUBLE, slot + SLOT_VALUE));
+            case DTypeId.BOOLEAN:
+                return new DTypeBoolean(cells.get(ValueLayout.JAVA_LONG, slot + SLOT_VALUE) != 0);
+            case DTypeId.STRING:
+                int    length = cells.get(ValueLayout.JAVA_INT, slot + SLOT_LENGTH);
+                byte[] bytes  = new byte[length];
+                MemorySegment.copy(strings, ValueLayout.JAVA_BYTE, cells.get(ValueLayout.JAVA_LONG, slot + SLOT_VALUE), bytes, 0, length);
+
+                return new DTypeString(new String(bytes, StandardCharsets.UTF_8));
+            case DTypeId.OTHER:
+                return overlay.get(slot);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Writes the value into the mapping; it reaches the file once flushed (see {@link #flush()}).
+     * Writes are serialized, since a write may grow the string region.
+     * @param row   Row of the cell.
+     * @param col   Column of the cell.
+     * @param value Value of the cell; null, for an empty cell.
+     */
+    @Override
+    public synchronized void set(int row, int col, DType<?> value) {
+        long slot = slot(row, col);
+        overlay.remove(slot);
+
+        if (value == null) {
+            cells.set(ValueLayout.JAVA_INT, slot + SLOT_TAG, 0);
+            return;
+        }
+
+        int typeId = value.getTypeId();
+        switch (typeId) {
+            case DTypeId.INTEGER:
+                cells.set(ValueLayout.JAVA_LONG, slot + SLOT_VALUE, ((DTypeInteger) value).getValue());
+                break;
+            case DTypeId.DOUBLE:
+                cells.set(ValueLayout.JAVA_DOUBLE, slot + SLOT_VALUE, ((DTypeDouble) value).getValue());
+                break;
+            case DTypeId.BOOLEAN:
+                cells.set(ValueLayout.JAVA_LONG, slot + SLOT_VALUE, ((DTypeBoolean) value).getValue() ? 1 : 0);
+                break;
+            case DTypeId.STRING:
+                byte[] bytes = ((DTypeString) value).getValue().getBytes(StandardCharsets.UTF_8);
+                cells.set(ValueLayout.JAVA_LONG, slot + SLOT_VALUE,  appendString(bytes));
+                cells.set(ValueLayout.JAVA_INT,  slot + SLOT_LENGTH, bytes.length);
+                break;
+            default:
+                typeId = DTypeId.OTHER;
+                overlay.put(slot, value);
+                break;
+        }
+        cells.set(ValueLayout.JAVA_INT, slot + SLOT_TAG, typeId + 1);
+    }
+
+    /**
+     * Appends the bytes to the string region, growing it if needed. Bytes of overwritten strings are not reclaimed.
+     * @return Offset of the bytes within the string region.
+     */
+    private long appendString(byte[] bytes) {
+        long offset = stringsSize;
+        if (offset + bytes.length > strings.byteSize()) {
+            long mapped = Math.max(2 * strings.byteSize(), offset + bytes.length);
+            try {
+                // Earlier mappings stay valid for concurrent readers, until the store is closed
+                strings = channel.map(FileChannel.MapMode.READ_WRITE, cellsSize(rowCount, colCount), mapped, arena);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cells.set(ValueLayout.JAVA_LONG, OFFSET_STRINGS_MAPPED, mapped);
+        }
+
+        MemorySegment.copy(bytes, 0, strings, ValueLayout.JAVA_BYTE, offset, bytes.length);
+        stringsSize += bytes.length;
+        cells.set(ValueLayout.JAVA_LONG, OFFSET_STRINGS_SIZE, stringsSize);
+
+        return offset;
+    }
+
+    @Override
+    public int getTypeId(int row, int col) {
+        int tag = cells.get(ValueLayout.JAVA_INT, slot(row, col) + SLOT_TAG);
+        if (tag == DTypeId.OTHER + 1) {
+            DType<?> value = overlay.get(slot(row, col));
+            return (value == null) ? DTypeId.OTHER : value.getTypeId();
+        }
+        return (tag == 0) ? DTypeId.OTHER : tag - 1;
+    }
+
+    @Override
+    public int getInt(int row, int col) {
+        return (int) cells.get(ValueLayout.JAVA_LONG, slot(row, col) + SLOT_VALUE);
+    }
+
+    @Override
+    public double getDouble(int row, int col) {
+        return cells.get(ValueLayout.JAVA_DOUBLE, slot(row, col) + SLOT_VALUE);
+    }
+
+    @Override
+    public boolean getBoolean(int row, int col) {
+        return cells.get(ValueLayout.JAVA_LONG, slot(row, col) + SLOT_VALUE) != 0;
+    }
+
+    /**
+     * Writes the edits back to the file.
+     */
+    @Override
+    public synchronized void flush() {
+        cells.force();
+        strings.force();
+    }
+
+    /**
+     * Flushes the edits, and unmaps the file. The store can't be used afterwards.
+     * @throws IOException In case of an I/O error.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            arena.close();
+            channel.close();
+        }
+    }
+}
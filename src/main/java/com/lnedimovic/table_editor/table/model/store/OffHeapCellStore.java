@@ -0,0 +1,55 @@
+package com.lnedimovic.table_editor.table.model.store;
+
+import com.lnedimovic.table_editor.dtype.DType;
+
+import java.lang.foreign.Arena;
+import java.util.List;
+
+/**
+ * <code>OffHeapCellStore</code> is a {@link ColumnarCellStore} keeping typed columns outside of the Java heap, in memory segments of an {@link Arena}.
+ * Strings are kept as UTF-8 bytes (see {@link OffHeapColumn.Strings}); only columns of mixed values stay on the heap.
+ * <p>
+ * Large tables then don't grow the heap, nor the garbage collection pauses. Memory is released once the store is closed,
+ * after which the store can't be used anymore.
+ */
+public class OffHeapCellStore extends ColumnarCellStore implements AutoCloseable {
+    /**
+     * Arena the columns are allocated from. Shared, since cells are read by parallel recalculation.
+     */
+    private final Arena arena = Arena.ofShared();
+
+    /**
+     * Creates an empty store.
+     * @param rowCount Number of rows.
+     * @param colCount Number of columns.
+     */
+    public OffHeapCellStore(int rowCount, int colCount) {
+        super(rowCount, colCount);
+    }
+
+    /**
+     * Creates a store holding the row data (see {@link ColumnarCellStore#of(List, int)}).
+     * @param data     Row data; missing cells of shorter rows are left empty.
+     * @param colCount Number of columns.
+     * @return         Store holding the data.
+     */
+    public static OffHeapCellStore of(List<List<DType<?>>> data, int colCount) {
+        OffHeapCellStore store = new OffHeapCellStore(data.size(), colCount);
+        store.load(data);
+
+        return store;
+    }
+
+    @Override
+    Column createColumn(int typeId) {
+        return OffHeapColumn.create(arena, getRowCount(), typeId);
+    }
+
+    /**
+     * Releases the memory of the store.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
@@ -0,0 +1,229 @@
+package com.lnedimovic.table_editor.table.model.store;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeBoolean;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeDouble;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeInteger;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeString;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <code>OffHeapColumn</code> holds the values of a column in memory segments allocated outside of the Java heap (see {@link OffHeapCellStore}).
+ * Only the bitset of empty cells stays on the heap.
+ */
+final class OffHeapColumn {
+    private OffHeapColumn() {}
+
+    /**
+     * @param arena    Arena to allocate the segments from.
+     * @param rowCount Number of rows.
+     * @param typeId   Type of the values (see {@link DTypeId}).
+     * @return         Empty column for values of the type; a boxed (heap) column, if the type has no off-heap representation.
+     */
+    static Column create(Arena arena, int rowCount, int typeId) {
+        Column column;
+        switch (typeId) {
+            case DTypeId.INTEGER: column = new Ints(arena, rowCount);     break;
+            case DTypeId.DOUBLE:  column = new Doubles(arena, rowCount);  break;
+            case DTypeId.BOOLEAN: column = new Booleans(arena, rowCount); break;
+            case DTypeId.STRING:  column = new Strings(arena, rowCount);  break;
+            default:              return Column.create(rowCount, typeId);
+        }
+        column.empty.set(0, rowCount);
+
+        return column;
+    }
+
+    /**
+     * Allocates a zeroed segment, of at least one byte, so that empty tables are allowed.
+     */
+    private static MemorySegment allocate(Arena arena, long byteSize, long byteAlignment) {
+        return arena.allocate(Math.max(byteSize, 1), byteAlignment);
+    }
+
+    static class Ints extends Column {
+        private final MemorySegment values;
+
+        Ints(Arena arena, int rowCount) {
+            super(rowCount);
+            this.values = allocate(arena, ValueLayout.JAVA_INT.byteSize() * rowCount, ValueLayout.JAVA_INT.byteAlignment());
+        }
+
+        @Override
+        int getTypeId() {
+            return DTypeId.INTEGER;
+        }
+
+        @Override
+        DType<?> get(int row) {
+            return empty.get(row) ? null : new DTypeInteger(getInt(row));
+        }
+
+        @Override
+        boolean set(int row, DType<?> value) {
+            if (!(value instanceof DTypeInteger)) {
+                return false;
+            }
+            values.setAtIndex(ValueLayout.JAVA_INT, row, ((DTypeInteger) value).getValue());
+            empty.clear(row);
+            return true;
+        }
+
+        @Override
+        int getInt(int row) {
+            return values.getAtIndex(ValueLayout.JAVA_INT, row);
+        }
+    }
+
+    static class Doubles extends Column {
+        private final MemorySegment values;
+
+        Doubles(Arena arena, int rowCount) {
+            super(rowCount);
+            this.values = allocate(arena, ValueLayout.JAVA_DOUBLE.byteSize() * rowCount, ValueLayout.JAVA_DOUBLE.byteAlignment());
+        }
+
+        @Override
+        int getTypeId() {
+            return DTypeId.DOUBLE;
+        }
+
+        @Override
+        DType<?> get(int row) {
+            return empty.get(row) ? null : new DTypeDouble(getDouble(row));
+        }
+
+        @Override
+        boolean set(int row, DType<?> value) {
+            if (!(value instanceof DTypeDouble)) {
+                return false;
+            }
+            values.setAtIndex(ValueLayout.JAVA_DOUBLE, row, ((DTypeDouble) value).getValue());
+            empty.clear(row);
+            return true;
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values.getAtIndex(ValueLayout.JAVA_DOUBLE, row);
+        }
+    }
+
+    /**
+     * Booleans, one byte per cell.
+     */
+    static class Booleans extends Column {
+        private final MemorySegment values;
+
+        Booleans(Arena arena, int rowCount) {
+            super(rowCount);
+            this.values = allocate(arena, rowCount, 1);
+        }
+
+        @Override
+        int getTypeId() {
+            return DTypeId.BOOLEAN;
+        }
+
+        @Override
+        DType<?> get(int row) {
+            return empty.get(row) ? null : new DTypeBoolean(getBoolean(row));
+        }
+
+        @Override
+        boolean set(int row, DType<?> value) {
+            if (!(value instanceof DTypeBoolean)) {
+                return false;
+            }
+            values.set(ValueLayout.JAVA_BYTE, row, (byte) (((DTypeBoolean) value).getValue() ? 1 : 0));
+            empty.clear(row);
+            return true;
+        }
+
+        @Override
+        boolean getBoolean(int row) {
+            return values.get(ValueLayout.JAVA_BYTE, row) != 0;
+        }
+    }
+
+    /**
+     * Strings, as UTF-8 bytes appended to a growing byte heap. Every cell holds the offset and the length of its bytes.
+     * Bytes of overwritten strings, and heaps outgrown, are not reclaimed until the store is closed.
+     */
+    static class Strings extends Column {
+        /**
+         * Size of the heap before the first string outgrows it; the heap doubles from there, so it stays proportional to the strings held.
+         */
+        private static final long      INITIAL_HEAP_SIZE = 256;
+
+        /**
+         * Offset and length of every cell's bytes, as pairs of ints.
+         */
+        private final MemorySegment    references;
+        private final Arena            arena;
+        /**
+         * Bytes of the strings; replaced by a larger copy once full.
+         */
+        private volatile MemorySegment heap;
+        /**
+         * Number of used bytes of the heap.
+         */
+        private int                    heapSize = 0;
+
+        Strings(Arena arena, int rowCount) {
+            super(rowCount);
+            this.arena      = arena;
+            this.references = allocate(arena, 2 * ValueLayout.JAVA_INT.byteSize() * rowCount, ValueLayout.JAVA_INT.byteAlignment());
+            this.heap       = allocate(arena, INITIAL_HEAP_SIZE, 1);
+        }
+
+        @Override
+        int getTypeId() {
+            return DTypeId.STRING;
+        }
+
+        @Override
+        DType<?> get(int row) {
+            if (empty.get(row)) {
+                return null;
+            }
+
+            int    offset = references.getAtIndex(ValueLayout.JAVA_INT, 2L * row);
+            int    length = references.getAtIndex(ValueLayout.JAVA_INT, 2L * row + 1);
+            byte[] bytes  = new byte[length];
+            MemorySegment.copy(heap, ValueLayout.JAVA_BYTE, offset, bytes, 0, length);
+
+            return new DTypeString(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        boolean set(int row, DType<?> value) {
+            if (!(value instanceof DTypeString)) {
+                return false;
+            }
+
+            byte[] bytes = ((DTypeString) value).getValue().getBytes(StandardCharsets.UTF_8);
+            if ((long) heapSize + bytes.length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("OffHeapColumn: String column exceeds 2 GB.");
+            }
+            if (heapSize + bytes.length > heap.byteSize()) {
+                MemorySegment grown = allocate(arena, Math.min(Math.max(2 * heap.byteSize(), (long) heapSize + bytes.length), Integer.MAX_VALUE), 1);
+                MemorySegment.copy(heap, 0, grown, 0, heapSize);
+                heap = grown;
+            }
+
+            MemorySegment.copy(bytes, 0, heap, ValueLayout.JAVA_BYTE, heapSize, bytes.length);
+            references.setAtIndex(ValueLayout.JAVA_INT, 2L * row,     heapSize);
+            references.setAtIndex(ValueLayout.JAVA_INT, 2L * row + 1, bytes.length);
+            heapSize += bytes.length;
+
+            empty.clear(row);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.lnedimovic.table_editor.table.model.store;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.DTypeRange;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <code>TiledCellStore</code> keeps the cells of a sparse table in fixed-size tiles of {@link #TILE_ROWS} x {@link #TILE_COLS} cells.
+ * Tiles are allocated once a cell within them is written, and dropped once all their cells are empty again,
+ * so the memory used follows the number of non-empty cells rather than the size of the table.
+ * <p>
+ * Iterating over a block of cells (see {@link #forEachCell}) skips the tiles that aren't allocated.
+ */
+public class TiledCellStore implements CellStore {
+    public static final int TILE_ROWS = 64;
+    public static final int TILE_COLS = 16;
+
+    private final int rowCount;
+    private final int colCount;
+
+    /**
+     * Allocated tiles, keyed by their row and column block (see {@link #key(int, int)}).
+     */
+    private final Map<Long, Tile> tiles = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty store. Nothing is allocated up front.
+     * @param rowCount Number of rows.
+     * @param colCount Number of columns.
+     */
+    public TiledCellStore(int rowCount, int colCount) {
+        this.rowCount = rowCount;
+        this.colCount = colCount;
+    }
+
+    /**
+     * Creates a store holding the row data.
+     * @param data     Row data; missing cells of shorter rows, and null cells, are left empty.
+     * @param colCount Number of columns.
+     * @return         Store holding the data.
+     */
+    public static TiledCellStore of(List<List<DType<?>>> data, int colCount) {
+        TiledCellStore store = new TiledCellStore(data.size(), colCount);
+        for (int row = 0; row < data.size(); row++) {
+            List<DType<?>> rowData = data.get(row);
+            for (int col = 0; col < Math.min(colCount, rowData.size()); col++) {
+                if (rowData.get(col) != null) {
+                    store.set(row, col, rowData.get(col));
+                }
+            }
+        }
+
+        return store;
+    }
+
+    private static long key(int rowBlock, int colBlock) {
+        return ((long) rowBlock << 32) | colBlock;
+    }
+
+    private Tile tile(int row, int col) {
+        if (row < 0 || row >= rowCount || col < 0 || col >= colCount) {
+            throw new IndexOutOfBoundsException(String.format("TiledCellStore: Cell (%d, %d) out of bounds for size (%d, %d).", row, col, rowCount, colCount));
+        }
+        return tiles.get(key(row / TILE_ROWS, col / TILE_COLS));
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return colCount;
+    }
+
+    @Override
+    public DType<?> get(int row, int col) {
+        Tile tile = tile(row, col);
+        return (tile == null) ? null : tile.values[Tile.index(row, col)];
+    }
+
+    /**
+     * Writes the value into the cell, allocating its tile if needed. Writes are serialized, since a write may drop a tile.
+     * @param row   Row of the cell.
+     * @param col   Column of the cell.
+     * @param value Value of the cell; null, for an empty cell.
+     */
+    @Override
+    public synchronized void set(int row, int col, DType<?> value) {
+        long key  = key(row / TILE_ROWS, col / TILE_COLS);
+        Tile tile = tile(row, col);
+        if (tile == null) {
+            if (value == null) {
+                return;
+            }
+            tile = new Tile();
+            tiles.put(key, tile);
+        }
+
+        int index = Tile.index(row, col);
+        if (tile.values[index] == null) {
+            tile.size++;
+        }
+        if (value == null) {
+            tile.size--;
+        }
+        tile.values[index] = value;
+
+        if (tile.size == 0) {
+            tiles.remove(key);
+        }
+    }
+
+    @Override
+    public int getTypeId(int row, int col) {
+        DType<?> value = get(row, col);
+        return (value == null) ? DTypeId.OTHER : value.getTypeId();
+    }
+
+    /**
+     * Visits the non-empty cells of the block row by row, skipping the tiles that aren't allocated.
+     * Blocks spanning more tiles than there are allocated (e.g. whole columns of a sparse sheet) visit only the bands of rows holding a tile.
+     */
+    @Override
+    public void forEachCell(int rowStart, int colStart, int rowEnd, int colEnd, DTypeRange.CellVisitor visitor) throws Exception {
+        int colBlockStart = colStart / TILE_COLS;
+        int colBlockEnd   = (colEnd + TILE_COLS - 1) / TILE_COLS;
+        int rowBlockStart = rowStart / TILE_ROWS;
+        int rowBlockEnd   = (int) (((long) rowEnd + TILE_ROWS - 1) / TILE_ROWS);
+
+        if ((long) (rowBlockEnd - rowBlockStart) * (colBlockEnd - colBlockStart) > tiles.size()) {
+            int[] rowBlocks = tiles.keySet().stream()
+                                   .filter(key -> (int) (long) key >= colBlockStart && (int) (long) key < colBlockEnd)
+                                   .mapToInt(key -> (int) (key >>> 32))
+                                   .filter(rowBlock -> rowBlock >= rowBlockStart && rowBlock < rowBlockEnd)
+                                   .distinct().sorted().toArray();
+            for (int rowBlock : rowBlocks) {
+                visitBand(rowBlock, rowStart, colStart, rowEnd, colEnd, visitor);
+            }
+            return;
+        }
+
+        for (int rowBlock = rowBlockStart; rowBlock < rowBlockEnd; rowBlock++) {
+            visitBand(rowBlock, rowStart, colStart, rowEnd, colEnd, visitor);
+        }
+    }
+
+    /**
+     * Visits the non-empty cells of the block within a single band of rows (see {@link #forEachCell}).
+     */
+    private void visitBand(int rowBlock, int rowStart, int colStart, int rowEnd, int colEnd, DTypeRange.CellVisitor visitor) throws Exception {
+        int colBlockStart = colStart / TILE_COLS;
+        int colBlockEnd   = (colEnd + TILE_COLS - 1) / TILE_COLS;
+
+        // Tiles of the band of rows, looked up once
+        Tile[]  band  = new Tile[colBlockEnd - colBlockStart];
+        boolean empty = true;
+        for (int colBlock = colBlockStart; colBlock < colBlockEnd; colBlock++) {
+            band[colBlock - colBlockStart] = tiles.get(key(rowBlock, colBlock));
+            empty &= band[colBlock - colBlockStart] == null;
+        }
+        if (empty) {
+            return;
+        }
+
+        int bandEnd = (int) Math.min(rowEnd, ((long) rowBlock + 1) * TILE_ROWS);
+        for (int row = Math.max(rowStart, rowBlock * TILE_ROWS); row < bandEnd; row++) {
+            for (int colBlock = colBlockStart; colBlock < colBlockEnd; colBlock++) {
+                Tile tile = band[colBlock - colBlockStart];
+                if (tile == null) {
+                    continue;
+                }
+
+                int tileEnd = Math.min(colEnd, (colBlock + 1) * TILE_COLS);
+                for (int col = Math.max(colStart, colBlock * TILE_COLS); col < tileEnd; col++) {
+                    if (tile.values[Tile.index(row, col)] != null) {
+                        visitor.visit(this, row, col);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of allocated tiles.
+     */
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * Block of cells; empty cells are null.
+     */
+    private static class Tile {
+        private final DType<?>[] values = new DType<?>[TILE_ROWS * TILE_COLS];
+        /**
+         * Number of non-empty cells.
+         */
+        private int              size   = 0;
+
+        private static int index(int row, int col) {
+            return (row % TILE_ROWS) * TILE_COLS + col % TILE_COLS;
+        }
+    }
+}
@@ -8,11 +8,17 @@ import com.lnedimovic.table_editor.table.CellRenderer;
 import com.lnedimovic.table_editor.table.StandardTable;
 import com.lnedimovic.table_editor.table.handlers.*;
 import com.lnedimovic.table_editor.table.model.TableModel;
+import com.lnedimovic.table_editor.table.model.store.CellStore;
+import com.lnedimovic.table_editor.table.model.store.ColumnarCellStore;
 
 import javax.swing.*;
 import javax.swing.table.JTableHeader;
 import javax.swing.table.TableColumn;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.List;
 
 /**
@@ -48,8 +54,20 @@ public class TableView extends JFrame {
      * @param parser      <code>Parser</code> to be used within the table.
      */
     public TableView(List<List<DType<?>>> data, String[] columnNames, Tokenizer tokenizer, Parser parser) {
+        this(ColumnarCellStore.of(data, columnNames.length), columnNames, tokenizer, parser);
+    }
+
+    /**
+     * Creates a new instance of TableView.
+     *
+     * @param store       Cell values.
+     * @param columnNames Column names.
+     * @param tokenizer   <code>Tokenizer</code> to be used within the table.
+     * @param parser      <code>Parser</code> to be used within the table.
+     */
+    public TableView(CellStore store, String[] columnNames, Tokenizer tokenizer, Parser parser) {
         // Table Setup
-        model = new TableModel(data, columnNames, tokenizer, parser);
+        model = new TableModel(store, columnNames, tokenizer, parser);
         table = new StandardTable(model);
 
         table.setRowSelectionAllowed(true);
@@ -83,10 +101,43 @@ public class TableView extends JFrame {
         table.getSelectionModel().addListSelectionListener(new SelectionHandler(table));
         table.getColumnModel().getSelectionModel().addListSelectionListener(new SelectionHandler(table));
 
+        // Saving
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                     .put(KeyStroke.getKeyStroke(KeyEvent.VK_S, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()), "save");
+        getRootPane().getActionMap().put("save", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                try {
+                    model.save();
+                }
+                catch (Exception ex) {
+                    JOptionPane.showMessageDialog(null, "Exception occured while saving: " + ex.getMessage());
+                }
+            }
+        });
+
+        // Pasting - replaces the table's own "paste" action
+        table.getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT)
+             .put(KeyStroke.getKeyStroke(KeyEvent.VK_V, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()), "paste");
+        table.getActionMap().put("paste", new PasteHandler(table, model));
+
         // Scroll Pane setup
         JScrollPane scrollPane = new JScrollPane(table, JScrollPane.VERTICAL_SCROLLBAR_ALWAYS, JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
         add(scrollPane);
 
+        // Closing - releases the store (e.g. off-heap memory, or a mapped file, flushed first) before the program exits
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                try {
+                    model.close();
+                }
+                catch (Exception ex) {
+                    JOptionPane.showMessageDialog(null, "Exception occured while closing the table: " + ex.getMessage());
+                }
+            }
+        });
+
         // General window settings
         setTitle("\uD83D\uDCDD Simple Table Editor (by Luka Nedimović)");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -1,23 +1,46 @@
 package com.lnedimovic.table_editor;
 
 import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
 import com.lnedimovic.table_editor.dtype.dtypes.*;
 import com.lnedimovic.table_editor.expression.Parser;
 import com.lnedimovic.table_editor.expression.Tokenizer;
 import com.lnedimovic.table_editor.expression.ast.ASTree;
+import com.lnedimovic.table_editor.expression.ast.node.Node;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.ConstantNode;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.FunctionNode;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.LetNode;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.ReferenceNode;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.SpecializedNode;
 import com.lnedimovic.table_editor.expression.function.Function;
+import com.lnedimovic.table_editor.expression.function.FunctionRegistry;
+import com.lnedimovic.table_editor.expression.function.Thunk;
 import com.lnedimovic.table_editor.expression.function.functions.*;
+import com.lnedimovic.table_editor.expression.operation.OpCode;
 import com.lnedimovic.table_editor.expression.operation.Operation;
 import com.lnedimovic.table_editor.expression.operation.OperationSet;
+import com.lnedimovic.table_editor.expression.optimizer.Optimizer;
 import com.lnedimovic.table_editor.expression.token.Token;
+import com.lnedimovic.table_editor.expression.token.TokenStream;
+import com.lnedimovic.table_editor.expression.token.TokenType;
+import com.lnedimovic.table_editor.expression.typing.Specializer;
+import com.lnedimovic.table_editor.expression.typing.TypeInference;
+import com.lnedimovic.table_editor.table.model.CellAddress;
+import com.lnedimovic.table_editor.table.model.CellReference;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class TestParser {
     public static OperationSet setupOperations() {
@@ -65,12 +88,15 @@ public class TestParser {
 
             // Conditional functions also exist
             Function ifeq = new IFEQ("ifeq");
+            Function _if = new If("if");
+            Function and = new And("and");
+            Function or = new Or("or");
 
             // Arbitrary number of parameter functions
             Function sum = new Sum("sum");
             Function average = new Average("average");
 
-            functions = new Function[]{e, pi, abs, sqrt, pow, gcd, lcm, min, max, ifeq, sum, average};
+            functions = new Function[]{e, pi, abs, sqrt, pow, gcd, lcm, min, max, ifeq, sum, average, _if, and, or};
         } catch (Exception e) {
             System.out.println("Error while setting up operations: " + e.getMessage());
         }
@@ -574,4 +600,402 @@ public class TestParser {
         assertEquals(evaluate("=ifeq(\"w\" * 3 + \"123\", \"www123\") * 5"), new DTypeInteger(5));
         assertEquals(evaluate("=sum([1, 2, 3, 4])"),                         new DTypeInteger(10));
     }
+
+    @Test
+    public void testCompiledEvaluation() throws Exception {
+        String[] expressions = new String[]{
+            "=sqrt(abs(-16))", "=pow(max(1++1, ---1000), 3)", "=5 + e() - pi()^2", "=ifeq(pow(5, 2), 25)",
+            "=ifeq(\"w\" * 3 + \"123\", \"www123\") * 5", "=sum([1, 2, 3.0, 4])", "=average([1, 2, 3])", "=-(2 < 10)"
+        };
+
+        // Compiled trees evaluate to the same values as the interpreted ones
+        for (String expression : expressions) {
+            ASTree ast = parser.parseTokens(tokenizer.tokenize(expression));
+            DType<?> interpreted = ast.evaluate(operations);
+
+            ast.compile();
+            assertEquals(interpreted, ast.evaluate(operations));
+        }
+
+        // Trees are promoted to the compiled tier after enough evaluations
+        ASTree ast = parser.parseTokens(tokenizer.tokenize("=1 + 2 * 3"));
+        for (int idx = 0; idx < ASTree.COMPILE_THRESHOLD; idx++) {
+            assertEquals(ast.evaluate(operations), new DTypeInteger(7));
+        }
+        assertEquals(ast.isCompiled(), true);
+        assertEquals(ast.evaluate(operations), new DTypeInteger(7));
+
+        // Trees too deep to compile stay interpreted, however often they are evaluated
+        String[] deep = new String[]{"=1" + " + 1".repeat(Parser.MAX_DEPTH - 1),
+                                     "=" + "abs(".repeat(Parser.MAX_DEPTH - 1) + "1" + ")".repeat(Parser.MAX_DEPTH - 1)};
+        for (String expression : deep) {
+            ASTree deepTree = parser.parseTokens(tokenizer.tokenize(expression));
+            DType<?> expected = new DTypeInteger(expression.startsWith("=1") ? Parser.MAX_DEPTH : 1);
+            for (int idx = 0; idx < 2 * ASTree.COMPILE_THRESHOLD; idx++) {
+                assertEquals(deepTree.evaluate(operations), expected);
+            }
+            assertEquals(deepTree.isCompiled(), false);
+        }
+
+        // Trees at the limit are still compiled
+        ASTree shallow = parser.parseTokens(tokenizer.tokenize("=1" + " + 1".repeat(ASTree.MAX_COMPILE_DEPTH - 1)));
+        for (int idx = 0; idx < ASTree.COMPILE_THRESHOLD; idx++) {
+            assertEquals(shallow.evaluate(operations), new DTypeInteger(ASTree.MAX_COMPILE_DEPTH));
+        }
+        assertEquals(shallow.isCompiled(), true);
+
+        // Errors are still reported from the compiled tier
+        ASTree invalid = parser.parseTokens(tokenizer.tokenize("=1 / 0"));
+        invalid.compile();
+        assertThrows(Exception.class, () -> {invalid.evaluate(operations);});
+    }
+
+    @Test
+    public void testFunctionDispatch() throws Exception {
+        Function sqrt = new Sqrt("sqrt");
+
+        // Overloads are selected by argument types, and the selection is kept for later calls
+        assertEquals(sqrt.evaluate(new DTypeInteger(16)),  new DTypeInteger(4));
+        assertEquals(sqrt.evaluate(new DTypeDouble(2.25)), new DTypeDouble(1.5));
+        assertEquals(sqrt.resolve(new Class<?>[]{DTypeInteger.class}), sqrt.resolve(new Class<?>[]{DTypeInteger.class}));
+        assertThrows(Exception.class, () -> {sqrt.evaluate(new DTypeString("16"));});
+        assertThrows(Exception.class, () -> {sqrt.evaluate(new DTypeInteger(1), new DTypeInteger(2));});
+
+        // Call sites switching between argument types still select the right overload
+        ASTree ast = parser.parseTokens(tokenizer.tokenize("=abs(-4) + abs(-2.5) + abs(abs(-1) * 2.0)"));
+        for (int idx = 0; idx < 2 * ASTree.COMPILE_THRESHOLD; idx++) {
+            assertEquals(ast.evaluate(operations), new DTypeDouble(8.5));
+        }
+    }
+
+    @Test
+    public void testOperationKernels() throws Exception {
+        DType<?>[] values = new DType<?>[]{
+            new DTypeInteger(7), new DTypeInteger(0), new DTypeInteger(-3), new DTypeDouble(2.5), new DTypeDouble(0.0),
+            new DTypeBoolean(true), new DTypeBoolean(false), new DTypeString("ab")
+        };
+
+        // Kernels (specialized or not) give the same results and errors as the DType methods they replace
+        for (Operation operation : operations.operations) {
+            for (DType<?> left : values) {
+                for (DType<?> right : values) {
+                    String expected;
+                    try {
+                        switch (operation.isUnary() ? "u" + operation.getId() : operation.getId()) {
+                            case "u+": expected = left.id().toString();       break;
+                            case "u-": expected = left.neg().toString();      break;
+                            case "+":  expected = left.add(right).toString(); break;
+                            case "-":  expected = left.sub(right).toString(); break;
+                            case "*":  expected = left.mul(right).toString(); break;
+                            case "/":  expected = left.div(right).toString(); break;
+                            case "^":  expected = left.exp(right).toString(); break;
+                            case "%":  expected = left.mod(right).toString(); break;
+                            case "<":  expected = left.lt(right).toString();  break;
+                            default:   expected = left.gt(right).toString();  break;
+                        }
+                    }
+                    catch (Exception e) {
+                        expected = e.getMessage();
+                    }
+
+                    String actual;
+                    try {
+                        actual = operations.evaluateOperation(operation, left, right).toString();
+                    }
+                    catch (Exception e) {
+                        actual = e.getMessage();
+                    }
+
+                    assertEquals(expected, actual);
+                }
+            }
+        }
+
+        assertEquals(operations.find("*", false).getOpcode(), OpCode.MUL);
+        assertEquals(operations.find("-", true).getOpcode(),  OpCode.NEG);
+        assertThrows(Exception.class, () -> {operations.evaluateOperation(new Operation("&", 10, false), new DTypeInteger(1), new DTypeInteger(1));});
+    }
+
+    @Test
+    public void testTypeInference() throws Exception {
+        // Type errors are reported while parsing
+        assertThrows(Exception.class, () -> {parser.parseTokens(tokenizer.tokenize("=\"a\" - 1"));});
+        assertThrows(Exception.class, () -> {parser.parseTokens(tokenizer.tokenize("=sqrt(\"16\")"));});
+        assertThrows(Exception.class, () -> {parser.parseTokens(tokenizer.tokenize("=1 + sum(\"a\")"));});
+        assertThrows(Exception.class, () -> {parser.parseTokens(tokenizer.tokenize("=2.5 % 2"));});
+        assertEquals(TypeInference.check(parser.parseTokens(tokenizer.tokenize("=gcd(4, 6) * 1.5")).getRoot()), DTypeId.DOUBLE);
+        assertEquals(TypeInference.check(parser.parseTokens(tokenizer.tokenize("=pow(2, 3) < 1")).getRoot()),   DTypeId.OTHER);
+
+        // Numeric subtrees are specialized, with the same results as the generic evaluation
+        String[] expressions = new String[]{
+            "=1 + 2 * 3 - 4 / 3", "=2147483647 + 1", "=-(2 ^ 10) % 7", "=1.5 * 2 + 4 / 3", "=2 < 2.5", "=gcd(12, 18) * 2 + e()",
+            "=sqrt(abs(-16) + 9)", "=-2.5 ^ 2"
+        };
+        for (String expression : expressions) {
+            ASTree generic     = parser.parseTokens(tokenizer.tokenize(expression));
+            ASTree specialized = parser.parseTokens(tokenizer.tokenize(expression));
+            specialized.setRoot(Specializer.specialize(specialized.getRoot(), reference -> DTypeId.OTHER));
+
+            assertEquals(generic.evaluate(operations), specialized.evaluate(operations));
+        }
+
+        ASTree tree = parser.parseTokens(tokenizer.tokenize("=1 + 2 * 3"));
+        tree.setRoot(Specializer.specialize(tree.getRoot(), reference -> DTypeId.OTHER));
+        assertTrue(tree.getRoot() instanceof SpecializedNode);
+
+        // Errors are still reported by the generic evaluation
+        ASTree invalid = parser.parseTokens(tokenizer.tokenize("=1 + 1 / 0"));
+        invalid.setRoot(Specializer.specialize(invalid.getRoot(), reference -> DTypeId.OTHER));
+        assertThrows(Exception.class, () -> {invalid.evaluate(operations);});
+    }
+
+    @Test
+    public void testOptimizer() throws Exception {
+        // Reference-free subtrees, including nullary functions, are folded into constants with the same value
+        String[] expressions = new String[]{
+            "=1 + 2 * 3", "=pi() * 2", "=sqrt(abs(-16) + 9) + e()", "=ifeq(2 * 3, 6)", "=sum([1, 2, 3]) * 2", "=2147483647 + 1"
+        };
+        for (String expression : expressions) {
+            ASTree generic   = parser.parseTokens(tokenizer.tokenize(expression));
+            ASTree optimized = parser.parseTokens(tokenizer.tokenize(expression));
+            optimized.setRoot(Optimizer.optimize(optimized.getRoot(), operations));
+
+            assertTrue(optimized.getRoot() instanceof ConstantNode);
+            assertEquals(generic.evaluate(operations), optimized.evaluate(operations));
+        }
+
+        // Failing subtrees are left to fail at evaluation time
+        ASTree invalid = parser.parseTokens(tokenizer.tokenize("=1 + 1 / 0"));
+        invalid.setRoot(Optimizer.optimize(invalid.getRoot(), operations));
+        assertTrue(!(invalid.getRoot() instanceof ConstantNode));
+        assertThrows(Exception.class, () -> {invalid.evaluate(operations);});
+    }
+
+    @Test
+    public void testAggregates() throws Exception {
+        // Running sums follow DType.add, element by element
+        assertEquals(evaluate("=sum([True, False, 2, 0.5])"), new DTypeDouble(3.5));
+        assertEquals(evaluate("=sum([[1, 2], [3, True]])"),   new DTypeInteger(7));
+        assertEquals(evaluate("=sum([2147483647, 1, 0.5])"),  new DTypeDouble(-2147483647.5));
+        assertEquals(evaluate("=average([[1, 2], [3, 4]])"),  new DTypeDouble(2.5));
+        assertEquals(evaluate("=min([[3, 1], [2, 5]])"),      new DTypeInteger(1));
+        assertEquals(evaluate("=max([False, True])"),         new DTypeBoolean(true));
+        assertThrows(Exception.class, () -> {evaluate("=max([1, 2.0])");});
+        assertThrows(Exception.class, () -> {evaluate("=sum([[[1]]])");});
+
+        // Large ranges are folded in parallel, with the same result
+        final int size = 300;
+        DTypeRange ints    = new DTypeRange((row, col) -> new DTypeInteger(row + col), 0, 0, size, size);
+        DTypeRange doubles = new DTypeRange((row, col) -> (row == size / 2 && col == 0) ? new DTypeDouble(0.5) : new DTypeInteger(row - col), 0, 0, size, size);
+        assertEquals(new Sum("sum").sum(ints),             new DTypeInteger(size * size * (size - 1)));
+        assertEquals(new Max("max").max(ints),             new DTypeInteger(2 * (size - 1)));
+        assertEquals(new Average("average").average(ints), new DTypeDouble(size - 1.0));
+        assertEquals(new Sum("sum").sum(doubles),          new DTypeDouble(0.5 - (size / 2)));
+        assertThrows(Exception.class, () -> {new Min("min").min(doubles);});
+    }
+
+    @Test
+    public void testLexer() throws Exception {
+        TokenStream tokens = tokenizer.lex("=sum(A1:B2, -2.5) * \"x y\"");
+        TokenType[] types  = new TokenType[]{
+            TokenType.FUNCTION, TokenType.PARENTHESIS, TokenType.REFERENCE, TokenType.COMMA, TokenType.OPERATION, TokenType.NUMERICAL_CONSTANT,
+            TokenType.PARENTHESIS, TokenType.OPERATION, TokenType.QUOTATION_MARK, TokenType.STRING, TokenType.QUOTATION_MARK
+        };
+        assertEquals(tokens.size(), types.length);
+        for (int idx = 0; idx < types.length; idx++) {
+            assertEquals(tokens.type(idx), types[idx]);
+        }
+
+        // Literals are kept on the side, while the bounds point into the expression
+        assertEquals(tokens.literal(2).toString(), "A1:B2");
+        assertEquals(tokens.text(2),    "A1:B2");
+        assertEquals(tokens.literal(5), new DTypeDouble(2.5));
+        assertEquals(tokens.literal(9), "x y");
+        assertTrue(((Operation) tokens.literal(4)).isUnary());
+        assertTrue(!((Operation) tokens.literal(7)).isUnary());
+        assertEquals(tokens.literal(2 + 8), null);
+        assertEquals(tokenizer.lex("=C3").literal(0).toString(), "C3:C3");
+
+        // Large formulas are lexed in a single pass
+        StringBuilder builder = new StringBuilder("=1");
+        while (builder.length() < 100_000) {
+            builder.append(" + 1");
+        }
+        assertEquals(tokenizer.lex(builder.toString()).size(), 2 * ((builder.length() - 2) / 4) + 1);
+
+        // Multi-letter columns up to XFD, rows up to 2^31 - 1
+        TokenStream wide = tokenizer.lex("=AA10 + $XFD$2147483647:XFD2147483647");
+        assertEquals(wide.literal(0).toString(), "AA10:AA10");
+        assertEquals(wide.literal(2).toString(), "$XFD$2147483647:XFD2147483647");
+        assertEquals(CellAddress.col(((CellReference) wide.literal(0)).getStart()), 27);
+        assertEquals(CellAddress.row(((CellReference) wide.literal(2)).getEnd()), CellReference.LAST_ROW);
+        assertEquals(CellReference.columnName(16384), "XFD");
+        assertThrows(Exception.class, () -> tokenizer.lex("=XFE1"));
+        assertThrows(Exception.class, () -> tokenizer.lex("=A2147483648"));
+        assertThrows(Exception.class, () -> tokenizer.lex("=sum(A1:A2147483648)"));
+        assertThrows(Exception.class, () -> tokenizer.lex("=sum(1:2147483648)"));
+
+        // Whole columns and rows
+        TokenStream lines = tokenizer.lex("=sum(A:A) + sum($B:AC, 3:$5) + 2");
+        assertEquals(lines.literal(2).toString(), "A:A");
+        assertEquals(lines.literal(7).toString(), "$B:AC");
+        assertEquals(lines.literal(9).toString(), "3:$5");
+        assertEquals(lines.literal(12).toString(), "2");
+        assertEquals(CellReference.parse("$B:AC"), lines.literal(7));
+        assertEquals(CellReference.parse("3:$5"),  lines.literal(9));
+        assertEquals(CellAddress.row(((CellReference) lines.literal(2)).getEnd()), CellReference.LAST_ROW);
+        assertThrows(Exception.class, () -> tokenizer.lex("=sum(B:A)"));
+        assertThrows(Exception.class, () -> tokenizer.lex("=sum(5:3)"));
+        assertThrows(Exception.class, () -> tokenizer.lex("=sum(A:B2)"));
+        assertThrows(Exception.class, () -> tokenizer.lex("=sum(0:1)"));
+
+        assertThrows(Exception.class, () -> tokenizer.lex("=A0"));
+        assertThrows(Exception.class, () -> tokenizer.lex("=B2:A1"));
+        assertThrows(Exception.class, () -> tokenizer.lex("=\"abc"));
+        assertThrows(Exception.class, () -> tokenizer.lex("=1."));
+        assertThrows(Exception.class, () -> tokenizer.lex("=99999999999"));
+    }
+
+    @Test
+    public void testConcurrentParsing() throws Exception {
+        String[] expressions = new String[]{"=1 + 2 * 3", "=pow(2, 10) - abs(-4)", "=sum([1, 2, 3]) / 2.0", "=-(5 - 7) ^ 2", "=\"a\" + \"b\""};
+
+        // A single tokenizer and parser pair is shared by all the threads
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<DType<?>>> results = new ArrayList<>();
+            for (int idx = 0; idx < 2000; idx++) {
+                String expression = expressions[idx % expressions.length];
+                results.add(executor.submit(() -> evaluate(expression)));
+            }
+
+            for (int idx = 0; idx < results.size(); idx++) {
+                assertEquals(results.get(idx).get(), evaluate(expressions[idx % expressions.length]));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testIterativeParser() throws Exception {
+        Parser recursive = new Parser(operations, functions);
+        recursive.setIterative(false);
+        assertTrue(parser.isIterative());
+
+        // Both parsers produce the same trees
+        String[] expressions = new String[]{"=1", "=1 + 2 * 3 - 4 / 5", "=2 ^ 3 ^ 2", "=-(5 - 7) ^ 2 * --3", "=(((1 + 2)) * (3))",
+                                            "=pow(2, 10) - abs(-4) + pi()", "=sum([1, [2, 3], 4 + 5]) / 2.0 + sum(A1:B2)", "=max(1, min(2, 3)) < 5 > 0",
+                                            "=\"a\" + \"b c\"", "=ifeq(A1, $B$2) + sum(A:A)", "=[1, 2, [3]]"};
+        for (String expression : expressions) {
+            ASTree expected = recursive.parseTokens(tokenizer.lex(expression));
+            assertEquals(parser.parseTokens(tokenizer.lex(expression)).getCanonicalForm(), expected.getCanonicalForm());
+        }
+
+        // And reject the same expressions
+        String[] invalid = new String[]{"=(1 + 2", "=sum(1,)", "=)", "=sum(1 2)", "=[1 2]", "=1 + \"a\"", "=abs 1", "=]"};
+        for (String expression : invalid) {
+            assertThrows(Exception.class, () -> recursive.parseTokens(tokenizer.lex(expression)));
+            assertThrows(Exception.class, () -> parser.parseTokens(tokenizer.lex(expression)));
+        }
+
+        // Parentheses add no nodes, so their nesting is limited only by the memory, not the Java stack
+        int depth = 100_000;
+        String nested = "=" + "(".repeat(depth) + "sum([1, (2)])" + ")".repeat(depth);
+        assertEquals(parser.parseTokens(tokenizer.lex(nested)).evaluate(operations), new DTypeInteger(3));
+    }
+
+    @Test
+    public void testParseDepth() throws Exception {
+        // Trees deeper than the limit are parse errors, not stack overflows
+        String chain = "=1" + " + 1".repeat(50_000 - 1);
+        assertThrows(Exception.class, () -> parser.parseTokens(tokenizer.lex(chain)));
+
+        String unary = "=" + "-".repeat(20_000) + "1";
+        assertThrows(Exception.class, () -> parser.parseTokens(tokenizer.lex(unary)));
+
+        String calls = "=" + "abs(".repeat(20_000) + "1" + ")".repeat(20_000);
+        assertThrows(Exception.class, () -> parser.parseTokens(tokenizer.lex(calls)));
+
+        // Trees at the limit are parsed and evaluated
+        ASTree longest = parser.parseTokens(tokenizer.lex("=1" + " + 1".repeat(Parser.MAX_DEPTH - 1)));
+        assertEquals(longest.getDepth(), Parser.MAX_DEPTH);
+        assertEquals(longest.evaluate(operations), new DTypeInteger(Parser.MAX_DEPTH));
+
+        ASTree deepest = parser.parseTokens(tokenizer.lex("=" + "-".repeat(Parser.MAX_DEPTH - 1) + "1"));
+        assertEquals(deepest.evaluate(operations), new DTypeInteger(-1));
+    }
+
+    @Test
+    public void testFunctionRegistry() throws Exception {
+        FunctionRegistry registry = new FunctionRegistry(functions);
+        assertEquals(registry.size(), functions.length);
+        assertEquals(registry.find("sum"), functions[10]);
+        assertEquals(registry.find("summ"), null);
+        assertEquals(registry.find("=sum(".toCharArray(), 1, 4), functions[10]);
+
+        // Arities of the overloads are known ahead of time
+        FunctionRegistry.Entry max = registry.getEntry("max");
+        assertArrayEquals(max.getArities(), new int[]{1, 2});
+        assertEquals(max.getOverloadCount(), 2);
+        assertTrue(registry.getEntry("pi").acceptsArity(0));
+        assertFalse(registry.getEntry("abs").acceptsArity(2));
+        assertEquals(registry.getEntry("abs").getOverloadCount(), 3);
+
+        // Ids are unique
+        assertThrows(IllegalArgumentException.class, () -> new FunctionRegistry(new Abs("abs"), new Abs("abs")));
+        assertTrue(new Abs("abs").equals(functions[2]));
+        assertFalse(functions[2].equals(functions[3]));
+
+        // Calls with a wrong number of arguments are rejected by both parsers
+        Parser recursive = new Parser(operations, registry);
+        recursive.setIterative(false);
+        for (Parser p : new Parser[]{parser, recursive}) {
+            assertThrows(Exception.class, () -> p.parseTokens(tokenizer.lex("=abs(1, 2)")));
+            assertThrows(Exception.class, () -> p.parseTokens(tokenizer.lex("=pi(1)")));
+            assertEquals(p.parseTokens(tokenizer.lex("=max(1, 2) + max([3, 4])")).evaluate(operations), new DTypeInteger(6));
+        }
+    }
+
+    @Test
+    public void testLazyArguments() throws Exception {
+        // Branches not taken are never evaluated
+        assertThrows(Exception.class, () -> evaluate("=1 / 0"));
+        assertEquals(evaluate("=if(1 < 2, 5, 1 / 0)"),            new DTypeInteger(5));
+        assertEquals(evaluate("=if(0, 1 / 0, 2.5)"),              new DTypeDouble(2.5));
+        assertEquals(evaluate("=ifeq(2, 2, 1, 1 / 0)"),           new DTypeInteger(1));
+        assertEquals(evaluate("=ifeq(2, 3)"),                     new DTypeBoolean(false));
+        assertEquals(evaluate("=and(False, 1 / 0)"),              new DTypeBoolean(false));
+        assertEquals(evaluate("=or(1 > 0, 1 / 0)"),               new DTypeBoolean(true));
+        assertEquals(evaluate("=and(True, or(False, 2 > 1)) + 1"), new DTypeInteger(2));
+        assertThrows(Exception.class, () -> evaluate("=if(\"a\", 1, 2)"));
+
+        // The same holds for compiled trees
+        ASTree compiled = parser.parseTokens(tokenizer.tokenize("=if(pi() > 3, 1, 1 / 0) + and(0, 1 / 0)"));
+        compiled.compile();
+        assertEquals(compiled.evaluate(operations), new DTypeInteger(1));
+
+        // Lazy arguments are still type checked
+        assertThrows(Exception.class, () -> parser.parseTokens(tokenizer.tokenize("=if(1, \"a\" - 1, 2)")));
+
+        // Thunks are not values - they are accepted by lazy parameters only
+        FunctionNode call = (FunctionNode) parser.parseTokens(tokenizer.tokenize("=if(A1, 2, 3)")).getRoot();
+        Node[]       args = call.getArguments();
+        assertEquals(call.apply(new Object[] { new DTypeBoolean(true), Thunk.deferred(args[1]), Thunk.deferred(args[2]) }).getValue(), "#DEFERRED");
+        assertThrows(Exception.class, () -> call.apply(new Object[] { Thunk.deferred(args[0]), Thunk.deferred(args[1]), Thunk.deferred(args[2]) }));
+
+        // Calls with constant conditions are pruned
+        ASTree pruned = parser.parseTokens(tokenizer.tokenize("=if(1 < 2, A1, B1)"));
+        assertTrue(Optimizer.optimize(pruned.getRoot(), operations) instanceof ReferenceNode);
+        pruned = parser.parseTokens(tokenizer.tokenize("=and(False, A1)"));
+        assertEquals(((ConstantNode) Optimizer.optimize(pruned.getRoot(), operations)).getValue(), new DTypeBoolean(false));
+        pruned = parser.parseTokens(tokenizer.tokenize("=and(True, A1)"));
+        assertTrue(Optimizer.optimize(pruned.getRoot(), operations) instanceof FunctionNode);
+
+        // Subexpressions are never hoisted out of a branch, but may be shared within it
+        ASTree guarded = parser.parseTokens(tokenizer.tokenize("=if(A1 > 0, 1 / A1 + 1 / A1, 0)"));
+        FunctionNode optimized = (FunctionNode) Optimizer.optimize(guarded.getRoot(), operations);
+        assertTrue(optimized.getArguments()[1] instanceof LetNode);
+    }
 }
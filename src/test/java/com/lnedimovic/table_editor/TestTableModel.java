@@ -0,0 +1,703 @@
+package com.lnedimovic.table_editor;
+
+import com.lnedimovic.table_editor.dtype.DType;
+import com.lnedimovic.table_editor.dtype.DTypeId;
+import com.lnedimovic.table_editor.dtype.dtypes.*;
+import com.lnedimovic.table_editor.expression.FormulaCache;
+import com.lnedimovic.table_editor.expression.Parser;
+import com.lnedimovic.table_editor.expression.Tokenizer;
+import com.lnedimovic.table_editor.expression.ast.ASTree;
+import com.lnedimovic.table_editor.expression.ast.EvaluationContext;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.LetNode;
+import com.lnedimovic.table_editor.expression.ast.node.nodes.SpecializedNode;
+import com.lnedimovic.table_editor.expression.function.FunctionRegistry;
+import com.lnedimovic.table_editor.expression.operation.OperationSet;
+import com.lnedimovic.table_editor.expression.optimizer.Optimizer;
+import com.lnedimovic.table_editor.table.model.CellAddress;
+import com.lnedimovic.table_editor.table.model.CellRange;
+import com.lnedimovic.table_editor.table.model.CellReference;
+import com.lnedimovic.table_editor.table.model.ParsedExpressions;
+import com.lnedimovic.table_editor.table.model.TableModel;
+import com.lnedimovic.table_editor.table.model.store.ColumnarCellStore;
+import com.lnedimovic.table_editor.table.model.store.MappedCellStore;
+import com.lnedimovic.table_editor.table.model.store.OffHeapCellStore;
+import com.lnedimovic.table_editor.table.model.store.TiledCellStore;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TestTableModel {
+    public static final int ROW_COUNT = 10;
+    public static final int COL_COUNT = 5;
+
+    public static OperationSet operations;
+    public static FunctionRegistry functions;
+
+    public static Tokenizer    tokenizer;
+    public static Parser       parser;
+
+    public TableModel model;
+
+    @BeforeClass
+    public static void setUp() {
+        operations = Main.setupOperations();
+        functions  = Main.setupFunctions();
+
+        tokenizer = new Tokenizer(operations, functions);
+        parser    = new Parser(operations, functions);
+    }
+
+    @Before
+    public void setUpModel() {
+        model = createModel(ROW_COUNT, COL_COUNT);
+    }
+
+    public static TableModel createModel(int rowCount, int colCount) {
+        // Every cell is initialized to 0, the first column holds row indices
+        List<List<DType<?>>> data = new ArrayList<>();
+        for (int row = 0; row < rowCount; row++) {
+            data.add(new ArrayList<>());
+            data.get(row).add(new DTypeInteger(row + 1));
+            for (int col = 1; col <= colCount; col++) {
+                data.get(row).add(new DTypeInteger(0));
+            }
+        }
+
+        String[] columnNames = new String[colCount + 1];
+        columnNames[0] = "";
+        for (int idx = 1; idx <= colCount; idx++) {
+            columnNames[idx] = CellReference.columnName(idx);
+        }
+
+        return new TableModel(data, columnNames, tokenizer, parser);
+    }
+
+    // A1 is (row 0, column 1) internally
+    public DType<?> valueAt(String cell) {
+        CellRange range = CellRange.parse(cell + ":" + cell);
+        return (DType<?>) model.getValueAt(range.getRowStart(), range.getColStart());
+    }
+
+    public void set(String cell, String expression) throws Exception {
+        CellRange range = CellRange.parse(cell + ":" + cell);
+        model.setExpressionAt(expression, range.getRowStart(), range.getColStart());
+    }
+
+    @Test
+    public void testFormulaPersistence() throws Exception {
+        set("A1", "5");
+        set("B1", "=A1 * 2");
+        assertEquals(valueAt("B1"), new DTypeInteger(10));
+        assertEquals(model.getExpressionAt(0, 2), "=A1 * 2");
+
+        // Changing the precedent re-evaluates the formula
+        set("A1", "7");
+        assertEquals(valueAt("B1"), new DTypeInteger(14));
+
+        // Overwriting the formula with a plain value stops its re-evaluation
+        set("B1", "1");
+        set("A1", "100");
+        assertEquals(valueAt("B1"), new DTypeInteger(1));
+        assertEquals(model.getExpressionAt(0, 2), "1");
+    }
+
+    @Test
+    public void testTransitiveRecalculation() throws Exception {
+        set("A1", "1");
+        set("B1", "=A1 + 1");
+        set("C1", "=B1 + A1");
+        set("D1", "=sum(A1:C1)");
+        set("E1", "=D1 * C1");
+        assertEquals(valueAt("D1"), new DTypeInteger(6));
+        assertEquals(valueAt("E1"), new DTypeInteger(18));
+
+        // Diamond-shaped dependencies are evaluated in topological order
+        set("A1", "2");
+        assertEquals(valueAt("B1"), new DTypeInteger(3));
+        assertEquals(valueAt("C1"), new DTypeInteger(5));
+        assertEquals(valueAt("D1"), new DTypeInteger(10));
+        assertEquals(valueAt("E1"), new DTypeInteger(50));
+
+        // Cells outside of the referenced range don't trigger re-evaluation of range formulas
+        set("A2", "=D1");
+        set("E2", "1000");
+        assertEquals(valueAt("A2"), new DTypeInteger(10));
+    }
+
+    @Test
+    public void testInvalidFormulas() throws Exception {
+        set("A1", "=B1 + 1");
+
+        // Circular references are rejected, leaving the cell as it was
+        assertThrows(Exception.class, () -> set("B1", "=A1"));
+        assertThrows(Exception.class, () -> set("C1", "=C1 + 1"));
+        assertThrows(Exception.class, () -> set("B1", "=sum(A1:A3)"));
+        assertEquals(valueAt("B1"), new DTypeInteger(0));
+
+        // Formulas that can no longer be evaluated get an error value
+        set("B1", "\"text\"");
+        assertEquals(valueAt("A1"), new DTypeString(TableModel.ERROR_VALUE));
+        set("B1", "41");
+        assertEquals(valueAt("A1"), new DTypeInteger(42));
+    }
+
+    @Test
+    public void testFormulaCache() throws Exception {
+        set("A1", "3");
+        set("B1", "=A1 + 1");
+        long misses = model.getFormulaCache().getMisses();
+
+        // Same formula text (up to whitespace) is parsed only once, and the cached tree is shared
+        set("B2", "= A1+1");
+        set("A2", "=sum(A1:B1)");
+        set("B3", "=A1 + 1");
+        assertEquals(model.getFormulaCache().getMisses(), misses + 1);
+        assertEquals(model.getFormulaCache().getHits(), 2);
+
+        set("A1", "5");
+        assertEquals(valueAt("B1"), new DTypeInteger(6));
+        assertEquals(valueAt("B2"), new DTypeInteger(6));
+        assertEquals(valueAt("A2"), new DTypeInteger(11));
+        assertEquals(model.getExpressionAt(1, 2), "= A1+1");
+
+        // Whitespace within strings, or between tokens of the same kind, changes the formula
+        set("C1", "=\"ab\"");
+        set("C2", "=\"a b\"");
+        assertEquals(valueAt("C1"), new DTypeString("ab"));
+        assertEquals(valueAt("C2"), new DTypeString("a b"));
+        set("C3", "=12");
+        assertEquals(valueAt("C3"), new DTypeInteger(12));
+        assertThrows(Exception.class, () -> set("C4", "=1 2"));
+
+        // Least recently used formulas are evicted once the cache is full
+        FormulaCache cache = new FormulaCache(2);
+        cache.put("=1", parser.parseTokens(tokenizer.tokenize("=1")));
+        cache.put("=2", parser.parseTokens(tokenizer.tokenize("=2")));
+        cache.get("=1");
+        cache.put("=3", parser.parseTokens(tokenizer.tokenize("=3")));
+        assertNull(cache.get("=2"));
+        assertNotNull(cache.get("=1"));
+        assertEquals(cache.getEvictions(), 1);
+    }
+
+    @Test
+    public void testSharedTemplates() throws Exception {
+        // Formulas filled down a column share a single relative template
+        for (int row = 1; row <= ROW_COUNT; row++) {
+            set("A" + row, String.valueOf(row));
+            set("B" + row, "=A" + row + " * 2");
+        }
+        assertEquals(model.getTemplateCount(), 1);
+        assertEquals(model.getFormulaAt(4, 2).getTemplate(), model.getFormulaAt(9, 2).getTemplate());
+
+        // Each cell is still evaluated against its own row
+        set("A5", "100");
+        assertEquals(valueAt("B5"), new DTypeInteger(200));
+        assertEquals(valueAt("B6"), new DTypeInteger(12));
+        assertEquals(model.getExpressionAt(4, 2), "=A5 * 2");
+
+        // Same text in another row is a different relative shape
+        set("C1", "=A1 * 2");
+        set("C2", "=A1 * 2");
+        assertEquals(model.getTemplateCount(), 3);
+        assertEquals(valueAt("C2"), new DTypeInteger(2));
+
+        // Unused templates are dropped
+        set("C1", "0");
+        set("C2", "0");
+        assertEquals(model.getTemplateCount(), 1);
+    }
+
+    @Test
+    public void testFixedReferences() throws Exception {
+        set("A1", "10");
+        for (int row = 1; row <= ROW_COUNT; row++) {
+            set("B" + row, String.valueOf(row));
+            set("C" + row, "=B" + row + " * $A$1");
+            set("D" + row, "=sum($B$1:B" + row + ")");
+        }
+
+        // Fixed references stay the same in every cell, so filled-down formulas still share a template
+        assertEquals(model.getTemplateCount(), 2);
+        assertEquals(valueAt("C7"), new DTypeInteger(70));
+        assertEquals(valueAt("D4"), new DTypeInteger(10));
+        assertEquals(model.getExpressionAt(6, 3), "=B7 * $A$1");
+
+        set("A1", "3");
+        assertEquals(valueAt("C7"), new DTypeInteger(21));
+
+        // Only the fixed row of a mixed reference stays the same
+        set("E1", "=A$1 + B1");
+        set("E2", "=A$1 + B2");
+        assertEquals(model.getFormulaAt(0, 5).getTemplate(), model.getFormulaAt(1, 5).getTemplate());
+        assertEquals(valueAt("E2"), new DTypeInteger(5));
+
+        assertThrows(Exception.class, () -> {set("E3", "=$$A1");});
+        assertThrows(Exception.class, () -> {set("E3", "=$B$2:$A$1");});
+    }
+
+    @Test
+    public void testSpecializedFormulas() throws Exception {
+        set("A1", "3");
+        set("B1", "=A1 * 2 + 1");
+        assertTrue(model.getFormulaAt(0, 2).getTree().getRoot() instanceof SpecializedNode);
+        assertEquals(valueAt("B1"), new DTypeInteger(7));
+
+        // Referenced cell changing its type invalidates the specialization, without affecting the result
+        set("A1", "2.5");
+        assertEquals(valueAt("B1"), new DTypeDouble(6.0));
+        assertTrue(((SpecializedNode) model.getFormulaAt(0, 2).getTree().getRoot()).isDeoptimized());
+
+        set("A1", "\"text\"");
+        assertEquals(valueAt("B1"), new DTypeString(TableModel.ERROR_VALUE));
+    }
+
+    @Test
+    public void testParallelRecalculation() throws Exception {
+        // Large enough wavefronts are evaluated on the fork-join pool
+        final int rowCount = 1000;
+        model = createModel(rowCount, COL_COUNT);
+
+        for (int row = 1; row <= rowCount; row++) {
+            set("B" + row, "=A" + row + " * 2");
+            set("C" + row, "=B" + row + " + A1");
+        }
+        set("D1", "=sum(C1:C" + rowCount + ")");
+
+        // A1 changes every C cell, while A1 ... A1000 change B and C cells of their row
+        set("A1", "1");
+        assertEquals(valueAt("D1"), new DTypeInteger(1000 + 2));
+        for (int row = 1; row <= rowCount; row++) {
+            model.setValueAt(String.valueOf(row), row - 1, 1);
+        }
+        assertEquals(valueAt("B1000"), new DTypeInteger(2000));
+        assertEquals(valueAt("C1000"), new DTypeInteger(2001));
+        assertEquals(valueAt("D1"),    new DTypeInteger(rowCount * (rowCount + 1) + rowCount));
+
+        model.recalculateAll();
+        assertEquals(valueAt("D1"),    new DTypeInteger(rowCount * (rowCount + 1) + rowCount));
+    }
+
+    @Test
+    public void testOptimizedFormulas() throws Exception {
+        set("A1", "2");
+        set("B1", "=pi() * 2 * A1 + pi() * 2 * A1 - sqrt(A1 * A1)");
+        assertTrue(model.getFormulaAt(0, 2).getTree().getRoot() instanceof LetNode);
+        assertEquals(valueAt("B1"), new DTypeDouble(Math.PI * 2 * 2 + Math.PI * 2 * 2 - 2));
+
+        // Shared subexpressions are re-evaluated with the referenced cells, in both tiers
+        for (int idx = 0; idx <= ASTree.COMPILE_THRESHOLD; idx++) {
+            set("A1", String.valueOf(idx + 1));
+        }
+        assertTrue(model.getFormulaAt(0, 2).getTree().isCompiled());
+        assertEquals(valueAt("B1"), new DTypeDouble(Math.PI * 2 * 17 + Math.PI * 2 * 17 - 17));
+
+        set("A1", "\"text\"");
+        assertEquals(valueAt("B1"), new DTypeString(TableModel.ERROR_VALUE));
+    }
+
+    @Test
+    public void testRangeViews() throws Exception {
+        set("A1", "4");
+        set("A2", "1");
+        set("B1", "2.5");
+        set("B2", "3.5");
+
+        // Aggregates read ranges in place
+        set("C1", "=sum(A1:A2) + max(B1:B2) - min(A1:A2) + average(B1:B2)");
+        assertEquals(valueAt("C1"), new DTypeDouble(5 + 3.5 - 1 + 3.0));
+
+        set("A2", "2");
+        assertEquals(valueAt("C1"), new DTypeDouble(6 + 3.5 - 2 + 3.0));
+
+        // Ranges leaving the formula are copied out
+        set("C2", "=A1:B2");
+        assertTrue(valueAt("C2") instanceof DTypeArray);
+        assertTrue(!(valueAt("C2") instanceof DTypeRange));
+        assertEquals(valueAt("C2").toString(), "[[4, 2.5], [2, 3.5]]");
+    }
+
+    @Test
+    public void testColumnarStore() throws Exception {
+        ColumnarCellStore store = (ColumnarCellStore) model.getStore();
+        assertEquals(store.getColumnTypeId(1), DTypeId.INTEGER);
+
+        // Values of a different type box the column, keeping the values it held
+        set("A1", "2.5");
+        assertEquals(store.getColumnTypeId(1), DTypeId.OTHER);
+        assertEquals(valueAt("A1"), new DTypeDouble(2.5));
+        assertEquals(valueAt("A2"), new DTypeInteger(0));
+
+        // Formulas read typed columns
+        set("B1", "3");
+        set("B2", "4");
+        set("C1", "=sum(B1:B2) + B1");
+        assertEquals(store.getColumnTypeId(2), DTypeId.INTEGER);
+        assertEquals(valueAt("C1"), new DTypeInteger(10));
+
+        // Handed out values are copies
+        ((DTypeInteger) valueAt("B1")).setValue(100);
+        assertEquals(valueAt("B1"), new DTypeInteger(3));
+
+        // Cells are read while the string dictionary grows, and the column is boxed
+        ColumnarCellStore strings = new ColumnarCellStore(1000, 1);
+        Thread writer = new Thread(() -> {
+            for (int row = 0; row < 1000; row++) {
+                strings.set(row, 0, new DTypeString("s" + row));
+            }
+            strings.set(999, 0, new DTypeInteger(999));
+        });
+        writer.start();
+        for (int row = 0; row < 999; row++) {
+            while (strings.get(row, 0) == null) {
+                Thread.onSpinWait();
+            }
+            assertEquals(strings.get(row, 0).getValue(), "s" + row);
+        }
+        writer.join();
+        assertEquals(strings.getColumnTypeId(0), DTypeId.OTHER);
+        assertEquals(strings.get(999, 0), new DTypeInteger(999));
+    }
+
+    @Test
+    public void testOffHeapStore() throws Exception {
+        try (OffHeapCellStore store = new OffHeapCellStore(ROW_COUNT, COL_COUNT + 1)) {
+            String[] columnNames = new String[COL_COUNT + 1];
+            for (int col = 0; col <= COL_COUNT; col++) {
+                columnNames[col] = model.getColumnName(col);
+            }
+            model = new TableModel(store, columnNames, tokenizer, parser);
+
+            set("A1", "1.5");
+            set("A2", "2.5");
+            set("B1", "3");
+            set("B2", "4");
+            set("C1", "=sum(A1:A2) + max(B1:B2)");
+            assertEquals(valueAt("C1"), new DTypeDouble(8.0));
+
+            // Strings are kept as UTF-8 bytes
+            store.set(0, 4, new DTypeString("čvor"));
+            store.set(1, 4, new DTypeString("a"));
+            store.set(0, 4, new DTypeString("ž"));
+            assertEquals(store.get(0, 4).getValue(), "ž");
+            assertEquals(store.get(1, 4).getValue(), "a");
+            assertNull(store.get(2, 4));
+
+            // The bytes of the strings grow with the strings held
+            for (int round = 0; round < 100; round++) {
+                store.set(2 + round % (ROW_COUNT - 2), 4, new DTypeString("string " + round));
+            }
+            assertEquals(store.get(2 + 99 % (ROW_COUNT - 2), 4).getValue(), "string 99");
+            assertEquals(store.get(1, 4).getValue(), "a");
+
+            // Mixed values are kept on the heap
+            set("B3", "true");
+            assertEquals(store.getColumnTypeId(2), DTypeId.OTHER);
+            assertEquals(valueAt("B2"), new DTypeInteger(4));
+        }
+    }
+
+    @Test
+    public void testMappedStore() throws Exception {
+        Path path = Files.createTempFile("table", ".teds");
+        try {
+            try (MappedCellStore store = MappedCellStore.create(path, ROW_COUNT, COL_COUNT + 1)) {
+                store.set(0, 1, new DTypeInteger(7));
+                store.set(1, 1, new DTypeDouble(2.5));
+                store.set(2, 1, new DTypeBoolean(true));
+                store.set(3, 1, new DTypeString("čvor"));
+
+                // String region grows past its initial mapping
+                store.set(4, 1, new DTypeString("x".repeat(1 << 17)));
+                store.set(5, 1, new DTypeArray(new DType<?>[]{new DTypeInteger(1)}));
+                store.flush();
+            }
+
+            // Values outlive the store, except for the ones not representable in the file
+            try (MappedCellStore store = MappedCellStore.open(path)) {
+                assertEquals(store.getRowCount(), ROW_COUNT);
+                assertEquals(store.get(0, 1), new DTypeInteger(7));
+                assertEquals(store.get(1, 1), new DTypeDouble(2.5));
+                assertEquals(store.get(2, 1), new DTypeBoolean(true));
+                assertEquals(store.get(3, 1).getValue(), "čvor");
+                assertEquals(((String) store.get(4, 1).getValue()).length(), 1 << 17);
+                assertNull(store.get(5, 1));
+                assertNull(store.get(6, 1));
+
+                store.set(6, 2, new DTypeInteger(3));
+                assertEquals(store.getTypeId(6, 2), DTypeId.INTEGER);
+                assertEquals(store.getInt(6, 2), 3);
+            }
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testTiledStore() throws Exception {
+        TiledCellStore store = new TiledCellStore(1_000_000, COL_COUNT + 1);
+        String[] columnNames = new String[COL_COUNT + 1];
+        for (int col = 0; col <= COL_COUNT; col++) {
+            columnNames[col] = model.getColumnName(col);
+        }
+        model = new TableModel(store, columnNames, tokenizer, parser);
+        assertEquals(model.getRowCount(), 1_000_000);
+        assertEquals(store.getTileCount(), 0);
+
+        // Only the written tiles are allocated
+        set("A1", "2");
+        set("A500000", "3.5");
+        set("B999999", "4");
+        assertEquals(store.getTileCount(), 3);
+        assertNull(valueAt("A2"));
+
+        // Empty cells of ranges are skipped
+        set("C1", "=sum(A1:B1000000)");
+        assertEquals(valueAt("C1"), new DTypeDouble(9.5));
+        set("C2", "=average(A1:A1000000)");
+        assertEquals(valueAt("C2"), new DTypeDouble(2.75));
+
+        // Emptied tiles are dropped
+        store.set(499999, 1, null);
+        store.set(999998, 2, null);
+        assertEquals(store.getTileCount(), 1);
+
+        set("C1", "=sum(A1:B1000000)");
+        assertEquals(valueAt("C1"), new DTypeInteger(2));
+    }
+
+    @Test
+    public void testBulkParsing() throws Exception {
+        model = createModel(2000, COL_COUNT);
+        set("E1", "=A1 + 1");
+
+        // Column A holds values, B a formula repeated on every row, C a formula per row; D2 is invalid, D3 and D4 are nested too deeply
+        Map<Long, String> expressions = new LinkedHashMap<>();
+        for (int row = 0; row < 2000; row++) {
+            expressions.put(CellAddress.pack(row, 1), String.valueOf(row));
+            expressions.put(CellAddress.pack(row, 2), "=sum(A1:A3) * 2");
+            expressions.put(CellAddress.pack(row, 3), "=A" + (row + 1) + " + 1");
+        }
+        expressions.put(CellAddress.pack(1, 4), "=A1 +");
+        expressions.put(CellAddress.pack(2, 4), "=1" + " + 1".repeat(50_000 - 1));
+        expressions.put(CellAddress.pack(3, 4), "=" + "-".repeat(20_000) + "1");
+
+        List<Integer> progress = Collections.synchronizedList(new ArrayList<>());
+        ParsedExpressions parsed = model.parseExpressions(expressions, (done, total) -> progress.add(done));
+
+        // Equal formulas are parsed once
+        assertEquals(parsed.getFormulaCount(), 2004);
+        assertEquals(Collections.max(progress), Integer.valueOf(2004));
+
+        // Nothing is stored until the parsed expressions are set
+        assertEquals(valueAt("A2"), new DTypeInteger(0));
+
+        Map<Long, Exception> errors = model.setExpressions(parsed);
+        assertEquals(errors.keySet(), Set.of(CellAddress.pack(1, 4), CellAddress.pack(2, 4), CellAddress.pack(3, 4)));
+        assertEquals(valueAt("D2"), new DTypeString(TableModel.ERROR_VALUE));
+        assertEquals(valueAt("D4"), new DTypeString(TableModel.ERROR_VALUE));
+
+        assertEquals(valueAt("A2000"), new DTypeInteger(1999));
+        assertEquals(valueAt("B1500"), new DTypeInteger(6));
+        assertEquals(valueAt("C2000"), new DTypeInteger(2000));
+
+        // Formulas depending on the pasted cells are recalculated
+        assertEquals(valueAt("E1"), new DTypeInteger(1));
+
+        // Formulas differing in whitespace inside strings, or between tokens, are told apart
+        expressions = new LinkedHashMap<>();
+        expressions.put(CellAddress.pack(0, 4), "=\"a b\"");
+        expressions.put(CellAddress.pack(1, 4), "=\"ab\"");
+        expressions.put(CellAddress.pack(2, 4), "=12");
+        expressions.put(CellAddress.pack(3, 4), "=1 2");
+        parsed = model.parseExpressions(expressions, null);
+        assertEquals(parsed.getFormulaCount(), 4);
+
+        errors = model.setExpressions(parsed);
+        assertEquals(errors.keySet(), Set.of(CellAddress.pack(3, 4)));
+        assertEquals(valueAt("D1"), new DTypeString("a b"));
+        assertEquals(valueAt("D2"), new DTypeString("ab"));
+        assertEquals(valueAt("D3"), new DTypeInteger(12));
+
+        // Running out of stack while parsing is reported as the formula's error, too
+        String deep = "=" + "-".repeat(Parser.MAX_DEPTH - 1) + "1";
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread parsing = new Thread(null, () -> {
+            try {
+                model.checkForFormula(deep);
+            }
+            catch (Throwable t) {
+                failures.add(t);
+            }
+        }, "small-stack", 128 * 1024);
+        parsing.start();
+        parsing.join();
+        assertEquals(failures.size(), 1);
+        assertEquals(failures.get(0).getClass(), Exception.class);
+
+        // And the formula still parses on a thread with enough stack
+        assertEquals(model.checkForFormula(deep), new DTypeInteger(-1));
+    }
+
+    @Test
+    public void testSharedEvaluation() throws Exception {
+        model = createModel(1000, COL_COUNT);
+        for (int row = 0; row < 1000; row++) {
+            model.getStore().set(row, 1, new DTypeInteger(row));
+            model.getStore().set(row, 2, new DTypeInteger(2 * row));
+        }
+
+        // One tree - with a shared subexpression and relative references - evaluated for every row, from several threads at once
+        ASTree tree = parser.parseTokens(tokenizer.tokenize("=(A1 + B1) * (A1 + B1) + sum(A1:B1)"));
+        tree.relativize(0, 3);
+        tree.setRoot(Optimizer.optimize(tree.getRoot(), operations));
+        assertTrue(tree.getRoot() instanceof LetNode);
+
+        List<Thread>  threads  = new ArrayList<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (int thread = 0; thread < 8; thread++) {
+            threads.add(new Thread(() -> {
+                for (int row = 0; row < 1000; row++) {
+                    try {
+                        DType<?> value = tree.evaluate(new EvaluationContext(operations, model.getStore(), row, 3));
+                        if (!value.equals(new DTypeInteger(9 * row * row + 3 * row))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(failures.get(), 0);
+        assertTrue(tree.isCompiled());
+
+        // References can't be evaluated without cells
+        assertThrows(Exception.class, () -> {tree.evaluate(operations);});
+    }
+
+    @Test
+    public void testLargeSheet() throws Exception {
+        // 2^31 - 1 rows, 30 columns (A..AD), only the written tiles allocated
+        TiledCellStore store = new TiledCellStore(Integer.MAX_VALUE, 31);
+        String[] columnNames = new String[31];
+        columnNames[0] = "";
+        for (int col = 1; col <= 30; col++) {
+            columnNames[col] = CellReference.columnName(col);
+        }
+        model = new TableModel(store, columnNames, tokenizer, parser);
+        assertEquals(model.getColumnName(27), "AA");
+
+        set("AA1", "5");
+        set("AD2147483647", "7");
+        set("B1", "=AA1 + AD2147483647");
+        assertEquals(valueAt("B1"), new DTypeInteger(12));
+        set("AB2", "3");
+        set("B2", "=sum(AA1:AD2)");
+        assertEquals(valueAt("B2"), new DTypeInteger(8));
+
+        // Ranges reaching the last row span 2^31 - 1 rows; rows past it aren't addressable
+        set("AA2147483647", "4");
+        set("B3", "=sum(AA2147483646:AA2147483647) + AA2147483647");
+        assertEquals(valueAt("B3"), new DTypeInteger(8));
+        assertThrows(Exception.class, () -> set("B5", "=sum(A1:A2147483648)"));
+        assertThrows(Exception.class, () -> set("B5", "=A2147483648"));
+
+        // Multi-letter columns are filled down like any other
+        set("AA2", "1");
+        set("AC1", "=AA1 * 2");
+        set("AC2", "=AA2 * 2");
+        assertEquals(model.getFormulaAt(0, 29).getTemplate(), model.getFormulaAt(1, 29).getTemplate());
+
+        set("AA1", "6");
+        assertEquals(valueAt("B1"), new DTypeInteger(13));
+        assertEquals(valueAt("AC1"), new DTypeInteger(12));
+    }
+
+    @Test
+    public void testWholeLineReferences() throws Exception {
+        // 2^31 - 1 rows, only the written tiles allocated - whole columns must not be read row by row
+        TiledCellStore store = new TiledCellStore(Integer.MAX_VALUE, 6);
+        model = new TableModel(store, new String[]{"", "A", "B", "C", "D", "E"}, tokenizer, parser);
+
+        set("A1", "1");
+        set("A2", "2");
+        set("A3", "3");
+        set("C1", "=sum(A:A)");
+        set("C5", "=sum(2:2)");
+        set("D1", "=sum(A:B)");
+        assertEquals(valueAt("C1"), new DTypeInteger(6));
+        assertEquals(valueAt("C5"), new DTypeInteger(2));
+        assertEquals(model.getUsedRange().getRowExtent(1, 1), 3);
+
+        // Appending grows the column, re-evaluating its dependents
+        set("A1000000", "10");
+        assertEquals(model.getUsedRange().getRowExtent(1, 1), 1000000);
+        assertEquals(valueAt("C1"), new DTypeInteger(16));
+        set("B2", "5");
+        assertEquals(valueAt("C5"), new DTypeInteger(7));
+        assertEquals(valueAt("D1"), new DTypeInteger(21));
+
+        // Clearing the last cell shrinks the column back
+        set("A1000000", "");
+        assertEquals(model.getUsedRange().getRowExtent(1, 1), 3);
+        assertEquals(model.getUsedRange().getColumnExtent(1, 1), 3);
+        assertEquals(valueAt("C1"), new DTypeInteger(6));
+        assertEquals(valueAt("D1"), new DTypeInteger(11));
+
+        // Whole columns are relative, like any other column
+        set("E1", "=sum(C:C)");
+        assertEquals(model.getFormulaAt(0, 5).getTemplate(), model.getFormulaAt(0, 3).getTemplate());
+        assertEquals(valueAt("E1"), new DTypeInteger(13));
+
+        // Referencing the formula's own column (row) is circular
+        assertThrows(Exception.class, () -> set("A4", "=sum(A:A)"));
+        assertThrows(Exception.class, () -> set("B3", "=sum(3:3)"));
+    }
+
+    @Test
+    public void testLazyArguments() throws Exception {
+        set("A1", "0");
+        set("B1", "=if(A1 > 0, 10 / A1 + 10 / A1, -1)");
+        set("C1", "=ifeq(A1, 0, 0, sum(A1:A5) / A1)");
+        assertEquals(valueAt("B1"), new DTypeInteger(-1));
+        assertEquals(valueAt("C1"), new DTypeInteger(0));
+
+        set("A1", "5");
+        assertEquals(valueAt("B1"), new DTypeInteger(4));
+        assertEquals(valueAt("C1"), new DTypeInteger(1));
+
+        // Both branches remain precedents
+        set("B2", "=if(A2, A3, A4)");
+        set("A4", "7");
+        assertEquals(valueAt("B2"), new DTypeInteger(7));
+        set("A2", "True");
+        set("A3", "3");
+        assertEquals(valueAt("B2"), new DTypeInteger(3));
+    }
+}